@@ -0,0 +1,50 @@
+package com.caerus.audit.client.frame;
+
+import com.caerus.audit.client.service.ImageEncodeBenchmark;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Encode time of one frame against encoder threads; threads=0 is the ImageIO baseline. Compare with
+ * e.g. {@code -Djmh.args="ParallelEncodeBenchmark -p resolution=3840x2160"}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 2, time = 3)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+public class ParallelEncodeBenchmark {
+
+  @Param({"1920x1080", "3840x2160"})
+  public String resolution;
+
+  @Param({"0", "1", "2", "4", "8"})
+  public int threads;
+
+  private BufferedImage frame;
+  private FrameEncoder encoder;
+  private final ByteArrayOutputStream out = new ByteArrayOutputStream(8 * 1024 * 1024);
+
+  @Setup
+  public void setUp() {
+    String[] wh = resolution.split("x");
+    frame = ImageEncodeBenchmark.sampleFrame(Integer.parseInt(wh[0]), Integer.parseInt(wh[1]));
+    encoder = threads == 0 ? FrameEncoder.imageIo() : new ParallelPngEncoder(threads, 4);
+  }
+
+  @TearDown
+  public void tearDown() {
+    if (encoder instanceof ParallelPngEncoder parallel) parallel.close();
+  }
+
+  @Benchmark
+  public int encode() throws IOException {
+    out.reset();
+    encoder.encode(frame, out);
+    return out.size();
+  }
+}
@@ -0,0 +1,67 @@
+package com.caerus.audit.client.frame;
+
+import com.caerus.audit.client.service.ImageEncodeBenchmark;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Pixel kernels on one frame, Vector API against the scalar baseline. The Vector API needs the
+ * incubator module, which the jmh profile adds to the benchmark JVM.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PixelKernelsBenchmark {
+
+  @Param({"1920x1080", "3840x2160"})
+  public String resolution;
+
+  @Param({"scalar", "vector"})
+  public String kernels;
+
+  private PixelKernels impl;
+  private int w;
+  private int h;
+  private int[] frame;
+  private int[] previous;
+  private int[] half;
+  private byte[] rgb;
+
+  @Setup
+  public void setUp() {
+    impl = kernels.equals("scalar") ? PixelKernels.scalar() : PixelKernels.get();
+    if (!impl.name().startsWith(kernels)) throw new IllegalStateException("Got " + impl.name());
+    String[] wh = resolution.split("x");
+    w = Integer.parseInt(wh[0]);
+    h = Integer.parseInt(wh[1]);
+    BufferedImage img = ImageEncodeBenchmark.sampleFrame(w, h);
+    frame = PixelKernels.packed(img);
+    previous = frame.clone();
+    // A typing burst: a few hundred pixels differ from the previous frame.
+    for (int i = 0; i < 400; i++) previous[(i * 7919) % previous.length] ^= 0x00010101;
+    half = new int[(w / 2) * (h / 2)];
+    rgb = new byte[3 * w];
+  }
+
+  @Benchmark
+  public int countChanged() {
+    return impl.countChanged(frame, previous, frame.length);
+  }
+
+  @Benchmark
+  public int[] halve() {
+    impl.halve(frame, w, half, w / 2, w / 2, h / 2);
+    return half;
+  }
+
+  /** Every row, as the PNG encoder converts them. */
+  @Benchmark
+  public byte[] toRgb() {
+    for (int y = 0; y < h; y++) impl.toRgb(frame, y * w, w, rgb, 0);
+    return rgb;
+  }
+}
@@ -0,0 +1,80 @@
+package com.caerus.audit.client.frame;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Spool write and read of one encoded frame with and without AES-GCM; compare the encrypted=false
+ * rows (a plain copy) with encrypted=true for the cost of encryption.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 2, time = 3)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+public class SpoolCipherBenchmark {
+
+  @Param({"262144", "2097152"})
+  public int frameBytes;
+
+  @Param({"false", "true"})
+  public boolean encrypted;
+
+  // Only consulted for plaintext input, which the encrypted runs never see.
+  private static final Path FRAME = Path.of("bench.png");
+
+  private SpoolCipher cipher;
+  private byte[] frame;
+  private byte[] stored;
+  private final byte[] buf = new byte[64 * 1024];
+  private final ByteArrayOutputStream out = new ByteArrayOutputStream(4 * 1024 * 1024);
+
+  @Setup
+  public void setUp() throws IOException {
+    Path dir = Files.createTempDirectory("spool-cipher-bench");
+    cipher = SpoolCipher.forInstall(dir.resolve("spool.key"), 64 * 1024, dir);
+    frame = new byte[frameBytes];
+    new Random(1).nextBytes(frame);
+    out.reset();
+    try (OutputStream os = seal(out)) {
+      os.write(frame);
+    }
+    stored = out.toByteArray();
+  }
+
+  private OutputStream seal(OutputStream os) throws IOException {
+    return encrypted ? cipher.encrypt(os) : os;
+  }
+
+  @Benchmark
+  public int write() throws IOException {
+    out.reset();
+    try (OutputStream os = seal(out)) {
+      // PNG encoders write in small pieces.
+      for (int off = 0; off < frame.length; off += 8192) {
+        os.write(frame, off, Math.min(8192, frame.length - off));
+      }
+    }
+    return out.size();
+  }
+
+  @Benchmark
+  public long read() throws IOException {
+    InputStream raw = new ByteArrayInputStream(stored);
+    long total = 0;
+    try (InputStream in = encrypted ? cipher.decrypt(FRAME, raw) : raw) {
+      int n;
+      while ((n = in.read(buf)) > 0) total += n;
+    }
+    return total;
+  }
+}
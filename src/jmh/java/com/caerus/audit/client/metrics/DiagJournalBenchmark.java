@@ -0,0 +1,50 @@
+package com.caerus.audit.client.metrics;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * One per-frame diagnostic event written to the journal versus formatted by the logger; the journal
+ * row's gc.alloc.rate.norm should stay at zero.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DiagJournalBenchmark {
+  private static final Logger log = LoggerFactory.getLogger(DiagJournalBenchmark.class);
+
+  private final Path file = Path.of("/tmp/auditclient/20250101_093000123.png");
+  private DiagJournal journal;
+  private long bytes = 180_000;
+
+  @Setup
+  public void setUp() throws IOException {
+    journal =
+        DiagJournal.open(Files.createTempDirectory("diag-bench").resolve("diag.journal"), 4 << 20);
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    journal.close();
+  }
+
+  @Benchmark
+  @Threads(2)
+  public void journal() {
+    journal.write(JournalEvent.CAPTURED, 1, DiagJournal.frameId(file), bytes, 2500);
+  }
+
+  @Benchmark
+  @Threads(2)
+  public void log() {
+    log.info("Captured screenshot to {} ({} bytes)", file, bytes);
+  }
+}
@@ -0,0 +1,68 @@
+package com.caerus.audit.client.queue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.openjdk.jmh.annotations.*;
+
+/** Queue operations against a pre-filled backlog; every mutation rewrites the queue file. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PersistentFileQueueBenchmark {
+
+  @Param({"10", "1000", "10000", "100000"})
+  public int backlog;
+
+  private Path dir;
+  private PersistentFileQueue queue;
+  private Path retryProbe;
+  private long seq;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    dir = Files.createTempDirectory("queue-bench");
+    StringBuilder lines = new StringBuilder();
+    for (int i = 0; i < backlog; i++) {
+      Path f = Files.createFile(dir.resolve("frame-" + i + ".png"));
+      lines.append(f).append("|0|NORMAL|").append(i).append("|0\n");
+    }
+    Files.writeString(dir.resolve("upload-queue.txt"), lines);
+    RetryPolicy neverGiveUp = new RetryPolicy(Integer.MAX_VALUE, Duration.ZERO, Duration.ZERO);
+    queue = PersistentFileQueue.open(dir, Duration.ofDays(1), neverGiveUp);
+    retryProbe = dir.resolve("frame-" + (backlog / 2) + ".png");
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    try (Stream<Path> files = Files.walk(dir)) {
+      files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+    }
+  }
+
+  @Benchmark
+  public void enqueueAndMarkComplete() throws IOException {
+    Path p = dir.resolve("probe-" + seq++ + ".png");
+    queue.enqueue(p);
+    queue.markComplete(p);
+  }
+
+  @Benchmark
+  public boolean incrementRetry() throws IOException {
+    return queue.incrementRetry(retryProbe);
+  }
+
+  @Benchmark
+  public PersistentFileQueue.QueueEntry next() {
+    PersistentFileQueue.QueueEntry entry = queue.next();
+    queue.release(entry.file());
+    return entry;
+  }
+}
@@ -0,0 +1,37 @@
+package com.caerus.audit.client.queue;
+
+import com.caerus.audit.client.queue.PersistentFileQueue.QueueEntry;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QueueEntryParseBenchmark {
+
+  @Param({
+    "C:\\Users\\agent\\AppData\\Local\\Temp\\auditclient\\20240501_101500123.png",
+    "C:\\Users\\agent\\AppData\\Local\\Temp\\auditclient\\20240501_101500123.png|2|HIGH|1714558500123|1714558560000"
+  })
+  public String line;
+
+  private QueueEntry entry;
+
+  @Setup
+  public void setUp() {
+    entry = QueueEntry.from(line);
+  }
+
+  @Benchmark
+  public QueueEntry parse() {
+    return QueueEntry.from(line);
+  }
+
+  @Benchmark
+  public String format() {
+    return entry.toString();
+  }
+}
@@ -0,0 +1,25 @@
+package com.caerus.audit.client.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EventReporterBenchmark {
+  private EventReporter reporter;
+
+  @Setup
+  public void setUp() {
+    reporter = new EventReporter("http://127.0.0.1:1", "bench-client", "10.0.0.1");
+  }
+
+  @Benchmark
+  public String serializeEvent() throws JsonProcessingException {
+    return reporter.eventJson((byte) 1, "System idle for 42s");
+  }
+}
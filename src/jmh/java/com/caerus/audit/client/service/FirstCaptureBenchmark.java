@@ -0,0 +1,77 @@
+package com.caerus.audit.client.service;
+
+import com.caerus.audit.client.queue.PersistentFileQueue;
+import com.caerus.audit.client.stub.StubAuditServer;
+import java.io.BufferedWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Cold-start latency from wiring the services (as {@code App} does) to the first frame queued, in a
+ * fresh JVM per fork. A slow settings server and a large persisted backlog must not delay it.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(5)
+public class FirstCaptureBenchmark {
+  @Param({"0", "50000"})
+  public int backlog;
+
+  @Param({"0", "5000"})
+  public int serverLatencyMs;
+
+  private StubAuditServer server;
+  private Path dir;
+  private ConfigService config;
+  private WebSocketClient ws;
+
+  @Setup
+  public void setUp() throws Exception {
+    server = new StubAuditServer().withLatency(Duration.ofMillis(serverLatencyMs)).start();
+    dir = Files.createTempDirectory("first-capture");
+    try (BufferedWriter w = Files.newBufferedWriter(dir.resolve("upload-queue.txt"))) {
+      for (int i = 0; i < backlog; i++) {
+        w.write(dir.resolve("backlog-" + i + ".png") + "|0|NORMAL|" + i + "|0\n");
+      }
+    }
+  }
+
+  @Benchmark
+  public Path firstCapture() throws Exception {
+    String url = server.baseUrl();
+    EventReporter events = new EventReporter(url, "bench", "127.0.0.1");
+    config = new ConfigService(url, "bench");
+    ws = new WebSocketClient(url, "bench");
+    PersistentFileQueue queue = PersistentFileQueue.open(dir);
+    ScreenshotService capture =
+        new ScreenshotService(
+            config,
+            queue,
+            events,
+            new ScreenshotService.Options()
+                .frameSource(() -> ImageEncodeBenchmark.sampleFrame(1920, 1080))
+                .spoolDir(dir.resolve("spool")));
+    config.start();
+    CompletableFuture.runAsync(ws::start);
+    return capture.capture();
+  }
+
+  @TearDown
+  public void tearDown() throws Exception {
+    config.stop();
+    ws.stop();
+    server.close();
+    try (Stream<Path> paths = Files.walk(dir)) {
+      paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+    }
+  }
+}
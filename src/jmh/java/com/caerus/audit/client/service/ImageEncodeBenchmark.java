@@ -0,0 +1,68 @@
+package com.caerus.audit.client.service;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import javax.imageio.ImageIO;
+import org.openjdk.jmh.annotations.*;
+
+/** PNG encode of a fixed synthetic desktop frame, as done by ScreenshotService.capture. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 2, time = 3)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+public class ImageEncodeBenchmark {
+
+  @Param({"1280x720", "1920x1080", "3840x2160"})
+  public String resolution;
+
+  private BufferedImage frame;
+  private final ByteArrayOutputStream out = new ByteArrayOutputStream(8 * 1024 * 1024);
+
+  @Setup
+  public void setUp() {
+    String[] wh = resolution.split("x");
+    frame = sampleFrame(Integer.parseInt(wh[0]), Integer.parseInt(wh[1]));
+  }
+
+  @Benchmark
+  public int encodePng() throws IOException {
+    out.reset();
+    ImageIO.write(frame, "png", out);
+    return out.size();
+  }
+
+  /** Flat desktop, a few windows and lines of text: compresses like a typical office screen. */
+  public static BufferedImage sampleFrame(int w, int h) {
+    BufferedImage img = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+    Graphics2D g = img.createGraphics();
+    Random rnd = new Random(7);
+    g.setColor(new Color(0x1E5A8C));
+    g.fillRect(0, 0, w, h);
+    g.setFont(new Font(Font.SANS_SERIF, Font.PLAIN, 14));
+    for (int win = 0; win < 4; win++) {
+      int x = rnd.nextInt(w / 2), y = rnd.nextInt(h / 2);
+      int ww = w / 3 + rnd.nextInt(w / 4), wh = h / 3 + rnd.nextInt(h / 4);
+      g.setColor(Color.WHITE);
+      g.fillRect(x, y, ww, wh);
+      g.setColor(new Color(0xDDDDDD));
+      g.fillRect(x, y, ww, 28);
+      g.setColor(Color.DARK_GRAY);
+      for (int line = 48; line < wh; line += 18) {
+        g.drawString(
+            Long.toString(rnd.nextLong(), 36) + " " + Long.toString(rnd.nextLong(), 36),
+            x + 8,
+            y + line);
+      }
+    }
+    g.dispose();
+    return img;
+  }
+}
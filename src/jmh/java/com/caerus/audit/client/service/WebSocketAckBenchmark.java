@@ -0,0 +1,29 @@
+package com.caerus.audit.client.service;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/** Parse-and-dispatch cost of an upload ack arriving on the WebSocket. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WebSocketAckBenchmark {
+  private static final String ACK =
+      "{\"type\":\"UPLOAD_SUCCESS\",\"uploadId\":\"20240501_101500123.png\",\"success\":true}";
+
+  private WebSocketClient client;
+
+  @Setup
+  public void setUp() {
+    client = new WebSocketClient("http://127.0.0.1:1", "bench");
+  }
+
+  @Benchmark
+  public Boolean handleAck() {
+    client.handleMessage(ACK);
+    return client.pollAck("20240501_101500123.png");
+  }
+}
@@ -0,0 +1,116 @@
+package com.caerus.audit.client.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.HttpEntity;
+import org.apache.hc.core5.http.io.entity.ByteArrayEntity;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * CPU-versus-bytes tradeoff of deflate request bodies per level. Time per op is the CPU cost;
+ * {@code outBytes} divided by {@code ops} is the compressed size.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BodyCompressionBenchmark {
+
+  @Param({"event-batch-json", "delta-tile-raw", "random"})
+  public String payload;
+
+  @Param({"1", "3", "6", "9"})
+  public int level;
+
+  private BodyCompression compression;
+  private HttpEntity entity;
+
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  @State(Scope.Thread)
+  public static class Bytes {
+    public long outBytes;
+    public long ops;
+  }
+
+  @Setup
+  public void setUp() {
+    byte[] body =
+        switch (payload) {
+          case "event-batch-json" -> eventBatch(2000);
+          case "delta-tile-raw" -> deltaTile(256, 256);
+          default -> randomBytes(256 * 1024);
+        };
+    compression = new BodyCompression(true, level);
+    entity = compression.wrap(new ByteArrayEntity(body, ContentType.APPLICATION_OCTET_STREAM));
+  }
+
+  @TearDown
+  public void tearDown() {
+    compression.close();
+  }
+
+  @Benchmark
+  public void deflate(Bytes bytes) throws IOException {
+    CountingSink sink = new CountingSink();
+    entity.writeTo(sink);
+    bytes.outBytes += sink.count;
+    bytes.ops++;
+  }
+
+  private static byte[] eventBatch(int events) {
+    StringBuilder sb = new StringBuilder("[");
+    Random rnd = new Random(1);
+    for (int i = 0; i < events; i++) {
+      if (i > 0) sb.append(',');
+      sb.append("{\"eventTypeId\":")
+          .append(1 + rnd.nextInt(6))
+          .append(",\"eventDesc\":\"System idle for ")
+          .append(rnd.nextInt(600))
+          .append("s\",\"eventSource\":\"10.0.0.")
+          .append(rnd.nextInt(255))
+          .append("\",\"eventDTime\":\"2024-05-01T10:")
+          .append(10 + rnd.nextInt(50))
+          .append(":00Z\"}");
+    }
+    return sb.append(']').toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+  private static byte[] deltaTile(int w, int h) {
+    byte[] out = new byte[w * h * 4];
+    Random rnd = new Random(2);
+    for (int i = 0; i < out.length; i += 4) {
+      boolean changed = rnd.nextInt(20) == 0;
+      out[i] = (byte) (changed ? rnd.nextInt(256) : 0xF0);
+      out[i + 1] = (byte) (changed ? rnd.nextInt(256) : 0xF0);
+      out[i + 2] = (byte) (changed ? rnd.nextInt(256) : 0xF0);
+      out[i + 3] = (byte) 0xFF;
+    }
+    return out;
+  }
+
+  private static byte[] randomBytes(int n) {
+    byte[] out = new byte[n];
+    new Random(3).nextBytes(out);
+    return out;
+  }
+
+  private static final class CountingSink extends OutputStream {
+    long count;
+
+    @Override
+    public void write(int b) {
+      count++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+      count += len;
+    }
+  }
+}
@@ -0,0 +1,45 @@
+package com.caerus.audit.client.util;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.openjdk.jmh.annotations.*;
+
+/** Directory walk behind the storage-full check, run before every scheduled capture. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SpoolUsageBenchmark {
+
+  @Param({"100", "1000", "10000"})
+  public int files;
+
+  private Path dir;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    dir = Files.createTempDirectory("spool-bench");
+    byte[] body = new byte[512];
+    for (int i = 0; i < files; i++) {
+      Files.write(dir.resolve("frame-" + i + ".png"), body);
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    try (Stream<Path> paths = Files.walk(dir)) {
+      paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+    }
+  }
+
+  @Benchmark
+  public long usedBytes() throws IOException {
+    return SpoolUsage.usedBytes(dir);
+  }
+}
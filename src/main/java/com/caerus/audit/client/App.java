@@ -1,13 +1,44 @@
 package com.caerus.audit.client;
 
 import com.caerus.audit.client.config.ClientConfig;
+import com.caerus.audit.client.frame.FrameEncoder;
+import com.caerus.audit.client.frame.FrameStore;
+import com.caerus.audit.client.frame.ParallelPngEncoder;
+import com.caerus.audit.client.frame.SpoolCipher;
+import com.caerus.audit.client.metrics.ClientMetrics;
+import com.caerus.audit.client.metrics.DiagJournal;
+import com.caerus.audit.client.metrics.FlightRecording;
+import com.caerus.audit.client.metrics.MetricsEndpoint;
+import com.caerus.audit.client.metrics.MetricsPusher;
+import com.caerus.audit.client.queue.DeadLetterStore;
 import com.caerus.audit.client.queue.PersistentFileQueue;
+import com.caerus.audit.client.queue.PreviewQueue;
+import com.caerus.audit.client.queue.RetryPolicy;
 import com.caerus.audit.client.service.*;
+import com.caerus.audit.client.session.SessionDiscovery;
+import com.caerus.audit.client.session.SessionHost;
+import com.caerus.audit.client.session.WtsSessionDiscovery;
+import com.caerus.audit.client.transport.HttpUploadTransport;
+import com.caerus.audit.client.transport.UploadTransport;
+import com.caerus.audit.client.transport.WebSocketUploadTransport;
 import com.caerus.audit.client.util.AdminCheckUtil;
+import com.caerus.audit.client.util.BandwidthLimiter;
+import com.caerus.audit.client.util.BandwidthSchedule;
+import com.caerus.audit.client.util.BodyCompression;
+import com.caerus.audit.client.util.EndpointSelector;
 import com.caerus.audit.client.util.HttpUtil;
+import com.caerus.audit.client.util.SpoolSync;
+import com.caerus.audit.client.util.SpoolUsage;
+import com.sun.jna.Platform;
+import java.io.IOException;
 import java.net.InetAddress;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -15,49 +46,295 @@ public class App {
   private static final Logger log = LoggerFactory.getLogger(App.class);
 
   public static void main(String[] args) {
+    if (args.length > 0 && CdsTraining.ARG.equals(args[0])) {
+      CdsTraining.run();
+      System.exit(0);
+    }
     Thread.setDefaultUncaughtExceptionHandler(
         (t, e) ->
             log.error("Unhandled exception in thread {}: {}", t.getName(), e.getMessage(), e));
 
     try {
-      if (AdminCheckUtil.isCurrentUserAdmin()) {
+      boolean multiSession =
+          "multi-session".equalsIgnoreCase(ClientConfig.optional("client.mode", "single"));
+      // A session host runs under a service account, so the admin exemption only applies per user.
+      if (!multiSession && AdminCheckUtil.isCurrentUserAdmin()) {
         log.info("Admin detected — skipping monitoring.");
         return;
       }
 
       String serverBaseUrl = ClientConfig.required("server.baseUrl");
-      String clientId = ClientConfig.optional(
-              "client.id", InetAddress.getLocalHost().getHostAddress()
-      );
+      String clientId =
+          ClientConfig.optional("client.id", InetAddress.getLocalHost().getHostAddress());
       String ipAddress = InetAddress.getLocalHost().getHostAddress();
 
-      Path queueDir = Paths.get(ClientConfig.optional(
-              "queue.baseDir", System.getProperty("java.io.tmpdir") + "/auditclient"
-      ));
+      Path queueDir =
+          Paths.get(
+              ClientConfig.optional(
+                  "queue.baseDir", System.getProperty("java.io.tmpdir") + "/auditclient"));
 
       log.info("Starting Audit Client [clientId={}, server={}]", clientId, serverBaseUrl);
 
-      EventReporter eventReporter = new EventReporter(serverBaseUrl, clientId, ipAddress);
-      ConfigService configService = new ConfigService(serverBaseUrl, clientId);
-      WebSocketClient wsClient = new WebSocketClient(serverBaseUrl, clientId);
+      int journalKB = ClientConfig.optionalInt("journal.sizeKB", 4096);
+      if (journalKB > 0) {
+        // Never closed: the mapped pages reach the file even if the process dies.
+        DiagJournal.install(
+            DiagJournal.open(
+                Paths.get(
+                    ClientConfig.optional(
+                        "journal.file", queueDir.resolve("diag.journal").toString())),
+                journalKB * 1024L));
+      }
+      if (Boolean.parseBoolean(ClientConfig.optional("jfr.continuous", "false"))) {
+        FlightRecording.start(
+            Paths.get(
+                ClientConfig.optional("jfr.file", queueDir.resolve("audit-client.jfr").toString())),
+            ClientConfig.optionalInt("jfr.maxSizeMB", 64) * 1024L * 1024,
+            Duration.ofMinutes(ClientConfig.optionalInt("jfr.maxAgeMin", 60)));
+      }
+
+      EndpointSelector endpoints =
+          EndpointSelector.parse(
+              serverBaseUrl,
+              ClientConfig.optional("server.probePath", "/api/v1/settings/latest"),
+              Duration.ofSeconds(ClientConfig.optionalInt("server.probeIntervalSec", 30)));
+      endpoints.start();
+      BodyCompression compression =
+          new BodyCompression(
+              BodyCompression.DEFLATE.equalsIgnoreCase(
+                  ClientConfig.optional("upload.compression", "none")),
+              ClientConfig.optionalInt("upload.compression.level", 1));
+      EventReporter eventReporter = new EventReporter(endpoints, clientId, ipAddress, compression);
+      ConfigService configService =
+          new ConfigService(
+              endpoints,
+              clientId,
+              new SettingsCache(
+                  Paths.get(
+                      ClientConfig.optional(
+                          "settings.cacheFile",
+                          queueDir.resolve("settings-cache.json").toString())),
+                  serverBaseUrl,
+                  Duration.ofHours(ClientConfig.optionalInt("settings.cache.maxAgeHours", 72))));
+      WebSocketClient wsClient =
+          new WebSocketClient(
+              endpoints,
+              clientId,
+              Duration.ofSeconds(ClientConfig.optionalInt("server.reconnectMinSec", 1)),
+              Duration.ofSeconds(ClientConfig.optionalInt("server.reconnectMaxSec", 60)));
+      wsClient.onMessage("SETTINGS_UPDATE", configService::onPush);
+      ClientMetrics.REGISTRY.gauge("audit_settings_age_seconds", configService::settingsAgeSeconds);
+
+      Duration maxLaneWait =
+          Duration.ofSeconds(ClientConfig.optionalInt("queue.maxLaneWaitSec", 300));
+      RetryPolicy retryPolicy =
+          new RetryPolicy(
+              ClientConfig.optionalInt("upload.maxRetries", 8),
+              Duration.ofSeconds(ClientConfig.optionalInt("upload.retryBaseSec", 5)),
+              Duration.ofSeconds(ClientConfig.optionalInt("upload.retryMaxSec", 600)));
+      int uploadWorkers =
+          multiSession
+              ? ClientConfig.optionalInt(
+                  "sessions.uploadWorkers", Runtime.getRuntime().availableProcessors())
+              : 1;
+
+      BandwidthLimiter limiter =
+          new BandwidthLimiter(
+              ClientConfig.optionalInt("upload.bandwidth.kbps", 0) * 1024L / 8,
+              BandwidthSchedule.parse(ClientConfig.optional("upload.bandwidth.schedule", "")),
+              Boolean.parseBoolean(ClientConfig.optional("upload.bandwidth.adaptive", "true")));
+      configService.addListener(limiter::apply);
+      SpoolSync spoolSync =
+          SpoolSync.create(
+              SpoolSync.Mode.valueOf(
+                  ClientConfig.optional("capture.fsync", "batch").toUpperCase(Locale.ROOT)),
+              ClientConfig.optionalInt("capture.fsync.batchFiles", 16),
+              Duration.ofMillis(ClientConfig.optionalInt("capture.fsync.maxDelayMs", 2000)));
+      Path spoolKey =
+          Paths.get(
+              ClientConfig.optional("spool.keyFile", queueDir.resolve("spool.key").toString()));
+      int cipherChunk = ClientConfig.optionalInt("spool.encrypt.chunkKB", 64) * 1024;
+      SpoolCipher spoolCipher = null;
+      if (Boolean.parseBoolean(ClientConfig.optional("spool.encrypt", "true"))) {
+        spoolCipher = SpoolCipher.forInstall(spoolKey, cipherChunk, queueDir);
+      } else if (Files.exists(spoolKey)) {
+        // Frames encrypted before the switch must still be readable.
+        spoolCipher = SpoolCipher.readOnly(spoolKey, cipherChunk);
+      }
+      FrameStore frameStore =
+          new FrameStore(
+              ClientConfig.optionalInt("capture.frameStore.budgetMB", 32) * 1024L * 1024,
+              ClientConfig.optionalInt("capture.frameStore.slabKB", 256) * 1024,
+              spoolSync,
+              spoolCipher);
+      ClientMetrics.REGISTRY.gauge("audit_frame_store_budget_bytes", frameStore::budgetBytes);
+      ClientMetrics.REGISTRY.gauge("audit_frame_store_used_bytes", frameStore::usedBytes);
+      ClientMetrics.REGISTRY.gauge("audit_frame_store_frames", frameStore::residentFrames);
+      FrameEncoder encoder = createEncoder();
+      boolean previewsEnabled =
+          !multiSession && Boolean.parseBoolean(ClientConfig.optional("capture.preview", "true"));
+      boolean onDemandEnabled =
+          !multiSession && Boolean.parseBoolean(ClientConfig.optional("capture.onDemand", "true"));
+      UploadTransport transport =
+          createTransport(
+              endpoints,
+              clientId,
+              wsClient,
+              limiter,
+              compression,
+              frameStore,
+              // Previews and, single-session, on-demand captures upload on connections of their
+              // own.
+              uploadWorkers + (previewsEnabled ? 1 : 0) + (onDemandEnabled ? 1 : 0));
+      HealthMonitor healthMonitor = new HealthMonitor(wsClient);
+
+      MetricsEndpoint metricsEndpoint = null;
+      int metricsPort = ClientConfig.optionalInt("metrics.port", 0);
+      if (metricsPort > 0) {
+        metricsEndpoint = new MetricsEndpoint(ClientMetrics.REGISTRY, metricsPort);
+        metricsEndpoint.start();
+      }
+      MetricsPusher metricsPusher = null;
+      int pushIntervalSec = ClientConfig.optionalInt("metrics.pushIntervalSec", 0);
+      if (pushIntervalSec > 0) {
+        metricsPusher =
+            new MetricsPusher(
+                ClientMetrics.REGISTRY,
+                endpoints,
+                clientId,
+                Duration.ofSeconds(pushIntervalSec),
+                compression);
+        metricsPusher.start();
+      }
+      final MetricsEndpoint endpointToStop = metricsEndpoint;
+      final MetricsPusher pusherToStop = metricsPusher;
+
+      if (multiSession) {
+        SessionHost host =
+            new SessionHost(
+                configService,
+                eventReporter,
+                wsClient,
+                new UploadService(
+                    wsClient,
+                    transport,
+                    eventReporter,
+                    new UploadService.Options().frameStore(frameStore)),
+                createSessionDiscovery(),
+                id ->
+                    new DropFolderFrameSource(
+                        Paths.get(
+                                ClientConfig.optional(
+                                    "sessions.dropDir", queueDir.resolve("drop").toString()))
+                            .resolve(id)),
+                frameStore,
+                encoder,
+                queueDir,
+                maxLaneWait,
+                retryPolicy,
+                uploadWorkers,
+                ClientConfig.optionalInt("sessions.maxSpoolMB", 1024) * 1024L * 1024);
+        ClientMetrics.REGISTRY.gauge("audit_sessions", host::sessionCount);
+        ClientMetrics.REGISTRY.gauge("audit_queue_depth", host::queueDepth);
+        log.info("Multi-session mode: one process serving all sessions on this host");
+
+        configService.start();
+        CompletableFuture.runAsync(wsClient::start);
+        healthMonitor.start();
+        host.start();
+
+        Runtime.getRuntime()
+            .addShutdownHook(
+                new Thread(
+                    () -> {
+                      log.info("Shutting down session host...");
+                      host.stop();
+                      spoolSync.close();
+                      healthMonitor.stop();
+                      wsClient.stop();
+                      configService.stop();
+                      endpoints.stop();
+                      if (endpointToStop != null) endpointToStop.stop();
+                      if (pusherToStop != null) pusherToStop.stop();
+                    }));
+        return;
+      }
 
-      PersistentFileQueue queue = new PersistentFileQueue(queueDir);
+      DeadLetterStore.Quota deadLetterQuota =
+          new DeadLetterStore.Quota(
+              ClientConfig.optionalInt("queue.deadLetter.maxMB", 256) * 1024L * 1024,
+              Duration.ofDays(ClientConfig.optionalInt("queue.deadLetter.maxAgeDays", 30)));
+      PersistentFileQueue queue =
+          PersistentFileQueue.open(queueDir, maxLaneWait, retryPolicy, spoolSync, deadLetterQuota);
+      if (Boolean.parseBoolean(ClientConfig.optional("queue.deadLetter.replayOnStart", "false"))) {
+        queue.deadLetters().replay(queue);
+      }
+      registerGauges(queue, queueDir);
+      PreviewQueue previews = null;
+      if (previewsEnabled) {
+        previews =
+            new PreviewQueue(
+                queueDir.resolve("preview"),
+                frameStore,
+                ClientConfig.optionalInt("capture.preview.maxWidth", 480),
+                ClientConfig.optionalInt("capture.preview.quality", 60) / 100f,
+                ClientConfig.optionalInt("capture.preview.maxPending", 4));
+        ClientMetrics.REGISTRY.gauge("audit_preview_queue_depth", previews::size);
+      }
 
-      HttpUtil httpUtil = new HttpUtil(serverBaseUrl, clientId);
       ScreenshotService screenshotService =
-          new ScreenshotService(configService, queue, eventReporter);
-      UploadService uploadService = new UploadService(queue, wsClient, httpUtil, eventReporter);
+          new ScreenshotService(
+              configService,
+              queue,
+              eventReporter,
+              new ScreenshotService.Options()
+                  .frameStore(frameStore)
+                  .encoder(encoder)
+                  .metadata(createMetadata())
+                  .previews(previews));
+      UploadService uploadService =
+          new UploadService(
+              wsClient,
+              transport,
+              eventReporter,
+              new UploadService.Options().queue(queue).previews(previews).frameStore(frameStore));
+      OnDemandCapture onDemand =
+          onDemandEnabled
+              ? new OnDemandCapture(screenshotService, queue, transport, wsClient, frameStore)
+              : null;
       IdleMonitor idleMonitor = new IdleMonitor(configService, screenshotService, eventReporter);
-      HealthMonitor healthMonitor = new HealthMonitor(wsClient);
       WorkstationStateMonitor workstationMonitor = new WorkstationStateMonitor(screenshotService);
+      configService.addListener(settings -> screenshotService.onSettingsChanged());
+      Watchdog watchdog = null;
+      if (Boolean.parseBoolean(ClientConfig.optional("watchdog.enabled", "true"))) {
+        watchdog =
+            new Watchdog(
+                eventReporter,
+                Paths.get(
+                    ClientConfig.optional(
+                        "watchdog.dumpDir", queueDir.resolve("diagnostics").toString())),
+                Duration.ofSeconds(5));
+        uploadService.watchedBy(
+            watchdog, Duration.ofSeconds(ClientConfig.optionalInt("watchdog.uploadStallSec", 600)));
+        screenshotService.watchedBy(
+            watchdog,
+            Duration.ofSeconds(ClientConfig.optionalInt("watchdog.captureStallSec", 300)));
+        idleMonitor.watchedBy(
+            watchdog, Duration.ofSeconds(ClientConfig.optionalInt("watchdog.idleStallSec", 60)));
+      }
+      final Watchdog watchdogToStop = watchdog;
 
+      // Nothing here waits on the network: settings arrive in the background (capture picks up the
+      // interval when they do) and the upload loop waits for the socket, so capture starts at once.
       configService.start();
-      wsClient.start();
+      if (onDemand != null) onDemand.start();
+      CompletableFuture.runAsync(wsClient::start);
       screenshotService.start();
+      CompletableFuture.runAsync(screenshotService::recoverSpool);
       idleMonitor.start();
       healthMonitor.start();
       workstationMonitor.start();
-      uploadService.start();
+      if (watchdog != null) watchdog.start();
 
       Runtime.getRuntime()
           .addShutdownHook(
@@ -65,20 +342,131 @@ public class App {
                   () -> {
                     log.info("Shutting down client...");
                     try {
+                      if (watchdogToStop != null) watchdogToStop.stop();
                       healthMonitor.stop();
                       idleMonitor.stop();
+                      if (onDemand != null) onDemand.stop();
                       screenshotService.stop();
+                      spoolSync.close();
                       wsClient.stop();
                       configService.stop();
+                      endpoints.stop();
                       workstationMonitor.stop();
+                      if (endpointToStop != null) endpointToStop.stop();
+                      if (pusherToStop != null) pusherToStop.stop();
                       log.info("Shutdown complete.");
                     } catch (Exception e) {
                       log.error("Error during shutdown: {}", e.getMessage(), e);
                     }
                   }));
+
+      // Blocks for the life of the process, so the hook must be registered before.
+      uploadService.start();
     } catch (Exception e) {
       log.error("Fatal startup error in Audit Client: {}", e.getMessage(), e);
       System.exit(1);
     }
   }
+
+  private static void registerGauges(PersistentFileQueue queue, Path queueDir) {
+    ClientMetrics.REGISTRY.gauge("audit_queue_depth", queue::size);
+    ClientMetrics.REGISTRY.gauge(
+        "audit_queue_oldest_age_seconds",
+        () -> {
+          long oldest = queue.oldestEnqueuedAt();
+          return oldest == 0 ? 0 : (System.currentTimeMillis() - oldest) / 1000.0;
+        });
+    ClientMetrics.REGISTRY.gauge(
+        "audit_spool_bytes",
+        () -> {
+          try {
+            return SpoolUsage.usedBytes(queueDir);
+          } catch (IOException e) {
+            return Double.NaN;
+          }
+        });
+    ClientMetrics.REGISTRY.gauge(
+        "audit_dead_letter_bytes",
+        () -> {
+          try {
+            return queue.deadLetters().usedBytes();
+          } catch (IOException e) {
+            return Double.NaN;
+          }
+        });
+  }
+
+  private static CachedMetadata createMetadata() {
+    if (!Platform.isWindows()
+        || !Boolean.parseBoolean(ClientConfig.optional("capture.metadata", "true"))) {
+      return CachedMetadata.none();
+    }
+    return CachedMetadata.create(
+        new WindowsMetadataProvider(),
+        Duration.ofSeconds(ClientConfig.optionalInt("capture.metadata.maxAgeSec", 30)));
+  }
+
+  private static FrameEncoder createEncoder() {
+    String mode = ClientConfig.optional("capture.encoder", "auto");
+    if ("auto".equalsIgnoreCase(mode)) {
+      // On one core the striped encoder only adds overhead.
+      mode = Runtime.getRuntime().availableProcessors() > 1 ? "parallel" : "imageio";
+    }
+    switch (mode.toLowerCase()) {
+      case "parallel":
+        ParallelPngEncoder encoder =
+            new ParallelPngEncoder(
+                ClientConfig.optionalInt("capture.encoder.threads", 0),
+                ClientConfig.optionalInt("capture.encoder.level", 4));
+        log.info("Frame encoder: parallel PNG ({} threads)", encoder.parallelism());
+        return encoder;
+      case "imageio":
+        log.info("Frame encoder: ImageIO PNG");
+        return FrameEncoder.imageIo();
+      default:
+        throw new IllegalStateException("Unknown capture.encoder: " + mode);
+    }
+  }
+
+  private static SessionDiscovery createSessionDiscovery() {
+    String ids = ClientConfig.optional("sessions.ids", "");
+    if (ids.isBlank()) return new WtsSessionDiscovery();
+    return SessionDiscovery.fixed(Arrays.asList(ids.trim().split("\\s*,\\s*")));
+  }
+
+  private static UploadTransport createTransport(
+      EndpointSelector endpoints,
+      String clientId,
+      WebSocketClient wsClient,
+      BandwidthLimiter limiter,
+      BodyCompression compression,
+      FrameStore frameStore,
+      int maxConnections) {
+    String mode = ClientConfig.optional("upload.transport", "http");
+    switch (mode.toLowerCase()) {
+      case "ws":
+        log.info("Upload transport: WebSocket binary frames");
+        return new WebSocketUploadTransport(
+            wsClient,
+            ClientConfig.optionalInt("upload.ws.chunkSize", 64 * 1024),
+            ClientConfig.optionalInt("upload.ws.window", 8),
+            Duration.ofSeconds(ClientConfig.optionalInt("upload.ws.creditTimeoutSec", 30)),
+            limiter,
+            frameStore);
+      case "http":
+        log.info("Upload transport: HTTP multipart");
+        return new HttpUploadTransport(
+            new HttpUtil(
+                endpoints,
+                clientId,
+                new HttpUtil.Options()
+                    .compression(compression)
+                    .limiter(limiter)
+                    .maxConnections(maxConnections)),
+            wsClient,
+            frameStore);
+      default:
+        throw new IllegalStateException("Unknown upload.transport: " + mode);
+    }
+  }
 }
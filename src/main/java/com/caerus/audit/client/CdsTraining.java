@@ -0,0 +1,69 @@
+package com.caerus.audit.client;
+
+import com.caerus.audit.client.model.ServerAppSettingsDto;
+import com.caerus.audit.client.queue.PersistentFileQueue;
+import com.caerus.audit.client.service.ConfigService;
+import com.caerus.audit.client.service.EventReporter;
+import com.caerus.audit.client.service.ScreenshotService;
+import com.caerus.audit.client.service.WebSocketClient;
+import com.caerus.audit.client.transport.HttpUploadTransport;
+import com.caerus.audit.client.util.EndpointSelector;
+import com.caerus.audit.client.util.HttpUtil;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.awt.image.BufferedImage;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Walks the startup, capture and upload path once, against an unreachable server and with a
+ * synthetic frame, so a run under {@code -XX:ArchiveClassesAtExit} records the classes the client
+ * loads into a CDS archive (see the {@code cds} Maven profile). Needs no configuration file.
+ */
+final class CdsTraining {
+  private static final Logger log = LoggerFactory.getLogger(CdsTraining.class);
+  static final String ARG = "--cds-training";
+  private static final String SERVER = "http://127.0.0.1:9";
+
+  private CdsTraining() {}
+
+  static void run() {
+    try {
+      Path dir = Files.createTempDirectory("audit-cds");
+      try {
+        EventReporter events = new EventReporter(SERVER, "cds", "127.0.0.1");
+        ConfigService config = new ConfigService(SERVER, "cds");
+        WebSocketClient ws = new WebSocketClient(SERVER, "cds");
+        PersistentFileQueue queue = PersistentFileQueue.open(dir);
+        ScreenshotService capture =
+            new ScreenshotService(
+                config,
+                queue,
+                events,
+                new ScreenshotService.Options()
+                    .frameSource(() -> new BufferedImage(640, 360, BufferedImage.TYPE_INT_RGB))
+                    .spoolDir(dir));
+
+        Path frame = capture.capture();
+        try (HttpUtil http =
+            new HttpUtil(EndpointSelector.single(SERVER), "cds", new HttpUtil.Options())) {
+          new HttpUploadTransport(http, ws).upload(frame, "cds");
+        }
+        ws.start();
+        queue.next();
+        queue.markComplete(frame);
+        new ObjectMapper().readValue("{}", ServerAppSettingsDto.class);
+      } finally {
+        try (Stream<Path> paths = Files.walk(dir)) {
+          paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+      }
+      log.info("CDS training run complete");
+    } catch (Exception e) {
+      log.error("CDS training run failed: {}", e.getMessage(), e);
+    }
+  }
+}
@@ -0,0 +1,18 @@
+package com.caerus.audit.client.enums;
+
+/** Upload lane of a queued file; the weight is its share of drain slots under contention. */
+public enum UploadPriority {
+  CRITICAL(8),
+  HIGH(4),
+  NORMAL(1);
+
+  private final int weight;
+
+  UploadPriority(int weight) {
+    this.weight = weight;
+  }
+
+  public int getWeight() {
+    return weight;
+  }
+}
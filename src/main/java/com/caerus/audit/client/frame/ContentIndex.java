@@ -0,0 +1,86 @@
+package com.caerus.audit.client.frame;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Recently spooled frames by pixel content, so identical captures (locked screens, screensavers,
+ * static dashboards) are linked to the file already in the spool instead of being encoded and
+ * stored again. Each entry carries the content hash of the encoded file, which the upload uses to
+ * send a reference when the server already holds the blob.
+ */
+public class ContentIndex {
+  public record Entry(Path file, String contentHash) {}
+
+  private final Map<String, Entry> recent;
+
+  public ContentIndex(int capacity) {
+    this.recent =
+        new LinkedHashMap<>(16, 0.75f, true) {
+          @Override
+          protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            return size() > capacity;
+          }
+        };
+  }
+
+  /** The spooled file with these pixels, or null if none is known or it has been uploaded. */
+  public synchronized Entry lookup(String pixelHash) {
+    Entry entry = recent.get(pixelHash);
+    if (entry != null && !Files.exists(entry.file())) {
+      recent.remove(pixelHash);
+      return null;
+    }
+    return entry;
+  }
+
+  public synchronized void put(String pixelHash, Path file, String contentHash) {
+    recent.put(pixelHash, new Entry(file, contentHash));
+  }
+
+  /** SHA-256 over the image size and pixels, before any encoding. */
+  public static String pixelHash(BufferedImage img) {
+    MessageDigest md = sha256();
+    int w = img.getWidth();
+    int h = img.getHeight();
+    md.update(ByteBuffer.allocate(8).putInt(w).putInt(h).array());
+    ByteBuffer buf = ByteBuffer.allocate(w * 4);
+    IntBuffer ints = buf.asIntBuffer();
+    if (img.getRaster().getDataBuffer() instanceof DataBufferInt data
+        && data.getNumBanks() == 1
+        && data.getSize() == w * h) {
+      int[] pixels = data.getData();
+      for (int y = 0; y < h; y++) {
+        ints.clear();
+        ints.put(pixels, y * w, w);
+        md.update(buf.array(), 0, w * 4);
+      }
+    } else {
+      int[] row = new int[w];
+      for (int y = 0; y < h; y++) {
+        img.getRGB(0, y, w, 1, row, 0, w);
+        ints.clear();
+        ints.put(row);
+        md.update(buf.array(), 0, w * 4);
+      }
+    }
+    return HexFormat.of().formatHex(md.digest());
+  }
+
+  public static MessageDigest sha256() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
@@ -0,0 +1,11 @@
+package com.caerus.audit.client.frame;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/** The plaintext of one spooled frame, whether resident in memory or read from its file. */
+public interface FrameContent {
+  long length() throws IOException;
+
+  void writeTo(OutputStream out) throws IOException;
+}
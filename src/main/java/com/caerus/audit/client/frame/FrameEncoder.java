@@ -0,0 +1,22 @@
+package com.caerus.audit.client.frame;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.OutputStream;
+import javax.imageio.ImageIO;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+
+/** Encodes a captured frame as PNG. Selected with {@code capture.encoder}. */
+public interface FrameEncoder {
+  void encode(BufferedImage img, OutputStream out) throws IOException;
+
+  /** The JDK's single-threaded PNG writer. */
+  static FrameEncoder imageIo() {
+    return (img, out) -> {
+      try (ImageOutputStream ios = new MemoryCacheImageOutputStream(out)) {
+        ImageIO.write(img, "png", ios);
+      }
+    };
+  }
+}
@@ -0,0 +1,382 @@
+package com.caerus.audit.client.frame;
+
+import com.caerus.audit.client.metrics.ClientMetrics;
+import com.caerus.audit.client.util.SpoolSync;
+import java.io.BufferedOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Off-heap home for freshly encoded frames between capture and upload, so bursts do not have to be
+ * absorbed by the Java heap. Memory comes in fixed-size direct slabs, allocated lazily up to a hard
+ * budget and recycled through a free list rather than returned to the OS.
+ *
+ * <p>Every frame is still written to its spool file, which stays the durable copy; the store only
+ * saves the upload from reading it back. A frame that does not fit in the remaining budget spills
+ * to the file as it is being written, so running out of budget never fails a capture.
+ *
+ * <p>Spool files are written under a {@value #PARTIAL_SUFFIX} name and renamed into place on close,
+ * so a crash never leaves a truncated frame under its final name. With a {@link SpoolCipher} the
+ * files are encrypted as they are written, while resident copies stay plaintext; every read of a
+ * spool file should go through {@link #open} or {@link #content}.
+ *
+ * <p>A frame may have a small metadata sidecar ({@value #METADATA_SUFFIX}) next to it, written and
+ * sealed the same way.
+ */
+public class FrameStore {
+  public static final String PARTIAL_SUFFIX = ".part";
+  public static final String METADATA_SUFFIX = ".meta";
+
+  private static final byte[] PNG_SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n'};
+  // Zero length, "IEND", CRC: the last 12 bytes of every complete PNG.
+  private static final byte[] PNG_TRAILER = {
+    0, 0, 0, 0, 'I', 'E', 'N', 'D', (byte) 0xae, 0x42, 0x60, (byte) 0x82
+  };
+
+  private final int slabSize;
+  private final int maxSlabs;
+  private final ArrayDeque<ByteBuffer> freeSlabs = new ArrayDeque<>();
+  private final Map<Path, StoredFrame> resident = new ConcurrentHashMap<>();
+  private final SpoolSync spoolSync;
+  private final SpoolCipher cipher; // null: files are plaintext
+  private int allocatedSlabs; // guarded by freeSlabs
+  private int usedSlabs; // guarded by freeSlabs
+
+  public FrameStore(long budgetBytes, int slabSize) {
+    this(budgetBytes, slabSize, SpoolSync.none());
+  }
+
+  /** {@code spoolSync} is told about every spool file once it is in place. */
+  public FrameStore(long budgetBytes, int slabSize, SpoolSync spoolSync) {
+    this(budgetBytes, slabSize, spoolSync, null);
+  }
+
+  /** As above, encrypting spool files with {@code cipher} unless it is null. */
+  public FrameStore(long budgetBytes, int slabSize, SpoolSync spoolSync, SpoolCipher cipher) {
+    this.slabSize = slabSize;
+    this.maxSlabs = (int) Math.min(Integer.MAX_VALUE, budgetBytes / slabSize);
+    this.spoolSync = spoolSync;
+    this.cipher = cipher;
+  }
+
+  /** A store with no budget: every frame goes straight to its file. */
+  public static FrameStore disabled() {
+    return disabled(SpoolSync.none());
+  }
+
+  public static FrameStore disabled(SpoolSync spoolSync) {
+    return new FrameStore(0, 64 * 1024, spoolSync);
+  }
+
+  /** Where spool writes are reported for fsync; shared with the queues of the same spool. */
+  public SpoolSync spoolSync() {
+    return spoolSync;
+  }
+
+  public long budgetBytes() {
+    return (long) maxSlabs * slabSize;
+  }
+
+  public long usedBytes() {
+    synchronized (freeSlabs) {
+      return (long) usedSlabs * slabSize;
+    }
+  }
+
+  public int residentFrames() {
+    return resident.size();
+  }
+
+  /**
+   * Opens a stream that encodes a frame destined for {@code file}. On close the frame is on disk
+   * under its final name and, if it fit in the budget, resident until {@link #release(Path)}.
+   */
+  public OutputStream openOutput(Path file) throws IOException {
+    if (maxSlabs == 0) {
+      Path partial = partialOf(file);
+      return new FilterOutputStream(
+          sealed(new BufferedOutputStream(Files.newOutputStream(partial), 64 * 1024))) {
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+          out.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+          super.close();
+          commit(partial, file);
+        }
+      };
+    }
+    return new FrameOutput(file);
+  }
+
+  private OutputStream sealed(OutputStream fileOut) throws IOException {
+    return cipher != null ? cipher.encrypt(fileOut) : fileOut;
+  }
+
+  /**
+   * Spools {@code file} with the same content as {@code existing}: a hard link, or a copy where
+   * links are unsupported.
+   */
+  public void link(Path file, Path existing) throws IOException {
+    try {
+      Files.createLink(file, existing);
+      spoolSync.written(file);
+    } catch (UnsupportedOperationException e) {
+      Path partial = partialOf(file);
+      Files.copy(existing, partial, StandardCopyOption.REPLACE_EXISTING);
+      commit(partial, file);
+    }
+  }
+
+  /** Writes the metadata sidecar of {@code file}, replacing any earlier one. */
+  public void writeMetadata(Path file, byte[] metadata) throws IOException {
+    Path sidecar = metadataOf(file);
+    Path partial = partialOf(sidecar);
+    try (OutputStream out = sealed(Files.newOutputStream(partial))) {
+      out.write(metadata);
+    }
+    commit(partial, sidecar);
+  }
+
+  /** The metadata sidecar of {@code file}, or null if it has none. */
+  public byte[] readMetadata(Path file) throws IOException {
+    Path sidecar = metadataOf(file);
+    if (!Files.exists(sidecar)) return null;
+    InputStream in = Files.newInputStream(sidecar);
+    try (InputStream plain = cipher != null ? cipher.decrypt(sidecar, in) : in) {
+      return plain.readAllBytes();
+    }
+  }
+
+  /** Deletes {@code file} together with its metadata sidecar. */
+  public void delete(Path file) throws IOException {
+    Files.deleteIfExists(file);
+    Files.deleteIfExists(metadataOf(file));
+  }
+
+  public static Path metadataOf(Path file) {
+    return file.resolveSibling(file.getFileName() + METADATA_SUFFIX);
+  }
+
+  private static Path partialOf(Path file) {
+    return file.resolveSibling(file.getFileName() + PARTIAL_SUFFIX);
+  }
+
+  private void commit(Path partial, Path file) throws IOException {
+    Files.move(partial, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    spoolSync.written(file);
+  }
+
+  /** Takes a reference to the resident copy of {@code file}, or returns null if there is none. */
+  public StoredFrame acquire(Path file) {
+    StoredFrame frame = resident.get(file);
+    return frame != null && frame.retain() ? frame : null;
+  }
+
+  /** Opens {@code file}, from memory when resident. */
+  public InputStream open(Path file) throws IOException {
+    StoredFrame frame = acquire(file);
+    if (frame != null) return frame.newInputStream();
+    InputStream in = Files.newInputStream(file);
+    return cipher != null ? cipher.decrypt(file, in) : in;
+  }
+
+  /** The plaintext of {@code file} as read from disk, for callers that did not find it resident. */
+  public FrameContent content(Path file) {
+    return new FrameContent() {
+      @Override
+      public long length() throws IOException {
+        return cipher != null ? cipher.plaintextLength(file) : Files.size(file);
+      }
+
+      @Override
+      public void writeTo(OutputStream out) throws IOException {
+        try (InputStream in = open(file)) {
+          in.transferTo(out);
+        }
+      }
+    };
+  }
+
+  /** Whether {@code file} was written completely: an authentic final chunk, or a PNG trailer. */
+  public boolean isIntact(Path file) {
+    try {
+      Boolean complete = cipher != null ? cipher.isComplete(file) : null;
+      return complete != null ? complete : isCompletePng(file);
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  private static boolean isCompletePng(Path file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      long size = channel.size();
+      if (size < PNG_SIGNATURE.length + PNG_TRAILER.length) return false;
+      ByteBuffer head = ByteBuffer.allocate(PNG_SIGNATURE.length);
+      ByteBuffer tail = ByteBuffer.allocate(PNG_TRAILER.length);
+      while (head.hasRemaining() && channel.read(head, head.position()) > 0) {}
+      long pos = size - PNG_TRAILER.length;
+      while (tail.hasRemaining() && channel.read(tail, pos + tail.position()) > 0) {}
+      return Arrays.equals(head.array(), PNG_SIGNATURE) && Arrays.equals(tail.array(), PNG_TRAILER);
+    }
+  }
+
+  /** Drops the store's own reference; the slabs are freed once no reader holds the frame. */
+  public void release(Path file) {
+    StoredFrame frame = resident.remove(file);
+    if (frame != null) frame.release();
+  }
+
+  void free(StoredFrame frame) {
+    returnSlabs(frame.slabs());
+  }
+
+  private ByteBuffer allocateSlab() {
+    synchronized (freeSlabs) {
+      ByteBuffer slab = freeSlabs.poll();
+      if (slab == null) {
+        if (allocatedSlabs == maxSlabs) return null;
+        slab = ByteBuffer.allocateDirect(slabSize);
+        allocatedSlabs++;
+      }
+      usedSlabs++;
+      return slab;
+    }
+  }
+
+  private void returnSlabs(List<ByteBuffer> slabs) {
+    synchronized (freeSlabs) {
+      for (ByteBuffer slab : slabs) {
+        freeSlabs.push(slab.clear());
+        usedSlabs--;
+      }
+    }
+  }
+
+  /** Fills slabs while the budget lasts, then spills everything to the file. */
+  private final class FrameOutput extends OutputStream {
+    private final Path file;
+    private final Path partial;
+    private final List<ByteBuffer> slabs = new ArrayList<>();
+    private ByteBuffer current;
+    private long length;
+    private OutputStream spill;
+
+    FrameOutput(Path file) {
+      this.file = file;
+      this.partial = partialOf(file);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      write(new byte[] {(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      while (len > 0) {
+        if (spill != null) {
+          spill.write(b, off, len);
+          return;
+        }
+        if (current == null || !current.hasRemaining()) {
+          current = allocateSlab();
+          if (current == null) {
+            spillToFile();
+            continue;
+          }
+          slabs.add(current);
+        }
+        int n = Math.min(len, current.remaining());
+        current.put(b, off, n);
+        off += n;
+        len -= n;
+        length += n;
+      }
+    }
+
+    private void spillToFile() throws IOException {
+      ClientMetrics.FRAME_STORE_SPILLS.increment();
+      FileChannel channel =
+          FileChannel.open(
+              partial,
+              StandardOpenOption.CREATE,
+              StandardOpenOption.WRITE,
+              StandardOpenOption.TRUNCATE_EXISTING);
+      spill = sealed(new BufferedOutputStream(Channels.newOutputStream(channel), 64 * 1024));
+      writeSlabs(spill);
+      returnSlabs(slabs);
+      slabs.clear();
+      current = null;
+    }
+
+    private void writeSlabs(FileChannel channel) throws IOException {
+      for (ByteBuffer slab : slabs) {
+        ByteBuffer view = slab.duplicate().flip();
+        while (view.hasRemaining()) channel.write(view);
+      }
+    }
+
+    private void writeSlabs(OutputStream out) throws IOException {
+      byte[] chunk = new byte[16 * 1024];
+      for (ByteBuffer slab : slabs) {
+        ByteBuffer view = slab.duplicate().flip();
+        while (view.hasRemaining()) {
+          int n = Math.min(chunk.length, view.remaining());
+          view.get(chunk, 0, n);
+          out.write(chunk, 0, n);
+        }
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (spill != null) {
+        spill.close();
+        commit(partial, file);
+        return;
+      }
+      try {
+        try (FileChannel channel =
+            FileChannel.open(
+                partial,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+          if (cipher != null) {
+            try (OutputStream out =
+                cipher.encrypt(
+                    new BufferedOutputStream(Channels.newOutputStream(channel), 64 * 1024))) {
+              writeSlabs(out);
+            }
+          } else {
+            writeSlabs(channel);
+          }
+        }
+        // Closed first: Windows cannot rename a file that is still open.
+        commit(partial, file);
+      } catch (IOException e) {
+        returnSlabs(slabs);
+        throw e;
+      }
+      resident.put(file, new StoredFrame(FrameStore.this, file, List.copyOf(slabs), length));
+    }
+  }
+}
@@ -0,0 +1,349 @@
+package com.caerus.audit.client.frame;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * PNG encoder that filters and deflates horizontal stripes of the frame in parallel, the way pigz
+ * parallelises gzip. Each stripe is raw deflate primed with the last 32 KiB of the stripe above and
+ * ended with a sync flush, so the stripes concatenate into one ordinary zlib stream (the Adler-32
+ * is combined from the per-stripe sums). The output is a standard 8-bit RGB PNG that any decoder
+ * reads; alpha is dropped, as screen captures have none.
+ */
+public class ParallelPngEncoder implements FrameEncoder {
+  private static final byte[] SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n'};
+  private static final int STRIPE_BYTES = 512 * 1024;
+  private static final int WINDOW = 32 * 1024;
+  private static final int ADLER_BASE = 65521;
+
+  private final ForkJoinPool pool;
+  private final int level;
+
+  /**
+   * @param threads encoder threads; 0 for one per core.
+   * @param level deflate level, 1 (fastest) to 9.
+   */
+  public ParallelPngEncoder(int threads, int level) {
+    this.level = level;
+    this.pool =
+        new ForkJoinPool(
+            threads > 0 ? threads : Runtime.getRuntime().availableProcessors(),
+            p -> {
+              ForkJoinWorkerThread t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+              t.setName("PngEncoder-" + t.getPoolIndex());
+              return t;
+            },
+            null,
+            false);
+  }
+
+  public int parallelism() {
+    return pool.getParallelism();
+  }
+
+  @Override
+  public void encode(BufferedImage img, OutputStream out) throws IOException {
+    int w = img.getWidth();
+    int h = img.getHeight();
+    int rowBytes = 1 + 3 * w;
+    int rowsPerStripe = Math.max(1, STRIPE_BYTES / rowBytes);
+    Pixels pixels = Pixels.of(img);
+
+    List<ForkJoinTask<Stripe>> stripes = new ArrayList<>();
+    for (int y = 0; y < h; y += rowsPerStripe) {
+      int from = y;
+      int to = Math.min(h, y + rowsPerStripe);
+      stripes.add(pool.submit(() -> deflateStripe(pixels, w, from, to, to == h)));
+    }
+
+    out.write(SIGNATURE);
+    byte[] ihdr = new byte[13];
+    putInt(ihdr, 0, w);
+    putInt(ihdr, 4, h);
+    ihdr[8] = 8; // bit depth
+    ihdr[9] = 2; // truecolour
+    writeChunk(out, "IHDR", ihdr);
+
+    // Stripes are written in order as they finish, each as its own IDAT chunk.
+    long adler = 1;
+    for (int i = 0; i < stripes.size(); i++) {
+      Stripe stripe = join(stripes.get(i));
+      adler = adler32Combine(adler, stripe.adler, stripe.rawLength);
+      if (i == 0) {
+        writeChunk(out, "IDAT", zlibHeader(), stripe.deflated);
+      } else if (i == stripes.size() - 1) {
+        byte[] trailer = new byte[4];
+        putInt(trailer, 0, (int) adler);
+        writeChunk(out, "IDAT", stripe.deflated, trailer);
+      } else {
+        writeChunk(out, "IDAT", stripe.deflated);
+      }
+    }
+    if (stripes.size() == 1) {
+      byte[] trailer = new byte[4];
+      putInt(trailer, 0, (int) adler);
+      writeChunk(out, "IDAT", trailer);
+    }
+    writeChunk(out, "IEND");
+  }
+
+  /** Shuts the encoder threads down. */
+  public void close() {
+    pool.shutdown();
+  }
+
+  private Stripe deflateStripe(Pixels pixels, int w, int from, int to, boolean last) {
+    int rowBytes = 1 + 3 * w;
+    byte[] raw = new byte[(to - from) * rowBytes];
+    RowFilter filter = new RowFilter(w);
+    for (int y = from; y < to; y++) {
+      filter.filter(pixels, y, raw, (y - from) * rowBytes);
+    }
+    Adler32 adler = new Adler32();
+    adler.update(raw);
+
+    Deflater deflater = new Deflater(level, true);
+    try {
+      if (from > 0) deflater.setDictionary(dictionary(pixels, w, from, filter));
+      deflater.setInput(raw);
+      ByteArrayOutputStream deflated = new ByteArrayOutputStream(raw.length / 4 + 64);
+      byte[] buf = new byte[64 * 1024];
+      if (last) {
+        deflater.finish();
+        while (!deflater.finished()) {
+          deflated.write(buf, 0, deflater.deflate(buf));
+        }
+      } else {
+        int n;
+        do {
+          n = deflater.deflate(buf, 0, buf.length, Deflater.SYNC_FLUSH);
+          deflated.write(buf, 0, n);
+        } while (n == buf.length);
+      }
+      return new Stripe(deflated.toByteArray(), adler.getValue(), raw.length);
+    } finally {
+      deflater.end();
+    }
+  }
+
+  /** The last {@value #WINDOW} filtered bytes before row {@code from}, re-filtered locally. */
+  private static byte[] dictionary(Pixels pixels, int w, int from, RowFilter filter) {
+    int rowBytes = 1 + 3 * w;
+    int rows = Math.min(from, (WINDOW + rowBytes - 1) / rowBytes);
+    byte[] tail = new byte[rows * rowBytes];
+    for (int i = 0; i < rows; i++) {
+      filter.filter(pixels, from - rows + i, tail, i * rowBytes);
+    }
+    int len = Math.min(WINDOW, tail.length);
+    byte[] dict = new byte[len];
+    System.arraycopy(tail, tail.length - len, dict, 0, len);
+    return dict;
+  }
+
+  private byte[] zlibHeader() {
+    int cmf = 0x78; // deflate, 32 KiB window
+    int flevel = level <= 1 ? 0 : level <= 5 ? 1 : level == 6 ? 2 : 3;
+    int flg = flevel << 6;
+    flg += 31 - ((cmf << 8) + flg) % 31;
+    return new byte[] {(byte) cmf, (byte) flg};
+  }
+
+  /** zlib's adler32_combine: the checksum of A then B from those of A and B. */
+  static long adler32Combine(long adler1, long adler2, long len2) {
+    long rem = len2 % ADLER_BASE;
+    long sum1 = adler1 & 0xffff;
+    long sum2 = (rem * sum1) % ADLER_BASE;
+    sum1 += (adler2 & 0xffff) + ADLER_BASE - 1;
+    sum2 += ((adler1 >>> 16) & 0xffff) + ((adler2 >>> 16) & 0xffff) + ADLER_BASE - rem;
+    if (sum1 >= ADLER_BASE) sum1 -= ADLER_BASE;
+    if (sum1 >= ADLER_BASE) sum1 -= ADLER_BASE;
+    if (sum2 >= 2L * ADLER_BASE) sum2 -= 2L * ADLER_BASE;
+    if (sum2 >= ADLER_BASE) sum2 -= ADLER_BASE;
+    return sum1 | (sum2 << 16);
+  }
+
+  private static Stripe join(ForkJoinTask<Stripe> task) throws IOException {
+    try {
+      return task.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while encoding", e);
+    } catch (ExecutionException e) {
+      throw new IOException("Stripe encode failed", e.getCause());
+    }
+  }
+
+  private static void writeChunk(OutputStream out, String type, byte[]... parts)
+      throws IOException {
+    int length = 0;
+    for (byte[] part : parts) length += part.length;
+    byte[] header = new byte[8];
+    putInt(header, 0, length);
+    System.arraycopy(type.getBytes(StandardCharsets.US_ASCII), 0, header, 4, 4);
+    CRC32 crc = new CRC32();
+    crc.update(header, 4, 4);
+    out.write(header);
+    for (byte[] part : parts) {
+      crc.update(part);
+      out.write(part);
+    }
+    byte[] trailer = new byte[4];
+    putInt(trailer, 0, (int) crc.getValue());
+    out.write(trailer);
+  }
+
+  private static void putInt(byte[] b, int off, int v) {
+    b[off] = (byte) (v >>> 24);
+    b[off + 1] = (byte) (v >>> 16);
+    b[off + 2] = (byte) (v >>> 8);
+    b[off + 3] = (byte) v;
+  }
+
+  private record Stripe(byte[] deflated, long adler, int rawLength) {}
+
+  /** Row access to RGB pixels, straight from the raster when it is packed ints. */
+  private record Pixels(BufferedImage img, int[] data, int offset, int stride) {
+    static Pixels of(BufferedImage img) {
+      int type = img.getType();
+      if ((type == BufferedImage.TYPE_INT_RGB || type == BufferedImage.TYPE_INT_ARGB)
+          && img.getRaster().getDataBuffer() instanceof DataBufferInt data
+          && img.getRaster().getSampleModel() instanceof SinglePixelPackedSampleModel sm
+          && img.getRaster().getSampleModelTranslateX() == 0
+          && img.getRaster().getSampleModelTranslateY() == 0) {
+        return new Pixels(img, data.getData(), data.getOffset(), sm.getScanlineStride());
+      }
+      return new Pixels(img, null, 0, 0);
+    }
+
+    void row(int y, int[] dst) {
+      if (data != null) {
+        System.arraycopy(data, offset + y * stride, dst, 0, dst.length);
+      } else {
+        img.getRGB(0, y, dst.length, 1, dst, 0, dst.length);
+      }
+    }
+  }
+
+  /**
+   * Converts a row to RGB bytes and applies the PNG filter (None, Sub, Up, Average or Paeth) with
+   * the smallest sum of absolute values, the heuristic libpng and ImageIO use.
+   */
+  private static final class RowFilter {
+    private static final PixelKernels KERNELS = PixelKernels.get();
+    private final int[] argb;
+    private byte[] cur;
+    private byte[] prev;
+    private int curY = -1;
+
+    RowFilter(int w) {
+      argb = new int[w];
+      cur = new byte[3 + 3 * w];
+      prev = new byte[3 + 3 * w];
+    }
+
+    void filter(Pixels pixels, int y, byte[] dst, int off) {
+      // Rows are mostly filtered in order, so the previous row is usually the last current one.
+      if (y > 0 && y - 1 == curY) {
+        byte[] t = prev;
+        prev = cur;
+        cur = t;
+      } else if (y > 0) {
+        toRgb(pixels, y - 1, prev);
+      } else {
+        Arrays.fill(prev, (byte) 0);
+      }
+      toRgb(pixels, y, cur);
+      curY = y;
+      // Rows carry 3 leading zero bytes so the left neighbour of the first pixel needs no branch.
+      int end = cur.length;
+      int best = bestFilter(cur, prev, end);
+      dst[off] = (byte) best;
+      int o = off + 1 - 3;
+      switch (best) {
+        case 0 -> System.arraycopy(cur, 3, dst, off + 1, end - 3);
+        case 1 -> {
+          for (int i = 3; i < end; i++) dst[o + i] = (byte) (cur[i] - cur[i - 3]);
+        }
+        case 2 -> {
+          for (int i = 3; i < end; i++) dst[o + i] = (byte) (cur[i] - prev[i]);
+        }
+        case 3 -> {
+          for (int i = 3; i < end; i++) {
+            dst[o + i] = (byte) (cur[i] - (((cur[i - 3] & 0xff) + (prev[i] & 0xff)) >>> 1));
+          }
+        }
+        default -> {
+          for (int i = 3; i < end; i++) {
+            int p = paethPredictor(cur[i - 3] & 0xff, prev[i] & 0xff, prev[i - 3] & 0xff);
+            dst[o + i] = (byte) (cur[i] - p);
+          }
+        }
+      }
+    }
+
+    /** The filter with the smallest sum of absolute filtered values over the row. */
+    private static int bestFilter(byte[] cur, byte[] prev, int end) {
+      long costNone = 0, costSub = 0, costUp = 0, costAvg = 0, costPaeth = 0;
+      for (int i = 3; i < end; i++) {
+        int x = cur[i] & 0xff;
+        int a = cur[i - 3] & 0xff;
+        int b = prev[i] & 0xff;
+        int c = prev[i - 3] & 0xff;
+        costNone += Math.abs((byte) x);
+        costSub += Math.abs((byte) (x - a));
+        costUp += Math.abs((byte) (x - b));
+        costAvg += Math.abs((byte) (x - ((a + b) >>> 1)));
+        costPaeth += Math.abs((byte) (x - paethPredictor(a, b, c)));
+      }
+      int best = 0;
+      long min = costNone;
+      if (costSub < min) {
+        best = 1;
+        min = costSub;
+      }
+      if (costUp < min) {
+        best = 2;
+        min = costUp;
+      }
+      if (costAvg < min) {
+        best = 3;
+        min = costAvg;
+      }
+      if (costPaeth < min) best = 4;
+      return best;
+    }
+
+    private void toRgb(Pixels pixels, int y, byte[] rgb) {
+      if (pixels.data() != null) {
+        KERNELS.toRgb(pixels.data(), pixels.offset() + y * pixels.stride(), argb.length, rgb, 3);
+      } else {
+        pixels.row(y, argb);
+        KERNELS.toRgb(argb, 0, argb.length, rgb, 3);
+      }
+    }
+
+    private static int paethPredictor(int a, int b, int c) {
+      int p = a + b - c;
+      int pa = Math.abs(p - a);
+      int pb = Math.abs(p - b);
+      int pc = Math.abs(p - c);
+      if (pa <= pb && pa <= pc) return a;
+      return pb <= pc ? b : c;
+    }
+  }
+}
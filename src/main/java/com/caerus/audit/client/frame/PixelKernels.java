@@ -0,0 +1,135 @@
+package com.caerus.audit.client.frame;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Per-pixel loops over packed-int rasters ({@code TYPE_INT_RGB} / {@code TYPE_INT_ARGB}, as {@code
+ * Robot.createScreenCapture} returns): frame diffing, 2x2 downscaling and conversion to RGB bytes.
+ *
+ * <p>{@link #get()} uses the Vector API ({@code jdk.incubator.vector}) when the JVM was started
+ * with {@code --add-modules jdk.incubator.vector}, and plain loops otherwise. Both give identical
+ * results; {@code -Daudit.simd=false} forces the plain loops.
+ */
+public class PixelKernels {
+  private static final Logger log = LoggerFactory.getLogger(PixelKernels.class);
+  private static final PixelKernels SCALAR = new PixelKernels();
+  private static final PixelKernels BEST = load();
+
+  PixelKernels() {}
+
+  private static PixelKernels load() {
+    if (!Boolean.parseBoolean(System.getProperty("audit.simd", "true"))
+        || ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+      return SCALAR;
+    }
+    try {
+      // By name, so this class still loads when the module is absent.
+      PixelKernels kernels =
+          (PixelKernels)
+              Class.forName(PixelKernels.class.getPackageName() + ".VectorPixelKernels")
+                  .getDeclaredConstructor()
+                  .newInstance();
+      log.info("Using {} pixel kernels", kernels.name());
+      return kernels;
+    } catch (ReflectiveOperationException | LinkageError e) {
+      log.warn("Vector API unavailable, using scalar pixel kernels: {}", e.toString());
+      return SCALAR;
+    }
+  }
+
+  /** The fastest implementation this JVM supports. */
+  public static PixelKernels get() {
+    return BEST;
+  }
+
+  public static PixelKernels scalar() {
+    return SCALAR;
+  }
+
+  public String name() {
+    return "scalar";
+  }
+
+  /**
+   * The pixels of {@code img} if they are packed ints laid out row after row with no padding, so
+   * pixel (x, y) is at {@code y * width + x}; null for any other raster.
+   */
+  public static int[] packed(BufferedImage img) {
+    int type = img.getType();
+    if ((type == BufferedImage.TYPE_INT_RGB || type == BufferedImage.TYPE_INT_ARGB)
+        && img.getRaster().getDataBuffer() instanceof DataBufferInt data
+        && data.getNumBanks() == 1
+        && data.getOffset() == 0
+        && img.getRaster().getSampleModel() instanceof SinglePixelPackedSampleModel sm
+        && sm.getScanlineStride() == img.getWidth()
+        && img.getRaster().getSampleModelTranslateX() == 0
+        && img.getRaster().getSampleModelTranslateY() == 0) {
+      return data.getData();
+    }
+    return null;
+  }
+
+  /**
+   * Number of the first {@code length} pixels that differ in RGB between {@code a} and {@code b}.
+   */
+  public int countChanged(int[] a, int[] b, int length) {
+    return changedIn(a, b, 0, length);
+  }
+
+  static int changedIn(int[] a, int[] b, int from, int to) {
+    int changed = 0;
+    for (int i = from; i < to; i++) {
+      if (((a[i] ^ b[i]) & 0x00FFFFFF) != 0) changed++;
+    }
+    return changed;
+  }
+
+  /**
+   * Halves a {@code 2w x 2h} region of {@code src} into {@code w x h} pixels of {@code dst}, each
+   * the rounded mean of a 2x2 block, per channel including alpha.
+   */
+  public void halve(int[] src, int srcStride, int[] dst, int dstStride, int w, int h) {
+    for (int y = 0; y < h; y++) {
+      halveRow(src, 2 * y * srcStride, srcStride, dst, y * dstStride, 0, w);
+    }
+  }
+
+  static void halveRow(int[] src, int top, int srcStride, int[] dst, int row, int from, int to) {
+    int bottom = top + srcStride;
+    for (int x = from; x < to; x++) {
+      int i = 2 * x;
+      int p0 = src[top + i];
+      int p1 = src[top + i + 1];
+      int p2 = src[bottom + i];
+      int p3 = src[bottom + i + 1];
+      // Two channels per int, 8 bits apart: a sum of four fits in the 16-bit slot.
+      int rb = (p0 & 0x00FF00FF) + (p1 & 0x00FF00FF) + (p2 & 0x00FF00FF) + (p3 & 0x00FF00FF);
+      int ag =
+          ((p0 >>> 8) & 0x00FF00FF)
+              + ((p1 >>> 8) & 0x00FF00FF)
+              + ((p2 >>> 8) & 0x00FF00FF)
+              + ((p3 >>> 8) & 0x00FF00FF);
+      dst[row + x] =
+          (((rb + 0x00020002) >>> 2) & 0x00FF00FF)
+              | ((((ag + 0x00020002) >>> 2) & 0x00FF00FF) << 8);
+    }
+  }
+
+  /** Writes {@code n} pixels from {@code argb[off]} as R, G, B bytes from {@code rgb[rgbOff]}. */
+  public void toRgb(int[] argb, int off, int n, byte[] rgb, int rgbOff) {
+    rgbOf(argb, off, off + n, rgb, rgbOff);
+  }
+
+  static void rgbOf(int[] argb, int from, int to, byte[] rgb, int rgbOff) {
+    for (int x = from, i = rgbOff; x < to; x++) {
+      int p = argb[x];
+      rgb[i++] = (byte) (p >>> 16);
+      rgb[i++] = (byte) (p >>> 8);
+      rgb[i++] = (byte) p;
+    }
+  }
+}
@@ -0,0 +1,438 @@
+package com.caerus.audit.client.frame;
+
+import com.sun.jna.Platform;
+import com.sun.jna.platform.win32.Crypt32Util;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.stream.Stream;
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Streaming AES-256-GCM for spool files, one independently authenticated chunk at a time so a frame
+ * is never buffered whole. AES-GCM runs on the JDK's AES-NI/CLMUL intrinsics where available.
+ *
+ * <p>Layout: a 16-byte header ({@code ASG1}, chunk size, 7-byte random nonce prefix, 0), then
+ * chunks of up to {@code chunkSize} plaintext bytes plus a 16-byte tag. A chunk's nonce is the
+ * prefix, its index and a final-chunk flag, and the header is authenticated with every chunk, so
+ * reordered, truncated or extended files fail to decrypt.
+ *
+ * <p>When encryption is switched on (the key is created, or re-enabled after a {@link #readOnly}
+ * run) the plaintext files then in the spool are listed by name in {@code <keyFile>.legacy},
+ * written before the key. Only those files are read without the header, so frames spooled earlier
+ * still upload but a plaintext file dropped in later is refused whatever its timestamps say.
+ */
+public final class SpoolCipher {
+  private static final Logger log = LoggerFactory.getLogger(SpoolCipher.class);
+
+  private static final byte[] MAGIC = {'A', 'S', 'G', '1'};
+  static final int HEADER = 16;
+  private static final int TAG = 16;
+  private static final int PREFIX = 7;
+  private static final int MAX_CHUNK = 16 * 1024 * 1024;
+  private static final int KEY_BYTES = 32;
+  private static final byte KEY_RAW = 1;
+  private static final byte KEY_DPAPI = 2;
+
+  private final SecretKey key;
+  private final int chunkSize;
+  private final boolean encryptWrites;
+  private final Set<String> legacyPlaintext;
+  private final SecureRandom random = new SecureRandom();
+
+  public SpoolCipher(SecretKey key, int chunkSize) {
+    this(key, chunkSize, true, Set.of());
+  }
+
+  private SpoolCipher(
+      SecretKey key, int chunkSize, boolean encryptWrites, Set<String> legacyPlaintext) {
+    this.key = key;
+    this.chunkSize = chunkSize;
+    this.encryptWrites = encryptWrites;
+    this.legacyPlaintext = legacyPlaintext;
+  }
+
+  /**
+   * The install's spool key from {@code keyFile}, created on first use. On Windows the key is
+   * sealed with DPAPI for the current account; elsewhere the file is readable by its owner only.
+   * Plaintext files under {@code spoolDir} are listed as legacy when the key is created, and again
+   * after encryption was off.
+   */
+  public static SpoolCipher forInstall(Path keyFile, int chunkSize, Path spoolDir)
+      throws IOException {
+    Path legacyList = sibling(keyFile, ".legacy");
+    Path offMarker = sibling(keyFile, ".plaintext");
+    if (!Files.exists(keyFile) || Files.exists(offMarker)) {
+      Set<String> names = readLegacy(legacyList);
+      names.addAll(listPlaintext(spoolDir));
+      Files.createDirectories(legacyList.toAbsolutePath().getParent());
+      Path tmp = sibling(legacyList, ".tmp");
+      Files.write(tmp, names, StandardCharsets.UTF_8);
+      Files.move(tmp, legacyList, StandardCopyOption.ATOMIC_MOVE);
+    }
+    byte[] key = loadOrCreateKey(keyFile);
+    Files.deleteIfExists(offMarker);
+    return new SpoolCipher(
+        new SecretKeySpec(key, "AES"), chunkSize, true, Set.copyOf(readLegacy(legacyList)));
+  }
+
+  /**
+   * The existing key in {@code keyFile} for reading frames encrypted earlier while encryption is
+   * switched off; new frames are written in plaintext. Marks the install so the next {@link
+   * #forInstall} lists those frames as legacy.
+   */
+  public static SpoolCipher readOnly(Path keyFile, int chunkSize) throws IOException {
+    byte[] key = loadOrCreateKey(keyFile);
+    Path offMarker = sibling(keyFile, ".plaintext");
+    if (!Files.exists(offMarker)) Files.createFile(offMarker);
+    return new SpoolCipher(new SecretKeySpec(key, "AES"), chunkSize, false, Set.of());
+  }
+
+  private static Path sibling(Path file, String suffix) {
+    return file.resolveSibling(file.getFileName() + suffix);
+  }
+
+  private static Set<String> readLegacy(Path legacyList) throws IOException {
+    Set<String> names = new HashSet<>();
+    if (Files.exists(legacyList)) {
+      for (String name : Files.readAllLines(legacyList, StandardCharsets.UTF_8)) {
+        if (!name.isEmpty()) names.add(name);
+      }
+    }
+    return names;
+  }
+
+  /** Names of the regular files under {@code spoolDir} that do not start with the header. */
+  private static Set<String> listPlaintext(Path spoolDir) throws IOException {
+    Set<String> names = new HashSet<>();
+    if (!Files.isDirectory(spoolDir)) return names;
+    try (Stream<Path> files = Files.walk(spoolDir)) {
+      for (Path file : (Iterable<Path>) files.filter(Files::isRegularFile)::iterator) {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+          if (!isHeader(readFully(channel, 0, HEADER))) {
+            names.add(file.getFileName().toString());
+          }
+        } catch (NoSuchFileException gone) {
+          // Uploaded while we were listing.
+        }
+      }
+    }
+    return names;
+  }
+
+  private static byte[] loadOrCreateKey(Path keyFile) throws IOException {
+    if (Files.exists(keyFile)) {
+      byte[] stored = Files.readAllBytes(keyFile);
+      if (stored.length < 2) throw new IOException("Spool key file is truncated: " + keyFile);
+      byte[] sealed = Arrays.copyOfRange(stored, 1, stored.length);
+      byte[] key =
+          switch (stored[0]) {
+            case KEY_RAW -> sealed;
+            case KEY_DPAPI -> Crypt32Util.cryptUnprotectData(sealed);
+            default -> throw new IOException("Unknown spool key format in " + keyFile);
+          };
+      if (key.length != KEY_BYTES) {
+        throw new IOException("Spool key in " + keyFile + " is not a 256-bit key");
+      }
+      return key;
+    }
+    byte[] key = new byte[KEY_BYTES];
+    new SecureRandom().nextBytes(key);
+    boolean dpapi = Platform.isWindows();
+    byte[] sealed = dpapi ? Crypt32Util.cryptProtectData(key) : key;
+    byte[] stored = new byte[sealed.length + 1];
+    stored[0] = dpapi ? KEY_DPAPI : KEY_RAW;
+    System.arraycopy(sealed, 0, stored, 1, sealed.length);
+
+    Files.createDirectories(keyFile.toAbsolutePath().getParent());
+    Path tmp = keyFile.resolveSibling(keyFile.getFileName() + ".tmp");
+    Files.deleteIfExists(tmp);
+    if (!dpapi && tmp.getFileSystem().supportedFileAttributeViews().contains("posix")) {
+      Files.createFile(
+          tmp, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+    }
+    Files.write(tmp, stored);
+    Files.move(tmp, keyFile, StandardCopyOption.ATOMIC_MOVE);
+    log.info("Created spool encryption key {}", keyFile);
+    return key;
+  }
+
+  /** Wraps {@code out} so everything written is encrypted; closing writes the final chunk. */
+  public OutputStream encrypt(OutputStream out) throws IOException {
+    if (!encryptWrites) return out;
+    byte[] header = new byte[HEADER];
+    System.arraycopy(MAGIC, 0, header, 0, MAGIC.length);
+    ByteBuffer.wrap(header, 4, 4).putInt(chunkSize);
+    byte[] prefix = new byte[PREFIX];
+    random.nextBytes(prefix);
+    System.arraycopy(prefix, 0, header, 8, PREFIX);
+    out.write(header);
+    return new EncryptingOutput(out, header);
+  }
+
+  /**
+   * Wraps {@code in}, opened on {@code file}, to read the plaintext. Legacy plaintext files are
+   * passed through unchanged; other files without the header fail with an IOException.
+   */
+  public InputStream decrypt(Path file, InputStream in) throws IOException {
+    PushbackInputStream pushback = new PushbackInputStream(in, HEADER);
+    byte[] header = pushback.readNBytes(HEADER);
+    if (!isHeader(header)) {
+      if (!acceptsPlaintext(file)) {
+        pushback.close();
+        throw new IOException(
+            "Unencrypted spool file written after encryption was enabled: " + file);
+      }
+      pushback.unread(header);
+      return pushback;
+    }
+    return new DecryptingInput(pushback, header);
+  }
+
+  /** Plaintext is read only when not encrypting, or from files listed when encryption began. */
+  private boolean acceptsPlaintext(Path file) {
+    return !encryptWrites || legacyPlaintext.contains(file.getFileName().toString());
+  }
+
+  /** Plaintext length of {@code file}. */
+  public long plaintextLength(Path file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      byte[] header = readFully(channel, 0, HEADER);
+      long size = channel.size();
+      if (!isHeader(header)) return size;
+      long body = size - HEADER;
+      long full = (long) chunkSizeOf(header) + TAG;
+      long chunks = Math.max(1, (body + full - 1) / full);
+      return body - chunks * TAG;
+    }
+  }
+
+  /**
+   * Whether {@code file} ends with an authentic final chunk, i.e. was written completely. Only the
+   * last chunk is decrypted. Legacy plaintext files return null so the caller can check them
+   * itself; other plaintext files are never complete.
+   */
+  public Boolean isComplete(Path file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      long size = channel.size();
+      if (size == 0) return false;
+      byte[] header = readFully(channel, 0, (int) Math.min(size, HEADER));
+      if (!isHeader(header)) return acceptsPlaintext(file) ? null : Boolean.FALSE;
+      long body = size - HEADER;
+      long full = (long) chunkSizeOf(header) + TAG;
+      long chunks = Math.max(1, (body + full - 1) / full);
+      long lastLen = body - (chunks - 1) * full;
+      if (lastLen < TAG || chunks > Integer.MAX_VALUE) return false;
+      byte[] last = readFully(channel, HEADER + (chunks - 1) * full, (int) lastLen);
+      try {
+        init(newCipher(), Cipher.DECRYPT_MODE, header, (int) (chunks - 1), true).doFinal(last);
+        return true;
+      } catch (GeneralSecurityException e) {
+        return false;
+      }
+    }
+  }
+
+  private static boolean isHeader(byte[] header) {
+    return header.length == HEADER
+        && Arrays.equals(header, 0, MAGIC.length, MAGIC, 0, MAGIC.length);
+  }
+
+  private static int chunkSizeOf(byte[] header) throws IOException {
+    int size = ByteBuffer.wrap(header, 4, 4).getInt();
+    if (size <= 0 || size > MAX_CHUNK) throw new IOException("Corrupt spool frame header");
+    return size;
+  }
+
+  private static byte[] readFully(FileChannel channel, long position, int len) throws IOException {
+    ByteBuffer buf = ByteBuffer.allocate(len);
+    while (buf.hasRemaining()) {
+      if (channel.read(buf, position + buf.position()) < 0) break;
+    }
+    return Arrays.copyOf(buf.array(), buf.position());
+  }
+
+  private static Cipher newCipher() throws IOException {
+    try {
+      return Cipher.getInstance("AES/GCM/NoPadding");
+    } catch (GeneralSecurityException e) {
+      throw new IOException("AES-GCM unavailable", e);
+    }
+  }
+
+  /** Re-keys {@code cipher} for one chunk; every chunk of every file has a distinct nonce. */
+  private Cipher init(Cipher cipher, int mode, byte[] header, int index, boolean last)
+      throws GeneralSecurityException {
+    byte[] nonce = new byte[12];
+    System.arraycopy(header, 8, nonce, 0, PREFIX);
+    ByteBuffer.wrap(nonce, PREFIX, 4).putInt(index);
+    nonce[11] = (byte) (last ? 1 : 0);
+    cipher.init(mode, key, new GCMParameterSpec(TAG * 8, nonce));
+    cipher.updateAAD(header);
+    return cipher;
+  }
+
+  /** Holds back one chunk so the last one can be flagged as final on close. */
+  private final class EncryptingOutput extends OutputStream {
+    private final OutputStream out;
+    private final Cipher cipher = newCipher();
+    private final byte[] header;
+    private final byte[] plain = new byte[chunkSize];
+    private final byte[] sealed = new byte[chunkSize + TAG];
+    private int filled;
+    private int index;
+    private boolean closed;
+
+    EncryptingOutput(OutputStream out, byte[] header) throws IOException {
+      this.out = out;
+      this.header = header;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      write(new byte[] {(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      while (len > 0) {
+        if (filled == plain.length) emit(false);
+        int n = Math.min(len, plain.length - filled);
+        System.arraycopy(b, off, plain, filled, n);
+        filled += n;
+        off += n;
+        len -= n;
+      }
+    }
+
+    private void emit(boolean last) throws IOException {
+      try {
+        int n =
+            init(cipher, Cipher.ENCRYPT_MODE, header, index++, last)
+                .doFinal(plain, 0, filled, sealed);
+        out.write(sealed, 0, n);
+        filled = 0;
+      } catch (GeneralSecurityException e) {
+        throw new IOException("Spool encryption failed", e);
+      }
+    }
+
+    @Override
+    public void flush() throws IOException {
+      out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (closed) return;
+      closed = true;
+      try {
+        emit(true);
+      } finally {
+        out.close();
+      }
+    }
+  }
+
+  /** Reads one chunk ahead to learn whether the current one is the last. */
+  private final class DecryptingInput extends FilterInputStream {
+    private final Cipher cipher = newCipher();
+    private final byte[] header;
+    private final byte[] sealed;
+    private final byte[] plain;
+    private int limit;
+    private int pos;
+    private int index;
+    private boolean done;
+
+    DecryptingInput(PushbackInputStream in, byte[] header) throws IOException {
+      super(in);
+      this.header = header;
+      this.sealed = new byte[chunkSizeOf(header) + TAG];
+      this.plain = new byte[chunkSizeOf(header)];
+    }
+
+    @Override
+    public int read() throws IOException {
+      byte[] one = new byte[1];
+      return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      if (len == 0) return 0;
+      while (pos == limit) {
+        if (done) return -1;
+        nextChunk();
+      }
+      int n = Math.min(len, limit - pos);
+      System.arraycopy(plain, pos, b, off, n);
+      pos += n;
+      return n;
+    }
+
+    private void nextChunk() throws IOException {
+      int n = in.readNBytes(sealed, 0, sealed.length);
+      boolean last = true;
+      if (n == sealed.length) {
+        int next = in.read();
+        if (next >= 0) {
+          ((PushbackInputStream) in).unread(next);
+          last = false;
+        }
+      }
+      if (n < TAG) throw new IOException("Truncated spool frame");
+      try {
+        limit =
+            init(cipher, Cipher.DECRYPT_MODE, header, index++, last).doFinal(sealed, 0, n, plain);
+      } catch (GeneralSecurityException e) {
+        throw new IOException("Spool frame failed authentication", e);
+      }
+      pos = 0;
+      done = last;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+      long remaining = n;
+      byte[] buf = new byte[(int) Math.min(8192, Math.max(0, n))];
+      while (remaining > 0) {
+        int r = read(buf, 0, (int) Math.min(buf.length, remaining));
+        if (r < 0) break;
+        remaining -= r;
+      }
+      return n - remaining;
+    }
+
+    @Override
+    public int available() {
+      return limit - pos;
+    }
+
+    @Override
+    public boolean markSupported() {
+      return false;
+    }
+  }
+}
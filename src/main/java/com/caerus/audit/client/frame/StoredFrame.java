@@ -0,0 +1,114 @@
+package com.caerus.audit.client.frame;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An encoded frame held off-heap in {@link FrameStore} slabs. Reference counted: the store holds
+ * one reference until the upload is done with the frame, and every reader takes its own with {@link
+ * FrameStore#acquire}. The slabs go back to the pool when the last reference is released.
+ */
+public final class StoredFrame implements FrameContent {
+  private final FrameStore store;
+  private final Path file;
+  private final List<ByteBuffer> slabs;
+  private final long length;
+  private final AtomicInteger refs = new AtomicInteger(1);
+
+  StoredFrame(FrameStore store, Path file, List<ByteBuffer> slabs, long length) {
+    this.store = store;
+    this.file = file;
+    this.slabs = slabs;
+    this.length = length;
+  }
+
+  public Path file() {
+    return file;
+  }
+
+  @Override
+  public long length() {
+    return length;
+  }
+
+  /** Takes another reference, or returns false if the frame has already been freed. */
+  boolean retain() {
+    int n;
+    do {
+      n = refs.get();
+      if (n == 0) return false;
+    } while (!refs.compareAndSet(n, n + 1));
+    return true;
+  }
+
+  public void release() {
+    if (refs.decrementAndGet() == 0) store.free(this);
+  }
+
+  List<ByteBuffer> slabs() {
+    return slabs;
+  }
+
+  /** Read-only views of the content, one per slab, for gathering writes. */
+  public ByteBuffer[] buffers() {
+    ByteBuffer[] views = new ByteBuffer[slabs.size()];
+    long remaining = length;
+    for (int i = 0; i < views.length; i++) {
+      ByteBuffer view = slabs.get(i).asReadOnlyBuffer();
+      view.clear().limit((int) Math.min(view.capacity(), remaining));
+      remaining -= view.limit();
+      views[i] = view;
+    }
+    return views;
+  }
+
+  /** Copies the content to {@code out}; the caller must hold a reference. */
+  @Override
+  public void writeTo(OutputStream out) throws IOException {
+    byte[] chunk = new byte[16 * 1024];
+    for (ByteBuffer view : buffers()) {
+      while (view.hasRemaining()) {
+        int n = Math.min(chunk.length, view.remaining());
+        view.get(chunk, 0, n);
+        out.write(chunk, 0, n);
+      }
+    }
+  }
+
+  /** Streams the content; closing the stream releases the reference it was opened with. */
+  public InputStream newInputStream() {
+    return new InputStream() {
+      private final ByteBuffer[] views = buffers();
+      private int index;
+      private boolean closed;
+
+      @Override
+      public int read() {
+        byte[] one = new byte[1];
+        return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+      }
+
+      @Override
+      public int read(byte[] b, int off, int len) {
+        while (index < views.length && !views[index].hasRemaining()) index++;
+        if (index == views.length) return -1;
+        int n = Math.min(len, views[index].remaining());
+        views[index].get(b, off, n);
+        return n;
+      }
+
+      @Override
+      public void close() throws IOException {
+        if (!closed) {
+          closed = true;
+          release();
+        }
+      }
+    };
+  }
+}
@@ -0,0 +1,91 @@
+package com.caerus.audit.client.frame;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorShuffle;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * {@link PixelKernels} on the Vector API, at the widest vector the CPU has. Remainders shorter than
+ * a vector go through the scalar loops. Only loaded by name, see {@link PixelKernels#get()}.
+ */
+final class VectorPixelKernels extends PixelKernels {
+  private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED;
+  private static final VectorSpecies<Byte> BYTES = VectorSpecies.of(byte.class, INTS.vectorShape());
+  private static final int L = INTS.length();
+  // Halving yields one pixel per long lane of an input vector, narrowed to ints at half the width.
+  private static final VectorSpecies<Integer> HALF =
+      VectorSpecies.of(int.class, VectorShape.forBitSize(INTS.vectorBitSize() / 2));
+  // Little-endian B, G, R, A per pixel to R, G, B; the last quarter of the lanes is don't-care.
+  private static final VectorShuffle<Byte> RGB =
+      VectorShuffle.fromOp(BYTES, j -> j < 3 * L ? 4 * (j / 3) + 2 - j % 3 : 0);
+
+  @Override
+  public String name() {
+    return "vector-" + INTS.vectorBitSize();
+  }
+
+  @Override
+  public int countChanged(int[] a, int[] b, int length) {
+    int changed = 0;
+    int i = 0;
+    for (int upper = INTS.loopBound(length); i < upper; i += L) {
+      changed +=
+          IntVector.fromArray(INTS, a, i)
+              .lanewise(VectorOperators.XOR, IntVector.fromArray(INTS, b, i))
+              .and(0x00FFFFFF)
+              .compare(VectorOperators.NE, 0)
+              .trueCount();
+    }
+    return changed + changedIn(a, b, i, length);
+  }
+
+  @Override
+  public void halve(int[] src, int srcStride, int[] dst, int dstStride, int w, int h) {
+    for (int y = 0; y < h; y++) {
+      int top = 2 * y * srcStride;
+      int bottom = top + srcStride;
+      int row = y * dstStride;
+      int x = 0;
+      for (int upper = w - HALF.length(); x <= upper; x += HALF.length()) {
+        IntVector t = IntVector.fromArray(INTS, src, top + 2 * x);
+        IntVector b = IntVector.fromArray(INTS, src, bottom + 2 * x);
+        LongVector rb = pairSums(t.and(0x00FF00FF).add(b.and(0x00FF00FF)));
+        LongVector ag = pairSums(high(t).add(high(b)));
+        mean(rb)
+            .or(mean(ag).lanewise(VectorOperators.LSHL, 8))
+            .castShape(HALF, 0)
+            .reinterpretAsInts()
+            .intoArray(dst, row + x);
+      }
+      halveRow(src, top, srcStride, dst, row, x, w);
+    }
+  }
+
+  private static IntVector high(IntVector p) {
+    return p.lanewise(VectorOperators.LSHR, 8).and(0x00FF00FF);
+  }
+
+  // Horizontal neighbours share a long lane; adding its halves needs no shuffle.
+  private static LongVector pairSums(IntVector columnSums) {
+    LongVector pairs = columnSums.reinterpretAsLongs();
+    return pairs.and(0xFFFFFFFFL).add(pairs.lanewise(VectorOperators.LSHR, 32));
+  }
+
+  private static LongVector mean(LongVector sum) {
+    return sum.add(0x00020002L).lanewise(VectorOperators.LSHR, 2).and(0x00FF00FFL);
+  }
+
+  @Override
+  public void toRgb(int[] argb, int off, int n, byte[] rgb, int rgbOff) {
+    int x = off;
+    int i = rgbOff;
+    // Each store writes a full vector, a quarter past its output; the next store covers that.
+    for (int end = rgbOff + 3 * n; i + 4 * L <= end; x += L, i += 3 * L) {
+      IntVector.fromArray(INTS, argb, x).reinterpretAsBytes().rearrange(RGB).intoArray(rgb, i);
+    }
+    rgbOf(argb, x, off + n, rgb, i);
+  }
+}
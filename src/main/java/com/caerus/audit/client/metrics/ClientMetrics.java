@@ -0,0 +1,50 @@
+package com.caerus.audit.client.metrics;
+
+/**
+ * Process-wide registry and the client's well-known meters. Latencies are recorded in microseconds
+ * and exported in seconds; sizes in bytes.
+ */
+public final class ClientMetrics {
+  public static final MetricsRegistry REGISTRY = new MetricsRegistry();
+
+  private static final double MICROS = 1e-6;
+
+  public static final Histogram CAPTURE_GRAB =
+      REGISTRY.histogram("audit_capture_grab_seconds", MICROS);
+  public static final Histogram CAPTURE_ENCODE =
+      REGISTRY.histogram("audit_capture_encode_seconds", MICROS);
+  public static final Histogram FRAME_BYTES = REGISTRY.histogram("audit_frame_bytes", 1);
+  public static final Counter FRAMES_DEDUPLICATED =
+      REGISTRY.counter("audit_frames_deduplicated_total");
+  public static final Counter FULL_FRAMES_SKIPPED =
+      REGISTRY.counter("audit_full_frames_skipped_total");
+  public static final Counter PREVIEWS_UPLOADED = REGISTRY.counter("audit_previews_uploaded_total");
+  public static final Counter PREVIEWS_DROPPED = REGISTRY.counter("audit_previews_dropped_total");
+  public static final Counter METADATA_LOOKUPS = REGISTRY.counter("audit_metadata_lookups_total");
+  public static final Counter FRAME_STORE_SPILLS =
+      REGISTRY.counter("audit_frame_store_spills_total");
+  public static final Histogram SPOOL_FSYNC =
+      REGISTRY.histogram("audit_spool_fsync_seconds", MICROS);
+  public static final Counter SPOOL_ADOPTED = REGISTRY.counter("audit_spool_adopted_total");
+  public static final Counter SPOOL_DISCARDED = REGISTRY.counter("audit_spool_discarded_total");
+
+  public static final Histogram UPLOAD_LATENCY = REGISTRY.histogram("audit_upload_seconds", MICROS);
+  public static final Histogram ACK_LATENCY = REGISTRY.histogram("audit_ack_seconds", MICROS);
+  public static final Counter UPLOAD_BYTES = REGISTRY.counter("audit_upload_bytes_total");
+  public static final Counter UPLOADS = REGISTRY.counter("audit_uploads_total");
+  public static final Counter UPLOAD_REFS = REGISTRY.counter("audit_upload_refs_total");
+  public static final Counter UPLOAD_RETRIES = REGISTRY.counter("audit_upload_retries_total");
+  public static final Counter UPLOAD_DROPS = REGISTRY.counter("audit_upload_dead_letters_total");
+  public static final Histogram ON_DEMAND_LATENCY =
+      REGISTRY.histogram("audit_on_demand_seconds", MICROS);
+
+  public static final Counter WS_RECONNECTS = REGISTRY.counter("audit_ws_reconnects_total");
+  public static final Counter WATCHDOG_RESTARTS = REGISTRY.counter("audit_watchdog_restarts_total");
+
+  private ClientMetrics() {}
+
+  /** Microseconds elapsed since a {@link System#nanoTime()} reading. */
+  public static long microsSince(long startNanos) {
+    return (System.nanoTime() - startNanos) / 1000;
+  }
+}
@@ -0,0 +1,20 @@
+package com.caerus.audit.client.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/** Monotonic count; striped so hot paths never contend. */
+public final class Counter {
+  private final LongAdder adder = new LongAdder();
+
+  public void increment() {
+    adder.increment();
+  }
+
+  public void add(long n) {
+    adder.add(n);
+  }
+
+  public long count() {
+    return adder.sum();
+  }
+}
@@ -0,0 +1,148 @@
+package com.caerus.audit.client.metrics;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fixed-size ring of binary diagnostics records in a memory-mapped file, for the per-frame events
+ * (capture, upload, ack, retry, WebSocket traffic) that are too frequent for the text log. A write
+ * takes only primitives, allocates nothing and never blocks; the oldest records are overwritten.
+ * The OS keeps the mapped pages, so the journal survives a crash of the process. Decode it with
+ * {@link JournalDump}.
+ *
+ * <p>Layout (little-endian): a {@value #HEADER}-byte header (magic, version, record size, record
+ * count) followed by {@value #RECORD}-byte records of sequence+1, epoch millis, event code, aux
+ * int, frame id and two longs. The sequence word is cleared before and published last after the
+ * other fields, so a record being written or overwritten is never mistaken for a complete one.
+ */
+public final class DiagJournal implements AutoCloseable {
+  static final int MAGIC = 0x314a4441; // "ADJ1"
+  static final int VERSION = 1;
+  static final int HEADER = 64;
+  static final int RECORD = 48;
+
+  private static final VarHandle LONGS =
+      MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+  private static final DiagJournal DISABLED = new DiagJournal(null, null, 0, 0);
+  private static volatile DiagJournal current = DISABLED;
+
+  private final FileChannel channel;
+  private final MappedByteBuffer buf;
+  private final int records;
+  private final AtomicLong next;
+
+  private DiagJournal(FileChannel channel, MappedByteBuffer buf, int records, long next) {
+    this.channel = channel;
+    this.buf = buf;
+    this.records = records;
+    this.next = new AtomicLong(next);
+  }
+
+  /**
+   * Maps {@code file} with room for about {@code sizeBytes} of records, continuing the sequence of
+   * an existing journal of the same size. A journal of a different size or format is started over.
+   */
+  public static DiagJournal open(Path file, long sizeBytes) throws IOException {
+    int records = (int) Math.max(16, Math.min(Integer.MAX_VALUE / RECORD, sizeBytes / RECORD));
+    long length = HEADER + (long) records * RECORD;
+    if (file.getParent() != null) Files.createDirectories(file.getParent());
+    FileChannel channel =
+        FileChannel.open(
+            file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    try {
+      boolean reuse = channel.size() == length;
+      MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_WRITE, 0, length);
+      buf.order(ByteOrder.LITTLE_ENDIAN);
+      reuse &=
+          buf.getInt(0) == MAGIC
+              && buf.getInt(4) == VERSION
+              && buf.getInt(8) == RECORD
+              && buf.getInt(12) == records;
+      long next = 0;
+      if (reuse) {
+        for (int i = 0; i < records; i++) {
+          next = Math.max(next, buf.getLong(HEADER + i * RECORD));
+        }
+      } else {
+        for (int i = 0; i < records; i++) buf.putLong(HEADER + i * RECORD, 0);
+        buf.putInt(0, MAGIC).putInt(4, VERSION).putInt(8, RECORD).putInt(12, records);
+      }
+      return new DiagJournal(channel, buf, records, next);
+    } catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  /** Routes {@link #record} to {@code journal}; null turns journaling off. */
+  public static void install(DiagJournal journal) {
+    current = journal != null ? journal : DISABLED;
+  }
+
+  /** Appends a record to the installed journal, if any. */
+  public static void record(JournalEvent event, int aux, long frame, long value1, long value2) {
+    current.write(event, aux, frame, value1, value2);
+  }
+
+  public void write(JournalEvent event, int aux, long frame, long value1, long value2) {
+    if (buf == null) return;
+    long seq = next.getAndIncrement();
+    int at = HEADER + (int) (seq % records) * RECORD;
+    LONGS.setRelease(buf, at, 0L);
+    buf.putLong(at + 8, System.currentTimeMillis());
+    buf.putInt(at + 16, event.code());
+    buf.putInt(at + 20, aux);
+    buf.putLong(at + 24, frame);
+    buf.putLong(at + 32, value1);
+    buf.putLong(at + 40, value2);
+    LONGS.setRelease(buf, at, seq + 1);
+  }
+
+  /** Number of records written since the journal file was created. */
+  public long written() {
+    return next.get();
+  }
+
+  /** Capacity in records. */
+  public int capacity() {
+    return records;
+  }
+
+  /**
+   * Numeric id of a spooled frame or upload: the last 17 digits in {@code name}, so {@code
+   * s2_20250101_093000123.png} becomes {@code 20250101093000123}. Allocates nothing.
+   */
+  public static long frameId(CharSequence name) {
+    long id = 0;
+    for (int i = 0, n = name.length(); i < n; i++) {
+      char c = name.charAt(i);
+      if (c >= '0' && c <= '9') {
+        id = (id * 10 + (c - '0')) % 100_000_000_000_000_000L;
+      } else if (c == '/' || c == '\\') {
+        id = 0;
+      }
+    }
+    return id;
+  }
+
+  /** {@link #frameId(CharSequence)} of a spool path; paths cache their string form. */
+  public static long frameId(Path file) {
+    return frameId(file.toString());
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (buf == null) return;
+    if (current == this) install(null);
+    buf.force();
+    channel.close();
+  }
+}
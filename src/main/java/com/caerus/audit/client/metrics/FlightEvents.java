@@ -0,0 +1,107 @@
+package com.caerus.audit.client.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * JDK Flight Recorder events for the frame pipeline, under the "Audit Client" category. They cost
+ * next to nothing unless a recording is running: started at launch ({@link FlightRecording}), with
+ * {@code -XX:StartFlightRecording} or later with {@code jcmd <pid> JFR.start}. Each event's
+ * duration is the timed step; frames are named by file name as in the spool.
+ */
+public final class FlightEvents {
+  private static final String CATEGORY = "Audit Client";
+
+  private FlightEvents() {}
+
+  @Name("com.caerus.audit.Capture")
+  @Label("Frame Capture")
+  @Description("One capture, from screen grab to enqueue")
+  @Category({CATEGORY, "Capture"})
+  @StackTrace(false)
+  public static final class Capture extends Event {
+    @Label("Frame")
+    public String frame;
+
+    @Label("Outcome")
+    @Description("encoded, deduplicated, preview-only or empty")
+    public String outcome;
+
+    @Label("Priority")
+    public String priority;
+
+    @Label("Grab Time")
+    @Timespan(Timespan.MICROSECONDS)
+    public long grabMicros;
+
+    @Label("Encode Time")
+    @Timespan(Timespan.MICROSECONDS)
+    public long encodeMicros;
+
+    @Label("Frame Size")
+    @DataAmount
+    public long bytes;
+
+    @Label("Changed Pixels")
+    @Description("pixels differing from the previous frame, -1 if not compared")
+    public long changedPixels = -1;
+  }
+
+  @Name("com.caerus.audit.QueueOperation")
+  @Label("Upload Queue Operation")
+  @Category({CATEGORY, "Queue"})
+  @StackTrace(false)
+  public static final class QueueOperation extends Event {
+    @Label("Operation")
+    @Description("enqueue, next, complete or retry")
+    public String operation;
+
+    @Label("Frame")
+    public String frame;
+
+    @Label("Queue Depth")
+    @Description("Entries queued after the operation")
+    public int depth;
+  }
+
+  @Name("com.caerus.audit.UploadAttempt")
+  @Label("Upload Attempt")
+  @Description("One HTTP request carrying a frame or a reference to it")
+  @Category({CATEGORY, "Upload"})
+  @StackTrace(false)
+  public static final class UploadAttempt extends Event {
+    @Label("Upload Id")
+    public String uploadId;
+
+    @Label("Reference")
+    @Description("Whether only a reference to content the server holds was sent")
+    public boolean reference;
+
+    @Label("Status")
+    @Description("HTTP status, or 0 if no response arrived")
+    public int status;
+
+    @Label("Body Size")
+    @DataAmount
+    public long bytes;
+  }
+
+  @Name("com.caerus.audit.Ack")
+  @Label("Upload Ack Wait")
+  @Description("Wait for the server's ack of a completed upload")
+  @Category({CATEGORY, "Upload"})
+  @StackTrace(false)
+  public static final class Ack extends Event {
+    @Label("Upload Id")
+    public String uploadId;
+
+    @Label("Acked")
+    public boolean acked;
+  }
+}
@@ -0,0 +1,49 @@
+package com.caerus.audit.client.metrics;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.time.Duration;
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Continuous, size-bounded flight recording with the JDK's low-overhead "default" settings plus
+ * {@link FlightEvents}. Older chunks are dropped past {@code maxSize} or {@code maxAge}; the rest
+ * is written to {@code destination} on exit, or on demand with {@code jcmd <pid> JFR.dump
+ * name=audit-client filename=<file>}.
+ */
+public final class FlightRecording {
+  private static final Logger log = LoggerFactory.getLogger(FlightRecording.class);
+  public static final String NAME = "audit-client";
+
+  private FlightRecording() {}
+
+  public static Recording start(Path destination, long maxSizeBytes, Duration maxAge)
+      throws IOException {
+    Configuration settings;
+    try {
+      settings = Configuration.getConfiguration("default");
+    } catch (ParseException e) {
+      throw new IOException("JFR default settings unreadable", e);
+    }
+    Files.createDirectories(destination.toAbsolutePath().getParent());
+    Recording recording = new Recording(settings);
+    recording.setName(NAME);
+    recording.setToDisk(true);
+    recording.setMaxSize(maxSizeBytes);
+    recording.setMaxAge(maxAge);
+    recording.setDumpOnExit(true);
+    recording.setDestination(destination);
+    recording.start();
+    log.info(
+        "Flight recording started (max {} MB / {}, dumped to {} on exit)",
+        maxSizeBytes / (1024 * 1024),
+        maxAge,
+        destination);
+    return recording;
+  }
+}
@@ -0,0 +1,129 @@
+package com.caerus.audit.client.metrics;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Prints a {@link DiagJournal} as text, oldest record first. It maps the file read-only, so it can
+ * run against the journal of a live client:
+ *
+ * <pre>
+ * java -cp audit-client.jar com.caerus.audit.client.metrics.JournalDump diag.journal [--last N]
+ * </pre>
+ */
+public final class JournalDump {
+  private static final String[] WS_TYPES = {
+    "UPLOAD_SUCCESS",
+    "UPLOAD_CREDIT",
+    "SETTINGS_UPDATE",
+    "UPLOAD_BEGIN",
+    "CAPTURE_NOW",
+    "CAPTURE_RESULT"
+  };
+
+  /** One decoded journal record. */
+  public record Entry(
+      long seq, long timeMillis, int code, int aux, long frame, long value1, long value2) {
+    public JournalEvent event() {
+      return JournalEvent.byCode(code);
+    }
+  }
+
+  private JournalDump() {}
+
+  public static void main(String[] args) throws IOException {
+    if (args.length != 1 && !(args.length == 3 && "--last".equals(args[1]))) {
+      System.err.println("Usage: JournalDump <journal-file> [--last N]");
+      System.exit(2);
+    }
+    List<Entry> entries = read(Paths.get(args[0]));
+    int from = args.length == 3 ? Math.max(0, entries.size() - Integer.parseInt(args[2])) : 0;
+    PrintStream out = System.out;
+    for (Entry e : entries.subList(from, entries.size())) out.println(format(e));
+  }
+
+  /** Complete records in {@code file}, in write order. */
+  public static List<Entry> read(Path file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file)) {
+      MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      buf.order(ByteOrder.LITTLE_ENDIAN);
+      if (channel.size() < DiagJournal.HEADER
+          || buf.getInt(0) != DiagJournal.MAGIC
+          || buf.getInt(4) != DiagJournal.VERSION) {
+        throw new IOException("Not a diagnostics journal: " + file);
+      }
+      int size = buf.getInt(8);
+      int records = buf.getInt(12);
+      if (size < DiagJournal.RECORD
+          || records < 0
+          || DiagJournal.HEADER + (long) records * size > channel.size()) {
+        throw new IOException("Not a diagnostics journal: " + file);
+      }
+      List<Entry> entries = new ArrayList<>();
+      for (int i = 0; i < records; i++) {
+        int at = DiagJournal.HEADER + i * size;
+        long seq = buf.getLong(at);
+        if (seq == 0) continue;
+        Entry e =
+            new Entry(
+                seq - 1,
+                buf.getLong(at + 8),
+                buf.getInt(at + 16),
+                buf.getInt(at + 20),
+                buf.getLong(at + 24),
+                buf.getLong(at + 32),
+                buf.getLong(at + 40));
+        // Overwritten by a live writer while we were reading it.
+        if (buf.getLong(at) == seq) entries.add(e);
+      }
+      entries.sort(Comparator.comparingLong(Entry::seq));
+      return entries;
+    }
+  }
+
+  public static String format(Entry e) {
+    StringBuilder sb = new StringBuilder();
+    sb.append(Instant.ofEpochMilli(e.timeMillis())).append(" #").append(e.seq()).append(' ');
+    JournalEvent event = e.event();
+    if (event == null) {
+      return sb.append("UNKNOWN(").append(e.code()).append(')').toString();
+    }
+    sb.append(event);
+    if (e.frame() != 0) sb.append(" frame=").append(frameName(e.frame()));
+    if (event.value1() != null) {
+      sb.append(' ').append(event.value1()).append('=').append(e.value1());
+    }
+    if (event.value2() != null) {
+      sb.append(' ').append(event.value2()).append('=').append(e.value2());
+    }
+    sb.append(' ').append(event.aux()).append('=');
+    if (event == JournalEvent.WS_MESSAGE) {
+      sb.append(wsType(e.aux()));
+    } else {
+      sb.append(e.aux());
+    }
+    return sb.toString();
+  }
+
+  /** Spool names are {@code yyyyMMdd_HHmmssSSS}; other ids print as plain numbers. */
+  private static String frameName(long frame) {
+    String digits = Long.toString(frame);
+    return digits.length() == 17 ? digits.substring(0, 8) + "_" + digits.substring(8) : digits;
+  }
+
+  private static String wsType(int hash) {
+    for (String type : WS_TYPES) {
+      if (type.hashCode() == hash) return type;
+    }
+    return "0x" + Integer.toHexString(hash);
+  }
+}
@@ -0,0 +1,57 @@
+package com.caerus.audit.client.metrics;
+
+/**
+ * Record types in the {@link DiagJournal}. Every record carries a frame id (see {@link
+ * DiagJournal#frameId}), two long values and one int; the labels name them for {@link JournalDump}
+ * and are null where a field is unused. Codes are stored on disk and must never be reused.
+ */
+public enum JournalEvent {
+  CAPTURED(1, "bytes", "encodeUs", "priority"),
+  DEDUPLICATED(2, null, null, "priority"),
+  UPLOADED(3, "bytes", "latencyUs", "ok"),
+  HTTP_RESPONSE(4, "bytes", "latencyUs", "status"),
+  ACKED(5, "latencyUs", null, "ok"),
+  RETRY(6, "delayMs", null, "retry"),
+  DEAD_LETTER(7, null, null, "retries"),
+  WS_MESSAGE(8, "length", null, "type"),
+  WS_STATE(9, "closeCode", null, "connected");
+
+  private static final JournalEvent[] BY_CODE = new JournalEvent[16];
+
+  static {
+    for (JournalEvent e : values()) BY_CODE[e.code] = e;
+  }
+
+  private final int code;
+  private final String value1;
+  private final String value2;
+  private final String aux;
+
+  JournalEvent(int code, String value1, String value2, String aux) {
+    this.code = code;
+    this.value1 = value1;
+    this.value2 = value2;
+    this.aux = aux;
+  }
+
+  public int code() {
+    return code;
+  }
+
+  String value1() {
+    return value1;
+  }
+
+  String value2() {
+    return value2;
+  }
+
+  String aux() {
+    return aux;
+  }
+
+  /** The event stored under {@code code}, or null for a code this build does not know. */
+  public static JournalEvent byCode(int code) {
+    return code > 0 && code < BY_CODE.length ? BY_CODE[code] : null;
+  }
+}
@@ -0,0 +1,49 @@
+package com.caerus.audit.client.metrics;
+
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/** Serves {@code GET /metrics} in Prometheus text format on the loopback interface only. */
+public class MetricsEndpoint {
+  private static final Logger log = LoggerFactory.getLogger(MetricsEndpoint.class);
+
+  private final MetricsRegistry registry;
+  private final int port;
+  private HttpServer server;
+
+  public MetricsEndpoint(MetricsRegistry registry, int port) {
+    this.registry = registry;
+    this.port = port;
+  }
+
+  public void start() throws IOException {
+    server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+    server.createContext(
+        "/metrics",
+        exchange -> {
+          byte[] body = registry.scrape().getBytes(StandardCharsets.UTF_8);
+          exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4");
+          exchange.sendResponseHeaders(200, body.length);
+          try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+          }
+        });
+    server.start();
+    log.info("Metrics endpoint listening on http://127.0.0.1:{}/metrics", address().getPort());
+  }
+
+  /** The bound address; the port is an ephemeral one if 0 was given. */
+  public InetSocketAddress address() {
+    return server.getAddress();
+  }
+
+  public void stop() {
+    if (server != null) server.stop(0);
+  }
+}
@@ -0,0 +1,85 @@
+package com.caerus.audit.client.metrics;
+
+import com.caerus.audit.client.util.BodyCompression;
+import com.caerus.audit.client.util.EndpointSelector;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/** Periodically POSTs a registry snapshot to {@code /api/v1/metrics}. */
+public class MetricsPusher {
+  private static final Logger log = LoggerFactory.getLogger(MetricsPusher.class);
+
+  private final MetricsRegistry registry;
+  private final EndpointSelector endpoints;
+  private final String clientId;
+  private final Duration interval;
+  private final BodyCompression compression;
+  private final HttpClient client = HttpClient.newHttpClient();
+  private final ObjectMapper mapper = new ObjectMapper();
+  private final ScheduledExecutorService scheduler =
+      Executors.newSingleThreadScheduledExecutor(
+          r -> {
+            Thread t = new Thread(r, "MetricsPusher-Thread");
+            t.setDaemon(true);
+            return t;
+          });
+
+  public MetricsPusher(
+      MetricsRegistry registry,
+      EndpointSelector endpoints,
+      String clientId,
+      Duration interval,
+      BodyCompression compression) {
+    this.registry = registry;
+    this.endpoints = endpoints;
+    this.clientId = clientId;
+    this.interval = interval;
+    this.compression = compression;
+  }
+
+  public void start() {
+    long sec = interval.toSeconds();
+    scheduler.scheduleAtFixedRate(this::push, sec, sec, TimeUnit.SECONDS);
+  }
+
+  public void stop() {
+    scheduler.shutdownNow();
+  }
+
+  private void push() {
+    try {
+      Map<String, Object> body = new LinkedHashMap<>();
+      body.put("clientId", clientId);
+      body.put("timestamp", Instant.now().toString());
+      body.put("metrics", registry.snapshot());
+
+      HttpRequest.Builder request =
+          HttpRequest.newBuilder(URI.create(endpoints.current() + "/api/v1/metrics"))
+              .timeout(Duration.ofSeconds(10))
+              .header("Content-Type", "application/json");
+      HttpResponse<Void> response =
+          compression.send(
+              client,
+              request,
+              mapper.writeValueAsBytes(body),
+              HttpResponse.BodyHandlers.discarding());
+      if (response.statusCode() / 100 != 2) {
+        log.debug("Metrics push rejected (HTTP {})", response.statusCode());
+      }
+    } catch (Exception e) {
+      log.debug("Metrics push failed: {}", e.getMessage());
+    }
+  }
+}
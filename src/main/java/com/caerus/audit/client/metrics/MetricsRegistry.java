@@ -0,0 +1,86 @@
+package com.caerus.audit.client.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Named counters, histograms and gauges. Meters are created once and cached, so call sites may hold
+ * on to the returned instance and record without lookups.
+ */
+public class MetricsRegistry {
+  private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+  private final Map<String, Counter> counters = new ConcurrentSkipListMap<>();
+  private final Map<String, Histogram> histograms = new ConcurrentSkipListMap<>();
+  private final Map<String, DoubleSupplier> gauges = new ConcurrentSkipListMap<>();
+
+  public Counter counter(String name) {
+    return counters.computeIfAbsent(name, n -> new Counter());
+  }
+
+  public Histogram histogram(String name, double scale) {
+    return histograms.computeIfAbsent(name, n -> new Histogram(scale));
+  }
+
+  public void gauge(String name, DoubleSupplier value) {
+    gauges.put(name, value);
+  }
+
+  /** Prometheus text exposition format. */
+  public String scrape() {
+    StringBuilder sb = new StringBuilder(4096);
+    counters.forEach(
+        (name, c) -> {
+          sb.append("# TYPE ").append(name).append(" counter\n");
+          sb.append(name).append(' ').append(c.count()).append('\n');
+        });
+    gauges.forEach(
+        (name, g) -> {
+          sb.append("# TYPE ").append(name).append(" gauge\n");
+          sb.append(name).append(' ').append(read(g)).append('\n');
+        });
+    histograms.forEach(
+        (name, h) -> {
+          sb.append("# TYPE ").append(name).append(" summary\n");
+          for (double q : QUANTILES) {
+            sb.append(name)
+                .append("{quantile=\"")
+                .append(q)
+                .append("\"} ")
+                .append(h.percentile(q))
+                .append('\n');
+          }
+          sb.append(name).append("_max ").append(h.max()).append('\n');
+          sb.append(name).append("_sum ").append(h.sum()).append('\n');
+          sb.append(name).append("_count ").append(h.count()).append('\n');
+        });
+    return sb.toString();
+  }
+
+  /** Flat name/value view for pushing to the server. */
+  public Map<String, Object> snapshot() {
+    Map<String, Object> out = new LinkedHashMap<>();
+    counters.forEach((name, c) -> out.put(name, c.count()));
+    gauges.forEach((name, g) -> out.put(name, read(g)));
+    histograms.forEach(
+        (name, h) -> {
+          Map<String, Object> summary = new LinkedHashMap<>();
+          summary.put("count", h.count());
+          summary.put("sum", h.sum());
+          summary.put("max", h.max());
+          for (double q : QUANTILES) summary.put("p" + (q * 100), h.percentile(q));
+          out.put(name, summary);
+        });
+    return out;
+  }
+
+  private static double read(DoubleSupplier g) {
+    try {
+      return g.getAsDouble();
+    } catch (RuntimeException e) {
+      return Double.NaN;
+    }
+  }
+}
@@ -0,0 +1,28 @@
+package com.caerus.audit.client.model;
+
+import java.util.List;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/** What was on screen when a frame was captured; uploaded with the frame as JSON. */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class FrameMetadata {
+  private String windowTitle;
+  private String processName;
+  private List<Monitor> monitors;
+
+  /** One display in virtual-desktop coordinates. */
+  @Data
+  @NoArgsConstructor
+  @AllArgsConstructor
+  public static class Monitor {
+    private int x;
+    private int y;
+    private int width;
+    private int height;
+    private boolean primary;
+  }
+}
@@ -22,4 +22,10 @@ public class ServerAppSettingsDto {
 
   @JsonProperty("folderStructureTemplate")
   public String folderStructureTemplate;
+
+  @JsonProperty("configUploadBandwidthKbps")
+  public Integer configUploadBandwidthKbps;
+
+  @JsonProperty("configUploadBandwidthSchedule")
+  public String configUploadBandwidthSchedule;
 }
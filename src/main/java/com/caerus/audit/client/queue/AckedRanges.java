@@ -0,0 +1,57 @@
+package com.caerus.audit.client.queue;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Upload sequence numbers (see {@link UploadSequence}) the server has acked, kept as ranges: acks
+ * mostly arrive in order, so this stays a handful of ranges however many uploads it covers. An
+ * upload whose number is in here is done, whichever attempt or worker the ack was for.
+ *
+ * <p>Numbers that will never be acked (dead letters) leave gaps; past {@code maxRanges} ranges the
+ * oldest are forgotten.
+ */
+public class AckedRanges {
+  private final int maxRanges;
+  private final TreeMap<Long, Long> ranges = new TreeMap<>(); // first -> last, inclusive
+
+  public AckedRanges(int maxRanges) {
+    this.maxRanges = maxRanges;
+  }
+
+  public synchronized void add(long seq) {
+    Map.Entry<Long, Long> below = ranges.floorEntry(seq);
+    if (below != null && seq <= below.getValue()) return;
+    long first = seq;
+    long last = seq;
+    if (below != null && below.getValue() == seq - 1) first = below.getKey();
+    Long above = ranges.get(seq + 1);
+    if (above != null) {
+      ranges.remove(seq + 1);
+      last = above;
+    }
+    ranges.put(first, last);
+    while (ranges.size() > maxRanges) ranges.pollFirstEntry();
+  }
+
+  public synchronized boolean contains(long seq) {
+    Map.Entry<Long, Long> below = ranges.floorEntry(seq);
+    return below != null && seq <= below.getValue();
+  }
+
+  public synchronized int rangeCount() {
+    return ranges.size();
+  }
+
+  /** E.g. {@code 100-163,165,170-171}. */
+  @Override
+  public synchronized String toString() {
+    StringBuilder sb = new StringBuilder();
+    for (Map.Entry<Long, Long> r : ranges.entrySet()) {
+      if (sb.length() > 0) sb.append(',');
+      sb.append(r.getKey());
+      if (!r.getValue().equals(r.getKey())) sb.append('-').append(r.getValue());
+    }
+    return sb.toString();
+  }
+}
@@ -0,0 +1,179 @@
+package com.caerus.audit.client.queue;
+
+import com.caerus.audit.client.enums.UploadPriority;
+import com.caerus.audit.client.frame.FrameStore;
+import com.caerus.audit.client.queue.PersistentFileQueue.QueueEntry;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Properties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Holding area for files that exhausted their upload retries. Each file is moved here with a {@code
+ * .reason} properties sidecar recording where it came from and why it failed, so it can be
+ * inspected by hand and later replayed into the queue. A frame's metadata sidecar moves with it.
+ *
+ * <p>The store is kept within its {@link Quota}, separate from the spool's: each burial first drops
+ * entries older than the age limit, then the oldest entries until the store fits its byte limit.
+ */
+public class DeadLetterStore {
+  private static final Logger log = LoggerFactory.getLogger(DeadLetterStore.class);
+  private static final String REASON_SUFFIX = ".reason";
+
+  private final Path directory;
+  private final Quota quota;
+
+  /** Limits on what the store holds; bytes include the sidecars. */
+  public record Quota(long maxBytes, Duration maxAge) {
+    public static Quota defaults() {
+      return new Quota(256L * 1024 * 1024, Duration.ofDays(30));
+    }
+  }
+
+  public DeadLetterStore(Path directory, Quota quota) {
+    this.directory = directory;
+    this.quota = quota;
+  }
+
+  public Path directory() {
+    return directory;
+  }
+
+  /** Moves the entry's file into the store. Missing files are only logged. */
+  public void bury(QueueEntry entry, String reason) throws IOException {
+    Path file = entry.file();
+    if (!Files.exists(file)) {
+      log.warn("Dead-lettered file {} no longer exists, dropping entry", file);
+      return;
+    }
+    Files.createDirectories(directory);
+    Path target = directory.resolve(file.getFileName());
+    Files.move(file, target, StandardCopyOption.REPLACE_EXISTING);
+    moveIfExists(FrameStore.metadataOf(file), FrameStore.metadataOf(target));
+
+    Properties meta = new Properties();
+    meta.setProperty("originalPath", file.toString());
+    meta.setProperty("priority", entry.priority().name());
+    meta.setProperty("retries", String.valueOf(entry.retries()));
+    meta.setProperty("reason", reason);
+    if (entry.contentHash() != null) meta.setProperty("contentHash", entry.contentHash());
+    if (entry.seq() != 0) meta.setProperty("seq", String.valueOf(entry.seq()));
+    meta.setProperty("deadLetteredAt", Instant.now().toString());
+    try (OutputStream out = Files.newOutputStream(sidecar(target))) {
+      meta.store(out, "audit-client dead letter");
+    }
+    log.warn("File {} moved to dead-letter store: {}", file.getFileName(), reason);
+    prune();
+  }
+
+  /** Bytes held, sidecars included. */
+  public long usedBytes() throws IOException {
+    long total = 0;
+    for (Path held : list()) total += heldBytes(held);
+    return total;
+  }
+
+  private void prune() throws IOException {
+    record Held(Path file, long buriedAt, long bytes) {}
+    List<Held> entries = new ArrayList<>();
+    long total = 0;
+    for (Path file : list()) {
+      Path sidecar = sidecar(file);
+      Held held =
+          new Held(
+              file,
+              Files.getLastModifiedTime(Files.exists(sidecar) ? sidecar : file).toMillis(),
+              heldBytes(file));
+      entries.add(held);
+      total += held.bytes();
+    }
+    entries.sort(Comparator.comparingLong(Held::buriedAt));
+    long cutoff = System.currentTimeMillis() - quota.maxAge().toMillis();
+    int dropped = 0;
+    for (Held held : entries) {
+      if (total <= quota.maxBytes() && held.buriedAt() >= cutoff) break;
+      Files.deleteIfExists(held.file());
+      Files.deleteIfExists(FrameStore.metadataOf(held.file()));
+      Files.deleteIfExists(sidecar(held.file()));
+      total -= held.bytes();
+      dropped++;
+    }
+    if (dropped > 0) log.warn("Dropped {} dead-lettered files over the store's quota", dropped);
+  }
+
+  private static long heldBytes(Path file) throws IOException {
+    long bytes = 0;
+    for (Path p : List.of(file, FrameStore.metadataOf(file), sidecar(file))) {
+      if (Files.exists(p)) bytes += Files.size(p);
+    }
+    return bytes;
+  }
+
+  /** Files currently held, excluding sidecars. */
+  public List<Path> list() throws IOException {
+    List<Path> files = new ArrayList<>();
+    if (!Files.isDirectory(directory)) return files;
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+      for (Path p : stream) {
+        String name = p.getFileName().toString();
+        if (!name.endsWith(REASON_SUFFIX) && !name.endsWith(FrameStore.METADATA_SUFFIX)) {
+          files.add(p);
+        }
+      }
+    }
+    files.sort(null);
+    return files;
+  }
+
+  /**
+   * Moves every held file back to its original location and re-enqueues it with its original
+   * priority and upload id and a fresh retry budget.
+   *
+   * @return number of files replayed.
+   */
+  public int replay(PersistentFileQueue queue) throws IOException {
+    int replayed = 0;
+    for (Path held : list()) {
+      Properties meta = new Properties();
+      Path sidecar = sidecar(held);
+      if (Files.exists(sidecar)) {
+        try (InputStream in = Files.newInputStream(sidecar)) {
+          meta.load(in);
+        }
+      }
+      Path original = Path.of(meta.getProperty("originalPath", held.toString()));
+      Files.createDirectories(original.getParent());
+      Files.move(held, original, StandardCopyOption.REPLACE_EXISTING);
+      moveIfExists(FrameStore.metadataOf(held), FrameStore.metadataOf(original));
+      Files.deleteIfExists(sidecar);
+      String seq = meta.getProperty("seq");
+      queue.enqueue(
+          original,
+          UploadPriority.valueOf(meta.getProperty("priority", "NORMAL")),
+          meta.getProperty("contentHash"),
+          seq != null ? Long.parseLong(seq) : queue.nextSequence());
+      replayed++;
+    }
+    if (replayed > 0) log.info("Replayed {} dead-lettered files into the upload queue", replayed);
+    return replayed;
+  }
+
+  private static void moveIfExists(Path from, Path to) throws IOException {
+    if (Files.exists(from)) Files.move(from, to, StandardCopyOption.REPLACE_EXISTING);
+  }
+
+  private static Path sidecar(Path file) {
+    return file.resolveSibling(file.getFileName() + REASON_SUFFIX);
+  }
+}
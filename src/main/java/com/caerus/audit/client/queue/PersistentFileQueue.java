@@ -1,110 +1,476 @@
 package com.caerus.audit.client.queue;
 
+import com.caerus.audit.client.enums.UploadPriority;
+import com.caerus.audit.client.metrics.DiagJournal;
+import com.caerus.audit.client.metrics.FlightEvents;
+import com.caerus.audit.client.metrics.JournalEvent;
+import com.caerus.audit.client.util.SpoolSync;
+import java.io.BufferedReader;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.HashSet;
 import java.util.List;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.Map;
+import java.util.Set;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * Disk-backed persistent FIFO queue for screenshot files. Survives restarts and guarantees ordered
- * processing.
+ * Disk-backed persistent queue for screenshot files, split into priority lanes. Survives restarts
+ * (lane membership and retry schedule are persisted with each entry) and keeps FIFO order within a
+ * lane.
+ *
+ * <p>{@link #next()} drains lanes with smooth weighted round-robin over {@link
+ * UploadPriority#getWeight()}, so a routine backlog cannot delay critical frames. A lane whose head
+ * has waited longer than {@code maxLaneWait} may jump the schedule, but only once every {@value
+ * #STARVED_SHARE} picks: after an outage the whole backlog is that old, and it must not outrank
+ * fresh critical frames. Entries waiting out a retry backoff are skipped, so a failing file never
+ * blocks the ones behind it, and so are entries handed out whose attempt is not over, so two
+ * uploaders (say a stalled loop and its replacement) never work on the same file. Once its {@link
+ * RetryPolicy} is exhausted the file moves to the {@link DeadLetterStore}.
+ *
+ * <p>The persisted backlog is read on a background thread so a large queue does not delay the first
+ * capture: {@link #enqueue} works immediately, while methods that drain the queue wait for the load
+ * to finish. Entries are not checked against the disk at load; a missing file is dropped when it is
+ * dequeued.
+ *
+ * <p>The queue file is replaced atomically (temp file, then rename) and handed to the {@link
+ * SpoolSync}, so a crash leaves either the old or the new list, never a torn one.
+ *
+ * <p>Every entry carries a number from the queue's {@link UploadSequence}, assigned at enqueue and
+ * kept through retries, restarts and dead-letter replay; it is the frame's upload id.
  */
 public class PersistentFileQueue {
   private static final Logger log = LoggerFactory.getLogger(PersistentFileQueue.class);
+  static final int STARVED_SHARE = 4;
 
   private final Path queueFile;
-  private final BlockingQueue<QueueEntry> memoryQueue = new LinkedBlockingQueue<>();
+  private final Map<UploadPriority, Deque<QueueEntry>> lanes = new EnumMap<>(UploadPriority.class);
+  private final Map<UploadPriority, Integer> currentWeight = new EnumMap<>(UploadPriority.class);
+  private final long maxLaneWaitMillis;
+  private final RetryPolicy retryPolicy;
+  private final DeadLetterStore deadLetters;
+  private final SpoolSync spoolSync;
+  private final UploadSequence sequence;
+  private final Set<Path> inFlight = new HashSet<>(); // guarded by this
+  private int picksSinceStarved; // guarded by this
+  private boolean loaded; // guarded by this
 
-  private static final int MAX_RETRIES = 3;
-
-  public record QueueEntry(Path file, int retries) {
+  /**
+   * One queued frame; {@code contentHash} is the SHA-256 of the file, or null if unknown, and
+   * {@code seq} its upload sequence number, or 0 in entries written before there was one.
+   */
+  public record QueueEntry(
+      Path file,
+      int retries,
+      UploadPriority priority,
+      long enqueuedAt,
+      long nextAttemptAt,
+      String contentHash,
+      long seq) {
     @Override
     public String toString() {
-      return file.toString() + "|" + retries;
+      return file.toString()
+          + "|"
+          + retries
+          + "|"
+          + priority
+          + "|"
+          + enqueuedAt
+          + "|"
+          + nextAttemptAt
+          + "|"
+          + (contentHash != null ? contentHash : "")
+          + "|"
+          + seq;
     }
 
     public static QueueEntry from(String line) {
       String[] parts = line.split("\\|");
       Path path = Paths.get(parts[0]);
       int retries = (parts.length > 1) ? Integer.parseInt(parts[1]) : 0;
-      return new QueueEntry(path, retries);
+      UploadPriority priority =
+          (parts.length > 2) ? UploadPriority.valueOf(parts[2]) : UploadPriority.NORMAL;
+      long enqueuedAt = (parts.length > 3) ? Long.parseLong(parts[3]) : System.currentTimeMillis();
+      long nextAttemptAt = (parts.length > 4) ? Long.parseLong(parts[4]) : 0;
+      String contentHash = (parts.length > 5 && !parts[5].isEmpty()) ? parts[5] : null;
+      long seq = (parts.length > 6) ? Long.parseLong(parts[6]) : 0;
+      return new QueueEntry(path, retries, priority, enqueuedAt, nextAttemptAt, contentHash, seq);
+    }
+
+    QueueEntry withSchedule(int retries, long nextAttemptAt) {
+      return new QueueEntry(file, retries, priority, enqueuedAt, nextAttemptAt, contentHash, seq);
+    }
+
+    public boolean isEligible(long now) {
+      return nextAttemptAt <= now;
     }
   }
 
-  public PersistentFileQueue(Path directory) throws IOException {
+  public static PersistentFileQueue open(Path directory) throws IOException {
+    return open(directory, Duration.ofMinutes(5), RetryPolicy.defaults());
+  }
+
+  public static PersistentFileQueue open(
+      Path directory, Duration maxLaneWait, RetryPolicy retryPolicy) throws IOException {
+    return open(
+        directory, maxLaneWait, retryPolicy, SpoolSync.none(), DeadLetterStore.Quota.defaults());
+  }
+
+  /** Opens the queue in {@code directory} and starts reading its persisted backlog. */
+  public static PersistentFileQueue open(
+      Path directory,
+      Duration maxLaneWait,
+      RetryPolicy retryPolicy,
+      SpoolSync spoolSync,
+      DeadLetterStore.Quota deadLetterQuota)
+      throws IOException {
+    PersistentFileQueue queue =
+        new PersistentFileQueue(directory, maxLaneWait, retryPolicy, spoolSync, deadLetterQuota);
+    Thread loader = new Thread(queue::loadQueue, "QueueLoader-" + directory.getFileName());
+    loader.setDaemon(true);
+    loader.start();
+    return queue;
+  }
+
+  private PersistentFileQueue(
+      Path directory,
+      Duration maxLaneWait,
+      RetryPolicy retryPolicy,
+      SpoolSync spoolSync,
+      DeadLetterStore.Quota deadLetterQuota)
+      throws IOException {
     Files.createDirectories(directory);
+    this.spoolSync = spoolSync;
+    this.sequence = UploadSequence.open(directory.resolve("upload.seq"));
     this.queueFile = directory.resolve("upload-queue.txt");
-    loadQueue();
+    this.maxLaneWaitMillis = maxLaneWait.toMillis();
+    this.retryPolicy = retryPolicy;
+    this.deadLetters = new DeadLetterStore(directory.resolve("dead-letter"), deadLetterQuota);
+    for (UploadPriority p : UploadPriority.values()) {
+      lanes.put(p, new ArrayDeque<>());
+      currentWeight.put(p, 0);
+    }
   }
 
-  private synchronized void loadQueue() throws IOException {
+  private void loadQueue() {
+    Map<UploadPriority, List<QueueEntry>> restored = new EnumMap<>(UploadPriority.class);
+    for (UploadPriority p : UploadPriority.values()) restored.put(p, new ArrayList<>());
+    int count = 0;
     if (Files.exists(queueFile)) {
-      List<String> lines = Files.readAllLines(queueFile);
-      for (String line : lines) {
-        QueueEntry entry = QueueEntry.from(line);
-        if (Files.exists(entry.file())) {
-          memoryQueue.offer(entry);
+      try (BufferedReader reader = Files.newBufferedReader(queueFile)) {
+        String line;
+        while ((line = reader.readLine()) != null) {
+          if (line.isBlank()) continue;
+          try {
+            QueueEntry entry = QueueEntry.from(line);
+            if (entry.seq() == 0) entry = numbered(entry);
+            restored.get(entry.priority()).add(entry);
+            count++;
+          } catch (RuntimeException e) {
+            log.warn("Skipping unreadable queue line '{}': {}", line, e.getMessage());
+          }
         }
+      } catch (IOException e) {
+        log.error("Failed to read queue file {}: {}", queueFile, e.getMessage());
+      }
+    }
+
+    synchronized (this) {
+      // Restored entries are older than anything enqueued while loading.
+      for (UploadPriority p : UploadPriority.values()) {
+        Deque<QueueEntry> lane = new ArrayDeque<>(restored.get(p));
+        lane.addAll(lanes.get(p));
+        lanes.put(p, lane);
+      }
+      loaded = true;
+      notifyAll();
+      try {
+        persistQueue();
+      } catch (IOException e) {
+        log.error("Failed to persist queue after load: {}", e.getMessage());
+      }
+    }
+    log.info("Loaded {} pending files from queue", count);
+  }
+
+  // Entries from before upload sequence numbers; left at 0 (upload id by file name) on failure.
+  private QueueEntry numbered(QueueEntry e) {
+    try {
+      return new QueueEntry(
+          e.file(),
+          e.retries(),
+          e.priority(),
+          e.enqueuedAt(),
+          e.nextAttemptAt(),
+          e.contentHash(),
+          sequence.next());
+    } catch (IOException ex) {
+      log.warn("Could not number queued file {}: {}", e.file(), ex.getMessage());
+      return e;
+    }
+  }
+
+  /** Blocks until the persisted backlog has been merged in; call with the monitor held. */
+  private void awaitLoaded() {
+    while (!loaded) {
+      try {
+        wait();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
       }
     }
-    log.info("Loaded {} pending files from queue", memoryQueue.size());
   }
 
-  public synchronized void enqueue(Path file) throws IOException {
-    QueueEntry entry = new QueueEntry(file, 0);
-    memoryQueue.offer(entry);
+  public void enqueue(Path file) throws IOException {
+    enqueue(file, UploadPriority.NORMAL);
+  }
+
+  public void enqueue(Path file, UploadPriority priority) throws IOException {
+    enqueue(file, priority, null);
+  }
+
+  public void enqueue(Path file, UploadPriority priority, String contentHash) throws IOException {
+    enqueue(file, priority, contentHash, sequence.next());
+  }
+
+  /**
+   * Enqueues a frame that already has an upload sequence number, from {@link #nextSequence}, so a
+   * frame first sent outside the queue keeps its id.
+   */
+  public synchronized void enqueue(Path file, UploadPriority priority, String contentHash, long seq)
+      throws IOException {
+    FlightEvents.QueueOperation jfr = new FlightEvents.QueueOperation();
+    jfr.begin();
+    QueueEntry entry =
+        new QueueEntry(file, 0, priority, System.currentTimeMillis(), 0, contentHash, seq);
+    lanes.get(priority).offer(entry);
     persistQueue();
-    log.info("File enqueued {}", file);
+    commit(jfr, "enqueue", file);
+    log.debug("File enqueued {} [{}]", file, priority);
+  }
+
+  /** Reserves an upload sequence number for a frame not (yet) queued. */
+  public long nextSequence() throws IOException {
+    return sequence.next();
+  }
+
+  /** Head of the highest-priority non-empty lane, without affecting the drain schedule. */
+  public synchronized QueueEntry peek() {
+    awaitLoaded();
+    for (UploadPriority p : UploadPriority.values()) {
+      QueueEntry head = lanes.get(p).peek();
+      if (head != null) return head;
+    }
+    return null;
   }
 
-  public QueueEntry peek() {
-    return memoryQueue.peek();
+  /**
+   * Picks the entry to upload next, or null if nothing is eligible yet. The entry stays queued, and
+   * is not handed out again, until {@link #markComplete}, {@link #incrementRetry} or {@link
+   * #release}; the choice advances the weighted round-robin state.
+   */
+  public synchronized QueueEntry next() {
+    FlightEvents.QueueOperation jfr = new FlightEvents.QueueOperation();
+    jfr.begin();
+    QueueEntry next = pick();
+    if (next == null) return null; // idle polls would drown out the rest
+    inFlight.add(next.file());
+    commit(jfr, "next", next.file());
+    return next;
+  }
+
+  /** Ends an attempt on {@code file} without an outcome; it may be handed out again at once. */
+  public synchronized void release(Path file) {
+    inFlight.remove(file);
+  }
+
+  private QueueEntry pick() {
+    awaitLoaded();
+    long now = System.currentTimeMillis();
+    Map<UploadPriority, QueueEntry> ready = new EnumMap<>(UploadPriority.class);
+    QueueEntry starved = null;
+    for (UploadPriority p : UploadPriority.values()) {
+      QueueEntry head = firstEligible(lanes.get(p), now);
+      if (head == null) continue;
+      ready.put(p, head);
+      if (now - head.enqueuedAt() > maxLaneWaitMillis
+          && (starved == null || head.enqueuedAt() < starved.enqueuedAt())) {
+        starved = head;
+      }
+    }
+    if (starved != null && picksSinceStarved >= STARVED_SHARE - 1) {
+      picksSinceStarved = 0;
+      return starved;
+    }
+
+    UploadPriority best = null;
+    int total = 0;
+    for (UploadPriority p : ready.keySet()) {
+      int weight = currentWeight.get(p) + p.getWeight();
+      currentWeight.put(p, weight);
+      total += p.getWeight();
+      if (best == null || weight > currentWeight.get(best)) best = p;
+    }
+    if (best == null) return null;
+    currentWeight.put(best, currentWeight.get(best) - total);
+    QueueEntry picked = ready.get(best);
+    if (picked == starved) {
+      picksSinceStarved = 0;
+    } else if (starved != null) {
+      picksSinceStarved++;
+    }
+    return picked;
+  }
+
+  private QueueEntry firstEligible(Deque<QueueEntry> lane, long now) {
+    for (QueueEntry e : lane) {
+      if (e.isEligible(now) && !inFlight.contains(e.file())) return e;
+    }
+    return null;
+  }
+
+  /**
+   * Earliest time any queued entry not in flight becomes eligible, or {@code Long.MAX_VALUE} if
+   * there is none.
+   */
+  public synchronized long nextEligibleAt() {
+    long earliest = Long.MAX_VALUE;
+    for (Deque<QueueEntry> lane : lanes.values()) {
+      for (QueueEntry e : lane) {
+        if (!inFlight.contains(e.file())) earliest = Math.min(earliest, e.nextAttemptAt());
+      }
+    }
+    return earliest;
+  }
+
+  public DeadLetterStore deadLetters() {
+    return deadLetters;
   }
 
   public synchronized void markComplete(Path file) throws IOException {
-    memoryQueue.removeIf(entry -> entry.file().equals(file));
+    FlightEvents.QueueOperation jfr = new FlightEvents.QueueOperation();
+    jfr.begin();
+    awaitLoaded();
+    for (Deque<QueueEntry> lane : lanes.values()) {
+      lane.removeIf(entry -> entry.file().equals(file));
+    }
+    inFlight.remove(file);
     persistQueue();
-    log.info("File marked complete {}", file);
+    commit(jfr, "complete", file);
+    log.debug("File marked complete {}", file);
+  }
+
+  public boolean incrementRetry(Path file) throws IOException {
+    return incrementRetry(file, "upload failed");
   }
 
-  public synchronized boolean incrementRetry(Path file) throws IOException {
-    List<QueueEntry> updated = new ArrayList<>();
-    for (QueueEntry e : memoryQueue) {
-      if (e.file().equals(file)) {
-        if (e.retries() + 1 >= MAX_RETRIES) {
-          log.warn("File {} exceeded retry limit ({}) - will be discarded", file, MAX_RETRIES);
+  /**
+   * Records a failed attempt and schedules the next one after the policy's backoff.
+   *
+   * @return true if the entry was rescheduled, false if it exhausted its retries and was moved to
+   *     the dead-letter store.
+   */
+  public synchronized boolean incrementRetry(Path file, String reason) throws IOException {
+    FlightEvents.QueueOperation jfr = new FlightEvents.QueueOperation();
+    jfr.begin();
+    awaitLoaded();
+    long now = System.currentTimeMillis();
+    QueueEntry buried = null;
+    boolean rescheduled = false;
+    for (Deque<QueueEntry> lane : lanes.values()) {
+      List<QueueEntry> updated = new ArrayList<>(lane.size());
+      for (QueueEntry e : lane) {
+        if (!e.file().equals(file)) {
+          updated.add(e);
           continue;
         }
-        updated.add(new QueueEntry(file, e.retries() + 1));
-      } else {
-        updated.add(e);
+        int retries = e.retries() + 1;
+        if (retries >= retryPolicy.maxRetries()) {
+          buried = e.withSchedule(retries, now);
+          continue;
+        }
+        long delay = retryPolicy.delayMillis(retries);
+        updated.add(e.withSchedule(retries, now + delay));
+        DiagJournal.record(JournalEvent.RETRY, retries, DiagJournal.frameId(file), delay, 0);
+        log.debug("File {} failed ({}), retry {} in {} ms", file, reason, retries, delay);
+        rescheduled = true;
       }
+      lane.clear();
+      lane.addAll(updated);
     }
-    memoryQueue.clear();
-    memoryQueue.addAll(updated);
+    inFlight.remove(file);
     persistQueue();
-    return true;
+    commit(jfr, "retry", file);
+    if (buried != null) {
+      DiagJournal.record(
+          JournalEvent.DEAD_LETTER, buried.retries(), DiagJournal.frameId(file), 0, 0);
+      log.warn("File {} exceeded retry limit ({})", file, retryPolicy.maxRetries());
+      deadLetters.bury(buried, reason);
+    }
+    return rescheduled;
+  }
+
+  // Caller holds the lock, so the depth is the one the operation left behind.
+  private void commit(FlightEvents.QueueOperation jfr, String operation, Path file) {
+    if (!jfr.shouldCommit()) return;
+    jfr.operation = operation;
+    jfr.frame = file.getFileName().toString();
+    jfr.depth = size();
+    jfr.commit();
   }
 
   private void persistQueue() throws IOException {
-    List<String> lines = memoryQueue.stream().map(QueueEntry::toString).toList();
-    Files.write(queueFile, lines, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+    // Until the backlog is merged in, the file on disk is the only complete copy.
+    if (!loaded) return;
+    List<String> lines = new ArrayList<>();
+    for (Deque<QueueEntry> lane : lanes.values()) {
+      for (QueueEntry e : lane) lines.add(e.toString());
+    }
+    Path tmp = queueFile.resolveSibling(queueFile.getFileName() + ".tmp");
+    Files.write(tmp, lines, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+    Files.move(tmp, queueFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    spoolSync.written(queueFile);
+  }
+
+  /** Files currently queued, once the persisted backlog has loaded. */
+  public synchronized Set<Path> queuedFiles() {
+    awaitLoaded();
+    Set<Path> files = new HashSet<>();
+    for (Deque<QueueEntry> lane : lanes.values()) {
+      for (QueueEntry e : lane) files.add(e.file());
+    }
+    return files;
+  }
+
+  public synchronized boolean isEmpty() {
+    awaitLoaded();
+    return size() == 0;
   }
 
-  public boolean isEmpty() {
-    return memoryQueue.isEmpty();
+  /** Enqueue time of the oldest entry, or 0 if empty. */
+  public synchronized long oldestEnqueuedAt() {
+    long oldest = Long.MAX_VALUE;
+    for (Deque<QueueEntry> lane : lanes.values()) {
+      QueueEntry head = lane.peek();
+      if (head != null) oldest = Math.min(oldest, head.enqueuedAt());
+    }
+    return oldest == Long.MAX_VALUE ? 0 : oldest;
   }
 
-  public boolean hasExceededRetryLimit(Path file) {
-    return memoryQueue.stream()
-        .filter(e -> e.file().equals(file))
-        .anyMatch(e -> e.retries() >= MAX_RETRIES);
+  public synchronized int size() {
+    int n = 0;
+    for (Deque<QueueEntry> lane : lanes.values()) n += lane.size();
+    return n;
   }
 }
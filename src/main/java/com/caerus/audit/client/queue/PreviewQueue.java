@@ -0,0 +1,200 @@
+package com.caerus.audit.client.queue;
+
+import com.caerus.audit.client.enums.UploadPriority;
+import com.caerus.audit.client.frame.FrameStore;
+import com.caerus.audit.client.frame.PixelKernels;
+import com.caerus.audit.client.metrics.ClientMetrics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Fast path for low-resolution previews, so the server's live view keeps up while full frames wait
+ * for bandwidth. A preview is a small JPEG named after its capture id ({@code
+ * <captureId>.preview.jpg}, the full frame being {@code <captureId>.png}), spooled through the
+ * {@link FrameStore} and held in its own {@link PersistentFileQueue}.
+ *
+ * <p>An old preview is of no use to a live view: only the newest {@code maxPending} are kept, a
+ * failed upload is not retried, and previews left over from an earlier run are dropped.
+ */
+public class PreviewQueue {
+  private static final Logger log = LoggerFactory.getLogger(PreviewQueue.class);
+  public static final String SUFFIX = ".preview.jpg";
+
+  private final Path directory;
+  private final PersistentFileQueue queue;
+  private final FrameStore frameStore;
+  private final int maxWidth;
+  private final float quality;
+  private final int maxPending;
+  private Path inFlight; // guarded by this
+
+  public PreviewQueue(
+      Path directory, FrameStore frameStore, int maxWidth, float quality, int maxPending)
+      throws IOException {
+    this.directory = directory;
+    this.queue =
+        PersistentFileQueue.open(
+            directory,
+            Duration.ofMinutes(5),
+            RetryPolicy.defaults(),
+            frameStore.spoolSync(),
+            DeadLetterStore.Quota.defaults());
+    this.frameStore = frameStore;
+    this.maxWidth = maxWidth;
+    this.quality = quality;
+    this.maxPending = Math.max(1, maxPending);
+  }
+
+  /** Whether {@code file} is a preview rather than a full frame. */
+  public static boolean isPreview(Path file) {
+    return file.getFileName().toString().endsWith(SUFFIX);
+  }
+
+  /** The capture id shared by a full frame and its preview: the file name up to the first dot. */
+  public static String captureId(Path file) {
+    String name = file.getFileName().toString();
+    int dot = name.indexOf('.');
+    return dot < 0 ? name : name.substring(0, dot);
+  }
+
+  /** Spools and enqueues a preview of {@code img}, dropping the oldest pending ones over budget. */
+  public Path offer(String captureId, BufferedImage img) throws IOException {
+    Files.createDirectories(directory);
+    Path file = directory.resolve(captureId + SUFFIX);
+    try (OutputStream out = frameStore.openOutput(file)) {
+      writeJpeg(downscale(img, maxWidth), quality, out);
+    } catch (IOException | RuntimeException e) {
+      frameStore.release(file);
+      Files.deleteIfExists(file);
+      throw e;
+    }
+    queue.enqueue(file, UploadPriority.CRITICAL, null);
+    trim();
+    return file;
+  }
+
+  private synchronized void trim() throws IOException {
+    List<Path> pending = new ArrayList<>(queue.queuedFiles());
+    pending.remove(inFlight);
+    // Capture ids are timestamps, so name order is capture order.
+    pending.sort(null);
+    for (int i = 0; i < pending.size() - maxPending; i++) {
+      drop(pending.get(i));
+      ClientMetrics.PREVIEWS_DROPPED.increment();
+    }
+  }
+
+  /** The next preview to upload, or null; it stays pending until {@link #complete}. */
+  public synchronized Path next() {
+    var entry = queue.next();
+    inFlight = entry != null ? entry.file() : null;
+    return inFlight;
+  }
+
+  /** Removes a preview once its single upload attempt is over, whatever the outcome. */
+  public synchronized void complete(Path file) throws IOException {
+    drop(file);
+    if (file.equals(inFlight)) inFlight = null;
+  }
+
+  private void drop(Path file) throws IOException {
+    queue.markComplete(file);
+    frameStore.release(file);
+    frameStore.delete(file);
+  }
+
+  public int size() {
+    return queue.size();
+  }
+
+  /** Drops previews written before {@code cutoffMillis}, queued or not: they are stale by now. */
+  public synchronized void recover(long cutoffMillis) throws IOException {
+    if (!Files.isDirectory(directory)) return;
+    List<Path> stale = new ArrayList<>();
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+      for (Path p : stream) {
+        String name = p.getFileName().toString();
+        if ((name.endsWith(SUFFIX) || name.endsWith(SUFFIX + FrameStore.PARTIAL_SUFFIX))
+            && Files.getLastModifiedTime(p).toMillis() < cutoffMillis) {
+          stale.add(p);
+        }
+      }
+    }
+    for (Path p : stale) drop(p);
+    if (!stale.isEmpty()) log.info("Dropped {} stale previews from {}", stale.size(), directory);
+  }
+
+  /**
+   * Scales {@code img} down to at most {@code maxWidth} pixels wide, halving while it can: exact
+   * halvings of packed-int rasters average 2x2 blocks with {@link PixelKernels}, anything else is
+   * drawn bilinear.
+   */
+  static BufferedImage downscale(BufferedImage img, int maxWidth) {
+    BufferedImage current = img;
+    int[] pixels;
+    while (current.getWidth() / 2 >= maxWidth
+        && current.getHeight() >= 2
+        && (pixels = PixelKernels.packed(current)) != null) {
+      int w = current.getWidth() / 2;
+      int h = current.getHeight() / 2;
+      BufferedImage next = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+      PixelKernels.get().halve(pixels, current.getWidth(), PixelKernels.packed(next), w, w, h);
+      current = next;
+    }
+    while (current.getWidth() > maxWidth) {
+      int w = Math.max(maxWidth, current.getWidth() / 2);
+      int h = Math.max(1, (int) ((long) current.getHeight() * w / current.getWidth()));
+      BufferedImage next = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+      Graphics2D g = next.createGraphics();
+      try {
+        g.setRenderingHint(
+            RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g.drawImage(current, 0, 0, w, h, null);
+      } finally {
+        g.dispose();
+      }
+      current = next;
+    }
+    return current;
+  }
+
+  private static void writeJpeg(BufferedImage img, float quality, OutputStream out)
+      throws IOException {
+    if (img.getType() != BufferedImage.TYPE_INT_RGB) {
+      // The JPEG writer rejects alpha.
+      BufferedImage rgb =
+          new BufferedImage(img.getWidth(), img.getHeight(), BufferedImage.TYPE_INT_RGB);
+      Graphics2D g = rgb.createGraphics();
+      g.drawImage(img, 0, 0, null);
+      g.dispose();
+      img = rgb;
+    }
+    ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+    try (ImageOutputStream ios = new MemoryCacheImageOutputStream(out)) {
+      ImageWriteParam param = writer.getDefaultWriteParam();
+      param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+      param.setCompressionQuality(quality);
+      writer.setOutput(ios);
+      writer.write(null, new IIOImage(img, null, null), param);
+    } finally {
+      writer.dispose();
+    }
+  }
+}
@@ -0,0 +1,23 @@
+package com.caerus.audit.client.queue;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Per-entry retry budget: exponential backoff from {@code baseDelay}, capped at {@code maxDelay},
+ * with ±20% jitter so files that failed together do not retry together.
+ */
+public record RetryPolicy(int maxRetries, Duration baseDelay, Duration maxDelay) {
+
+  public static RetryPolicy defaults() {
+    return new RetryPolicy(8, Duration.ofSeconds(5), Duration.ofMinutes(10));
+  }
+
+  /** Delay before the attempt following the given number of failures. */
+  public long delayMillis(int failures) {
+    long base = baseDelay.toMillis() << Math.min(Math.max(0, failures - 1), 20);
+    long capped = Math.min(base, maxDelay.toMillis());
+    double jitter = 0.8 + ThreadLocalRandom.current().nextDouble() * 0.4;
+    return (long) (capped * jitter);
+  }
+}
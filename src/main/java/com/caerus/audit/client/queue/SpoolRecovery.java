@@ -0,0 +1,101 @@
+package com.caerus.audit.client.queue;
+
+import com.caerus.audit.client.enums.UploadPriority;
+import com.caerus.audit.client.frame.ContentIndex;
+import com.caerus.audit.client.frame.FrameStore;
+import com.caerus.audit.client.metrics.ClientMetrics;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Startup scan that reconciles a spool directory with its queue after a crash: leftover partial
+ * writes are deleted, truncated frames are dropped (from the queue too), complete frames that never
+ * made it into the queue are adopted with the SHA-256 of their plaintext, and metadata sidecars of
+ * frames that are gone are deleted.
+ */
+public final class SpoolRecovery {
+  private static final Logger log = LoggerFactory.getLogger(SpoolRecovery.class);
+
+  private SpoolRecovery() {}
+
+  /**
+   * Scans {@code spoolDir} for files last modified before {@code cutoffMillis}, so frames being
+   * written by the running process are left alone.
+   *
+   * @return the number of frames adopted into the queue.
+   */
+  public static int recover(Path spoolDir, PersistentFileQueue queue, long cutoffMillis)
+      throws IOException {
+    return recover(spoolDir, queue, FrameStore.disabled(), cutoffMillis);
+  }
+
+  /** As above, reading frames through {@code frameStore} (which may encrypt the spool). */
+  public static int recover(
+      Path spoolDir, PersistentFileQueue queue, FrameStore frameStore, long cutoffMillis)
+      throws IOException {
+    if (!Files.isDirectory(spoolDir)) return 0;
+    List<Path> files;
+    try (Stream<Path> listing = Files.list(spoolDir)) {
+      files = listing.filter(Files::isRegularFile).sorted().toList();
+    }
+    Set<Path> queued = queue.queuedFiles();
+    int adopted = 0;
+    int discarded = 0;
+    for (Path file : files) {
+      String name = file.getFileName().toString();
+      try {
+        if (Files.getLastModifiedTime(file).toMillis() >= cutoffMillis) continue;
+        if (name.endsWith(FrameStore.PARTIAL_SUFFIX)) {
+          Files.deleteIfExists(file);
+          discarded++;
+        } else if (name.endsWith(".png")) {
+          if (!frameStore.isIntact(file)) {
+            if (!Files.exists(file)) continue;
+            log.warn("Discarding truncated frame {}", file);
+            if (queued.contains(file)) queue.markComplete(file);
+            frameStore.delete(file);
+            discarded++;
+          } else if (!queued.contains(file)) {
+            queue.enqueue(file, UploadPriority.NORMAL, sha256(frameStore, file));
+            adopted++;
+          }
+        } else if (name.endsWith(FrameStore.METADATA_SUFFIX)) {
+          Path frame =
+              file.resolveSibling(
+                  name.substring(0, name.length() - FrameStore.METADATA_SUFFIX.length()));
+          if (!Files.exists(frame)) Files.deleteIfExists(file);
+        }
+      } catch (NoSuchFileException e) {
+        // Uploaded and deleted, or moved to dead letters, by the running uploader meanwhile.
+        log.debug("Spool file gone during recovery: {}", file);
+      }
+    }
+    ClientMetrics.SPOOL_ADOPTED.add(adopted);
+    ClientMetrics.SPOOL_DISCARDED.add(discarded);
+    if (adopted > 0 || discarded > 0) {
+      log.info(
+          "Spool recovery in {}: adopted {} frames, discarded {}", spoolDir, adopted, discarded);
+    }
+    return adopted;
+  }
+
+  private static String sha256(FrameStore frameStore, Path file) throws IOException {
+    MessageDigest md = ContentIndex.sha256();
+    try (InputStream in = new DigestInputStream(frameStore.open(file), md)) {
+      in.transferTo(OutputStream.nullOutputStream());
+    }
+    return HexFormat.of().formatHex(md.digest());
+  }
+}
@@ -0,0 +1,64 @@
+package com.caerus.audit.client.queue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Per-client monotonic sequence of upload ids. Every frame gets its number once, at enqueue, and
+ * keeps it across retries and restarts, so a repeated upload is recognisable as such.
+ *
+ * <p>Numbers are reserved on disk in blocks, synced before use, so a number is never handed out
+ * twice; a restart skips the rest of the current block. A new sequence starts at the current time
+ * in milliseconds, so numbers keep rising even if the file is lost, as long as the client has
+ * averaged fewer than one upload per millisecond.
+ */
+public class UploadSequence {
+  private static final int BLOCK = 256;
+
+  private final Path file;
+  private long next; // guarded by this
+  private long reserved; // guarded by this
+
+  private UploadSequence(Path file, long next) {
+    this.file = file;
+    this.next = next;
+    this.reserved = next;
+  }
+
+  public static UploadSequence open(Path file) throws IOException {
+    long start = System.currentTimeMillis();
+    if (Files.exists(file)) {
+      String stored = Files.readString(file, StandardCharsets.US_ASCII).trim();
+      if (!stored.isEmpty()) start = Long.parseLong(stored);
+    } else {
+      Files.createDirectories(file.toAbsolutePath().getParent());
+    }
+    return new UploadSequence(file, start);
+  }
+
+  public synchronized long next() throws IOException {
+    if (next >= reserved) reserve(next + BLOCK);
+    return next++;
+  }
+
+  private void reserve(long upTo) throws IOException {
+    Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+    try (FileChannel ch =
+        FileChannel.open(
+            tmp,
+            StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING)) {
+      ch.write(ByteBuffer.wrap(Long.toString(upTo).getBytes(StandardCharsets.US_ASCII)));
+      ch.force(true);
+    }
+    Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    reserved = upTo;
+  }
+}
@@ -0,0 +1,66 @@
+package com.caerus.audit.client.service;
+
+import com.caerus.audit.client.metrics.ClientMetrics;
+import com.caerus.audit.client.model.FrameMetadata;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Holds the last metadata resolved by a {@link MetadataProvider} until the provider reports a
+ * change (a focus switch, say) or {@code maxAge} passes, whichever comes first; the age limit only
+ * covers changes the provider has no event for.
+ */
+public class CachedMetadata {
+  private static final Logger log = LoggerFactory.getLogger(CachedMetadata.class);
+
+  private record Snapshot(FrameMetadata metadata, long generation, long resolvedAt) {}
+
+  private final MetadataProvider provider;
+  private final long maxAgeMillis;
+  private final AtomicLong generation = new AtomicLong();
+  private volatile Snapshot snapshot;
+
+  private CachedMetadata(MetadataProvider provider, Duration maxAge) {
+    this.provider = provider;
+    this.maxAgeMillis = maxAge.toMillis();
+  }
+
+  /** A cache over {@code provider}, invalidated by the changes it reports. */
+  public static CachedMetadata create(MetadataProvider provider, Duration maxAge) {
+    CachedMetadata cache = new CachedMetadata(provider, maxAge);
+    provider.watch(cache::invalidate);
+    return cache;
+  }
+
+  /** Never resolves anything; for sessions whose screen this process cannot see. */
+  public static CachedMetadata none() {
+    return create(MetadataProvider.none(), Duration.ofDays(365));
+  }
+
+  /** The current metadata, resolved again only if it was invalidated or has expired. */
+  public FrameMetadata current() {
+    // Read first: an invalidation during the lookup leaves the snapshot already stale.
+    long gen = generation.get();
+    long now = System.currentTimeMillis();
+    Snapshot s = snapshot;
+    if (s != null && s.generation() == gen && now - s.resolvedAt() < maxAgeMillis) {
+      return s.metadata();
+    }
+    FrameMetadata metadata;
+    try {
+      metadata = provider.resolve();
+    } catch (RuntimeException e) {
+      log.debug("Metadata lookup failed: {}", e.getMessage());
+      metadata = null;
+    }
+    ClientMetrics.METADATA_LOOKUPS.increment();
+    snapshot = new Snapshot(metadata, gen, now);
+    return metadata;
+  }
+
+  public void invalidate() {
+    generation.incrementAndGet();
+  }
+}
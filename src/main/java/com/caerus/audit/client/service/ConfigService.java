@@ -1,6 +1,8 @@
 package com.caerus.audit.client.service;
 
 import com.caerus.audit.client.model.ServerAppSettingsDto;
+import com.caerus.audit.client.util.EndpointSelector;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import java.net.ConnectException;
 import java.net.URI;
@@ -9,30 +11,59 @@ import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.net.http.HttpTimeoutException;
 import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 public class ConfigService {
   private final Logger log = LoggerFactory.getLogger(ConfigService.class);
-  private final String serverBase;
+  private final EndpointSelector endpoints;
   private final String clientId;
   private final HttpClient client = HttpClient.newHttpClient();
   private final ObjectMapper mapper = new ObjectMapper();
   private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+  private final SettingsCache settingsCache;
   private volatile ServerAppSettingsDto cached;
+  private volatile long updatedAt;
   private final Duration fetchInterval = Duration.ofSeconds(30);
+  private final List<Consumer<ServerAppSettingsDto>> listeners = new CopyOnWriteArrayList<>();
 
   public ConfigService(String serverBase, String clientId) {
-    this.serverBase = serverBase;
+    this(serverBase, clientId, null);
+  }
+
+  /** Seeds the settings from {@code settingsCache} (if any) and keeps it up to date. */
+  public ConfigService(String serverBase, String clientId, SettingsCache settingsCache) {
+    this(EndpointSelector.single(serverBase), clientId, settingsCache);
+  }
+
+  public ConfigService(EndpointSelector endpoints, String clientId, SettingsCache settingsCache) {
+    this.endpoints = endpoints;
     this.clientId = clientId;
+    this.settingsCache = settingsCache;
+    SettingsCache.Snapshot snapshot = settingsCache != null ? settingsCache.load() : null;
+    if (snapshot != null) {
+      cached = snapshot.settings();
+      updatedAt = snapshot.savedAt().toEpochMilli();
+      if (snapshot.stale()) {
+        log.warn("Using stale cached settings from {}", snapshot.savedAt());
+      } else {
+        log.info("Using cached settings from {}", snapshot.savedAt());
+      }
+    }
   }
 
+  /**
+   * Starts polling; the first fetch runs in the background so a slow server never delays startup.
+   * Until it completes, {@link #getLatest()} returns the cached settings (or null).
+   */
   public void start() {
-    fetchNow();
-    scheduler.scheduleAtFixedRate(this::fetchNow, 30, 30, TimeUnit.SECONDS);
+    scheduler.scheduleAtFixedRate(this::fetchNow, 0, 30, TimeUnit.SECONDS);
   }
 
   public void stop() {
@@ -43,9 +74,44 @@ public class ConfigService {
     return cached;
   }
 
+  /** Seconds since the current settings were last confirmed by the server, or -1 if none. */
+  public double settingsAgeSeconds() {
+    return cached == null ? -1 : (System.currentTimeMillis() - updatedAt) / 1000.0;
+  }
+
+  /**
+   * Registers a callback invoked with every refreshed or pushed settings object, and right away
+   * with the current one if there is one.
+   */
+  public void addListener(Consumer<ServerAppSettingsDto> listener) {
+    listeners.add(listener);
+    ServerAppSettingsDto current = cached;
+    if (current != null) listener.accept(current);
+  }
+
+  /** Applies settings pushed by the server, e.g. in a WebSocket {@code SETTINGS_UPDATE}. */
+  public void onPush(JsonNode message) {
+    try {
+      apply(mapper.treeToValue(message.path("settings"), ServerAppSettingsDto.class));
+      log.info("Config updated by server push");
+    } catch (Exception e) {
+      log.warn("Invalid pushed settings: {}", e.getMessage());
+    }
+  }
+
+  private void apply(ServerAppSettingsDto dto) {
+    cached = dto;
+    updatedAt = System.currentTimeMillis();
+    if (settingsCache != null) settingsCache.save(dto);
+    for (Consumer<ServerAppSettingsDto> listener : listeners) {
+      listener.accept(dto);
+    }
+  }
+
   private void fetchNow() {
+    String base = endpoints.current();
     try {
-      String url = serverBase + "/api/v1/settings/latest";
+      String url = base + "/api/v1/settings/latest";
       HttpRequest req =
           HttpRequest.newBuilder(URI.create(url))
               .GET()
@@ -55,8 +121,7 @@ public class ConfigService {
 
       HttpResponse<String> resp = client.send(req, HttpResponse.BodyHandlers.ofString());
       if (resp.statusCode() == 200) {
-        ServerAppSettingsDto dto = mapper.readValue(resp.body(), ServerAppSettingsDto.class);
-        cached = dto;
+        apply(mapper.readValue(resp.body(), ServerAppSettingsDto.class));
         log.info("Config refreshed successfully from {}", url);
       } else {
         log.error("Config fetch failed: HTTP {}", resp.statusCode());
@@ -64,7 +129,8 @@ public class ConfigService {
     } catch (HttpTimeoutException e) {
       log.warn("Config fetch timed out: {}", e.getMessage());
     } catch (ConnectException e) {
-      log.warn("Cannot connect to server at {}: {}", serverBase, e.getMessage());
+      endpoints.reportFailure(base);
+      log.warn("Cannot connect to server at {}: {}", base, e.getMessage());
     } catch (Exception e) {
       log.warn("Error fetching config: {}", e.getMessage());
     }
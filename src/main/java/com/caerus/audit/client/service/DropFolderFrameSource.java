@@ -0,0 +1,38 @@
+package com.caerus.audit.client.service;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import javax.imageio.ImageIO;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reads the latest frame a helper running inside another user session has dropped into a folder. A
+ * process can only grab its own session's desktop, so a multi-session host takes frames this way
+ * and does the queueing and uploading for every session itself. Each frame is consumed once.
+ */
+public class DropFolderFrameSource implements FrameSource {
+  private static final Logger log = LoggerFactory.getLogger(DropFolderFrameSource.class);
+  static final String FRAME_FILE = "frame.png";
+
+  private final Path frame;
+
+  public DropFolderFrameSource(Path dropDir) {
+    this.frame = dropDir.resolve(FRAME_FILE);
+  }
+
+  @Override
+  public BufferedImage grab() {
+    try {
+      if (!Files.exists(frame)) return null;
+      BufferedImage img = ImageIO.read(frame.toFile());
+      Files.deleteIfExists(frame);
+      return img;
+    } catch (IOException e) {
+      log.warn("Could not read dropped frame {}: {}", frame, e.getMessage());
+      return null;
+    }
+  }
+}
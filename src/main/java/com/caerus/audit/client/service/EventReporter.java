@@ -2,6 +2,9 @@ package com.caerus.audit.client.service;
 
 import com.caerus.audit.client.model.ErrorLogRequest;
 import com.caerus.audit.client.model.EventLogRequest;
+import com.caerus.audit.client.util.BodyCompression;
+import com.caerus.audit.client.util.EndpointSelector;
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
@@ -9,21 +12,35 @@ import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.time.Instant;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 public class EventReporter {
   private final Logger log = LoggerFactory.getLogger(EventReporter.class);
-  private final String serverBaseUrl;
+  private static final Duration TIMEOUT = Duration.ofSeconds(30);
+  private final EndpointSelector endpoints;
   private final String clientId;
   private final String ipAddress;
   private final ObjectMapper mapper;
+  private final BodyCompression compression;
 
   public EventReporter(String serverBaseUrl, String clientId, String ipAddress) {
-    this.serverBaseUrl = serverBaseUrl;
+    this(EndpointSelector.single(serverBaseUrl), clientId, ipAddress);
+  }
+
+  public EventReporter(EndpointSelector endpoints, String clientId, String ipAddress) {
+    this(endpoints, clientId, ipAddress, BodyCompression.disabled());
+  }
+
+  public EventReporter(
+      EndpointSelector endpoints, String clientId, String ipAddress, BodyCompression compression) {
+    this.endpoints = endpoints;
     this.clientId = clientId;
     this.ipAddress = ipAddress;
+    this.compression = compression;
 
     this.mapper =
         new ObjectMapper()
@@ -33,22 +50,18 @@ public class EventReporter {
 
   public void logEvent(byte eventTypeId, String eventDesc) {
     try {
-      EventLogRequest request = new EventLogRequest();
-      request.setEventTypeId(eventTypeId);
-      request.setEventDesc(eventDesc);
-      request.setEventSource(clientId);
-      request.setEventSrcIPAddr(ipAddress);
-      request.setEventDTime(Instant.now());
-
-      HttpRequest httpRequest =
+      HttpRequest.Builder httpRequest =
           HttpRequest.newBuilder()
-              .uri(URI.create(serverBaseUrl + "/api/v1/logs"))
+              .uri(URI.create(endpoints.current() + "/api/v1/logs"))
               .header("Content-Type", "application/json")
-              .POST(HttpRequest.BodyPublishers.ofString(mapper.writeValueAsString(request)))
-              .build();
+              .timeout(TIMEOUT);
 
       HttpResponse<String> response =
-          HttpClient.newHttpClient().send(httpRequest, HttpResponse.BodyHandlers.ofString());
+          compression.send(
+              HttpClient.newHttpClient(),
+              httpRequest,
+              eventJson(eventTypeId, eventDesc).getBytes(StandardCharsets.UTF_8),
+              HttpResponse.BodyHandlers.ofString());
       if (response.statusCode() != 200) {
         log.warn("Failed to report event (HTTP {}): {}", response.statusCode(), response.body());
       }
@@ -57,6 +70,16 @@ public class EventReporter {
     }
   }
 
+  String eventJson(byte eventTypeId, String eventDesc) throws JsonProcessingException {
+    EventLogRequest request = new EventLogRequest();
+    request.setEventTypeId(eventTypeId);
+    request.setEventDesc(eventDesc);
+    request.setEventSource(clientId);
+    request.setEventSrcIPAddr(ipAddress);
+    request.setEventDTime(Instant.now());
+    return mapper.writeValueAsString(request);
+  }
+
   public void logError(byte errorTypeId, String errorDesc) {
     try {
       ErrorLogRequest request = new ErrorLogRequest();
@@ -66,15 +89,18 @@ public class EventReporter {
       request.setErrorSrcIPAddr(ipAddress);
       request.setErrorDTime(Instant.now());
 
-      HttpRequest httpRequest =
+      HttpRequest.Builder httpRequest =
           HttpRequest.newBuilder()
-              .uri(URI.create(serverBaseUrl + "/api/v1/logs/error"))
+              .uri(URI.create(endpoints.current() + "/api/v1/logs/error"))
               .header("Content-Type", "application/json")
-              .POST(HttpRequest.BodyPublishers.ofString(mapper.writeValueAsString(request)))
-              .build();
+              .timeout(TIMEOUT);
 
       HttpResponse<String> response =
-          HttpClient.newHttpClient().send(httpRequest, HttpResponse.BodyHandlers.ofString());
+          compression.send(
+              HttpClient.newHttpClient(),
+              httpRequest,
+              mapper.writeValueAsString(request).getBytes(StandardCharsets.UTF_8),
+              HttpResponse.BodyHandlers.ofString());
       if (response.statusCode() != 200) {
         log.warn("Failed to report error (HTTP {}): {}", response.statusCode(), response.body());
       }
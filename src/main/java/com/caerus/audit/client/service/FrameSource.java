@@ -0,0 +1,9 @@
+package com.caerus.audit.client.service;
+
+import java.awt.image.BufferedImage;
+
+/** Supplies raw frames to {@link ScreenshotService}; the desktop in production. */
+public interface FrameSource {
+  /** Returns the current frame, or null if none is available right now. */
+  BufferedImage grab();
+}
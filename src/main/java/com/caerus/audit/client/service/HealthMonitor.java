@@ -1,5 +1,6 @@
 package com.caerus.audit.client.service;
 
+import com.caerus.audit.client.util.SpoolUsage;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -32,20 +33,7 @@ public class HealthMonitor {
       log.info("WebSocket connected: {}", ws.isConnected());
       Path tmp = Paths.get(System.getProperty("java.io.tmpdir"), "auditclient");
       if (Files.exists(tmp)) {
-        long size =
-            Files.walk(tmp)
-                .filter(Files::isRegularFile)
-                .mapToLong(
-                    p -> {
-                      try {
-                        return Files.size(p);
-                      } catch (Exception e) {
-                        return 0L;
-                      }
-                    })
-                .sum();
-
-        long mb = size / (1024 * 1024);
+        long mb = SpoolUsage.usedBytes(tmp) / (1024 * 1024);
         log.info("Temp folder usage: {} MB", mb);
       }
     } catch (Exception e) {
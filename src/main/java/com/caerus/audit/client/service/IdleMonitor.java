@@ -5,6 +5,7 @@ import com.sun.jna.Native;
 import com.sun.jna.platform.win32.User32;
 import com.sun.jna.platform.win32.WinUser;
 import com.sun.jna.win32.StdCallLibrary;
+import java.time.Duration;
 import java.util.concurrent.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -13,9 +14,10 @@ public class IdleMonitor {
   private final Logger log = LoggerFactory.getLogger(IdleMonitor.class);
   private final ConfigService config;
   private final ScreenshotService screenshotService;
-  private final ScheduledExecutorService scheduler;
+  private volatile ScheduledExecutorService scheduler;
   private final EventReporter eventReporter;
   private boolean paused = false;
+  private volatile Watchdog.Heartbeat heartbeat = Watchdog.Heartbeat.NONE;
 
   public interface Kernel32 extends StdCallLibrary {
     Kernel32 INSTANCE = Native.load("kernel32", Kernel32.class);
@@ -28,8 +30,11 @@ public class IdleMonitor {
     this.config = config;
     this.screenshotService = screenshotService;
     this.eventReporter = eventReporter;
-    this.scheduler =
-        Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, "IdleMonitor-Thread"));
+    this.scheduler = createScheduler();
+  }
+
+  private static ScheduledExecutorService createScheduler() {
+    return Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, "IdleMonitor-Thread"));
   }
 
   public void start() {
@@ -37,10 +42,25 @@ public class IdleMonitor {
   }
 
   public void stop() {
+    heartbeat.disarm();
     scheduler.shutdownNow();
   }
 
+  /** Has {@code watchdog} restart the idle checks once none has run for {@code threshold}. */
+  public void watchedBy(Watchdog watchdog, Duration threshold) {
+    heartbeat = watchdog.register("idle", threshold, this::restart);
+  }
+
+  // The stalled check keeps its thread until it returns; checks go on on a new one.
+  private void restart() {
+    ScheduledExecutorService stalled = scheduler;
+    scheduler = createScheduler();
+    stalled.shutdownNow();
+    start();
+  }
+
   private void check() {
+    heartbeat.beat();
     try {
       long idleSec = LastInput.getIdleTimeSeconds();
       var s = config.getLatest();
@@ -0,0 +1,23 @@
+package com.caerus.audit.client.service;
+
+import com.caerus.audit.client.model.FrameMetadata;
+
+/**
+ * Looks up what is on screen for {@link ScreenshotService}: the foreground window and monitor
+ * layout in production. Lookups may be native calls; {@link CachedMetadata} keeps them off the
+ * per-frame path.
+ */
+public interface MetadataProvider {
+  /** Resolves the current metadata, or returns null if there is none to report. */
+  FrameMetadata resolve();
+
+  /**
+   * Arranges for {@code onChange} to run whenever a resolved value may have gone stale, e.g. when
+   * focus moves to another window. Providers without such events never call it.
+   */
+  default void watch(Runnable onChange) {}
+
+  static MetadataProvider none() {
+    return () -> null;
+  }
+}
@@ -0,0 +1,123 @@
+package com.caerus.audit.client.service;
+
+import com.caerus.audit.client.enums.UploadPriority;
+import com.caerus.audit.client.frame.FrameStore;
+import com.caerus.audit.client.metrics.ClientMetrics;
+import com.caerus.audit.client.queue.PersistentFileQueue;
+import com.caerus.audit.client.transport.UploadTransport;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Serves {@code CAPTURE_NOW} commands from the server: captures the screen at once and uploads the
+ * frame directly, ahead of the upload queue, then answers with a {@code CAPTURE_RESULT} message
+ * carrying the time spent capturing, uploading and waiting for the ack.
+ *
+ * <p>The periodic schedule is left alone. A frame whose direct upload fails is handed to the queue
+ * as {@link UploadPriority#CRITICAL}, so it is still delivered.
+ */
+public class OnDemandCapture {
+  private static final Logger log = LoggerFactory.getLogger(OnDemandCapture.class);
+  public static final String COMMAND = "CAPTURE_NOW";
+  public static final String RESULT = "CAPTURE_RESULT";
+  private static final Duration ACK_TIMEOUT = Duration.ofSeconds(20);
+
+  private final ScreenshotService screenshots;
+  private final PersistentFileQueue queue;
+  private final UploadTransport transport;
+  private final WebSocketClient wsClient;
+  private final FrameStore frameStore;
+  private final ObjectMapper mapper = new ObjectMapper();
+  // One at a time: a burst of requests is served in order rather than racing for the link.
+  private final ExecutorService executor =
+      Executors.newSingleThreadExecutor(
+          r -> {
+            Thread t = new Thread(r, "OnDemandCapture-Thread");
+            t.setDaemon(true);
+            return t;
+          });
+
+  public OnDemandCapture(
+      ScreenshotService screenshots,
+      PersistentFileQueue queue,
+      UploadTransport transport,
+      WebSocketClient wsClient,
+      FrameStore frameStore) {
+    this.screenshots = screenshots;
+    this.queue = queue;
+    this.transport = transport;
+    this.wsClient = wsClient;
+    this.frameStore = frameStore;
+  }
+
+  /** Starts answering {@code CAPTURE_NOW} messages on {@code wsClient}. */
+  public void start() {
+    wsClient.onMessage(COMMAND, this::onCommand);
+  }
+
+  public void stop() {
+    executor.shutdownNow();
+  }
+
+  // Runs on the WebSocket listener thread, which must not block.
+  private void onCommand(JsonNode command) {
+    long received = System.nanoTime();
+    String requestId = command.path("requestId").asText("");
+    log.info("On-demand capture requested [{}]", requestId);
+    executor.execute(() -> wsClient.sendText(serve(requestId, received).toString()));
+  }
+
+  /** Captures and uploads one frame, returning the {@code CAPTURE_RESULT} to send back. */
+  ObjectNode serve(String requestId, long receivedNanos) {
+    ObjectNode result = mapper.createObjectNode().put("type", RESULT).put("requestId", requestId);
+    try {
+      ScreenshotService.Captured frame = screenshots.captureUnqueued();
+      long captured = System.nanoTime();
+      result.put("captureMs", TimeUnit.NANOSECONDS.toMillis(captured - receivedNanos));
+      if (frame == null) {
+        return result.put("success", false).put("error", "nothing to capture");
+      }
+
+      Path file = frame.file();
+      long seq = queue.nextSequence();
+      String uploadId = String.valueOf(seq);
+      result.put("uploadId", uploadId);
+      boolean delivered;
+      try {
+        delivered = transport.upload(file, uploadId, frame.contentHash());
+        long uploaded = System.nanoTime();
+        result.put("uploadMs", TimeUnit.NANOSECONDS.toMillis(uploaded - captured));
+        delivered = delivered && transport.awaitAck(uploadId, ACK_TIMEOUT);
+        result.put("ackMs", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - uploaded));
+      } finally {
+        frameStore.release(file);
+      }
+
+      long totalMicros = ClientMetrics.microsSince(receivedNanos);
+      result.put("totalMs", totalMicros / 1000);
+      if (delivered) {
+        ClientMetrics.ON_DEMAND_LATENCY.record(totalMicros);
+        frameStore.delete(file);
+        log.info("On-demand frame {} delivered in {} ms", uploadId, totalMicros / 1000);
+        return result.put("success", true);
+      }
+      queue.enqueue(file, UploadPriority.CRITICAL, frame.contentHash(), seq);
+      log.warn("On-demand frame {} not delivered directly, queued", uploadId);
+      return result.put("success", false).put("queued", true);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return result.put("success", false).put("error", "interrupted");
+    } catch (Exception e) {
+      log.error("On-demand capture failed: {}", e.getMessage());
+      return result.put("success", false).put("error", String.valueOf(e.getMessage()));
+    }
+  }
+}
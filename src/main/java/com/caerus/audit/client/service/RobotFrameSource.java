@@ -0,0 +1,26 @@
+package com.caerus.audit.client.service;
+
+import java.awt.AWTException;
+import java.awt.Rectangle;
+import java.awt.Robot;
+import java.awt.Toolkit;
+import java.awt.image.BufferedImage;
+
+/** Captures the primary screen with {@link Robot}. */
+public class RobotFrameSource implements FrameSource {
+  private final Robot robot;
+
+  public RobotFrameSource() {
+    try {
+      robot = new Robot();
+    } catch (AWTException e) {
+      throw new IllegalStateException("Failed to create Robot", e);
+    }
+  }
+
+  @Override
+  public BufferedImage grab() {
+    Rectangle screenRect = new Rectangle(Toolkit.getDefaultToolkit().getScreenSize());
+    return robot.createScreenCapture(screenRect);
+  }
+}
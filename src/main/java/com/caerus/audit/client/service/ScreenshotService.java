@@ -1,29 +1,52 @@
 package com.caerus.audit.client.service;
 
 import com.caerus.audit.client.enums.EventType;
+import com.caerus.audit.client.enums.UploadPriority;
+import com.caerus.audit.client.frame.ContentIndex;
+import com.caerus.audit.client.frame.FrameEncoder;
+import com.caerus.audit.client.frame.FrameStore;
+import com.caerus.audit.client.frame.PixelKernels;
+import com.caerus.audit.client.metrics.ClientMetrics;
+import com.caerus.audit.client.metrics.DiagJournal;
+import com.caerus.audit.client.metrics.FlightEvents;
+import com.caerus.audit.client.metrics.JournalEvent;
+import com.caerus.audit.client.model.FrameMetadata;
 import com.caerus.audit.client.queue.PersistentFileQueue;
+import com.caerus.audit.client.queue.PreviewQueue;
+import com.caerus.audit.client.queue.SpoolRecovery;
+import com.caerus.audit.client.util.SpoolBudget;
 import com.caerus.audit.client.util.SystemLock;
-import java.awt.*;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import java.awt.image.BufferedImage;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.HexFormat;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
-import javax.imageio.ImageIO;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 public class ScreenshotService {
+  /** A spooled frame and the SHA-256 of its content. */
+  public record Captured(Path file, String contentHash) {}
+
   private final Logger log = LoggerFactory.getLogger(ScreenshotService.class);
   private static final long MAX_FOLDER_SIZE_MB = 1024;
   private static final double LOCK_THRESHOLD = 0.9;
   private static final double UNLOCK_THRESHOLD = 0.5;
+  // With previews on, new full frames are skipped above this so the spool lasts longer.
+  private static final double FULL_FRAME_THRESHOLD = 0.75;
+  private static final ObjectMapper mapper = new ObjectMapper();
 
   private final ConfigService config;
   private final PersistentFileQueue queue;
@@ -31,25 +54,127 @@ public class ScreenshotService {
   private ScheduledExecutorService scheduler;
   private ScheduledFuture<?> captureTask;
   private final Object lock = new Object();
-  private Robot robot;
+  private final Object captureLock = new Object();
+  private final FrameSource frameSource;
+  private final Path spoolDir;
+  private final FrameStore frameStore;
+  private final FrameEncoder encoder;
+  private final CachedMetadata metadata;
+  private final PreviewQueue previews; // null: no previews
+  private final SpoolBudget spoolBudget;
+  private final boolean lockWorkstation;
+  private final ContentIndex contentIndex = new ContentIndex(64);
+  // The previous frame's pixels (TYPE_INT_RGB frames only) and pixel hash, guarded by captureLock.
+  private int[] lastPixels;
+  private int lastWidth;
+  private int lastHeight;
+  private String lastPixelHash;
+  private final long createdAt = System.currentTimeMillis();
   private volatile boolean running = false;
+  private long intervalSec;
   private volatile boolean lockedDueToSpace = false;
+  private volatile boolean spoolPressure = false;
+  private volatile Watchdog.Heartbeat heartbeat = Watchdog.Heartbeat.NONE;
+  private Duration stallThreshold; // guarded by lock; null: not watched
+
+  /**
+   * Optional collaborators; each setter notes its default. A service with a frame store or encoder
+   * shared with other sessions would set them here, along with the scheduler the captures run on.
+   */
+  public static final class Options {
+    private FrameSource frameSource;
+    private Path spoolDir = Paths.get(System.getProperty("java.io.tmpdir"), "auditclient");
+    private ScheduledExecutorService scheduler;
+    private FrameStore frameStore = FrameStore.disabled();
+    private FrameEncoder encoder = FrameEncoder.imageIo();
+    private CachedMetadata metadata = CachedMetadata.none();
+    private PreviewQueue previews;
+    private SpoolBudget spoolBudget;
+    private boolean lockWorkstation = true;
+
+    /** Where frames come from; the local desktop by default. */
+    public Options frameSource(FrameSource frameSource) {
+      this.frameSource = frameSource;
+      return this;
+    }
+
+    /** Spool directory watched for disk usage; {@code <java.io.tmpdir>/auditclient} by default. */
+    public Options spoolDir(Path spoolDir) {
+      this.spoolDir = spoolDir;
+      return this;
+    }
+
+    /** Runs the captures, possibly shared with other sessions; a thread of its own by default. */
+    public Options scheduler(ScheduledExecutorService scheduler) {
+      this.scheduler = scheduler;
+      return this;
+    }
+
+    public Options frameStore(FrameStore frameStore) {
+      this.frameStore = frameStore;
+      return this;
+    }
+
+    public Options encoder(FrameEncoder encoder) {
+      this.encoder = encoder;
+      return this;
+    }
+
+    /** Source of the metadata sidecar spooled with every frame; none by default. */
+    public Options metadata(CachedMetadata metadata) {
+      this.metadata = metadata;
+      return this;
+    }
+
+    /**
+     * Offered a preview of every frame ahead of the full frame, which is then skipped while the
+     * spool is under pressure; no previews by default.
+     */
+    public Options previews(PreviewQueue previews) {
+      this.previews = previews;
+      return this;
+    }
+
+    /** Disk budget the spool draws on, possibly shared; 1 GB of the spool directory by default. */
+    public Options spoolBudget(SpoolBudget spoolBudget) {
+      this.spoolBudget = spoolBudget;
+      return this;
+    }
+
+    /**
+     * Whether a full spool locks the workstation, on by default. Off, capture is only paused until
+     * the spool drains, as on a multi-session host, where locking would lock the host's own console
+     * rather than the session whose capture filled it.
+     */
+    public Options lockWorkstation(boolean lockWorkstation) {
+      this.lockWorkstation = lockWorkstation;
+      return this;
+    }
+  }
 
   public ScreenshotService(
-      ConfigService config, PersistentFileQueue queue, EventReporter eventReporter) {
+      ConfigService config,
+      PersistentFileQueue queue,
+      EventReporter eventReporter,
+      Options options) {
     this.config = config;
     this.queue = queue;
     this.eventReporter = eventReporter;
-    try {
-      robot = new Robot();
-    } catch (AWTException e) {
-      log.error("Failed to create Robot", e);
-      throw new IllegalStateException(e);
-    }
-    this.scheduler = createScheduler();
+    this.frameSource = options.frameSource != null ? options.frameSource : new RobotFrameSource();
+    this.spoolDir = options.spoolDir;
+    this.scheduler = options.scheduler != null ? options.scheduler : createScheduler();
+    this.frameStore = options.frameStore;
+    this.encoder = options.encoder;
+    this.metadata = options.metadata;
+    this.previews = options.previews;
+    this.spoolBudget =
+        options.spoolBudget != null
+            ? options.spoolBudget
+            : new SpoolBudget(spoolDir, MAX_FOLDER_SIZE_MB * 1024 * 1024);
+    this.lockWorkstation = options.lockWorkstation;
   }
 
-  private ScheduledExecutorService createScheduler() {
+  private static ScheduledExecutorService createScheduler() {
     return Executors.newSingleThreadScheduledExecutor(
         r -> {
           Thread t = new Thread(r, "ScreenshotService-Thread");
@@ -71,17 +196,55 @@ public class ScreenshotService {
         scheduler = createScheduler();
       }
 
-      long intervalSec = Math.max(1, getCaptureInterval());
+      intervalSec = Math.max(1, getCaptureInterval());
+      updateStallThreshold();
+      heartbeat.beat();
       captureTask =
           scheduler.scheduleAtFixedRate(this::captureIfActive, 0, intervalSec, TimeUnit.SECONDS);
       log.info("ScreenshotService started (interval={}s)", intervalSec);
     }
   }
 
+  /** Re-reads the capture interval and reschedules if it changed, e.g. once settings arrive. */
+  public void onSettingsChanged() {
+    synchronized (lock) {
+      long interval = Math.max(1, getCaptureInterval());
+      if (!running || interval == intervalSec) return;
+      captureTask.cancel(false);
+      intervalSec = interval;
+      updateStallThreshold();
+      captureTask =
+          scheduler.scheduleAtFixedRate(
+              this::captureIfActive, interval, interval, TimeUnit.SECONDS);
+      log.info("Capture interval changed to {}s", interval);
+    }
+  }
+
+  /** Seconds between captures currently scheduled. */
+  public long intervalSec() {
+    synchronized (lock) {
+      return intervalSec;
+    }
+  }
+
+  /**
+   * Reconciles the spool with the queue after a crash (see {@link SpoolRecovery}). Frames written
+   * by this instance are not touched, so it can run in the background while capturing.
+   */
+  public void recoverSpool() {
+    try {
+      SpoolRecovery.recover(spoolDir, queue, frameStore, createdAt);
+      if (previews != null) previews.recover(createdAt);
+    } catch (IOException e) {
+      log.error("Spool recovery failed in {}: {}", spoolDir, e.getMessage());
+    }
+  }
+
   public void stop() {
     synchronized (lock) {
       if (!running) return;
       running = false;
+      heartbeat.disarm();
 
       if (captureTask != null && !captureTask.isCancelled()) {
         captureTask.cancel(false);
@@ -92,23 +255,46 @@ public class ScreenshotService {
     }
   }
 
-  private double getUsedFraction(Path tmpDir) {
+  /**
+   * Has {@code watchdog} restart capturing once no capture has started for {@code threshold}, or
+   * for two capture intervals if the server sets a longer one.
+   */
+  public void watchedBy(Watchdog watchdog, Duration threshold) {
+    synchronized (lock) {
+      stallThreshold = threshold;
+      heartbeat = watchdog.register("capture", effectiveStallThreshold(), this::restart);
+    }
+  }
+
+  Duration stallThreshold() {
+    synchronized (lock) {
+      return effectiveStallThreshold();
+    }
+  }
+
+  private Duration effectiveStallThreshold() {
+    Duration twoIntervals = Duration.ofSeconds(2 * intervalSec);
+    return twoIntervals.compareTo(stallThreshold) > 0 ? twoIntervals : stallThreshold;
+  }
+
+  private void updateStallThreshold() {
+    if (stallThreshold != null) heartbeat.threshold(effectiveStallThreshold());
+  }
+
+  // The stalled capture keeps its thread until it returns; captures go on on a new scheduler.
+  private void restart() {
+    synchronized (lock) {
+      if (captureTask != null) captureTask.cancel(true);
+      scheduler.shutdownNow();
+      scheduler = createScheduler();
+      running = false;
+      start();
+    }
+  }
+
+  private double getUsedFraction() {
     try {
-      long totalBytes = MAX_FOLDER_SIZE_MB * 1024 * 1024;
-      long usedBytes =
-          Files.walk(tmpDir)
-              .filter(Files::isRegularFile)
-              .mapToLong(
-                  p -> {
-                    try {
-                      return Files.size(p);
-                    } catch (IOException e) {
-                      return 0L;
-                    }
-                  })
-              .sum();
-
-      return (double) usedBytes / totalBytes;
+      return spoolBudget.usedFraction();
     } catch (IOException e) {
       log.error("Error calculating folder usage", e);
       return 0.0;
@@ -123,9 +309,10 @@ public class ScreenshotService {
   private void captureIfActive() {
     try {
       if (!running) return;
-      Path tmpDir = Paths.get(System.getProperty("java.io.tmpdir"), "auditclient");
+      heartbeat.beat();
 
-      double usedFraction = getUsedFraction(tmpDir);
+      double usedFraction = getUsedFraction();
+      spoolPressure = usedFraction >= FULL_FRAME_THRESHOLD;
       if (lockedDueToSpace) {
         if (usedFraction <= UNLOCK_THRESHOLD) {
           lockedDueToSpace = false;
@@ -140,8 +327,16 @@ public class ScreenshotService {
       }
       if (usedFraction >= LOCK_THRESHOLD) {
         lockedDueToSpace = true;
-        stop();
         log.warn("Disk usage above 90%, pausing screenshot capture...");
+        // Last frame before the lock is forensic evidence; it must not wait behind the backlog.
+        capture(UploadPriority.CRITICAL);
+        if (!lockWorkstation) {
+          // Stay scheduled: the check above resumes capturing once the spool has drained.
+          eventReporter.logEvent(
+              EventType.CLIENT_STORAGE_FULL.getCode(), "Disk usage exceeded 90%, capture paused");
+          return;
+        }
+        stop();
         SystemLock.lockWorkstation();
         eventReporter.logEvent(
             EventType.CLIENT_STORAGE_FULL.getCode(), "Disk usage exceeded 90%, workstation locked");
@@ -154,17 +349,155 @@ public class ScreenshotService {
   }
 
   public Path capture() throws Exception {
+    return capture(UploadPriority.NORMAL);
+  }
+
+  /**
+   * Captures one frame, or returns null if the frame source had nothing to offer or only a preview
+   * was spooled.
+   */
+  public Path capture(UploadPriority priority) throws Exception {
+    Captured captured = capture(priority, true);
+    return captured != null ? captured.file() : null;
+  }
+
+  /**
+   * Captures and spools one frame for the caller to upload itself, outside the upload queue and
+   * without a preview; null if the frame source had nothing to offer.
+   */
+  public Captured captureUnqueued() throws Exception {
+    return capture(UploadPriority.CRITICAL, false);
+  }
+
+  private Captured capture(UploadPriority priority, boolean queued) throws Exception {
+    // Scheduled and on-demand captures must not share a timestamp, i.e. a file name.
+    synchronized (captureLock) {
+      return spool(priority, queued);
+    }
+  }
+
+  private Captured spool(UploadPriority priority, boolean queued) throws Exception {
     LocalDateTime now = LocalDateTime.now();
     String timestamp = now.format(DateTimeFormatter.ofPattern("yyyyMMdd_HHmmssSSS"));
-    Path tmpDir = Paths.get(System.getProperty("java.io.tmpdir"), "auditclient");
-    Files.createDirectories(tmpDir);
-    Path out = tmpDir.resolve(timestamp + ".png");
-
-    Rectangle screenRect = new Rectangle(Toolkit.getDefaultToolkit().getScreenSize());
-    BufferedImage img = robot.createScreenCapture(screenRect);
-    ImageIO.write(img, "png", out.toFile());
-    queue.enqueue(out);
-    log.info("Captured screenshot to {}", out);
-    return out;
+    Files.createDirectories(spoolDir);
+    Path out = spoolDir.resolve(timestamp + ".png");
+    FlightEvents.Capture jfr = new FlightEvents.Capture();
+    jfr.begin();
+    jfr.frame = out.getFileName().toString();
+    jfr.priority = priority.name();
+
+    long grabStart = System.nanoTime();
+    BufferedImage img = frameSource.grab();
+    jfr.grabMicros = ClientMetrics.microsSince(grabStart);
+    if (img == null) {
+      commit(jfr, "empty");
+      return null;
+    }
+    ClientMetrics.CAPTURE_GRAB.record(jfr.grabMicros);
+    FrameMetadata onScreen = metadata.current();
+
+    if (previews != null && queued) {
+      try {
+        previews.offer(timestamp, img);
+      } catch (IOException e) {
+        log.warn("Could not spool preview of {}: {}", out, e.getMessage());
+      }
+      if (spoolPressure && priority == UploadPriority.NORMAL) {
+        ClientMetrics.FULL_FRAMES_SKIPPED.increment();
+        log.debug("Spool under pressure, skipped full frame {}", out);
+        commit(jfr, "preview-only");
+        return null;
+      }
+    }
+
+    String pixelHash = pixelHash(img, jfr);
+    ContentIndex.Entry same = contentIndex.lookup(pixelHash);
+    if (same != null) {
+      try {
+        frameStore.link(out, same.file());
+        writeMetadata(out, onScreen);
+        ClientMetrics.FRAMES_DEDUPLICATED.increment();
+        contentIndex.put(pixelHash, out, same.contentHash());
+        if (queued) queue.enqueue(out, priority, same.contentHash());
+        DiagJournal.record(
+            JournalEvent.DEDUPLICATED, priority.ordinal(), DiagJournal.frameId(out), 0, 0);
+        log.debug("Captured unchanged screen to {} (same content as {})", out, same.file());
+        commit(jfr, "deduplicated");
+        return new Captured(out, same.contentHash());
+      } catch (IOException e) {
+        log.debug(
+            "Could not link {} to {}, encoding instead: {}", out, same.file(), e.getMessage());
+      }
+    }
+
+    long encodeStart = System.nanoTime();
+    MessageDigest sha256 = ContentIndex.sha256();
+    try (OutputStream os = new DigestOutputStream(frameStore.openOutput(out), sha256)) {
+      encoder.encode(img, os);
+    } catch (IOException | RuntimeException e) {
+      // Closing committed whatever was written; a partial frame must not be picked up later.
+      frameStore.release(out);
+      Files.deleteIfExists(out);
+      throw e;
+    }
+    long encodeMicros = ClientMetrics.microsSince(encodeStart);
+    long bytes = Files.size(out);
+    ClientMetrics.CAPTURE_ENCODE.record(encodeMicros);
+    ClientMetrics.FRAME_BYTES.record(bytes);
+
+    String contentHash = HexFormat.of().formatHex(sha256.digest());
+    writeMetadata(out, onScreen);
+    contentIndex.put(pixelHash, out, contentHash);
+    if (queued) queue.enqueue(out, priority, contentHash);
+    DiagJournal.record(
+        JournalEvent.CAPTURED, priority.ordinal(), DiagJournal.frameId(out), bytes, encodeMicros);
+    log.debug("Captured screenshot to {}", out);
+    jfr.encodeMicros = encodeMicros;
+    jfr.bytes = bytes;
+    commit(jfr, "encoded");
+    return new Captured(out, contentHash);
+  }
+
+  /**
+   * {@link ContentIndex#pixelHash}, taken from the previous frame if no pixel changed: an idle
+   * screen is the usual duplicate, and a diff costs a fraction of the SHA-256.
+   */
+  private String pixelHash(BufferedImage img, FlightEvents.Capture jfr) {
+    int[] pixels = img.getType() == BufferedImage.TYPE_INT_RGB ? PixelKernels.packed(img) : null;
+    int w = img.getWidth();
+    int h = img.getHeight();
+    String hash = null;
+    if (pixels != null
+        && lastPixels != null
+        && lastPixels != pixels
+        && w == lastWidth
+        && h == lastHeight) {
+      int changed = PixelKernels.get().countChanged(pixels, lastPixels, w * h);
+      jfr.changedPixels = changed;
+      if (changed == 0) hash = lastPixelHash;
+    }
+    if (hash == null) hash = ContentIndex.pixelHash(img);
+    // The raster's own array rather than a copy, as sources hand out a new image per grab; other
+    // image types cannot be diffed and are not kept at all.
+    lastPixels = pixels;
+    lastWidth = w;
+    lastHeight = h;
+    lastPixelHash = hash;
+    return hash;
+  }
+
+  private static void commit(FlightEvents.Capture jfr, String outcome) {
+    jfr.outcome = outcome;
+    jfr.commit();
+  }
+
+  private void writeMetadata(Path out, FrameMetadata onScreen) {
+    if (onScreen == null) return;
+    try {
+      frameStore.writeMetadata(out, mapper.writeValueAsBytes(onScreen));
+    } catch (IOException e) {
+      // The frame matters more than its description; upload it without.
+      log.warn("Could not write metadata for {}: {}", out, e.getMessage());
+    }
   }
 }
@@ -0,0 +1,90 @@
+package com.caerus.audit.client.service;
+
+import com.caerus.audit.client.model.ServerAppSettingsDto;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Last-known-good server settings on disk, so a client restarted without a server starts with the
+ * right policy instead of built-in defaults. The file is a small versioned envelope replaced
+ * atomically on every save; a cache in another format or from another server is ignored, and one
+ * older than {@code maxAge} is still used but reported as stale.
+ */
+public class SettingsCache {
+  private static final Logger log = LoggerFactory.getLogger(SettingsCache.class);
+  static final int FORMAT = 1;
+
+  private final Path file;
+  private final String serverBase;
+  private final Duration maxAge;
+  private final ObjectMapper mapper = new ObjectMapper();
+
+  public record Snapshot(ServerAppSettingsDto settings, Instant savedAt, boolean stale) {}
+
+  public SettingsCache(Path file, String serverBase, Duration maxAge) {
+    this.file = file;
+    this.serverBase = serverBase;
+    this.maxAge = maxAge;
+  }
+
+  /** Reads the cache, or returns null if there is none usable. */
+  public Snapshot load() {
+    if (!Files.exists(file)) return null;
+    try {
+      JsonNode root = mapper.readTree(file.toFile());
+      if (root.path("format").asInt() != FORMAT) {
+        log.warn("Ignoring settings cache {}: format {}", file, root.path("format").asInt());
+        return null;
+      }
+      if (!serverBase.equals(root.path("server").asText())) {
+        log.warn("Ignoring settings cache {}: written for {}", file, root.path("server").asText());
+        return null;
+      }
+      Instant savedAt = Instant.ofEpochMilli(root.path("savedAt").asLong());
+      ServerAppSettingsDto settings =
+          mapper.treeToValue(root.path("settings"), ServerAppSettingsDto.class);
+      boolean stale = savedAt.plus(maxAge).isBefore(Instant.now());
+      return new Snapshot(settings, savedAt, stale);
+    } catch (IOException e) {
+      log.warn("Unreadable settings cache {}: {}", file, e.getMessage());
+      return null;
+    }
+  }
+
+  /** Replaces the cache with {@code settings}; a crash mid-write leaves the previous copy. */
+  public void save(ServerAppSettingsDto settings) {
+    ObjectNode root = mapper.createObjectNode();
+    root.put("format", FORMAT);
+    root.put("server", serverBase);
+    root.put("savedAt", System.currentTimeMillis());
+    root.set("settings", mapper.valueToTree(settings));
+    Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+    try {
+      Files.createDirectories(file.toAbsolutePath().getParent());
+      try (FileChannel ch =
+          FileChannel.open(
+              tmp,
+              StandardOpenOption.CREATE,
+              StandardOpenOption.WRITE,
+              StandardOpenOption.TRUNCATE_EXISTING)) {
+        ch.write(ByteBuffer.wrap(mapper.writeValueAsBytes(root)));
+        ch.force(true);
+      }
+      Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    } catch (IOException e) {
+      log.warn("Could not write settings cache {}: {}", file, e.getMessage());
+    }
+  }
+}
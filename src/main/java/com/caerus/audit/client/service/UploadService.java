@@ -1,41 +1,95 @@
 package com.caerus.audit.client.service;
 
 import com.caerus.audit.client.enums.ErrorType;
+import com.caerus.audit.client.frame.FrameStore;
+import com.caerus.audit.client.metrics.ClientMetrics;
+import com.caerus.audit.client.metrics.DiagJournal;
+import com.caerus.audit.client.metrics.FlightEvents;
+import com.caerus.audit.client.metrics.JournalEvent;
+import com.caerus.audit.client.queue.AckedRanges;
 import com.caerus.audit.client.queue.PersistentFileQueue;
-import com.caerus.audit.client.util.HttpUtil;
-import com.caerus.audit.client.util.SystemLock;
+import com.caerus.audit.client.queue.PreviewQueue;
+import com.caerus.audit.client.transport.UploadTransport;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 public class UploadService {
   private static final Logger log = LoggerFactory.getLogger(UploadService.class);
+  private static final Duration PREVIEW_ACK_TIMEOUT = Duration.ofSeconds(5);
+  private static final int MAX_ACKED_RANGES = 1024;
 
   private final PersistentFileQueue queue;
+  private final PreviewQueue previews; // null: no preview fast path
   private final WebSocketClient wsClient;
-  private final HttpUtil httpUtil;
+  private final UploadTransport transport;
   private final EventReporter eventReporter;
+  private final FrameStore frameStore;
+  private volatile Thread loopThread; // the upload loop stops once this is another thread
+  private volatile Watchdog.Heartbeat heartbeat = Watchdog.Heartbeat.NONE;
+  private volatile Thread previewThread; // likewise for the preview loop
+  private volatile Watchdog.Heartbeat previewHeartbeat = Watchdog.Heartbeat.NONE;
+  // Per id prefix, i.e. per queue, as sequence numbers are only unique within one.
+  private final Map<String, AckedRanges> acked = new ConcurrentHashMap<>();
+
+  /** Optional collaborators; each setter notes its default. */
+  public static final class Options {
+    private PersistentFileQueue queue;
+    private PreviewQueue previews;
+    private FrameStore frameStore = FrameStore.disabled();
+
+    /**
+     * The queue {@link #start()} drains. Unset for callers that drive {@link #drainOne} over their
+     * own queues.
+     */
+    public Options queue(PersistentFileQueue queue) {
+      this.queue = queue;
+      return this;
+    }
+
+    /**
+     * Drained on a thread of its own, so previews do not wait behind full frames; none by default.
+     */
+    public Options previews(PreviewQueue previews) {
+      this.previews = previews;
+      return this;
+    }
+
+    /** Told when each frame's upload attempt is over; {@link FrameStore#disabled()} by default. */
+    public Options frameStore(FrameStore frameStore) {
+      this.frameStore = frameStore;
+      return this;
+    }
+  }
 
   public UploadService(
-      PersistentFileQueue queue,
       WebSocketClient wsClient,
-      HttpUtil httpUtil,
-      EventReporter eventReporter) {
-    this.queue = queue;
+      UploadTransport transport,
+      EventReporter eventReporter,
+      Options options) {
+    this.queue = options.queue;
+    this.previews = options.previews;
     this.wsClient = wsClient;
-    this.httpUtil = httpUtil;
+    this.transport = transport;
     this.eventReporter = eventReporter;
+    this.frameStore = options.frameStore;
   }
 
   /** Blocking sequential upload loop */
   public void start() {
-    log.info("UploadService started (sequential mode)");
+    if (queue == null) throw new IllegalStateException("UploadService has no queue to drain");
+    log.info("UploadService started (sequential mode, weighted priority lanes)");
+    loopThread = Thread.currentThread();
 
     // Wait until WebSocket is connected
     while (!wsClient.isConnected()) {
+      heartbeat.beat();
+      previewHeartbeat.beat();
       log.info("Waiting for WebSocket to connect...");
       try {
         Thread.sleep(2000);
@@ -45,42 +99,45 @@ public class UploadService {
       }
     }
 
-    while (true) {
-      try {
-        var entry = queue.peek();
-        if (entry == null) {
-          Thread.sleep(2000);
-          continue;
-        }
+    if (previews != null) restartPreviews();
 
-        Path file = entry.file();
-        String uploadId = file.getFileName().toString();
-        log.info("Uploading file [{}]...", file);
-
-        boolean uploaded = httpUtil.uploadFile(file, uploadId);
-        if (!uploaded) {
-          queue.incrementRetry(file);
-          if (queue.hasExceededRetryLimit(file)) {
-            log.error("File {} permanently failed after max retries", file);
-            SystemLock.lockWorkstation();
-            eventReporter.logError(
-                ErrorType.STORAGE_ERROR.getCode(),
-                "File upload failed after max retries: " + file.getFileName().toString());
-          }
-          log.warn("Upload failed for {}, will retry later.", file);
-          continue;
-        }
+    runLoop();
+  }
 
-        boolean ack = wsClient.waitForAck(uploadId, Duration.ofSeconds(20));
-        if (ack) {
-          queue.markComplete(file);
-          Files.deleteIfExists(file);
-          log.info("File [{}] upload acknowledged and deleted.", file.getFileName());
-        } else {
-          log.warn("No ack for {}, retrying later", uploadId);
-          queue.incrementRetry(file);
-        }
+  /**
+   * Has {@code watchdog} restart the upload loop, and the preview loop if any, once an iteration
+   * takes longer than {@code threshold}.
+   */
+  public void watchedBy(Watchdog watchdog, Duration threshold) {
+    heartbeat = watchdog.register("upload", threshold, this::restart);
+    if (previews != null) {
+      previewHeartbeat = watchdog.register("preview", threshold, this::restartPreviews);
+    }
+  }
+
+  /**
+   * Hands the loop to a fresh thread and interrupts the stalled one, which exits once whatever it
+   * is blocked in returns. Until then its entry stays in flight in the queue, so the new loop does
+   * not send it concurrently; if the old thread records no outcome, the entry is released and
+   * picked up again.
+   */
+  private void restart() {
+    Thread stalled = loopThread;
+    Thread fresh = new Thread(this::runLoop, "UploadService-Thread");
+    loopThread = fresh;
+    fresh.start();
+    if (stalled != null) stalled.interrupt();
+  }
 
+  private void runLoop() {
+    while (loopThread == Thread.currentThread()) {
+      heartbeat.beat();
+      try {
+        if (!drainOne(queue, "")) {
+          // Empty, or every entry is waiting out its retry backoff.
+          long wait = Math.min(2000, queue.nextEligibleAt() - System.currentTimeMillis());
+          Thread.sleep(Math.max(50, wait));
+        }
       } catch (InterruptedException e) {
         Thread.currentThread().interrupt();
         log.warn("UploadService interrupted.");
@@ -92,4 +149,154 @@ public class UploadService {
       }
     }
   }
+
+  private void restartPreviews() {
+    Thread stalled = previewThread;
+    Thread fresh = new Thread(this::runPreviews, "UploadService-Previews");
+    fresh.setDaemon(true);
+    previewThread = fresh;
+    fresh.start();
+    if (stalled != null) stalled.interrupt();
+  }
+
+  private void runPreviews() {
+    while (previewThread == Thread.currentThread()) {
+      previewHeartbeat.beat();
+      try {
+        if (!drainPreview(previews)) Thread.sleep(100);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      } catch (Exception e) {
+        log.error("Preview upload error: {}", e.getMessage());
+      }
+    }
+  }
+
+  /**
+   * Uploads the next preview of {@code previews} in a single attempt; a failed preview is dropped,
+   * as a newer one is always on its way.
+   *
+   * @return false if there was no preview pending.
+   */
+  public boolean drainPreview(PreviewQueue previews) throws IOException, InterruptedException {
+    Path file = previews.next();
+    if (file == null) return false;
+    String uploadId = file.getFileName().toString();
+    try {
+      boolean delivered =
+          transport.upload(file, uploadId) && transport.awaitAck(uploadId, PREVIEW_ACK_TIMEOUT);
+      if (delivered) {
+        ClientMetrics.PREVIEWS_UPLOADED.increment();
+      } else {
+        ClientMetrics.PREVIEWS_DROPPED.increment();
+        log.debug("Preview {} not delivered, dropped", uploadId);
+      }
+    } finally {
+      previews.complete(file);
+    }
+    return true;
+  }
+
+  /**
+   * Uploads and awaits the ack for the next eligible entry of {@code queue}. The upload id is the
+   * entry's sequence number, prefixed with {@code idPrefix} so ids from several queues cannot
+   * collide; an entry whose number was already acked, say to an attempt that timed out waiting, is
+   * completed without sending it again.
+   *
+   * @return false if the queue had nothing eligible.
+   */
+  public boolean drainOne(PersistentFileQueue queue, String idPrefix)
+      throws IOException, InterruptedException {
+    var entry = queue.next();
+    if (entry == null) return false;
+
+    Path file = entry.file();
+    AckedRanges ranges = ackedRanges(idPrefix);
+    long seq = entry.seq();
+    String uploadId = idPrefix + (seq != 0 ? seq : file.getFileName());
+    try {
+      // The ack for an attempt that timed out may have come in since.
+      if (seq != 0 && entry.retries() > 0 && transport.awaitAck(uploadId, Duration.ZERO)) {
+        ranges.add(seq);
+      }
+      if (seq != 0 && ranges.contains(seq)) {
+        log.debug("File [{}] already acknowledged as {}, not uploading again", file, uploadId);
+        ClientMetrics.UPLOADS.increment();
+        queue.markComplete(file);
+        frameStore.delete(file);
+      } else if (upload(queue, file, uploadId, entry.contentHash()) && seq != 0) {
+        ranges.add(seq);
+      }
+      return true;
+    } finally {
+      // A no-op once the outcome is recorded; after an exception the entry is free again.
+      queue.release(file);
+      // Retries read the spool file; only the first attempt is served from memory.
+      frameStore.release(file);
+    }
+  }
+
+  /** Acked sequence numbers of the queue drained with {@code idPrefix}, for diagnostics. */
+  public AckedRanges ackedRanges(String idPrefix) {
+    return acked.computeIfAbsent(idPrefix, p -> new AckedRanges(MAX_ACKED_RANGES));
+  }
+
+  /** Returns true if the upload was acked. */
+  private boolean upload(PersistentFileQueue queue, Path file, String uploadId, String contentHash)
+      throws IOException, InterruptedException {
+    log.debug("Uploading file [{}]...", file);
+
+    if (!Files.exists(file)) {
+      log.warn("Queued file {} no longer exists, dropping entry", file);
+      queue.markComplete(file);
+      frameStore.delete(file);
+      return false;
+    }
+    long size = frameStore.content(file).length();
+    long uploadStart = System.nanoTime();
+    boolean uploaded = transport.upload(file, uploadId, contentHash);
+    long uploadMicros = ClientMetrics.microsSince(uploadStart);
+    ClientMetrics.UPLOAD_LATENCY.record(uploadMicros);
+    long frameId = DiagJournal.frameId(file);
+    DiagJournal.record(JournalEvent.UPLOADED, uploaded ? 1 : 0, frameId, size, uploadMicros);
+    if (!uploaded) {
+      retryOrDeadLetter(queue, file, "upload rejected or failed");
+      return false;
+    }
+
+    ClientMetrics.UPLOAD_BYTES.add(size);
+    FlightEvents.Ack jfr = new FlightEvents.Ack();
+    jfr.begin();
+    long ackStart = System.nanoTime();
+    boolean ack = transport.awaitAck(uploadId, Duration.ofSeconds(20));
+    long ackMicros = ClientMetrics.microsSince(ackStart);
+    jfr.uploadId = uploadId;
+    jfr.acked = ack;
+    jfr.commit();
+    DiagJournal.record(JournalEvent.ACKED, ack ? 1 : 0, frameId, ackMicros, 0);
+    if (ack) {
+      ClientMetrics.ACK_LATENCY.record(ackMicros);
+      ClientMetrics.UPLOADS.increment();
+      queue.markComplete(file);
+      frameStore.delete(file);
+      log.debug("File [{}] upload acknowledged and deleted.", file.getFileName());
+    } else {
+      log.warn("No ack for {}, retrying later", uploadId);
+      retryOrDeadLetter(queue, file, "no ack within timeout");
+    }
+    return ack;
+  }
+
+  private void retryOrDeadLetter(PersistentFileQueue queue, Path file, String reason)
+      throws IOException {
+    ClientMetrics.UPLOAD_RETRIES.increment();
+    if (!queue.incrementRetry(file, reason)) {
+      ClientMetrics.UPLOAD_DROPS.increment();
+      log.error("File {} permanently failed after max retries, moved to dead-letter store", file);
+      eventReporter.logError(
+          ErrorType.STORAGE_ERROR.getCode(),
+          "File upload failed after max retries, dead-lettered: " + file.getFileName());
+    }
+  }
 }
@@ -0,0 +1,230 @@
+package com.caerus.audit.client.service;
+
+import com.caerus.audit.client.enums.EventType;
+import com.caerus.audit.client.metrics.ClientMetrics;
+import java.io.IOException;
+import java.lang.management.LockInfo;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MonitorInfo;
+import java.lang.management.ThreadInfo;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Notices service loops that stopped making progress, e.g. an upload blocked in a socket read. Each
+ * loop beats its {@link Heartbeat} once per iteration; a beat older than the loop's threshold is a
+ * stall. On a stall the watchdog writes a thread dump and a metrics snapshot to {@code dumpDir},
+ * reports a {@code SERVICE_FAILED} event and restarts the loop, once per stall.
+ */
+public class Watchdog {
+  private static final Logger log = LoggerFactory.getLogger(Watchdog.class);
+  private static final int KEEP_DUMPS = 10;
+
+  /** Progress signal of one loop. Disarmed while the loop is deliberately idle. */
+  public static final class Heartbeat {
+    /** Belongs to no watchdog; beats go nowhere. */
+    public static final Heartbeat NONE = new Heartbeat("none", Duration.ZERO, () -> {});
+
+    private final String name;
+    private volatile long thresholdNanos;
+    private final Runnable restart;
+    private volatile long lastBeat = System.nanoTime();
+    private volatile boolean armed;
+
+    private Heartbeat(String name, Duration threshold, Runnable restart) {
+      this.name = name;
+      this.thresholdNanos = threshold.toNanos();
+      this.restart = restart;
+    }
+
+    public void beat() {
+      lastBeat = System.nanoTime();
+      armed = true;
+    }
+
+    /** Changes how long the loop may go without a beat, e.g. when its own period changed. */
+    public void threshold(Duration threshold) {
+      thresholdNanos = threshold.toNanos();
+    }
+
+    /** Stops watching until the next {@link #beat()}, e.g. while the service is paused. */
+    public void disarm() {
+      armed = false;
+    }
+
+    long ageNanos(long now) {
+      return now - lastBeat;
+    }
+  }
+
+  private final EventReporter eventReporter;
+  private final Path dumpDir;
+  private final Duration checkInterval;
+  private final List<Heartbeat> heartbeats = new CopyOnWriteArrayList<>();
+  private final ScheduledExecutorService scheduler =
+      Executors.newSingleThreadScheduledExecutor(
+          r -> {
+            Thread t = new Thread(r, "Watchdog-Thread");
+            t.setDaemon(true);
+            return t;
+          });
+
+  public Watchdog(EventReporter eventReporter, Path dumpDir, Duration checkInterval) {
+    this.eventReporter = eventReporter;
+    this.dumpDir = dumpDir;
+    this.checkInterval = checkInterval;
+  }
+
+  /**
+   * Watches a loop that should beat at least every {@code threshold}; {@code restart} must bring up
+   * a fresh loop without waiting for the stalled one.
+   */
+  public Heartbeat register(String name, Duration threshold, Runnable restart) {
+    Heartbeat heartbeat = new Heartbeat(name, threshold, restart);
+    heartbeats.add(heartbeat);
+    return heartbeat;
+  }
+
+  public void start() {
+    long period = checkInterval.toMillis();
+    scheduler.scheduleAtFixedRate(this::check, period, period, TimeUnit.MILLISECONDS);
+  }
+
+  public void stop() {
+    scheduler.shutdownNow();
+  }
+
+  /** Checks every heartbeat once, restarting the stalled loops. */
+  void check() {
+    long now = System.nanoTime();
+    for (Heartbeat hb : heartbeats) {
+      long age = hb.ageNanos(now);
+      if (!hb.armed || age <= hb.thresholdNanos) continue;
+      try {
+        onStall(hb, age);
+      } catch (RuntimeException e) {
+        log.error("Watchdog could not handle stall of {}: {}", hb.name, e.getMessage(), e);
+      }
+    }
+  }
+
+  private void onStall(Heartbeat hb, long ageNanos) {
+    long seconds = TimeUnit.NANOSECONDS.toSeconds(ageNanos);
+    log.error("{} loop made no progress for {}s, restarting it", hb.name, seconds);
+    ClientMetrics.WATCHDOG_RESTARTS.increment();
+    Path dump = writeDump(hb, ageNanos);
+
+    String description =
+        "Service loop '"
+            + hb.name
+            + "' stalled for "
+            + seconds
+            + "s and was restarted"
+            + (dump != null ? " (diagnostics: " + dump.getFileName() + ")" : "");
+    // The report goes over the network, which may be what is stuck.
+    CompletableFuture.runAsync(
+        () -> eventReporter.logEvent(EventType.SERVICE_FAILED.getCode(), description));
+
+    // A fresh threshold for the new loop; a second stall is reported again.
+    hb.beat();
+    hb.restart.run();
+  }
+
+  private Path writeDump(Heartbeat stalled, long ageNanos) {
+    try {
+      Files.createDirectories(dumpDir);
+      String ts = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss"));
+      Path file = dumpDir.resolve("stall-" + stalled.name + "-" + ts + ".txt");
+      Files.writeString(file, diagnostics(stalled, ageNanos));
+      pruneDumps();
+      return file;
+    } catch (IOException e) {
+      log.error("Could not write stall diagnostics to {}: {}", dumpDir, e.getMessage());
+      return null;
+    }
+  }
+
+  private String diagnostics(Heartbeat stalled, long ageNanos) {
+    StringBuilder sb = new StringBuilder();
+    long now = System.nanoTime();
+    sb.append("Stalled loop: ")
+        .append(stalled.name)
+        .append(" (no beat for ")
+        .append(TimeUnit.NANOSECONDS.toMillis(ageNanos))
+        .append(" ms)\n\nHeartbeats:\n");
+    for (Heartbeat hb : heartbeats) {
+      sb.append("  ")
+          .append(hb.name)
+          .append(hb.armed ? "" : " (disarmed)")
+          .append(": last beat ")
+          .append(TimeUnit.NANOSECONDS.toMillis(hb.ageNanos(now)))
+          .append(" ms ago, threshold ")
+          .append(TimeUnit.NANOSECONDS.toMillis(hb.thresholdNanos))
+          .append(" ms\n");
+    }
+    sb.append("\nThreads:\n");
+    for (ThreadInfo info : ManagementFactory.getThreadMXBean().dumpAllThreads(true, true)) {
+      appendThread(sb, info);
+    }
+    sb.append("\nMetrics:\n").append(ClientMetrics.REGISTRY.scrape());
+    return sb.toString();
+  }
+
+  // ThreadInfo.toString() cuts stacks at eight frames; a stall is usually deeper.
+  private static void appendThread(StringBuilder sb, ThreadInfo info) {
+    sb.append('"')
+        .append(info.getThreadName())
+        .append("\" #")
+        .append(info.getThreadId())
+        .append(info.isDaemon() ? " daemon " : " ")
+        .append(info.getThreadState());
+    if (info.getLockName() != null) sb.append(" on ").append(info.getLockName());
+    if (info.getLockOwnerName() != null) {
+      sb.append(" owned by \"").append(info.getLockOwnerName()).append('"');
+    }
+    sb.append('\n');
+    StackTraceElement[] stack = info.getStackTrace();
+    MonitorInfo[] monitors = info.getLockedMonitors();
+    for (int i = 0; i < stack.length; i++) {
+      sb.append("\tat ").append(stack[i]).append('\n');
+      for (MonitorInfo m : monitors) {
+        if (m.getLockedStackDepth() == i) sb.append("\t- locked ").append(m).append('\n');
+      }
+    }
+    for (LockInfo lock : info.getLockedSynchronizers()) {
+      sb.append("\t- holds ").append(lock).append('\n');
+    }
+    sb.append('\n');
+  }
+
+  private void pruneDumps() throws IOException {
+    List<Path> dumps = new ArrayList<>();
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(dumpDir, "stall-*.txt")) {
+      stream.forEach(dumps::add);
+    }
+    if (dumps.size() <= KEEP_DUMPS) return;
+    dumps.sort((a, b) -> Long.compare(lastModified(a), lastModified(b)));
+    for (Path old : dumps.subList(0, dumps.size() - KEEP_DUMPS)) Files.deleteIfExists(old);
+  }
+
+  private static long lastModified(Path p) {
+    try {
+      return Files.getLastModifiedTime(p).toMillis();
+    } catch (IOException e) {
+      return 0;
+    }
+  }
+}
@@ -1,40 +1,92 @@
 package com.caerus.audit.client.service;
 
+import com.caerus.audit.client.metrics.ClientMetrics;
+import com.caerus.audit.client.metrics.DiagJournal;
+import com.caerus.audit.client.metrics.JournalEvent;
+import com.caerus.audit.client.util.EndpointSelector;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.WebSocket;
+import java.nio.ByteBuffer;
 import java.time.Duration;
 import java.util.Map;
 import java.util.concurrent.*;
+import java.util.function.Consumer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 public class WebSocketClient {
   private static final Logger log = LoggerFactory.getLogger(WebSocketClient.class);
 
-  private final String serverBase;
+  private final EndpointSelector endpoints;
   private final String clientId;
+  private final Duration reconnectMin;
+  private final Duration reconnectMax;
   private final HttpClient httpClient = HttpClient.newHttpClient();
   private final ObjectMapper mapper = new ObjectMapper();
   private final Map<String, Boolean> ackMap = new ConcurrentHashMap<>();
+  private final Map<String, Consumer<JsonNode>> messageHandlers = new ConcurrentHashMap<>();
+
+  private static final long SEND_TIMEOUT_SEC = 30;
+
+  // The socket allows one outstanding send. Sends wait on this, not on the client monitor, and the
+  // listener thread never takes it, so a slow send holds up neither reconnects nor acks.
+  private final Object sendLock = new Object();
+
+  private final ScheduledExecutorService reconnector =
+      Executors.newSingleThreadScheduledExecutor(
+          r -> {
+            Thread t = new Thread(r, "WebSocketClient-Reconnect");
+            t.setDaemon(true);
+            return t;
+          });
 
   private volatile WebSocket ws;
+  private volatile String connectedTo;
   private volatile boolean connected = false;
+  private volatile boolean everConnected = false;
+  private volatile boolean stopped = false;
+  private boolean reconnectPending; // guarded by this
+  private int reconnectAttempts; // guarded by this
 
   public WebSocketClient(String serverBase, String clientId) {
-    this.serverBase = serverBase;
+    this(EndpointSelector.single(serverBase), clientId);
+  }
+
+  public WebSocketClient(EndpointSelector endpoints, String clientId) {
+    this(endpoints, clientId, Duration.ofSeconds(1), Duration.ofSeconds(60));
+  }
+
+  /**
+   * Connects to the best of {@code endpoints} and pins it while connected, as the server acks
+   * uploads on this session. A lost connection is retried after a jittered delay doubling from
+   * {@code reconnectMin} up to {@code reconnectMax}, on whichever endpoint is best by then.
+   */
+  public WebSocketClient(
+      EndpointSelector endpoints, String clientId, Duration reconnectMin, Duration reconnectMax) {
+    this.endpoints = endpoints;
     this.clientId = clientId;
+    this.reconnectMin = reconnectMin;
+    this.reconnectMax = reconnectMax;
   }
 
   public synchronized void start() {
-    if (connected) return;
+    stopped = false;
+    connect();
+  }
+
+  private synchronized void connect() {
+    reconnectPending = false;
+    if (connected || stopped) return;
 
+    String base = endpoints.best();
     try {
-      String uri = serverBase.replaceFirst("^http", "ws") + "/ws/heartbeat?clientId=" + clientId;
+      String uri = base.replaceFirst("^http", "ws") + "/ws/heartbeat?clientId=" + clientId;
       log.info("Connecting WebSocket: {}", uri);
 
+      long start = System.nanoTime();
       ws =
           httpClient
               .newWebSocketBuilder()
@@ -42,65 +94,170 @@ public class WebSocketClient {
               .buildAsync(URI.create(uri), new WSListener())
               .join();
 
+      connectedTo = base;
       connected = true;
+      reconnectAttempts = 0;
+      endpoints.pin(base);
+      endpoints.reportSuccess(base, System.nanoTime() - start);
     } catch (Exception e) {
-      log.error("WebSocket connection failed: {}", e.getMessage(), e);
+      log.warn("WebSocket connection to {} failed: {}", base, e.getMessage());
+      endpoints.reportFailure(base);
+      scheduleReconnect();
     }
   }
 
+  private synchronized void scheduleReconnect() {
+    if (stopped || reconnectPending) return;
+    reconnectPending = true;
+    long max = reconnectMax.toMillis();
+    long delay = Math.min(max, reconnectMin.toMillis() << Math.min(reconnectAttempts++, 20));
+    // Jittered, so clients dropped together by one node do not all land on the next at once.
+    delay = delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+    log.info("Reconnecting WebSocket in {} ms", delay);
+    reconnector.schedule(this::connect, delay, TimeUnit.MILLISECONDS);
+  }
+
+  private void onDisconnect(WebSocket webSocket) {
+    // Late events of a socket already replaced must not take down the new one.
+    if (webSocket != ws) return;
+    connected = false;
+    String base = connectedTo;
+    if (base != null) endpoints.unpin(base);
+    scheduleReconnect();
+  }
+
   public boolean isConnected() {
     return connected;
   }
 
   public synchronized void stop() {
+    stopped = true;
     try {
       if (ws != null) ws.sendClose(WebSocket.NORMAL_CLOSURE, "Client closed").join();
     } catch (Exception ignored) {
     }
     connected = false;
+    if (connectedTo != null) endpoints.unpin(connectedTo);
   }
 
-  public synchronized void sendText(String text) {
-    if (ws != null && connected) {
+  /** The endpoint this socket is connected to, or null. */
+  public String endpoint() {
+    return connected ? connectedTo : null;
+  }
+
+  /**
+   * Sends one text message and blocks until the socket has accepted it.
+   *
+   * @return true if the message was written, false if not connected or the send failed.
+   */
+  public boolean sendText(String text) {
+    synchronized (sendLock) {
+      WebSocket socket = ws;
+      if (socket == null || !connected) return false;
       try {
-        ws.sendText(text, true);
+        socket.sendText(text, true).get(SEND_TIMEOUT_SEC, TimeUnit.SECONDS);
+        return true;
       } catch (Exception e) {
         log.error("WS send error: {}", e.getMessage());
+        return false;
+      }
+    }
+  }
+
+  /**
+   * Sends one binary message and blocks until the socket has accepted it, so a caller streaming
+   * many frames is paced by the underlying TCP window.
+   *
+   * @return true if the frame was written, false if not connected or the send failed.
+   */
+  public boolean sendBinary(ByteBuffer data) {
+    synchronized (sendLock) {
+      WebSocket socket = ws;
+      if (socket == null || !connected) return false;
+      try {
+        socket.sendBinary(data, true).get(SEND_TIMEOUT_SEC, TimeUnit.SECONDS);
+        return true;
+      } catch (Exception e) {
+        log.error("WS binary send error: {}", e.getMessage());
+        return false;
       }
     }
   }
 
+  /**
+   * Registers a handler for JSON messages whose {@code type} equals the given value. Handlers run
+   * on the WebSocket listener thread and must not block.
+   */
+  public void onMessage(String type, Consumer<JsonNode> handler) {
+    messageHandlers.put(type, handler);
+  }
+
+  /** Checks at least once, so a zero timeout picks up an ack that has already arrived. */
   public boolean waitForAck(String uploadId, Duration timeout) throws InterruptedException {
     long end = System.currentTimeMillis() + timeout.toMillis();
-    while (System.currentTimeMillis() < end) {
-      Boolean ack = ackMap.remove(uploadId);
+    while (true) {
+      Boolean ack = pollAck(uploadId);
       if (ack != null) return ack;
+      if (System.currentTimeMillis() >= end) return false;
       Thread.sleep(200);
     }
-    return false;
+  }
+
+  /** Removes and returns a received ack, or null if none has arrived. */
+  Boolean pollAck(String uploadId) {
+    return ackMap.remove(uploadId);
+  }
+
+  /** Dispatches one JSON message from the server: upload acks and registered handlers. */
+  void handleMessage(String message) {
+    try {
+      JsonNode node = mapper.readTree(message);
+      String type = node.path("type").asText();
+      String uploadId = node.path("uploadId").asText();
+      boolean success = node.path("success").asBoolean(true);
+      DiagJournal.record(
+          JournalEvent.WS_MESSAGE,
+          type.hashCode(),
+          DiagJournal.frameId(uploadId),
+          message.length(),
+          0);
+
+      if (type.startsWith("UPLOAD_SUCCESS")) {
+        ackMap.put(uploadId, success);
+        log.debug("Ack received for uploadId={} success={}", uploadId, success);
+      } else {
+        Consumer<JsonNode> handler = messageHandlers.get(type);
+        if (handler != null) handler.accept(node);
+      }
+    } catch (Exception e) {
+      log.error("Invalid WS message: {}", e.getMessage());
+    }
   }
 
   public void sendPong() {
-    sendText("pong");
-    log.debug("Sent pong heartbeat to server.");
+    if (sendText("pong")) log.debug("Sent pong heartbeat to server.");
   }
 
   private class WSListener implements WebSocket.Listener {
     @Override
     public void onOpen(WebSocket webSocket) {
       log.info("WebSocket connected successfully.");
+      if (everConnected) ClientMetrics.WS_RECONNECTS.increment();
+      everConnected = true;
       connected = true;
+      DiagJournal.record(JournalEvent.WS_STATE, 1, 0, 0, 0);
       webSocket.request(1);
     }
 
     @Override
     public CompletionStage<?> onText(WebSocket webSocket, CharSequence data, boolean last) {
       String message = data.toString();
-      log.info("WS msg: {}", message);
+      log.debug("WS msg: {}", message);
 
       if ("ping".equalsIgnoreCase(message)) {
         log.debug("Received ping, sending pong...");
-        sendPong();
+        // Off the listener thread: the pong may have to wait for an upload chunk in flight.
+        CompletableFuture.runAsync(WebSocketClient.this::sendPong);
         webSocket.request(1);
         return CompletableFuture.completedFuture(null);
       } else if ("pong".equalsIgnoreCase(message)) {
@@ -109,19 +266,7 @@ public class WebSocketClient {
         return CompletableFuture.completedFuture(null);
       }
 
-      try {
-        JsonNode node = mapper.readTree(message);
-        String type = node.path("type").asText();
-        String uploadId = node.path("uploadId").asText();
-        boolean success = node.path("success").asBoolean(true);
-
-        if (type.startsWith("UPLOAD_SUCCESS")) {
-          ackMap.put(uploadId, success);
-          log.info("Ack received for uploadId={} success={}", uploadId, success);
-        }
-      } catch (Exception e) {
-        log.error("Invalid WS message: {}", e.getMessage());
-      }
+      handleMessage(message);
 
       webSocket.request(1);
       return CompletableFuture.completedFuture(null);
@@ -129,15 +274,17 @@ public class WebSocketClient {
 
     @Override
     public CompletionStage<?> onClose(WebSocket webSocket, int statusCode, String reason) {
-      connected = false;
+      DiagJournal.record(JournalEvent.WS_STATE, 0, 0, statusCode, 0);
       log.warn("WebSocket closed [{}]: {}", statusCode, reason);
+      onDisconnect(webSocket);
       return CompletableFuture.completedFuture(null);
     }
 
     @Override
     public void onError(WebSocket webSocket, Throwable error) {
-      connected = false;
+      DiagJournal.record(JournalEvent.WS_STATE, 0, 0, 0, 0);
       log.error("WebSocket error: {}", error.getMessage(), error);
+      onDisconnect(webSocket);
     }
   }
 }
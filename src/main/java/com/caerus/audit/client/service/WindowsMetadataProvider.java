@@ -0,0 +1,127 @@
+package com.caerus.audit.client.service;
+
+import com.caerus.audit.client.model.FrameMetadata;
+import com.sun.jna.platform.win32.Kernel32;
+import com.sun.jna.platform.win32.User32;
+import com.sun.jna.platform.win32.WinDef;
+import com.sun.jna.platform.win32.WinNT;
+import com.sun.jna.platform.win32.WinUser;
+import com.sun.jna.ptr.IntByReference;
+import java.awt.GraphicsDevice;
+import java.awt.GraphicsEnvironment;
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.List;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Foreground window title, owning process and monitor layout via User32/Kernel32. {@link #watch}
+ * hooks foreground and title changes ({@code SetWinEventHook}) on a daemon thread with its own
+ * message loop, so cached values are dropped as soon as the user switches windows or tabs.
+ */
+public class WindowsMetadataProvider implements MetadataProvider {
+  private static final Logger log = LoggerFactory.getLogger(WindowsMetadataProvider.class);
+
+  private static final int EVENT_SYSTEM_FOREGROUND = 0x0003;
+  private static final int EVENT_OBJECT_NAMECHANGE = 0x800C;
+  private static final int WINEVENT_OUTOFCONTEXT = 0x0000;
+  private static final int OBJID_WINDOW = 0;
+
+  // Referenced for as long as the hooks live, or the callback is garbage-collected under them.
+  private WinUser.WinEventProc hookProc;
+
+  @Override
+  public FrameMetadata resolve() {
+    User32 user32 = User32.INSTANCE;
+    WinDef.HWND hwnd = user32.GetForegroundWindow();
+    String title = null;
+    String process = null;
+    if (hwnd != null) {
+      char[] text = new char[user32.GetWindowTextLength(hwnd) + 1];
+      title = new String(text, 0, user32.GetWindowText(hwnd, text, text.length));
+      IntByReference pid = new IntByReference();
+      user32.GetWindowThreadProcessId(hwnd, pid);
+      process = processName(pid.getValue());
+    }
+    return new FrameMetadata(title, process, monitors());
+  }
+
+  private static String processName(int pid) {
+    Kernel32 kernel32 = Kernel32.INSTANCE;
+    WinNT.HANDLE handle = kernel32.OpenProcess(WinNT.PROCESS_QUERY_LIMITED_INFORMATION, false, pid);
+    if (handle == null) return null;
+    try {
+      char[] path = new char[1024];
+      IntByReference size = new IntByReference(path.length);
+      if (!kernel32.QueryFullProcessImageName(handle, 0, path, size)) return null;
+      String full = new String(path, 0, size.getValue());
+      return full.substring(full.lastIndexOf('\\') + 1);
+    } finally {
+      kernel32.CloseHandle(handle);
+    }
+  }
+
+  private static List<FrameMetadata.Monitor> monitors() {
+    List<FrameMetadata.Monitor> monitors = new ArrayList<>();
+    if (GraphicsEnvironment.isHeadless()) return monitors;
+    GraphicsEnvironment env = GraphicsEnvironment.getLocalGraphicsEnvironment();
+    GraphicsDevice primary = env.getDefaultScreenDevice();
+    for (GraphicsDevice device : env.getScreenDevices()) {
+      Rectangle b = device.getDefaultConfiguration().getBounds();
+      monitors.add(new FrameMetadata.Monitor(b.x, b.y, b.width, b.height, device == primary));
+    }
+    return monitors;
+  }
+
+  @Override
+  public void watch(Runnable onChange) {
+    Thread thread = new Thread(() -> runHookLoop(onChange), "WindowsMetadataProvider-Thread");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  private void runHookLoop(Runnable onChange) {
+    User32 user32 = User32.INSTANCE;
+    hookProc =
+        (hook, event, hwnd, idObject, idChild, thread, time) -> {
+          // Name changes fire for every control; only the top-level window's title matters.
+          if (event.intValue() == EVENT_SYSTEM_FOREGROUND
+              || (idObject.intValue() == OBJID_WINDOW
+                  && hwnd != null
+                  && hwnd.equals(user32.GetForegroundWindow()))) {
+            onChange.run();
+          }
+        };
+    WinNT.HANDLE foreground =
+        user32.SetWinEventHook(
+            EVENT_SYSTEM_FOREGROUND,
+            EVENT_SYSTEM_FOREGROUND,
+            null,
+            hookProc,
+            0,
+            0,
+            WINEVENT_OUTOFCONTEXT);
+    WinNT.HANDLE names =
+        user32.SetWinEventHook(
+            EVENT_OBJECT_NAMECHANGE,
+            EVENT_OBJECT_NAMECHANGE,
+            null,
+            hookProc,
+            0,
+            0,
+            WINEVENT_OUTOFCONTEXT);
+    if (foreground == null) {
+      log.warn("Could not hook foreground changes; window metadata refreshes on expiry only");
+    }
+
+    WinUser.MSG msg = new WinUser.MSG();
+    while (user32.GetMessage(msg, null, 0, 0) > 0) {
+      user32.TranslateMessage(msg);
+      user32.DispatchMessage(msg);
+    }
+
+    if (foreground != null) user32.UnhookWinEvent(foreground);
+    if (names != null) user32.UnhookWinEvent(names);
+  }
+}
@@ -0,0 +1,65 @@
+package com.caerus.audit.client.session;
+
+import com.caerus.audit.client.queue.PersistentFileQueue;
+import com.caerus.audit.client.service.ScreenshotService;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/** Per-session state in a multi-session host: its own spool, queue and capture schedule. */
+class SessionContext {
+  private final String id;
+  private final PersistentFileQueue queue;
+  private final ScreenshotService capture;
+  private final AtomicBoolean busy = new AtomicBoolean();
+  private volatile boolean active = true;
+
+  SessionContext(String id, PersistentFileQueue queue, ScreenshotService capture) {
+    this.id = id;
+    this.queue = queue;
+    this.capture = capture;
+  }
+
+  String id() {
+    return id;
+  }
+
+  PersistentFileQueue queue() {
+    return queue;
+  }
+
+  /** Upload id prefix, so ids from different sessions never collide on the shared socket. */
+  String uploadIdPrefix() {
+    return "s" + id + "_";
+  }
+
+  /** Claims the session for one upload worker; a queue is drained by at most one at a time. */
+  boolean tryClaim() {
+    return busy.compareAndSet(false, true);
+  }
+
+  void release() {
+    busy.set(false);
+  }
+
+  boolean isActive() {
+    return active;
+  }
+
+  void start() {
+    active = true;
+    capture.start();
+  }
+
+  ScreenshotService capture() {
+    return capture;
+  }
+
+  void onSettingsChanged() {
+    capture.onSettingsChanged();
+  }
+
+  /** Stops capturing; already queued frames keep uploading. */
+  void stop() {
+    active = false;
+    capture.stop();
+  }
+}
@@ -0,0 +1,16 @@
+package com.caerus.audit.client.session;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/** Lists the interactive user sessions a multi-session host should be capturing. */
+public interface SessionDiscovery {
+  Set<String> activeSessions();
+
+  /** A fixed set of session ids, for hosts where sessions are provisioned statically. */
+  static SessionDiscovery fixed(List<String> ids) {
+    Set<String> sessions = new LinkedHashSet<>(ids);
+    return () -> sessions;
+  }
+}
@@ -0,0 +1,232 @@
+package com.caerus.audit.client.session;
+
+import com.caerus.audit.client.frame.FrameEncoder;
+import com.caerus.audit.client.frame.FrameStore;
+import com.caerus.audit.client.queue.DeadLetterStore;
+import com.caerus.audit.client.queue.PersistentFileQueue;
+import com.caerus.audit.client.queue.RetryPolicy;
+import com.caerus.audit.client.service.ConfigService;
+import com.caerus.audit.client.service.EventReporter;
+import com.caerus.audit.client.service.FrameSource;
+import com.caerus.audit.client.service.ScreenshotService;
+import com.caerus.audit.client.service.UploadService;
+import com.caerus.audit.client.service.WebSocketClient;
+import com.caerus.audit.client.util.SpoolBudget;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Serves many user sessions from one process, for terminal-server hosts. Every session keeps its
+ * own spool directory, queue and capture schedule, while the config poller, WebSocket, HTTP
+ * connection pool, off-heap frame store, capture threads, upload workers and the disk budget of the
+ * spool are shared. A full spool pauses capture rather than locking the workstation, which would
+ * lock the host's console and not the sessions being recorded. Sessions are reconciled against
+ * {@link SessionDiscovery} periodically: new ones start capturing, ended ones stop capturing and
+ * are dropped once their backlog has drained.
+ */
+public class SessionHost {
+  private static final Logger log = LoggerFactory.getLogger(SessionHost.class);
+  private static final long RECONCILE_SEC = 30;
+
+  private final ConfigService config;
+  private final EventReporter eventReporter;
+  private final WebSocketClient wsClient;
+  private final UploadService uploadService;
+  private final SessionDiscovery discovery;
+  private final Function<String, FrameSource> frameSources;
+  private final FrameStore frameStore;
+  private final FrameEncoder encoder;
+  private final Path baseDir;
+  private final Duration maxLaneWait;
+  private final RetryPolicy retryPolicy;
+  private final int uploadWorkers;
+  private final SpoolBudget spoolBudget;
+  private final Map<String, SessionContext> sessions = new ConcurrentHashMap<>();
+  private final ScheduledExecutorService scheduler;
+  private final List<Thread> workers = new ArrayList<>();
+  private final AtomicInteger cursor = new AtomicInteger();
+  private volatile boolean running;
+
+  /**
+   * {@code encoder} is shared by every session's capture, and so is a spool budget of {@code
+   * maxSpoolBytes} across all sessions.
+   */
+  public SessionHost(
+      ConfigService config,
+      EventReporter eventReporter,
+      WebSocketClient wsClient,
+      UploadService uploadService,
+      SessionDiscovery discovery,
+      Function<String, FrameSource> frameSources,
+      FrameStore frameStore,
+      FrameEncoder encoder,
+      Path baseDir,
+      Duration maxLaneWait,
+      RetryPolicy retryPolicy,
+      int uploadWorkers,
+      long maxSpoolBytes) {
+    this.config = config;
+    this.encoder = encoder;
+    this.eventReporter = eventReporter;
+    this.wsClient = wsClient;
+    this.uploadService = uploadService;
+    this.discovery = discovery;
+    this.frameSources = frameSources;
+    this.frameStore = frameStore;
+    this.baseDir = baseDir;
+    this.maxLaneWait = maxLaneWait;
+    this.retryPolicy = retryPolicy;
+    this.uploadWorkers = uploadWorkers;
+    this.spoolBudget = new SpoolBudget(baseDir.resolve("sessions"), maxSpoolBytes);
+    AtomicInteger threadNo = new AtomicInteger();
+    this.scheduler =
+        Executors.newScheduledThreadPool(
+            Runtime.getRuntime().availableProcessors(),
+            r -> {
+              Thread t = new Thread(r, "SessionCapture-" + threadNo.incrementAndGet());
+              t.setDaemon(true);
+              return t;
+            });
+  }
+
+  public void start() {
+    running = true;
+    // The first settings fetch is async; sessions opened before it arrives run on the default.
+    config.addListener(settings -> sessions.values().forEach(SessionContext::onSettingsChanged));
+    scheduler.scheduleWithFixedDelay(this::reconcile, 0, RECONCILE_SEC, TimeUnit.SECONDS);
+    for (int i = 0; i < uploadWorkers; i++) {
+      Thread t = new Thread(this::uploadLoop, "SessionUpload-" + (i + 1));
+      workers.add(t);
+      t.start();
+    }
+    log.info("SessionHost started ({} upload workers)", uploadWorkers);
+  }
+
+  public void stop() {
+    running = false;
+    sessions.values().forEach(SessionContext::stop);
+    workers.forEach(Thread::interrupt);
+    scheduler.shutdownNow();
+  }
+
+  /** Sessions currently tracked, including ended ones still draining. */
+  public int sessionCount() {
+    return sessions.size();
+  }
+
+  /** Frames waiting across all sessions. */
+  public int queueDepth() {
+    return sessions.values().stream().mapToInt(s -> s.queue().size()).sum();
+  }
+
+  SessionContext session(String id) {
+    return sessions.get(id);
+  }
+
+  void reconcile() {
+    try {
+      Set<String> active = discovery.activeSessions();
+      for (String id : active) {
+        SessionContext ctx = sessions.get(id);
+        if (ctx == null) {
+          sessions.put(id, open(id));
+          log.info("Session {} joined ({} tracked)", id, sessions.size());
+        } else if (!ctx.isActive()) {
+          ctx.start();
+        }
+      }
+      for (SessionContext ctx : sessions.values()) {
+        if (active.contains(ctx.id())) continue;
+        if (ctx.isActive()) {
+          ctx.stop();
+          log.info("Session {} ended, draining {} queued frames", ctx.id(), ctx.queue().size());
+        }
+        if (ctx.queue().isEmpty()) sessions.remove(ctx.id());
+      }
+    } catch (Exception e) {
+      log.error("Session reconcile failed: {}", e.getMessage(), e);
+    }
+  }
+
+  private SessionContext open(String id) throws IOException {
+    Path dir = baseDir.resolve("sessions").resolve(id);
+    PersistentFileQueue queue =
+        PersistentFileQueue.open(
+            dir,
+            maxLaneWait,
+            retryPolicy,
+            frameStore.spoolSync(),
+            DeadLetterStore.Quota.defaults());
+    ScreenshotService capture =
+        new ScreenshotService(
+            config,
+            queue,
+            eventReporter,
+            new ScreenshotService.Options()
+                .frameSource(frameSources.apply(id))
+                .spoolDir(dir)
+                .scheduler(scheduler)
+                .frameStore(frameStore)
+                .encoder(encoder)
+                .spoolBudget(spoolBudget)
+                .lockWorkstation(false));
+    SessionContext ctx = new SessionContext(id, queue, capture);
+    ctx.start();
+    CompletableFuture.runAsync(capture::recoverSpool);
+    return ctx;
+  }
+
+  /** Round-robins over sessions so one busy session cannot starve the others. */
+  private void uploadLoop() {
+    while (running) {
+      try {
+        if (!wsClient.isConnected() || !drainAny()) {
+          Thread.sleep(idleWaitMillis());
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      } catch (Exception e) {
+        log.error("Session upload error: {}", e.getMessage());
+      }
+    }
+  }
+
+  private boolean drainAny() throws IOException, InterruptedException {
+    List<SessionContext> snapshot = new ArrayList<>(sessions.values());
+    int n = snapshot.size();
+    int start = Math.floorMod(cursor.getAndIncrement(), Math.max(1, n));
+    for (int i = 0; i < n; i++) {
+      SessionContext ctx = snapshot.get((start + i) % n);
+      if (!ctx.tryClaim()) continue;
+      try {
+        if (uploadService.drainOne(ctx.queue(), ctx.uploadIdPrefix())) return true;
+      } finally {
+        ctx.release();
+      }
+    }
+    return false;
+  }
+
+  private long idleWaitMillis() {
+    long next = Long.MAX_VALUE;
+    for (SessionContext ctx : sessions.values()) {
+      next = Math.min(next, ctx.queue().nextEligibleAt());
+    }
+    return Math.max(50, Math.min(2000, next - System.currentTimeMillis()));
+  }
+}
@@ -0,0 +1,40 @@
+package com.caerus.audit.client.session;
+
+import com.sun.jna.platform.win32.Wtsapi32;
+import com.sun.jna.ptr.IntByReference;
+import com.sun.jna.ptr.PointerByReference;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/** Active Remote Desktop / console sessions on this host, via {@code WTSEnumerateSessions}. */
+public class WtsSessionDiscovery implements SessionDiscovery {
+  private static final Logger log = LoggerFactory.getLogger(WtsSessionDiscovery.class);
+  private static final int WTS_ACTIVE = 0;
+
+  @Override
+  public Set<String> activeSessions() {
+    Set<String> sessions = new LinkedHashSet<>();
+    PointerByReference info = new PointerByReference();
+    IntByReference count = new IntByReference();
+    if (!Wtsapi32.INSTANCE.WTSEnumerateSessions(
+        Wtsapi32.WTS_CURRENT_SERVER_HANDLE, 0, 1, info, count)) {
+      log.warn("WTSEnumerateSessions failed");
+      return sessions;
+    }
+    try {
+      Wtsapi32.WTS_SESSION_INFO first = new Wtsapi32.WTS_SESSION_INFO(info.getValue());
+      for (Object o : first.toArray(count.getValue())) {
+        Wtsapi32.WTS_SESSION_INFO session = (Wtsapi32.WTS_SESSION_INFO) o;
+        // Session 0 is services only; it never has a user desktop.
+        if (session.SessionId != 0 && session.State == WTS_ACTIVE) {
+          sessions.add(String.valueOf(session.SessionId));
+        }
+      }
+    } finally {
+      Wtsapi32.INSTANCE.WTSFreeMemory(info.getValue());
+    }
+    return sessions;
+  }
+}
@@ -0,0 +1,54 @@
+package com.caerus.audit.client.transport;
+
+import com.caerus.audit.client.frame.FrameStore;
+import com.caerus.audit.client.frame.StoredFrame;
+import com.caerus.audit.client.service.WebSocketClient;
+import com.caerus.audit.client.util.HttpUtil;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/** Multipart POST to {@code /api/v1/upload}; the ack arrives on the WebSocket channel. */
+public class HttpUploadTransport implements UploadTransport {
+  private static final Logger log = LoggerFactory.getLogger(HttpUploadTransport.class);
+  private final HttpUtil httpUtil;
+  private final WebSocketClient wsClient;
+  private final FrameStore frameStore;
+
+  public HttpUploadTransport(HttpUtil httpUtil, WebSocketClient wsClient) {
+    this(httpUtil, wsClient, FrameStore.disabled());
+  }
+
+  public HttpUploadTransport(HttpUtil httpUtil, WebSocketClient wsClient, FrameStore frameStore) {
+    this.httpUtil = httpUtil;
+    this.wsClient = wsClient;
+    this.frameStore = frameStore;
+  }
+
+  @Override
+  public boolean upload(Path file, String uploadId, String contentHash) {
+    StoredFrame frame = frameStore.acquire(file);
+    try {
+      byte[] metadata = frameStore.readMetadata(file);
+      return httpUtil.uploadFile(
+          file,
+          frame != null ? frame : frameStore.content(file),
+          uploadId,
+          contentHash,
+          metadata != null ? new String(metadata, StandardCharsets.UTF_8) : null);
+    } catch (IOException e) {
+      log.error("Cannot read metadata of {}: {}", file.getFileName(), e.getMessage());
+      return false;
+    } finally {
+      if (frame != null) frame.release();
+    }
+  }
+
+  @Override
+  public boolean awaitAck(String uploadId, Duration timeout) throws InterruptedException {
+    return wsClient.waitForAck(uploadId, timeout);
+  }
+}
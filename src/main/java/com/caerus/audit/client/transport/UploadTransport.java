@@ -0,0 +1,31 @@
+package com.caerus.audit.client.transport;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * Moves a spooled file to the audit server and reports the server-side acknowledgement. Selected
+ * with {@code upload.transport} ({@code http} or {@code ws}).
+ */
+public interface UploadTransport {
+
+  /**
+   * Sends the file to the server.
+   *
+   * @return true if the server accepted the body, false otherwise.
+   */
+  default boolean upload(Path file, String uploadId) {
+    return upload(file, uploadId, null);
+  }
+
+  /**
+   * Sends the file to the server. A retry of the same frame, from any worker, carries the same
+   * {@code uploadId}, so the server can store it once and answer (and ack) a repeat as a success.
+   * If {@code contentHash} (the file's SHA-256) is known, the transport may send only a reference
+   * when the server already holds the same content.
+   */
+  boolean upload(Path file, String uploadId, String contentHash);
+
+  /** Waits for the server to confirm it has stored the upload. */
+  boolean awaitAck(String uploadId, Duration timeout) throws InterruptedException;
+}
@@ -0,0 +1,147 @@
+package com.caerus.audit.client.transport;
+
+import com.caerus.audit.client.frame.FrameStore;
+import com.caerus.audit.client.queue.PreviewQueue;
+import com.caerus.audit.client.service.WebSocketClient;
+import com.caerus.audit.client.util.BandwidthLimiter;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Streams uploads as binary frames over the {@code /ws/heartbeat} session.
+ *
+ * <p>Protocol: the client sends {@code UPLOAD_BEGIN} (uploadId, fileName, size, chunkSize and, when
+ * known, sha256 and the frame's metadata object; captureId and kind, preview or full, link a
+ * preview to its frame), then one binary message per chunk. The client may have at most {@code
+ * window} chunks outstanding; the server grants more with {@code UPLOAD_CREDIT} (uploadId, credits)
+ * and finishes with the usual {@code UPLOAD_SUCCESS} ack. Chunks do not carry the upload id, so
+ * concurrent uploads (a preview next to a full frame, say) take turns. An upload given up after its
+ * {@code UPLOAD_BEGIN} was sent (no credit in time, a failed send, a read error) is ended with
+ * {@code UPLOAD_ABORT} (uploadId), so the server discards the partial body before the next begins.
+ */
+public class WebSocketUploadTransport implements UploadTransport {
+  private static final Logger log = LoggerFactory.getLogger(WebSocketUploadTransport.class);
+
+  private final WebSocketClient wsClient;
+  private final ObjectMapper mapper = new ObjectMapper();
+  private final Map<String, Semaphore> credits = new ConcurrentHashMap<>();
+  private final int chunkSize;
+  private final int window;
+  private final Duration creditTimeout;
+  private final BandwidthLimiter limiter;
+  private final FrameStore frameStore;
+
+  public WebSocketUploadTransport(
+      WebSocketClient wsClient,
+      int chunkSize,
+      int window,
+      Duration creditTimeout,
+      BandwidthLimiter limiter) {
+    this(wsClient, chunkSize, window, creditTimeout, limiter, FrameStore.disabled());
+  }
+
+  public WebSocketUploadTransport(
+      WebSocketClient wsClient,
+      int chunkSize,
+      int window,
+      Duration creditTimeout,
+      BandwidthLimiter limiter,
+      FrameStore frameStore) {
+    this.wsClient = wsClient;
+    this.chunkSize = chunkSize;
+    this.window = window;
+    this.creditTimeout = creditTimeout;
+    this.limiter = limiter;
+    this.frameStore = frameStore;
+    wsClient.onMessage("UPLOAD_CREDIT", this::onCredit);
+  }
+
+  @Override
+  public synchronized boolean upload(Path file, String uploadId, String contentHash) {
+    if (!wsClient.isConnected()) {
+      log.warn("WebSocket not connected, cannot upload {}", uploadId);
+      return false;
+    }
+    Semaphore outstanding = new Semaphore(window);
+    credits.put(uploadId, outstanding);
+    boolean begun = false;
+    boolean sent = false;
+    try (InputStream in = frameStore.open(file)) {
+      ObjectNode begin =
+          mapper
+              .createObjectNode()
+              .put("type", "UPLOAD_BEGIN")
+              .put("uploadId", uploadId)
+              .put("fileName", file.getFileName().toString())
+              .put("captureId", PreviewQueue.captureId(file))
+              .put("kind", PreviewQueue.isPreview(file) ? "preview" : "full")
+              .put("size", frameStore.content(file).length())
+              .put("chunkSize", chunkSize);
+      if (contentHash != null) begin.put("sha256", contentHash);
+      byte[] metadata = frameStore.readMetadata(file);
+      if (metadata != null) begin.set("metadata", mapper.readTree(metadata));
+      if (!wsClient.sendText(mapper.writeValueAsString(begin))) {
+        log.warn("Could not start WebSocket upload {}", uploadId);
+        return false;
+      }
+      begun = true;
+
+      byte[] buf = new byte[chunkSize];
+      int read;
+      while ((read = in.readNBytes(buf, 0, chunkSize)) > 0) {
+        if (!outstanding.tryAcquire(creditTimeout.toMillis(), TimeUnit.MILLISECONDS)) {
+          log.warn("No upload credit from server for {} within {}", uploadId, creditTimeout);
+          return false;
+        }
+        limiter.acquire(read);
+        if (!wsClient.sendBinary(ByteBuffer.wrap(buf, 0, read))) {
+          return false;
+        }
+      }
+      sent = true;
+      return true;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    } catch (IOException e) {
+      log.error("WS upload error for {}: {}", file.getFileName(), e.getMessage());
+      return false;
+    } finally {
+      credits.remove(uploadId);
+      if (begun && !sent) abort(uploadId);
+    }
+  }
+
+  private void abort(String uploadId) {
+    ObjectNode abort =
+        mapper.createObjectNode().put("type", "UPLOAD_ABORT").put("uploadId", uploadId);
+    // If this fails too the socket is gone, and the server drops the partial upload with it.
+    if (!wsClient.sendText(abort.toString())) {
+      log.warn("Could not abort WebSocket upload {}", uploadId);
+    }
+  }
+
+  @Override
+  public boolean awaitAck(String uploadId, Duration timeout) throws InterruptedException {
+    return wsClient.waitForAck(uploadId, timeout);
+  }
+
+  private void onCredit(JsonNode node) {
+    Semaphore outstanding = credits.get(node.path("uploadId").asText());
+    if (outstanding != null) {
+      outstanding.release(Math.max(0, node.path("credits").asInt(1)));
+    }
+  }
+}
@@ -0,0 +1,168 @@
+package com.caerus.audit.client.util;
+
+import com.caerus.audit.client.model.ServerAppSettingsDto;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.time.LocalTime;
+import java.util.concurrent.TimeUnit;
+import org.apache.hc.core5.http.HttpEntity;
+import org.apache.hc.core5.http.io.entity.HttpEntityWrapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Token-bucket limiter for upload bytes.
+ *
+ * <p>The ceiling comes from the client config ({@code upload.bandwidth.kbps}, {@code
+ * upload.bandwidth.schedule}) and may be overridden by the server settings. With adaptive mode on,
+ * an AIMD cap sits below the ceiling: it is cut by 30% when a transfer's post-body response time
+ * rises well above the lowest seen (queueing on the link), and otherwise grows back additively, by
+ * a fixed step of a tenth of the rate it was cut to (at least 32 KB/s) per transfer.
+ */
+public class BandwidthLimiter {
+  private static final Logger log = LoggerFactory.getLogger(BandwidthLimiter.class);
+
+  public static final long UNLIMITED = 0;
+  private static final int CHUNK = 16 * 1024;
+  private static final long MIN_BURST = 16 * 1024;
+  private static final long MIN_ADAPTIVE_RATE = 32 * 1024;
+  private static final double CONGESTION_RTT_FACTOR = 2.0;
+  private static final long RTT_SLACK_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+  private static final double DECREASE_FACTOR = 0.7;
+
+  private final boolean adaptive;
+  private volatile long baseRate;
+  private volatile BandwidthSchedule schedule;
+
+  private long adaptiveCap = Long.MAX_VALUE;
+  private long increaseStep;
+  private long minRttNanos = Long.MAX_VALUE;
+  private double tokens;
+  private long lastRefill = System.nanoTime();
+
+  /**
+   * @param bytesPerSec default ceiling, {@link #UNLIMITED} for none.
+   * @param schedule time-of-day overrides of the ceiling.
+   * @param adaptive whether to back off on congestion.
+   */
+  public BandwidthLimiter(long bytesPerSec, BandwidthSchedule schedule, boolean adaptive) {
+    this.baseRate = bytesPerSec;
+    this.schedule = schedule;
+    this.adaptive = adaptive;
+  }
+
+  public static BandwidthLimiter unlimited() {
+    return new BandwidthLimiter(UNLIMITED, BandwidthSchedule.parse(null), false);
+  }
+
+  /** Applies server-pushed limits; null fields keep the client's own configuration. */
+  public void apply(ServerAppSettingsDto settings) {
+    if (settings == null) return;
+    if (settings.configUploadBandwidthKbps != null) {
+      baseRate = settings.configUploadBandwidthKbps * 1024L / 8;
+    }
+    if (settings.configUploadBandwidthSchedule != null) {
+      try {
+        schedule = BandwidthSchedule.parse(settings.configUploadBandwidthSchedule);
+      } catch (Exception e) {
+        log.warn("Ignoring invalid server bandwidth schedule: {}", e.getMessage());
+      }
+    }
+  }
+
+  /** Current allowed rate in bytes/s, {@link #UNLIMITED} for none. */
+  public synchronized long currentRate() {
+    long ceiling = schedule.rateAt(LocalTime.now(), baseRate);
+    if (ceiling == UNLIMITED) ceiling = Long.MAX_VALUE;
+    long rate = Math.min(ceiling, adaptiveCap);
+    return rate == Long.MAX_VALUE ? UNLIMITED : rate;
+  }
+
+  /** Blocks until {@code bytes} may be sent. */
+  public void acquire(int bytes) throws InterruptedException {
+    long waitNanos;
+    synchronized (this) {
+      long rate = currentRate();
+      long now = System.nanoTime();
+      if (rate == UNLIMITED) {
+        lastRefill = now;
+        return;
+      }
+      double burst = Math.max(MIN_BURST, rate / 4.0);
+      tokens = Math.min(burst, tokens + (now - lastRefill) * rate / 1e9);
+      lastRefill = now;
+      tokens -= bytes;
+      waitNanos = tokens < 0 ? (long) (-tokens * 1e9 / rate) : 0;
+    }
+    if (waitNanos > 0) TimeUnit.NANOSECONDS.sleep(waitNanos);
+  }
+
+  /**
+   * Feeds one completed transfer into the congestion controller.
+   *
+   * @param bytes body bytes sent.
+   * @param transferNanos time spent writing the body.
+   * @param rttNanos time from end of body to server response.
+   */
+  public synchronized void onTransfer(long bytes, long transferNanos, long rttNanos) {
+    if (!adaptive || transferNanos <= 0 || rttNanos <= 0) return;
+    minRttNanos = Math.min(minRttNanos, rttNanos);
+    long throughput = (long) (bytes * 1e9 / transferNanos);
+    if (rttNanos > minRttNanos * CONGESTION_RTT_FACTOR + RTT_SLACK_NANOS) {
+      long current = adaptiveCap == Long.MAX_VALUE ? throughput : adaptiveCap;
+      adaptiveCap =
+          Math.max(MIN_ADAPTIVE_RATE, (long) (Math.min(current, throughput) * DECREASE_FACTOR));
+      increaseStep = Math.max(MIN_ADAPTIVE_RATE, adaptiveCap / 10);
+      log.info(
+          "Upload congestion (rtt {} ms, min {} ms); capping at {} KB/s",
+          rttNanos / 1_000_000,
+          minRttNanos / 1_000_000,
+          adaptiveCap / 1024);
+    } else if (adaptiveCap != Long.MAX_VALUE) {
+      adaptiveCap += increaseStep;
+      long ceiling = schedule.rateAt(LocalTime.now(), baseRate);
+      if (ceiling != UNLIMITED && adaptiveCap >= ceiling) adaptiveCap = Long.MAX_VALUE;
+    }
+  }
+
+  /** Wraps an entity so its bytes are paced through this limiter as they are written. */
+  public HttpEntity wrap(HttpEntity entity) {
+    return new HttpEntityWrapper(entity) {
+      @Override
+      public void writeTo(OutputStream out) throws IOException {
+        super.writeTo(throttle(out));
+      }
+    };
+  }
+
+  /** Output stream that paces writes through this limiter. Does not close the target. */
+  public OutputStream throttle(OutputStream out) {
+    return new FilterOutputStream(out) {
+      @Override
+      public void write(int b) throws IOException {
+        write(new byte[] {(byte) b}, 0, 1);
+      }
+
+      @Override
+      public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+          int n = Math.min(len, CHUNK);
+          try {
+            acquire(n);
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Upload throttle interrupted");
+          }
+          out.write(b, off, n);
+          off += n;
+          len -= n;
+        }
+      }
+
+      @Override
+      public void close() {}
+    };
+  }
+}
@@ -0,0 +1,53 @@
+package com.caerus.audit.client.util;
+
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Time-of-day upload rate windows, written as {@code HH:mm-HH:mm=kbps} separated by commas, e.g.
+ * {@code 08:00-18:00=512,18:00-08:00=0}. Windows may wrap midnight; {@code 0} means unlimited. The
+ * first matching window wins; outside all windows the default rate applies.
+ */
+public class BandwidthSchedule {
+  private record Window(LocalTime from, LocalTime to, long bytesPerSec) {
+    boolean contains(LocalTime t) {
+      return from.isBefore(to)
+          ? !t.isBefore(from) && t.isBefore(to)
+          : !t.isBefore(from) || t.isBefore(to);
+    }
+  }
+
+  private final List<Window> windows;
+
+  private BandwidthSchedule(List<Window> windows) {
+    this.windows = windows;
+  }
+
+  public static BandwidthSchedule parse(String spec) {
+    List<Window> windows = new ArrayList<>();
+    if (spec != null && !spec.isBlank()) {
+      for (String part : spec.split(",")) {
+        String[] rangeAndRate = part.trim().split("=");
+        String[] range = rangeAndRate[0].trim().split("-");
+        if (rangeAndRate.length != 2 || range.length != 2) {
+          throw new IllegalArgumentException("Invalid bandwidth window: " + part);
+        }
+        windows.add(
+            new Window(
+                LocalTime.parse(range[0].trim()),
+                LocalTime.parse(range[1].trim()),
+                Long.parseLong(rangeAndRate[1].trim()) * 1024 / 8));
+      }
+    }
+    return new BandwidthSchedule(List.copyOf(windows));
+  }
+
+  /** Rate in bytes/s at the given time, or {@code defaultRate} if no window matches. */
+  public long rateAt(LocalTime time, long defaultRate) {
+    for (Window w : windows) {
+      if (w.contains(time)) return w.bytesPerSec();
+    }
+    return defaultRate;
+  }
+}
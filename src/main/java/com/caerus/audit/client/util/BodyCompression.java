@@ -0,0 +1,247 @@
+package com.caerus.audit.client.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterInputStream;
+import java.util.zip.DeflaterOutputStream;
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.HttpEntity;
+import org.apache.hc.core5.http.HttpResponse;
+import org.apache.hc.core5.http.HttpStatus;
+import org.apache.hc.core5.http.io.entity.HttpEntityWrapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Request-body compression context for one server, shared by the upload connections, the event
+ * reporter and the metrics push.
+ *
+ * <p>Bodies are sent with {@code Content-Encoding: deflate} only after the server has advertised
+ * {@code deflate} in an {@code Accept-Encoding} response header (RFC 7694); a 415 response turns it
+ * off for good. Deflaters are pooled and reused between bodies rather than reallocated, and each
+ * body holds its own while it streams. Files that are already compressed (PNG, JPEG, archives), by
+ * extension since spooled files may be encrypted, and bodies too small to benefit are sent as-is.
+ */
+public class BodyCompression implements AutoCloseable {
+  private static final Logger log = LoggerFactory.getLogger(BodyCompression.class);
+
+  public static final String DEFLATE = "deflate";
+  static final long MIN_COMPRESSIBLE_BYTES = 1024;
+  private static final int POOLED_DEFLATERS = 8;
+  private static final Set<String> COMPRESSED_EXTENSIONS =
+      Set.of("png", "jpg", "jpeg", "gif", "webp", "gz", "zip", "zst", "br", "7z");
+
+  private final boolean enabled;
+  private final int level;
+  private final Queue<Deflater> pool = new ConcurrentLinkedQueue<>();
+  private volatile boolean serverAccepts = false;
+  private volatile boolean rejected = false;
+  private volatile boolean closed = false;
+
+  public BodyCompression(boolean enabled, int level) {
+    this.enabled = enabled;
+    this.level = level;
+  }
+
+  public static BodyCompression disabled() {
+    return new BodyCompression(false, Deflater.DEFAULT_COMPRESSION);
+  }
+
+  /** True if this file should be sent deflated on the current connection. */
+  public boolean shouldCompress(Path file) {
+    return enabled && serverAccepts && isCompressible(file);
+  }
+
+  /** True if an in-memory body of {@code length} bytes should be sent deflated. */
+  public boolean shouldCompress(long length) {
+    return enabled && serverAccepts && length >= MIN_COMPRESSIBLE_BYTES;
+  }
+
+  /** Updates the negotiated state from a server response. */
+  public void onResponse(HttpResponse response) {
+    Header header = response.getFirstHeader("Accept-Encoding");
+    onAcceptEncoding(header == null ? null : header.getValue());
+  }
+
+  /** As {@link #onResponse(HttpResponse)}, from the {@code Accept-Encoding} value or null. */
+  public void onAcceptEncoding(String acceptEncoding) {
+    if (!enabled || rejected || acceptEncoding == null) return;
+    boolean accepts = acceptEncoding.toLowerCase(Locale.ROOT).contains(DEFLATE);
+    if (accepts != serverAccepts) {
+      log.info("Server {} deflate request bodies", accepts ? "accepts" : "does not accept");
+      serverAccepts = accepts;
+    }
+  }
+
+  /** Called when the server rejected a compressed body with 415. */
+  public void onRejected() {
+    rejected = true;
+    if (serverAccepts) {
+      log.warn("Server rejected deflate request body, sending uncompressed");
+      serverAccepts = false;
+    }
+  }
+
+  /** Wraps an entity so it is deflated on the wire with a pooled deflater. */
+  public HttpEntity wrap(HttpEntity entity) {
+    return new DeflatingEntity(entity);
+  }
+
+  /** Deflates an in-memory body ({@code deflate} content coding, i.e. zlib format). */
+  public byte[] deflate(byte[] body) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream(body.length / 4 + 64);
+    Deflater deflater = acquire();
+    try (DeflaterOutputStream dos = new DeflaterOutputStream(out, deflater)) {
+      dos.write(body);
+    } catch (IOException e) {
+      throw new IllegalStateException(e); // in memory
+    } finally {
+      release(deflater);
+    }
+    return out.toByteArray();
+  }
+
+  /**
+   * Sends {@code body} as the request body of {@code request} on a {@code java.net.http} client:
+   * deflated once negotiated, and again uncompressed if the server answers 415.
+   */
+  public <T> java.net.http.HttpResponse<T> send(
+      HttpClient client,
+      HttpRequest.Builder request,
+      byte[] body,
+      java.net.http.HttpResponse.BodyHandler<T> handler)
+      throws IOException, InterruptedException {
+    boolean compress = shouldCompress(body.length);
+    java.net.http.HttpResponse<T> response = client.send(build(request, body, compress), handler);
+    if (response.statusCode() == HttpStatus.SC_UNSUPPORTED_MEDIA_TYPE && compress) {
+      onRejected();
+      response = client.send(build(request, body, false), handler);
+    }
+    onAcceptEncoding(response.headers().firstValue("Accept-Encoding").orElse(null));
+    return response;
+  }
+
+  private HttpRequest build(HttpRequest.Builder request, byte[] body, boolean compress) {
+    HttpRequest.Builder copy = request.copy();
+    if (compress) copy.header("Content-Encoding", DEFLATE);
+    return copy.POST(HttpRequest.BodyPublishers.ofByteArray(compress ? deflate(body) : body))
+        .build();
+  }
+
+  /** Skip rule: known compressed formats by extension, and tiny files. */
+  static boolean isCompressible(Path file) {
+    String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+    int dot = name.lastIndexOf('.');
+    if (dot >= 0 && COMPRESSED_EXTENSIONS.contains(name.substring(dot + 1))) {
+      return false;
+    }
+    try {
+      return Files.size(file) >= MIN_COMPRESSIBLE_BYTES;
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  private Deflater acquire() {
+    Deflater deflater = pool.poll();
+    return deflater != null ? deflater : new Deflater(level);
+  }
+
+  private void release(Deflater deflater) {
+    if (closed || pool.size() >= POOLED_DEFLATERS) {
+      deflater.end();
+    } else {
+      deflater.reset();
+      pool.offer(deflater);
+    }
+  }
+
+  /** Frees the pooled deflaters; bodies sent afterwards use a deflater of their own. */
+  @Override
+  public void close() {
+    closed = true;
+    Deflater deflater;
+    while ((deflater = pool.poll()) != null) deflater.end();
+  }
+
+  private class DeflatingEntity extends HttpEntityWrapper {
+    DeflatingEntity(HttpEntity wrapped) {
+      super(wrapped);
+    }
+
+    @Override
+    public String getContentEncoding() {
+      return DEFLATE;
+    }
+
+    @Override
+    public long getContentLength() {
+      return -1;
+    }
+
+    @Override
+    public boolean isChunked() {
+      return true;
+    }
+
+    /** The deflated body; repeatable whenever the wrapped entity is. */
+    @Override
+    public InputStream getContent() throws IOException {
+      InputStream plain = super.getContent();
+      Deflater deflater = acquire();
+      return new DeflaterInputStream(plain, deflater, 16 * 1024) {
+        private boolean released;
+
+        @Override
+        public void close() throws IOException {
+          try {
+            super.close();
+          } finally {
+            if (!released) {
+              released = true;
+              release(deflater);
+            }
+          }
+        }
+      };
+    }
+
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+      Deflater deflater = acquire();
+      try {
+        // Keep the connection stream open: the deflater stream must not close it on finish.
+        DeflaterOutputStream dos =
+            new DeflaterOutputStream(
+                new FilterOutputStream(out) {
+                  @Override
+                  public void write(byte[] b, int off, int len) throws IOException {
+                    out.write(b, off, len);
+                  }
+
+                  @Override
+                  public void close() {}
+                },
+                deflater,
+                16 * 1024);
+        super.writeTo(dos);
+        dos.finish();
+        dos.flush();
+      } finally {
+        release(deflater);
+      }
+    }
+  }
+}
@@ -0,0 +1,197 @@
+package com.caerus.audit.client.util;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Picks the server endpoint for every network component of the client, out of the list in {@code
+ * server.baseUrl}.
+ *
+ * <p>Endpoints are probed periodically and also judged by the outcome of real requests ({@link
+ * #reportSuccess}, {@link #reportFailure}); a failing endpoint is avoided for a growing, jittered
+ * backoff. Among the live ones the lowest smoothed latency wins, ties going to the earlier in the
+ * list.
+ *
+ * <p>The server acks uploads on the WebSocket session, which lives on one node, so the WebSocket
+ * pins its endpoint ({@link #pin}) and all traffic follows it until the socket drops. Pinning is
+ * also what keeps clients from flocking back to a recovered node.
+ */
+public class EndpointSelector {
+  private static final Logger log = LoggerFactory.getLogger(EndpointSelector.class);
+  private static final double LATENCY_WEIGHT = 0.3;
+  private static final long MAX_BACKOFF_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+  private static final class Endpoint {
+    final String baseUrl;
+    long latencyNanos = Long.MAX_VALUE; // smoothed; MAX_VALUE until first measured
+    int failures;
+    long downUntil; // currentTimeMillis
+
+    Endpoint(String baseUrl) {
+      this.baseUrl = baseUrl;
+    }
+
+    boolean isUp(long now) {
+      return downUntil <= now;
+    }
+  }
+
+  private final List<Endpoint> endpoints = new ArrayList<>();
+  private final String probePath;
+  private final Duration probeInterval;
+  private final HttpClient probeClient =
+      HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+  private final ScheduledExecutorService scheduler =
+      Executors.newSingleThreadScheduledExecutor(
+          r -> {
+            Thread t = new Thread(r, "EndpointSelector-Probe");
+            t.setDaemon(true);
+            return t;
+          });
+  private Endpoint pinned; // guarded by this
+
+  /**
+   * @param baseUrls endpoints in order of preference.
+   * @param probePath path requested on each endpoint to measure it; any response below 500 counts
+   *     as up.
+   */
+  public EndpointSelector(List<String> baseUrls, String probePath, Duration probeInterval) {
+    if (baseUrls.isEmpty()) throw new IllegalArgumentException("No server endpoints");
+    for (String url : baseUrls) endpoints.add(new Endpoint(stripSlash(url)));
+    this.probePath = probePath;
+    this.probeInterval = probeInterval;
+  }
+
+  /** Just {@code baseUrl}, never probed. */
+  public static EndpointSelector single(String baseUrl) {
+    return new EndpointSelector(List.of(baseUrl), "/", Duration.ZERO);
+  }
+
+  /** Endpoints from a comma-separated list, as in {@code server.baseUrl}. */
+  public static EndpointSelector parse(String baseUrls, String probePath, Duration probeInterval) {
+    return new EndpointSelector(
+        Arrays.asList(baseUrls.trim().split("\\s*,\\s*")), probePath, probeInterval);
+  }
+
+  private static String stripSlash(String url) {
+    return url.endsWith("/") ? url.substring(0, url.length() - 1) : url;
+  }
+
+  public int size() {
+    return endpoints.size();
+  }
+
+  public void start() {
+    if (endpoints.size() < 2 || probeInterval.isZero()) return;
+    long period = probeInterval.toMillis();
+    scheduler.scheduleWithFixedDelay(this::probeAll, 0, period, TimeUnit.MILLISECONDS);
+  }
+
+  public void stop() {
+    scheduler.shutdownNow();
+  }
+
+  /** The endpoint to send a request to now: the pinned one if any, else the {@link #best}. */
+  public synchronized String current() {
+    return pinned != null ? pinned.baseUrl : best();
+  }
+
+  /** The live endpoint with the lowest latency, or the one coming back soonest if all are down. */
+  public synchronized String best() {
+    long now = System.currentTimeMillis();
+    Endpoint best = null;
+    for (Endpoint e : endpoints) {
+      if (best == null) {
+        best = e;
+      } else if (e.isUp(now) != best.isUp(now)) {
+        if (e.isUp(now)) best = e;
+      } else if (e.isUp(now) ? e.latencyNanos < best.latencyNanos : e.downUntil < best.downUntil) {
+        best = e;
+      }
+    }
+    return best.baseUrl;
+  }
+
+  /** Sends all traffic to {@code baseUrl} until {@link #unpin}. */
+  public synchronized void pin(String baseUrl) {
+    pinned = find(baseUrl);
+  }
+
+  public synchronized void unpin(String baseUrl) {
+    if (pinned != null && pinned.baseUrl.equals(baseUrl)) pinned = null;
+  }
+
+  public void reportSuccess(String baseUrl, long latencyNanos) {
+    Endpoint e = find(baseUrl);
+    if (e == null) return;
+    synchronized (this) {
+      if (e.failures > 0) log.info("Server endpoint {} is reachable again", baseUrl);
+      e.failures = 0;
+      e.downUntil = 0;
+      e.latencyNanos =
+          e.latencyNanos == Long.MAX_VALUE
+              ? latencyNanos
+              : (long) (LATENCY_WEIGHT * latencyNanos + (1 - LATENCY_WEIGHT) * e.latencyNanos);
+    }
+  }
+
+  /** Avoids {@code baseUrl}, unless pinned, for a backoff growing with consecutive failures. */
+  public void reportFailure(String baseUrl) {
+    Endpoint e = find(baseUrl);
+    if (e == null || endpoints.size() < 2) return;
+    synchronized (this) {
+      e.failures++;
+      long backoff = Math.min(MAX_BACKOFF_MILLIS, 1000L << Math.min(e.failures - 1, 16));
+      // Jittered, so clients do not all retry a recovering node at the same moment.
+      e.downUntil =
+          System.currentTimeMillis()
+              + backoff / 2
+              + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+      if (e.failures == 1) log.warn("Server endpoint {} failed, avoiding it for now", baseUrl);
+    }
+  }
+
+  private Endpoint find(String baseUrl) {
+    for (Endpoint e : endpoints) {
+      if (e.baseUrl.equals(baseUrl)) return e;
+    }
+    return null;
+  }
+
+  /** Probes every endpoint once. */
+  public void probeAll() {
+    for (Endpoint e : endpoints) {
+      HttpRequest request =
+          HttpRequest.newBuilder(URI.create(e.baseUrl + probePath))
+              .timeout(Duration.ofSeconds(10))
+              .GET()
+              .build();
+      long start = System.nanoTime();
+      try {
+        int status = probeClient.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+        if (status < 500) {
+          reportSuccess(e.baseUrl, System.nanoTime() - start);
+          continue;
+        }
+      } catch (InterruptedException ie) {
+        Thread.currentThread().interrupt();
+        return;
+      } catch (Exception ex) {
+        log.debug("Probe of {} failed: {}", e.baseUrl, ex.getMessage());
+      }
+      reportFailure(e.baseUrl);
+    }
+  }
+}
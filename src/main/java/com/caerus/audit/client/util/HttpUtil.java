@@ -1,90 +1,373 @@
 package com.caerus.audit.client.util;
 
+import com.caerus.audit.client.frame.FrameContent;
+import com.caerus.audit.client.metrics.ClientMetrics;
+import com.caerus.audit.client.metrics.DiagJournal;
+import com.caerus.audit.client.metrics.FlightEvents;
+import com.caerus.audit.client.metrics.JournalEvent;
+import com.caerus.audit.client.queue.PreviewQueue;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.file.Path;
-import java.util.concurrent.TimeUnit;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
 import org.apache.hc.client5.http.classic.methods.HttpPost;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.entity.mime.AbstractContentBody;
 import org.apache.hc.client5.http.entity.mime.MultipartEntityBuilder;
 import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
 import org.apache.hc.client5.http.impl.classic.CloseableHttpResponse;
 import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
 import org.apache.hc.core5.http.ContentType;
 import org.apache.hc.core5.http.HttpEntity;
+import org.apache.hc.core5.http.HttpStatus;
+import org.apache.hc.core5.http.ParseException;
+import org.apache.hc.core5.http.io.entity.ByteArrayEntity;
 import org.apache.hc.core5.http.io.entity.EntityUtils;
+import org.apache.hc.core5.http.io.entity.HttpEntityWrapper;
+import org.apache.hc.core5.util.Timeout;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-public class HttpUtil {
+public class HttpUtil implements AutoCloseable {
   private static final Logger log = LoggerFactory.getLogger(HttpUtil.class);
 
-  private final String serverBaseUrl;
+  private static final int DEFAULT_MAX_CONNECTIONS = 5;
+  private static final int DELIVERED_HASHES = 256;
+  // Without these a half-open connection blocks the upload loop for good.
+  private static final Timeout CONNECT_TIMEOUT = Timeout.ofSeconds(10);
+  private static final Timeout RESPONSE_TIMEOUT = Timeout.ofMinutes(2);
+
+  private final EndpointSelector endpoints;
   private final String clientId;
+  private final BodyCompression compression;
+  private final BandwidthLimiter limiter;
+  private final CloseableHttpClient client;
+  private final ObjectMapper mapper = new ObjectMapper();
+  // Content the server is known to hold, so a repeat can be sent as a reference.
+  private final Set<String> delivered =
+      Collections.newSetFromMap(
+          new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+              return size() > DELIVERED_HASHES;
+            }
+          });
+  private volatile boolean refsSupported = true;
+
+  /** Optional settings; each setter notes its default. */
+  public static final class Options {
+    private BodyCompression compression = BodyCompression.disabled();
+    private BandwidthLimiter limiter = BandwidthLimiter.unlimited();
+    private int maxConnections = DEFAULT_MAX_CONNECTIONS;
+
+    /** Off by default. */
+    public Options compression(BodyCompression compression) {
+      this.compression = compression;
+      return this;
+    }
+
+    /** Unlimited by default. */
+    public Options limiter(BandwidthLimiter limiter) {
+      this.limiter = limiter;
+      return this;
+    }
+
+    /** Pooled connections to the server, one per concurrent uploader; 5 by default. */
+    public Options maxConnections(int maxConnections) {
+      this.maxConnections = maxConnections;
+      return this;
+    }
+  }
 
-  public HttpUtil(String serverBaseUrl, String clientId) {
-    this.serverBaseUrl = serverBaseUrl;
+  /** Sends each upload to the endpoint {@code endpoints} currently selects. */
+  public HttpUtil(EndpointSelector endpoints, String clientId, Options options) {
+    this.endpoints = endpoints;
     this.clientId = clientId;
+    this.compression = options.compression;
+    this.limiter = options.limiter;
+    this.client =
+        HttpClients.custom()
+            .setConnectionManager(
+                PoolingHttpClientConnectionManagerBuilder.create()
+                    .setMaxConnPerRoute(options.maxConnections)
+                    .setMaxConnTotal(options.maxConnections)
+                    .setDefaultConnectionConfig(
+                        ConnectionConfig.custom()
+                            .setConnectTimeout(CONNECT_TIMEOUT)
+                            .setSocketTimeout(RESPONSE_TIMEOUT)
+                            .build())
+                    .build())
+            .setDefaultRequestConfig(
+                RequestConfig.custom().setResponseTimeout(RESPONSE_TIMEOUT).build())
+            .build();
   }
 
   /**
-   * Uploads a file with retry-safe handling.
+   * Uploads a file in a single attempt. Retries are scheduled per entry by the upload queue, so a
+   * failing file never blocks the upload thread.
+   *
+   * <p>The body is sent from {@code frame} (if not null), the plaintext of {@code file} from memory
+   * or the frame store, instead of the raw file; the caller holds the frame. If {@code contentHash}
+   * was already delivered by this client, only a reference is posted to {@code /api/v1/upload/ref};
+   * the full body follows if the server no longer has the content or does not support references.
+   * {@code metadata} (the frame's JSON metadata, or null) goes in a {@code metadata} part of the
+   * multipart body, or a {@code metadata} field of a reference.
    *
-   * @param file Path to file for upload.
    * @return true if upload succeeds (2xx), false otherwise.
    */
-  public boolean uploadFile(Path file, String uploadId) {
-    String endpoint = serverBaseUrl + "/api/v1/upload";
-    int maxRetries = 3;
-    long retryDelaySec = 3;
-
-    for (int attempt = 1; attempt <= maxRetries; attempt++) {
-      try (CloseableHttpClient client = HttpClients.createDefault()) {
-        HttpPost post = new HttpPost(endpoint);
-        post.addHeader("Client-Id", clientId);
-        post.addHeader("X-Upload-Id", uploadId);
-
-        HttpEntity entity =
-            MultipartEntityBuilder.create()
-                .addBinaryBody(
-                    "file",
-                    file.toFile(),
-                    ContentType.APPLICATION_OCTET_STREAM,
-                    file.getFileName().toString())
-                .build();
-
-        post.setEntity(entity);
-
-        try (CloseableHttpResponse response = client.execute(post)) {
-          int statusCode = response.getCode();
-          String body =
-              response.getEntity() != null ? EntityUtils.toString(response.getEntity()) : "";
-          log.info("Upload response [{}]: {}", statusCode, body);
-
-          if (statusCode >= 200 && statusCode < 300) {
-            return true;
+  public boolean uploadFile(
+      Path file, FrameContent frame, String uploadId, String contentHash, String metadata) {
+    // The endpoint holding the WebSocket session, which is where the ack will come from.
+    String base = endpoints.current();
+    String endpoint = base + "/api/v1/upload";
+    try {
+      if (contentHash != null && refsSupported && isDelivered(contentHash)) {
+        byte[] ref = refJson(file, uploadId, contentHash, metadata);
+        boolean compressRef = compression.shouldCompress(ref.length);
+        int refStatus = postRef(base, uploadId, ref, compressRef);
+        if (refStatus == HttpStatus.SC_UNSUPPORTED_MEDIA_TYPE && compressRef) {
+          compression.onRejected();
+          refStatus = postRef(base, uploadId, ref, false);
+        }
+        if (refStatus >= 200 && refStatus < 300) {
+          ClientMetrics.UPLOAD_REFS.increment();
+          return true;
+        }
+        switch (refStatus) {
+          case HttpStatus.SC_NOT_FOUND, HttpStatus.SC_CONFLICT, HttpStatus.SC_GONE -> {
+            synchronized (delivered) {
+              delivered.remove(contentHash);
+            }
+          }
+          case HttpStatus.SC_METHOD_NOT_ALLOWED, HttpStatus.SC_NOT_IMPLEMENTED -> {
+            log.info("Server does not accept upload references, sending full bodies");
+            refsSupported = false;
           }
+          default -> {
+            log.warn("Reference upload failed (status {}) for {}", refStatus, file.getFileName());
+            return false;
+          }
+        }
+      }
 
-          log.warn("Upload failed (status {}), attempt {}/{}", statusCode, attempt, maxRetries);
+      boolean compress = compression.shouldCompress(file);
+      int statusCode = post(endpoint, file, frame, uploadId, contentHash, metadata, compress);
+      if (statusCode == HttpStatus.SC_UNSUPPORTED_MEDIA_TYPE && compress) {
+        compression.onRejected();
+        statusCode = post(endpoint, file, frame, uploadId, contentHash, metadata, false);
+      }
+
+      if (statusCode >= 200 && statusCode < 300) {
+        if (contentHash != null) {
+          synchronized (delivered) {
+            delivered.add(contentHash);
+          }
         }
-      } catch (Exception e) {
-        log.error(
-            "Upload error for {} (attempt {}/{}): {}",
-            file.getFileName(),
-            attempt,
-            maxRetries,
-            e.getMessage());
+        return true;
       }
 
-      // Retry delay
-      try {
-        TimeUnit.SECONDS.sleep(retryDelaySec);
-        retryDelaySec *= 2;
-      } catch (InterruptedException ie) {
-        Thread.currentThread().interrupt();
-        log.warn("Upload retry interrupted");
-        return false;
+      log.warn("Upload failed (status {}) for {}", statusCode, file.getFileName());
+    } catch (IOException e) {
+      endpoints.reportFailure(base);
+      log.error("Upload error for {}: {}", file.getFileName(), e.getMessage());
+    } catch (Exception e) {
+      log.error("Upload error for {}: {}", file.getFileName(), e.getMessage());
+    }
+    return false;
+  }
+
+  private boolean isDelivered(String contentHash) {
+    synchronized (delivered) {
+      return delivered.contains(contentHash);
+    }
+  }
+
+  private byte[] refJson(Path file, String uploadId, String contentHash, String metadata)
+      throws IOException {
+    ObjectNode ref =
+        mapper
+            .createObjectNode()
+            .put("uploadId", uploadId)
+            .put("fileName", file.getFileName().toString())
+            .put("captureId", PreviewQueue.captureId(file))
+            .put("sha256", contentHash);
+    if (metadata != null) ref.set("metadata", mapper.readTree(metadata));
+    return mapper.writeValueAsBytes(ref);
+  }
+
+  private int postRef(String base, String uploadId, byte[] ref, boolean compress)
+      throws IOException {
+    HttpPost post = new HttpPost(base + "/api/v1/upload/ref");
+    post.addHeader("Client-Id", clientId);
+    post.addHeader("X-Upload-Id", uploadId);
+    ByteArrayEntity body =
+        compress
+            ? new ByteArrayEntity(
+                compression.deflate(ref), ContentType.APPLICATION_JSON, BodyCompression.DEFLATE)
+            : new ByteArrayEntity(ref, ContentType.APPLICATION_JSON);
+    post.setEntity(body);
+    FlightEvents.UploadAttempt jfr = attempt(uploadId, true);
+    try (CloseableHttpResponse response = client.execute(post)) {
+      jfr.end();
+      jfr.status = response.getCode();
+      if (response.getEntity() != null) EntityUtils.consume(response.getEntity());
+      log.debug("Reference upload response [{}] for {}", response.getCode(), uploadId);
+      compression.onResponse(response);
+      return response.getCode();
+    } finally {
+      jfr.bytes = body.getContentLength();
+      jfr.commit();
+    }
+  }
+
+  private static FlightEvents.UploadAttempt attempt(String uploadId, boolean reference) {
+    FlightEvents.UploadAttempt jfr = new FlightEvents.UploadAttempt();
+    jfr.uploadId = uploadId;
+    jfr.reference = reference;
+    jfr.begin();
+    return jfr;
+  }
+
+  private int post(
+      String endpoint,
+      Path file,
+      FrameContent frame,
+      String uploadId,
+      String contentHash,
+      String metadata,
+      boolean compress)
+      throws IOException, ParseException {
+    HttpPost post = new HttpPost(endpoint);
+    post.addHeader("Client-Id", clientId);
+    post.addHeader("X-Upload-Id", uploadId);
+    if (contentHash != null) post.addHeader("X-Content-SHA256", contentHash);
+    // A preview and its full frame share the capture id.
+    post.addHeader("X-Capture-Id", PreviewQueue.captureId(file));
+    post.addHeader("X-Frame-Kind", PreviewQueue.isPreview(file) ? "preview" : "full");
+
+    String fileName = file.getFileName().toString();
+    MultipartEntityBuilder multipart = MultipartEntityBuilder.create();
+    if (frame != null) {
+      multipart.addPart("file", new FrameBody(frame, fileName));
+    } else {
+      multipart.addBinaryBody(
+          "file", file.toFile(), ContentType.APPLICATION_OCTET_STREAM, fileName);
+    }
+    if (metadata != null) {
+      multipart.addTextBody("metadata", metadata, ContentType.APPLICATION_JSON);
+    }
+    HttpEntity entity = multipart.build();
+
+    TimedEntity timed = new TimedEntity(limiter.wrap(compress ? compression.wrap(entity) : entity));
+    post.setEntity(timed);
+
+    FlightEvents.UploadAttempt jfr = attempt(uploadId, false);
+    long start = System.nanoTime();
+    try (CloseableHttpResponse response = client.execute(post)) {
+      long responded = System.nanoTime();
+      jfr.end();
+      int statusCode = response.getCode();
+      jfr.status = statusCode;
+      if (timed.bodySentAt > 0) {
+        limiter.onTransfer(timed.bytes, timed.bodySentAt - start, responded - timed.bodySentAt);
       }
+      String body = response.getEntity() != null ? EntityUtils.toString(response.getEntity()) : "";
+      DiagJournal.record(
+          JournalEvent.HTTP_RESPONSE,
+          statusCode,
+          DiagJournal.frameId(file),
+          timed.bytes,
+          (responded - start) / 1000);
+      log.debug("Upload response [{}]: {}", statusCode, body);
+      compression.onResponse(response);
+      return statusCode;
+    } finally {
+      jfr.bytes = timed.bytes;
+      jfr.commit();
     }
+  }
 
-    log.error("File upload failed after {} attempts: {}", maxRetries, file);
-    return false;
+  @Override
+  public void close() throws IOException {
+    client.close();
+    compression.close();
+  }
+
+  /** Multipart part streamed from a frame's plaintext, off-heap or decrypted from its file. */
+  private static final class FrameBody extends AbstractContentBody {
+    private final FrameContent frame;
+    private final String fileName;
+    private final long length;
+
+    FrameBody(FrameContent frame, String fileName) throws IOException {
+      super(ContentType.APPLICATION_OCTET_STREAM);
+      this.frame = frame;
+      this.fileName = fileName;
+      this.length = frame.length();
+    }
+
+    @Override
+    public String getFilename() {
+      return fileName;
+    }
+
+    @Override
+    public long getContentLength() {
+      return length;
+    }
+
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+      frame.writeTo(out);
+    }
+  }
+
+  /** Records how many bytes went on the wire and when the body finished writing. */
+  private static final class TimedEntity extends HttpEntityWrapper {
+    private long bytes;
+    private long bodySentAt;
+
+    TimedEntity(HttpEntity wrapped) {
+      super(wrapped);
+    }
+
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+      CountingOutputStream counting = new CountingOutputStream(out);
+      super.writeTo(counting);
+      bytes = counting.count;
+      bodySentAt = System.nanoTime();
+    }
+  }
+
+  private static final class CountingOutputStream extends FilterOutputStream {
+    private long count;
+
+    CountingOutputStream(OutputStream out) {
+      super(out);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      out.write(b);
+      count++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      out.write(b, off, len);
+      count += len;
+    }
+
+    @Override
+    public void close() {}
   }
 }
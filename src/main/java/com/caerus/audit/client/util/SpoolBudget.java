@@ -0,0 +1,33 @@
+package com.caerus.audit.client.util;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Disk budget for the spool under one directory, shared by every capture that spools there: in
+ * multi-session mode all sessions draw on one budget instead of one each. Usage is measured with
+ * {@link SpoolUsage} at most once a second, however many captures ask.
+ */
+public final class SpoolBudget {
+  private static final long REFRESH_MILLIS = 1000;
+
+  private final Path dir;
+  private final long maxBytes;
+  private long usedBytes; // guarded by this
+  private long measuredAt; // guarded by this
+
+  public SpoolBudget(Path dir, long maxBytes) {
+    this.dir = dir;
+    this.maxBytes = maxBytes;
+  }
+
+  /** Share of the budget in use. */
+  public synchronized double usedFraction() throws IOException {
+    long now = System.currentTimeMillis();
+    if (measuredAt == 0 || now - measuredAt >= REFRESH_MILLIS) {
+      usedBytes = SpoolUsage.usedBytes(dir);
+      measuredAt = now;
+    }
+    return (double) usedBytes / maxBytes;
+  }
+}
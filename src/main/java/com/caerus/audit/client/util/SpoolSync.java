@@ -0,0 +1,116 @@
+package com.caerus.audit.client.util;
+
+import com.caerus.audit.client.metrics.ClientMetrics;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Makes spool writes durable. Files are fsynced together with their directories, either right away,
+ * in batches (every {@code batchFiles} files or after {@code maxDelay}, whichever comes first), or
+ * not at all. In batch mode a power cut can lose or truncate the last batch, which the startup
+ * spool scan cleans up.
+ */
+public class SpoolSync implements AutoCloseable {
+  public enum Mode {
+    NONE,
+    BATCH,
+    ALWAYS
+  }
+
+  private static final Logger log = LoggerFactory.getLogger(SpoolSync.class);
+
+  private final Mode mode;
+  private final int batchFiles;
+  private final Set<Path> pending = new LinkedHashSet<>(); // guarded by this
+  private final ScheduledExecutorService flusher;
+
+  private SpoolSync(Mode mode, int batchFiles) {
+    this.mode = mode;
+    this.batchFiles = Math.max(1, batchFiles);
+    flusher =
+        mode == Mode.BATCH
+            ? Executors.newSingleThreadScheduledExecutor(
+                r -> {
+                  Thread t = new Thread(r, "SpoolSync");
+                  t.setDaemon(true);
+                  return t;
+                })
+            : null;
+  }
+
+  /** A sync in {@code mode}; in batch mode it starts flushing every {@code maxDelay}. */
+  public static SpoolSync create(Mode mode, int batchFiles, Duration maxDelay) {
+    SpoolSync sync = new SpoolSync(mode, batchFiles);
+    if (sync.flusher != null) {
+      long delay = Math.max(1, maxDelay.toMillis());
+      sync.flusher.scheduleWithFixedDelay(sync::flush, delay, delay, TimeUnit.MILLISECONDS);
+    }
+    return sync;
+  }
+
+  /** No fsync; durability is left to the OS. */
+  public static SpoolSync none() {
+    return new SpoolSync(Mode.NONE, 1);
+  }
+
+  /** Records that {@code file} was written (or renamed into place) and should become durable. */
+  public void written(Path file) {
+    if (mode == Mode.NONE) return;
+    boolean full;
+    synchronized (this) {
+      pending.add(file);
+      full = mode == Mode.ALWAYS || pending.size() >= batchFiles;
+    }
+    if (full) flush();
+  }
+
+  /** Fsyncs every pending file, then each directory holding one so the renames persist too. */
+  public void flush() {
+    List<Path> files;
+    synchronized (this) {
+      if (pending.isEmpty()) return;
+      files = new ArrayList<>(pending);
+      pending.clear();
+    }
+    long start = System.nanoTime();
+    Set<Path> dirs = new LinkedHashSet<>();
+    for (Path file : files) {
+      try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+        channel.force(true);
+      } catch (NoSuchFileException e) {
+        continue; // uploaded or replaced since
+      } catch (IOException e) {
+        log.warn("fsync failed for {}: {}", file, e.getMessage());
+      }
+      if (file.getParent() != null) dirs.add(file.getParent());
+    }
+    for (Path dir : dirs) {
+      try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+        channel.force(true);
+      } catch (IOException e) {
+        // Directories cannot be opened on Windows, where NTFS journals the rename itself.
+        log.trace("Directory fsync skipped for {}: {}", dir, e.getMessage());
+      }
+    }
+    ClientMetrics.SPOOL_FSYNC.record(ClientMetrics.microsSince(start));
+  }
+
+  @Override
+  public void close() {
+    if (flusher != null) flusher.shutdownNow();
+    flush();
+  }
+}
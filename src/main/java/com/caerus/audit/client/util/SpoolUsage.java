@@ -0,0 +1,63 @@
+package com.caerus.audit.client.util;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Disk usage of the local spool directory: the frames still to upload. Dead letters and diagnostics
+ * (journal, flight recording, watchdog dumps) are not counted, as the workstation lock that this
+ * feeds must not be tripped by files the upload queue will never drain. A file hard-linked under
+ * several names is counted once where the file system exposes file keys.
+ */
+public final class SpoolUsage {
+  private static final Set<String> EXCLUDED_DIRS = Set.of("dead-letter", "diagnostics");
+  private static final Set<String> EXCLUDED_SUFFIXES = Set.of(".journal", ".jfr");
+
+  private SpoolUsage() {}
+
+  /** Total size of spooled files under {@code dir}; 0 if it does not exist. */
+  public static long usedBytes(Path dir) throws IOException {
+    if (!Files.exists(dir)) return 0;
+    long[] total = {0};
+    Set<Object> seen = new HashSet<>();
+    Files.walkFileTree(
+        dir,
+        new SimpleFileVisitor<>() {
+          @Override
+          public FileVisitResult preVisitDirectory(Path d, BasicFileAttributes attrs) {
+            return EXCLUDED_DIRS.contains(String.valueOf(d.getFileName()))
+                ? FileVisitResult.SKIP_SUBTREE
+                : FileVisitResult.CONTINUE;
+          }
+
+          @Override
+          public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+            if (!attrs.isRegularFile() || excluded(file)) return FileVisitResult.CONTINUE;
+            Object key = attrs.fileKey();
+            if (key == null || seen.add(key)) total[0] += attrs.size();
+            return FileVisitResult.CONTINUE;
+          }
+
+          @Override
+          public FileVisitResult visitFileFailed(Path file, IOException e) {
+            // Uploaded and deleted while walking.
+            return FileVisitResult.CONTINUE;
+          }
+        });
+    return total[0];
+  }
+
+  private static boolean excluded(Path file) {
+    String name = file.getFileName().toString();
+    for (String suffix : EXCLUDED_SUFFIXES) {
+      if (name.endsWith(suffix)) return true;
+    }
+    return false;
+  }
+}
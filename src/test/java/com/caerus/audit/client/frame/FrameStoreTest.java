@@ -0,0 +1,73 @@
+package com.caerus.audit.client.frame;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import junit.framework.TestCase;
+
+public class FrameStoreTest extends TestCase {
+  private static final int SLAB = 4096;
+  private Path dir;
+
+  @Override
+  protected void setUp() throws Exception {
+    dir = Files.createTempDirectory("frame-store");
+  }
+
+  public void testFrameIsResidentAndOnDiskUntilLastReferenceIsReleased() throws Exception {
+    FrameStore store = new FrameStore(4 * SLAB, SLAB);
+    byte[] content = write(store, "a.png", 3 * SLAB - 5);
+
+    assertTrue(Arrays.equals(content, Files.readAllBytes(dir.resolve("a.png"))));
+    assertEquals(1, store.residentFrames());
+    assertEquals(3 * SLAB, store.usedBytes());
+
+    StoredFrame reader = store.acquire(dir.resolve("a.png"));
+    store.release(dir.resolve("a.png"));
+    assertNull(store.acquire(dir.resolve("a.png")));
+    assertEquals("reader still holds the slabs", 3 * SLAB, store.usedBytes());
+    try (InputStream in = reader.newInputStream()) {
+      assertTrue(Arrays.equals(content, in.readAllBytes()));
+    }
+    assertEquals(0, store.usedBytes());
+  }
+
+  public void testFrameOverBudgetSpillsToFile() throws Exception {
+    FrameStore store = new FrameStore(2 * SLAB, SLAB);
+    write(store, "a.png", SLAB);
+    byte[] big = write(store, "b.png", 3 * SLAB);
+
+    assertTrue(Arrays.equals(big, Files.readAllBytes(dir.resolve("b.png"))));
+    assertNull(store.acquire(dir.resolve("b.png")));
+    assertEquals("spilled slabs are returned", SLAB, store.usedBytes());
+    try (InputStream in = store.open(dir.resolve("b.png"))) {
+      assertTrue(Arrays.equals(big, in.readAllBytes()));
+    }
+  }
+
+  public void testSlabsAreRecycledWithinBudget() throws Exception {
+    FrameStore store = new FrameStore(2 * SLAB, SLAB);
+    for (int i = 0; i < 10; i++) {
+      Path file = dir.resolve(i + ".png");
+      write(store, i + ".png", 2 * SLAB);
+      StoredFrame frame = store.acquire(file);
+      assertNotNull("frame " + i + " should fit after the previous one was freed", frame);
+      frame.release();
+      store.release(file);
+      assertEquals(0, store.usedBytes());
+    }
+  }
+
+  private byte[] write(FrameStore store, String name, int size) throws Exception {
+    byte[] content = new byte[size];
+    new Random(size).nextBytes(content);
+    try (OutputStream out = store.openOutput(dir.resolve(name))) {
+      out.write(content, 0, 100);
+      out.write(content, 100, size - 100);
+    }
+    return content;
+  }
+}
@@ -0,0 +1,71 @@
+package com.caerus.audit.client.frame;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Random;
+import java.util.zip.Adler32;
+import javax.imageio.ImageIO;
+import junit.framework.TestCase;
+
+/** Striped output must decode to exactly the source pixels with a stock PNG reader. */
+public class ParallelPngEncoderTest extends TestCase {
+
+  public void testDecodesToSourcePixels() throws Exception {
+    ParallelPngEncoder encoder = new ParallelPngEncoder(4, 4);
+    try {
+      // Tall enough for many stripes, and a single-stripe frame.
+      for (int[] size : new int[][] {{1000, 700}, {37, 5}}) {
+        BufferedImage src = noisyFrame(size[0], size[1]);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        encoder.encode(src, out);
+
+        BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(src.getWidth(), decoded.getWidth());
+        assertEquals(src.getHeight(), decoded.getHeight());
+        for (int y = 0; y < src.getHeight(); y++) {
+          for (int x = 0; x < src.getWidth(); x++) {
+            assertEquals(
+                "pixel " + x + "," + y,
+                src.getRGB(x, y) & 0xffffff,
+                decoded.getRGB(x, y) & 0xffffff);
+          }
+        }
+      }
+    } finally {
+      encoder.close();
+    }
+  }
+
+  public void testAdlerCombine() {
+    byte[] a = "first stripe".getBytes();
+    byte[] b = "second stripe, longer than the first".getBytes();
+    Adler32 whole = new Adler32();
+    whole.update(a);
+    whole.update(b);
+    Adler32 first = new Adler32();
+    first.update(a);
+    Adler32 second = new Adler32();
+    second.update(b);
+    assertEquals(
+        whole.getValue(),
+        ParallelPngEncoder.adler32Combine(first.getValue(), second.getValue(), b.length));
+  }
+
+  private static BufferedImage noisyFrame(int w, int h) {
+    BufferedImage img = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+    Graphics2D g = img.createGraphics();
+    g.setColor(new Color(0x1E5A8C));
+    g.fillRect(0, 0, w, h);
+    g.setColor(Color.WHITE);
+    g.fillRect(w / 4, h / 4, w / 2, h / 2);
+    g.dispose();
+    Random rnd = new Random(1);
+    for (int i = 0; i < w * h / 10; i++) {
+      img.setRGB(rnd.nextInt(w), rnd.nextInt(h), rnd.nextInt());
+    }
+    return img;
+  }
+}
@@ -0,0 +1,67 @@
+package com.caerus.audit.client.frame;
+
+import java.util.Arrays;
+import java.util.Random;
+import junit.framework.TestCase;
+
+/** The vector kernels must agree bit for bit with the scalar ones, remainders included. */
+public class PixelKernelsTest extends TestCase {
+  private final PixelKernels scalar = PixelKernels.scalar();
+  private final PixelKernels simd = PixelKernels.get();
+  private final Random random = new Random(42);
+
+  public void testVectorKernelsLoadWithTheModule() {
+    assertTrue(simd.name(), simd.name().startsWith("vector"));
+  }
+
+  public void testCountChanged() {
+    for (int n : new int[] {0, 3, 64, 1001}) {
+      int[] a = noise(n);
+      int[] b = a.clone();
+      for (int i = 0; i < n; i += 7) b[i] ^= 1 << random.nextInt(24);
+      if (n > 1) b[1] ^= 0xFF000000; // alpha only: not a change
+      int expected = (n + 6) / 7;
+      assertEquals(expected, scalar.countChanged(a, b, n));
+      assertEquals(expected, simd.countChanged(a, b, n));
+    }
+  }
+
+  public void testHalve() {
+    for (int[] size : new int[][] {{1, 1}, {5, 3}, {67, 9}}) {
+      int w = size[0];
+      int h = size[1];
+      int srcStride = 2 * w + 1; // an odd column, ignored
+      int[] src = noise(srcStride * 2 * h);
+      int[] expected = new int[w * h];
+      int[] actual = new int[w * h];
+      scalar.halve(src, srcStride, expected, w, w, h);
+      simd.halve(src, srcStride, actual, w, w, h);
+      assertTrue(Arrays.equals(expected, actual));
+    }
+    int[] block = {0xFF000000, 0xFF0000FF, 0xFF0000FF, 0xFF0000FF};
+    int[] out = new int[1];
+    scalar.halve(block, 2, out, 1, 1, 1);
+    assertEquals(0xFF0000BF, out[0]);
+  }
+
+  public void testToRgb() {
+    for (int n : new int[] {1, 13, 640}) {
+      int[] argb = noise(n + 2);
+      byte[] expected = new byte[3 + 3 * n + 5];
+      byte[] actual = new byte[expected.length];
+      Arrays.fill(expected, (byte) 7);
+      Arrays.fill(actual, (byte) 7);
+      scalar.toRgb(argb, 2, n, expected, 3);
+      simd.toRgb(argb, 2, n, actual, 3);
+      assertTrue(Arrays.equals(expected, actual));
+      assertEquals((byte) (argb[2] >>> 16), actual[3]);
+      assertEquals((byte) 7, actual[3 + 3 * n]);
+    }
+  }
+
+  private int[] noise(int n) {
+    int[] pixels = new int[n];
+    for (int i = 0; i < n; i++) pixels[i] = random.nextInt();
+    return pixels;
+  }
+}
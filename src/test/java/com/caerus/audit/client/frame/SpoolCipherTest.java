@@ -0,0 +1,147 @@
+package com.caerus.audit.client.frame;
+
+import com.caerus.audit.client.util.SpoolSync;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Random;
+import junit.framework.TestCase;
+
+public class SpoolCipherTest extends TestCase {
+  private static final int CHUNK = 1024;
+
+  public void testRoundTripAcrossChunkBoundaries() throws Exception {
+    Path dir = Files.createTempDirectory("spool-cipher");
+    SpoolCipher cipher = SpoolCipher.forInstall(dir.resolve("spool.key"), CHUNK, dir);
+    for (int size : new int[] {0, 1, CHUNK - 1, CHUNK, CHUNK + 1, 3 * CHUNK, 3 * CHUNK + 7}) {
+      byte[] plain = random(size);
+      ByteArrayOutputStream sealed = new ByteArrayOutputStream();
+      try (OutputStream out = cipher.encrypt(sealed)) {
+        out.write(plain);
+      }
+      Path file = Files.write(dir.resolve("f" + size), sealed.toByteArray());
+      assertEquals(size, cipher.plaintextLength(file));
+      assertEquals(Boolean.TRUE, cipher.isComplete(file));
+      try (InputStream in = cipher.decrypt(file, Files.newInputStream(file))) {
+        assertTrue("size " + size, Arrays.equals(plain, in.readAllBytes()));
+      }
+    }
+    // The key persists: a second load reads what the first wrote.
+    SpoolCipher reloaded = SpoolCipher.forInstall(dir.resolve("spool.key"), CHUNK, dir);
+    try (InputStream in =
+        reloaded.decrypt(dir.resolve("f1"), Files.newInputStream(dir.resolve("f1")))) {
+      assertEquals(1, in.readAllBytes().length);
+    }
+  }
+
+  public void testTruncationAndTamperingAreDetected() throws Exception {
+    Path dir = Files.createTempDirectory("spool-cipher");
+    SpoolCipher cipher = SpoolCipher.forInstall(dir.resolve("spool.key"), CHUNK, dir);
+    ByteArrayOutputStream sealed = new ByteArrayOutputStream();
+    try (OutputStream out = cipher.encrypt(sealed)) {
+      out.write(random(3 * CHUNK));
+    }
+    byte[] bytes = sealed.toByteArray();
+
+    // Dropping the final chunk leaves a file that ends on a valid, but non-final, chunk.
+    Path truncated =
+        Files.write(dir.resolve("truncated"), Arrays.copyOf(bytes, 16 + 2 * (CHUNK + 16)));
+    assertEquals(Boolean.FALSE, cipher.isComplete(truncated));
+    assertUnreadable(cipher, truncated);
+
+    byte[] flipped = bytes.clone();
+    flipped[100] ^= 1;
+    Path tampered = Files.write(dir.resolve("tampered"), flipped);
+    assertUnreadable(cipher, tampered);
+  }
+
+  public void testFrameStoreEncryptsFilesButNotResidentCopies() throws Exception {
+    Path dir = Files.createTempDirectory("spool-cipher");
+    SpoolCipher cipher = SpoolCipher.forInstall(dir.resolve("spool.key"), CHUNK, dir);
+    byte[] plain = random(5000);
+    for (FrameStore store :
+        new FrameStore[] {
+          new FrameStore(1 << 20, 4096, SpoolSync.none(), cipher),
+          new FrameStore(0, 4096, SpoolSync.none(), cipher)
+        }) {
+      Path file = dir.resolve("frame.png");
+      try (OutputStream out = store.openOutput(file)) {
+        out.write(plain);
+      }
+      assertFalse(Arrays.equals(plain, Files.readAllBytes(file)));
+      assertTrue(store.isIntact(file));
+      assertEquals(plain.length, store.content(file).length());
+      try (InputStream in = store.open(file)) {
+        assertTrue(Arrays.equals(plain, in.readAllBytes()));
+      }
+      store.release(file);
+      try (InputStream in = store.open(file)) {
+        assertTrue(Arrays.equals(plain, in.readAllBytes()));
+      }
+    }
+  }
+
+  public void testPlaintextIsReadOnlyFromFramesSpooledBeforeEncryption() throws Exception {
+    Path dir = Files.createTempDirectory("spool-cipher");
+    Path keyFile = dir.resolve("spool.key");
+    byte[] plain = random(5000);
+    Path legacy =
+        Files.write(Files.createDirectories(dir.resolve("lane")).resolve("legacy.png"), plain);
+    SpoolCipher cipher = SpoolCipher.forInstall(keyFile, CHUNK, dir);
+    // Dropped in after the key exists, backdated to look like it predates encryption.
+    Path planted = Files.write(dir.resolve("planted.png"), plain);
+    Files.setLastModifiedTime(planted, FileTime.fromMillis(System.currentTimeMillis() - 3_600_000));
+
+    assertNull(cipher.isComplete(legacy));
+    try (InputStream in = cipher.decrypt(legacy, Files.newInputStream(legacy))) {
+      assertTrue(Arrays.equals(plain, in.readAllBytes()));
+    }
+    assertEquals(Boolean.FALSE, cipher.isComplete(planted));
+    assertUnreadable(cipher, planted);
+    assertUnreadable(SpoolCipher.forInstall(keyFile, CHUNK, dir), planted);
+
+    // With encryption switched off, new frames are plaintext and must stay readable, including
+    // once encryption is switched back on.
+    Path offFrame = Files.write(dir.resolve("off.png"), plain);
+    try (InputStream in =
+        SpoolCipher.readOnly(keyFile, CHUNK).decrypt(offFrame, Files.newInputStream(offFrame))) {
+      assertTrue(Arrays.equals(plain, in.readAllBytes()));
+    }
+    SpoolCipher reenabled = SpoolCipher.forInstall(keyFile, CHUNK, dir);
+    assertNull(reenabled.isComplete(offFrame));
+    assertNull(reenabled.isComplete(legacy));
+    Path later = Files.write(dir.resolve("later.png"), plain);
+    assertEquals(Boolean.FALSE, reenabled.isComplete(later));
+  }
+
+  public void testTruncatedKeyFilesAreRejected() throws Exception {
+    Path dir = Files.createTempDirectory("spool-cipher");
+    for (byte[] stored : new byte[][] {{}, {1}, {1, 2, 3, 4}}) {
+      Path keyFile = Files.write(dir.resolve("spool.key"), stored);
+      try {
+        SpoolCipher.forInstall(keyFile, CHUNK, dir);
+        fail("expected a " + stored.length + "-byte key file to be rejected");
+      } catch (IOException expected) {
+      }
+    }
+  }
+
+  private static void assertUnreadable(SpoolCipher cipher, Path file) throws IOException {
+    try (InputStream in = cipher.decrypt(file, Files.newInputStream(file))) {
+      in.readAllBytes();
+      fail("expected " + file.getFileName() + " to fail authentication");
+    } catch (IOException expected) {
+    }
+  }
+
+  private static byte[] random(int size) {
+    byte[] b = new byte[size];
+    new Random(size).nextBytes(b);
+    return b;
+  }
+}
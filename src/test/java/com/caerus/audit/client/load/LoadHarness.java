@@ -0,0 +1,216 @@
+package com.caerus.audit.client.load;
+
+import com.caerus.audit.client.queue.PersistentFileQueue;
+import com.caerus.audit.client.queue.RetryPolicy;
+import com.caerus.audit.client.service.ConfigService;
+import com.caerus.audit.client.service.EventReporter;
+import com.caerus.audit.client.service.FrameSource;
+import com.caerus.audit.client.service.ScreenshotService;
+import com.caerus.audit.client.service.UploadService;
+import com.caerus.audit.client.service.WebSocketClient;
+import com.caerus.audit.client.stub.StubAuditServer;
+import com.caerus.audit.client.transport.HttpUploadTransport;
+import com.caerus.audit.client.transport.UploadTransport;
+import com.caerus.audit.client.transport.WebSocketUploadTransport;
+import com.caerus.audit.client.util.BandwidthLimiter;
+import com.caerus.audit.client.util.BodyCompression;
+import com.caerus.audit.client.util.EndpointSelector;
+import com.caerus.audit.client.util.HttpUtil;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Drives the real capture → queue → upload pipeline against {@link StubAuditServer} with synthetic
+ * frames and reports sustained throughput, backlog drain time and peak heap.
+ *
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *   -Dexec.mainClass=com.caerus.audit.client.load.LoadHarness \
+ *   -Dexec.args="--duration=30 --fps=5 --latencyMs=50 --errorRate=0.05 --kbps=8000"
+ * </pre>
+ *
+ * Options: {@code duration} (s), {@code fps}, {@code width}, {@code height}, {@code latencyMs},
+ * {@code errorRate}, {@code kbps} (stub inbound bandwidth, 0 = unlimited), {@code transport}
+ * (http|ws), {@code drainTimeout} (s).
+ */
+public class LoadHarness {
+
+  public static void main(String[] args) throws Exception {
+    Map<String, String> opts = new HashMap<>();
+    for (String arg : args) {
+      String[] kv = arg.replaceFirst("^--", "").split("=", 2);
+      opts.put(kv[0], kv.length > 1 ? kv[1] : "true");
+    }
+    int duration = Integer.parseInt(opts.getOrDefault("duration", "30"));
+    double fps = Double.parseDouble(opts.getOrDefault("fps", "2"));
+    int width = Integer.parseInt(opts.getOrDefault("width", "1920"));
+    int height = Integer.parseInt(opts.getOrDefault("height", "1080"));
+    int drainTimeout = Integer.parseInt(opts.getOrDefault("drainTimeout", "120"));
+    String transportName = opts.getOrDefault("transport", "http");
+
+    Path work = Files.createTempDirectory("audit-load");
+    try (StubAuditServer server =
+        new StubAuditServer()
+            .retainBodies(false)
+            .withLatency(Duration.ofMillis(Long.parseLong(opts.getOrDefault("latencyMs", "0"))))
+            .withErrorRate(Double.parseDouble(opts.getOrDefault("errorRate", "0")))
+            .withBandwidth(Long.parseLong(opts.getOrDefault("kbps", "0")) * 1024 / 8)
+            .start()) {
+      String url = server.baseUrl();
+      String clientId = "load-client";
+      ConfigService config = new ConfigService(url, clientId);
+      EventReporter events = new EventReporter(url, clientId, "127.0.0.1");
+      WebSocketClient ws = new WebSocketClient(url, clientId);
+      ws.start();
+      PersistentFileQueue queue =
+          PersistentFileQueue.open(
+              work.resolve("queue"),
+              Duration.ofMinutes(5),
+              new RetryPolicy(8, Duration.ofMillis(200), Duration.ofSeconds(5)));
+      UploadTransport transport =
+          "ws".equals(transportName)
+              ? new WebSocketUploadTransport(
+                  ws, 256 * 1024, 4, Duration.ofSeconds(30), BandwidthLimiter.unlimited())
+              : new HttpUploadTransport(
+                  new HttpUtil(
+                      EndpointSelector.single(url),
+                      clientId,
+                      new HttpUtil.Options().compression(new BodyCompression(true, 1))),
+                  ws);
+      ScreenshotService capture =
+          new ScreenshotService(
+              config,
+              queue,
+              events,
+              new ScreenshotService.Options()
+                  .frameSource(new SyntheticFrames(width, height))
+                  .spoolDir(work.resolve("spool")));
+      UploadService upload =
+          new UploadService(ws, transport, events, new UploadService.Options().queue(queue));
+      Thread uploader = new Thread(upload::start, "load-uploader");
+      uploader.setDaemon(true);
+      uploader.start();
+
+      System.out.printf(
+          "load: %ds at %.1f fps, %dx%d, transport=%s, stub=%s%n",
+          duration, fps, width, height, transportName, opts);
+      System.out.println("  sec  captured  uploaded  queued  heapMB");
+
+      long periodNanos = (long) (1_000_000_000L / fps);
+      long start = System.nanoTime();
+      long nextFrame = start;
+      long nextReport = start + 1_000_000_000L;
+      int captured = 0;
+      long peakHeap = 0;
+      int second = 0;
+      while (System.nanoTime() - start < duration * 1_000_000_000L) {
+        long now = System.nanoTime();
+        if (now >= nextFrame) {
+          capture.capture();
+          captured++;
+          nextFrame += periodNanos;
+        }
+        if (now >= nextReport) {
+          peakHeap = Math.max(peakHeap, usedHeap());
+          report(++second, captured, server, queue);
+          nextReport += 1_000_000_000L;
+        }
+        long sleep = Math.min(nextFrame, nextReport) - System.nanoTime();
+        if (sleep > 0) Thread.sleep(sleep / 1_000_000, (int) (sleep % 1_000_000));
+      }
+      double captureSeconds = (System.nanoTime() - start) / 1e9;
+      long uploadedAtStop = server.uploadCount.get();
+
+      long drainStart = System.nanoTime();
+      while (!queue.isEmpty() && System.nanoTime() - drainStart < drainTimeout * 1_000_000_000L) {
+        Thread.sleep(1000);
+        peakHeap = Math.max(peakHeap, usedHeap());
+        report(++second, captured, server, queue);
+      }
+      double drainSeconds = (System.nanoTime() - drainStart) / 1e9;
+
+      System.out.println("summary:");
+      System.out.printf("  captured          %d (%.2f fps)%n", captured, captured / captureSeconds);
+      System.out.printf(
+          "  sustained upload  %.2f fps during capture%n", uploadedAtStop / captureSeconds);
+      System.out.printf(
+          "  uploaded          %d frames, %.1f MB, %d injected errors%n",
+          server.uploadCount.get(),
+          server.uploadBytes.get() / 1048576.0,
+          server.injectedErrors.get());
+      System.out.printf(
+          "  backlog drain     %.1fs%s%n",
+          drainSeconds, queue.isEmpty() ? "" : " (timed out, " + queue.size() + " left)");
+      System.out.printf("  peak heap         %d MB%n", peakHeap / 1048576);
+
+      uploader.interrupt();
+      ws.stop();
+      config.stop();
+    } finally {
+      deleteRecursively(work);
+    }
+    System.exit(0);
+  }
+
+  private static void report(
+      int second, int captured, StubAuditServer server, PersistentFileQueue queue) {
+    System.out.printf(
+        "%5d  %8d  %8d  %6d  %6d%n",
+        second, captured, server.uploadCount.get(), queue.size(), usedHeap() / 1048576);
+  }
+
+  private static long usedHeap() {
+    Runtime rt = Runtime.getRuntime();
+    return rt.totalMemory() - rt.freeMemory();
+  }
+
+  private static void deleteRecursively(Path dir) throws Exception {
+    try (var paths = Files.walk(dir)) {
+      paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+    }
+  }
+
+  /** Desktop-like frames: flat panels plus a moving noisy region, so PNG sizes are realistic. */
+  static class SyntheticFrames implements FrameSource {
+    private final int width;
+    private final int height;
+    private final Random random = new Random(7);
+    private int tick;
+
+    SyntheticFrames(int width, int height) {
+      this.width = width;
+      this.height = height;
+    }
+
+    @Override
+    public BufferedImage grab() {
+      BufferedImage img = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+      Graphics2D g = img.createGraphics();
+      g.setColor(new Color(0xF3F3F3));
+      g.fillRect(0, 0, width, height);
+      g.setColor(new Color(0x2B579A));
+      g.fillRect(0, 0, width, height / 20);
+      for (int y = height / 10; y < height; y += 24) {
+        g.setColor(Color.DARK_GRAY);
+        g.fillRect(width / 10, y, (y * 37 + tick * 11) % (width / 2) + 40, 10);
+      }
+      g.dispose();
+      int x0 = (tick * 40) % Math.max(1, width - 200);
+      for (int y = 0; y < Math.min(200, height); y++) {
+        for (int x = x0; x < x0 + 200 && x < width; x++) {
+          img.setRGB(x, y + height / 2 - 100, random.nextInt());
+        }
+      }
+      tick++;
+      return img;
+    }
+  }
+}
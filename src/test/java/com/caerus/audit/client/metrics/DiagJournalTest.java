@@ -0,0 +1,63 @@
+package com.caerus.audit.client.metrics;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import junit.framework.TestCase;
+
+public class DiagJournalTest extends TestCase {
+
+  public void testWrapsAndContinuesAfterReopen() throws Exception {
+    Path file = Files.createTempDirectory("diag-journal").resolve("diag.journal");
+    int capacity;
+    try (DiagJournal journal = DiagJournal.open(file, 16 * DiagJournal.RECORD)) {
+      capacity = journal.capacity();
+      for (int i = 0; i < capacity + 5; i++) {
+        journal.write(JournalEvent.CAPTURED, 1, 20250101_093000000L + i, 1000 + i, i);
+      }
+    }
+    List<JournalDump.Entry> entries = JournalDump.read(file);
+    assertEquals(capacity, entries.size());
+    assertEquals(5, entries.get(0).seq());
+    assertEquals(1005, entries.get(0).value1());
+    assertEquals(JournalEvent.CAPTURED, entries.get(0).event());
+
+    try (DiagJournal journal = DiagJournal.open(file, 16 * DiagJournal.RECORD)) {
+      assertEquals(capacity + 5, journal.written());
+      journal.write(JournalEvent.ACKED, 1, 0, 42, 0);
+    }
+    entries = JournalDump.read(file);
+    JournalDump.Entry last = entries.get(entries.size() - 1);
+    assertEquals(capacity + 5, last.seq());
+    assertTrue(JournalDump.format(last), JournalDump.format(last).contains("ACKED latencyUs=42"));
+    assertTrue(
+        JournalDump.format(entries.get(0))
+            .contains("CAPTURED frame=20250101_093000006 bytes=1006"));
+  }
+
+  public void testTruncatedJournalIsRejected() throws Exception {
+    Path file = Files.createTempDirectory("diag-journal").resolve("diag.journal");
+    try (DiagJournal journal = DiagJournal.open(file, 16 * DiagJournal.RECORD)) {
+      journal.write(JournalEvent.CAPTURED, 1, 0, 1000, 0);
+    }
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+      channel.truncate(DiagJournal.HEADER + 3 * DiagJournal.RECORD);
+    }
+    try {
+      JournalDump.read(file);
+      fail("expected a truncated journal to be rejected");
+    } catch (IOException expected) {
+      assertTrue(
+          expected.getMessage(), expected.getMessage().startsWith("Not a diagnostics journal"));
+    }
+  }
+
+  public void testFrameIdIgnoresSessionPrefixAndDirectories() {
+    assertEquals(20250101093000123L, DiagJournal.frameId("s12_20250101_093000123.png"));
+    assertEquals(
+        20250101093000123L, DiagJournal.frameId(Path.of("/tmp/s7", "20250101_093000123.png")));
+  }
+}
@@ -0,0 +1,61 @@
+package com.caerus.audit.client.metrics;
+
+import com.caerus.audit.client.queue.PersistentFileQueue;
+import com.caerus.audit.client.service.ConfigService;
+import com.caerus.audit.client.service.EventReporter;
+import com.caerus.audit.client.service.ScreenshotService;
+import java.awt.image.BufferedImage;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.Collectors;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import junit.framework.TestCase;
+
+public class FlightEventsTest extends TestCase {
+
+  public void testContinuousRecordingCapturesPipelineEvents() throws Exception {
+    Path dir = Files.createTempDirectory("jfr");
+    PersistentFileQueue queue = PersistentFileQueue.open(dir.resolve("queue"));
+    ScreenshotService capture =
+        new ScreenshotService(
+            new ConfigService("http://127.0.0.1:9", "jfr"),
+            queue,
+            new EventReporter("http://127.0.0.1:9", "jfr", "127.0.0.1"),
+            new ScreenshotService.Options()
+                .frameSource(() -> new BufferedImage(64, 48, BufferedImage.TYPE_INT_RGB))
+                .spoolDir(dir));
+
+    Path dump = dir.resolve("dump.jfr");
+    try (Recording recording =
+        FlightRecording.start(dir.resolve("exit.jfr"), 16 * 1024 * 1024, Duration.ofMinutes(5))) {
+      Path frame = capture.capture();
+      queue.markComplete(frame);
+      recording.dump(dump);
+    }
+
+    List<RecordedEvent> events =
+        RecordingFile.readAllEvents(dump).stream()
+            .filter(e -> e.getEventType().getName().startsWith("com.caerus.audit."))
+            .collect(Collectors.toList());
+    RecordedEvent captured = find(events, "com.caerus.audit.Capture");
+    assertEquals("encoded", captured.getString("outcome"));
+    assertTrue(captured.getLong("bytes") > 0);
+    List<String> ops =
+        events.stream()
+            .filter(e -> e.getEventType().getName().equals("com.caerus.audit.QueueOperation"))
+            .map(e -> e.getString("operation") + ":" + e.getInt("depth"))
+            .collect(Collectors.toList());
+    assertEquals(List.of("enqueue:1", "complete:0"), ops);
+  }
+
+  private static RecordedEvent find(List<RecordedEvent> events, String name) {
+    for (RecordedEvent e : events) {
+      if (e.getEventType().getName().equals(name)) return e;
+    }
+    throw new AssertionError("No " + name + " event in " + events);
+  }
+}
@@ -0,0 +1,63 @@
+package com.caerus.audit.client.metrics;
+
+import java.util.Arrays;
+import java.util.Random;
+import junit.framework.TestCase;
+
+/** Bucket layout and percentile accuracy against exact values. */
+public class HistogramTest extends TestCase {
+  // Half a sub-bucket: 16 per power of two.
+  private static final double MAX_ERROR = 1.0 / 32;
+
+  public void testBucketsAreContiguousAndMidpointsWithinError() {
+    Random rnd = new Random(1);
+    int previous = -1;
+    for (long v = 0; v < 1 << 16; v++) {
+      int index = Histogram.index(v);
+      assertTrue("v=" + v, index == previous || index == previous + 1);
+      previous = index;
+      assertWithinError(v, Histogram.midpoint(index));
+    }
+    for (int i = 0; i < 10_000; i++) {
+      long v = rnd.nextLong() >>> (1 + rnd.nextInt(63));
+      assertWithinError(v, Histogram.midpoint(Histogram.index(v)));
+    }
+    assertWithinError(Long.MAX_VALUE, Histogram.midpoint(Histogram.index(Long.MAX_VALUE)));
+  }
+
+  public void testPercentilesMatchExactValues() {
+    Histogram h = new Histogram(1);
+    Random rnd = new Random(2);
+    long[] values = new long[100_000];
+    for (int i = 0; i < values.length; i++) {
+      // Latency-like: mostly small with a long tail.
+      values[i] = (long) Math.exp(rnd.nextGaussian() * 1.5 + 8);
+      h.record(values[i]);
+    }
+    Arrays.sort(values);
+    for (double q : new double[] {0.5, 0.9, 0.99, 0.999, 1.0}) {
+      long exact = values[(int) Math.ceil(q * values.length) - 1];
+      assertWithinError(exact, (long) h.percentile(q));
+    }
+    assertEquals(values.length, h.count());
+    assertEquals((double) values[values.length - 1], h.max());
+    assertEquals((double) Arrays.stream(values).sum(), h.sum());
+  }
+
+  public void testScaleEmptyAndNegativeValues() {
+    Histogram h = new Histogram(1e-6);
+    assertEquals(0.0, h.percentile(0.99));
+    h.record(-5);
+    h.record(2_000_000);
+    assertEquals(2, h.count());
+    assertEquals(2.0, h.max(), 1e-9);
+    assertEquals(2.0, h.sum(), 1e-9);
+    assertEquals(0.0, h.percentile(0.5));
+    assertEquals(2.0, h.percentile(1.0), 2.0 * MAX_ERROR);
+  }
+
+  private static void assertWithinError(long exact, long estimate) {
+    double error = Math.abs((double) estimate - exact);
+    assertTrue(exact + " ~ " + estimate, error <= Math.max(1, exact * MAX_ERROR));
+  }
+}
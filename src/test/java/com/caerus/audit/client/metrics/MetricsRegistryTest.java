@@ -0,0 +1,92 @@
+package com.caerus.audit.client.metrics;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import junit.framework.TestCase;
+
+/** Prometheus text, the JSON push snapshot and the loopback endpoint. */
+public class MetricsRegistryTest extends TestCase {
+
+  public void testPrometheusText() {
+    String text = sample().scrape();
+    List<String> lines = List.of(text.split("\n"));
+    Map<String, Double> samples = new HashMap<>();
+    for (String line : lines) {
+      if (line.startsWith("# TYPE ")) continue;
+      assertTrue(line, line.matches("[a-z_]+(\\{quantile=\"[0-9.]+\"\\})? \\S+"));
+      int space = line.lastIndexOf(' ');
+      samples.put(line.substring(0, space), Double.parseDouble(line.substring(space + 1)));
+    }
+
+    assertTrue(lines.contains("# TYPE audit_uploads_total counter"));
+    assertEquals(3.0, samples.get("audit_uploads_total"));
+    assertTrue(lines.contains("# TYPE audit_queue_depth gauge"));
+    assertEquals(7.0, samples.get("audit_queue_depth"));
+    // A failing gauge is reported, not thrown.
+    assertTrue(samples.get("audit_broken").isNaN());
+    assertTrue(lines.contains("# TYPE audit_upload_seconds summary"));
+    assertEquals(2.0, samples.get("audit_upload_seconds{quantile=\"0.5\"}"), 2.0 / 32);
+    assertEquals(4.0, samples.get("audit_upload_seconds{quantile=\"0.999\"}"), 4.0 / 32);
+    assertEquals(4.0, samples.get("audit_upload_seconds_max"), 1e-9);
+    assertEquals(10.0, samples.get("audit_upload_seconds_sum"), 1e-9);
+    assertEquals(4.0, samples.get("audit_upload_seconds_count"));
+  }
+
+  public void testJsonSnapshot() throws Exception {
+    ObjectMapper mapper = new ObjectMapper();
+    JsonNode json = mapper.readTree(mapper.writeValueAsString(sample().snapshot()));
+
+    assertEquals(3, json.path("audit_uploads_total").asLong());
+    assertEquals(7.0, json.path("audit_queue_depth").asDouble());
+    JsonNode upload = json.path("audit_upload_seconds");
+    assertEquals(4, upload.path("count").asLong());
+    assertEquals(10.0, upload.path("sum").asDouble(), 1e-9);
+    assertEquals(4.0, upload.path("max").asDouble(), 1e-9);
+    assertEquals(2.0, upload.path("p50.0").asDouble(), 2.0 / 32);
+    assertEquals(4.0, upload.path("p99.9").asDouble(), 4.0 / 32);
+  }
+
+  public void testEndpointServesScrapeOnLoopbackOnly() throws Exception {
+    MetricsRegistry registry = sample();
+    MetricsEndpoint endpoint = new MetricsEndpoint(registry, 0);
+    endpoint.start();
+    try {
+      assertTrue(endpoint.address().getAddress().isLoopbackAddress());
+      HttpResponse<String> response =
+          HttpClient.newHttpClient()
+              .send(
+                  HttpRequest.newBuilder(
+                          URI.create(
+                              "http://127.0.0.1:" + endpoint.address().getPort() + "/metrics"))
+                      .build(),
+                  HttpResponse.BodyHandlers.ofString());
+      assertEquals(200, response.statusCode());
+      assertEquals(
+          "text/plain; version=0.0.4", response.headers().firstValue("Content-Type").orElse(""));
+      assertEquals(registry.scrape(), response.body());
+    } finally {
+      endpoint.stop();
+    }
+  }
+
+  private static MetricsRegistry sample() {
+    MetricsRegistry registry = new MetricsRegistry();
+    registry.counter("audit_uploads_total").add(3);
+    registry.gauge("audit_queue_depth", () -> 7);
+    registry.gauge(
+        "audit_broken",
+        () -> {
+          throw new IllegalStateException("closed");
+        });
+    Histogram upload = registry.histogram("audit_upload_seconds", 1e-6);
+    for (long micros = 1_000_000; micros <= 4_000_000; micros += 1_000_000) upload.record(micros);
+    return registry;
+  }
+}
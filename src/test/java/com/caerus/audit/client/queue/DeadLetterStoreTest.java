@@ -0,0 +1,92 @@
+package com.caerus.audit.client.queue;
+
+import com.caerus.audit.client.enums.UploadPriority;
+import com.caerus.audit.client.frame.FrameStore;
+import com.caerus.audit.client.util.SpoolUsage;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.List;
+import junit.framework.TestCase;
+
+/** Retry schedule, burial of exhausted entries and their replay. */
+public class DeadLetterStoreTest extends TestCase {
+
+  public void testBackoffDoublesWithinJitterUpToTheCap() {
+    RetryPolicy policy = new RetryPolicy(8, Duration.ofSeconds(5), Duration.ofSeconds(60));
+    long[] nominal = {5_000, 5_000, 10_000, 20_000, 40_000, 60_000, 60_000};
+    for (int failures = 0; failures < nominal.length; failures++) {
+      for (int i = 0; i < 50; i++) {
+        long delay = policy.delayMillis(failures);
+        assertTrue(failures + ": " + delay, delay >= nominal[failures] * 8 / 10);
+        assertTrue(failures + ": " + delay, delay <= nominal[failures] * 12 / 10);
+      }
+    }
+  }
+
+  public void testExhaustedEntryIsBuriedAndReplayedWithItsIdentity() throws Exception {
+    Path dir = Files.createTempDirectory("dead-letter");
+    PersistentFileQueue queue =
+        PersistentFileQueue.open(
+            dir, Duration.ofMinutes(5), new RetryPolicy(2, Duration.ZERO, Duration.ZERO));
+    Path frame = Files.write(dir.resolve("frame.png"), new byte[4096]);
+    Files.write(FrameStore.metadataOf(frame), "{}".getBytes());
+    queue.enqueue(frame, UploadPriority.HIGH, "abc123");
+    long seq = queue.peek().seq();
+    long spooled = SpoolUsage.usedBytes(dir);
+
+    assertTrue(queue.incrementRetry(frame, "first"));
+    assertFalse(queue.incrementRetry(frame, "server said no"));
+    assertEquals(0, queue.size());
+    assertFalse(Files.exists(frame));
+    DeadLetterStore store = queue.deadLetters();
+    assertEquals(1, store.list().size());
+    Path held = store.list().get(0);
+    assertTrue(Files.exists(FrameStore.metadataOf(held)));
+    String reason = Files.readString(held.resolveSibling("frame.png.reason"));
+    assertTrue(reason, reason.contains("server said no"));
+    // Poisoned files do not count towards the spool cap.
+    assertTrue(SpoolUsage.usedBytes(dir) < spooled - 4000);
+
+    assertEquals(1, store.replay(queue));
+    assertTrue(store.list().isEmpty());
+    PersistentFileQueue.QueueEntry replayed = queue.peek();
+    assertEquals(frame, replayed.file());
+    assertEquals(UploadPriority.HIGH, replayed.priority());
+    assertEquals("abc123", replayed.contentHash());
+    assertEquals(seq, replayed.seq());
+    assertEquals(0, replayed.retries());
+    assertTrue(Files.exists(frame));
+    assertTrue(Files.exists(FrameStore.metadataOf(frame)));
+  }
+
+  public void testOldestEntriesAreDroppedOverTheQuota() throws Exception {
+    Path dir = Files.createTempDirectory("dead-letter");
+    DeadLetterStore store =
+        new DeadLetterStore(
+            dir.resolve("dead-letter"), new DeadLetterStore.Quota(10_000, Duration.ofDays(30)));
+    for (String name : new String[] {"a.png", "b.png", "c.png"}) {
+      store.bury(entry(Files.write(dir.resolve(name), new byte[4096])), "failed");
+      Thread.sleep(10);
+    }
+    assertEquals(List.of("b.png", "c.png"), names(store.list()));
+    assertTrue(store.usedBytes() <= 10_000);
+    assertFalse(Files.exists(store.directory().resolve("a.png.reason")));
+
+    Files.setLastModifiedTime(
+        store.directory().resolve("b.png.reason"),
+        FileTime.fromMillis(System.currentTimeMillis() - Duration.ofDays(31).toMillis()));
+    store.bury(entry(Files.write(dir.resolve("d.png"), new byte[100])), "failed");
+    assertEquals(List.of("c.png", "d.png"), names(store.list()));
+  }
+
+  private static PersistentFileQueue.QueueEntry entry(Path file) {
+    return new PersistentFileQueue.QueueEntry(
+        file, 8, UploadPriority.NORMAL, System.currentTimeMillis(), 0, null, 1);
+  }
+
+  private static List<String> names(List<Path> files) {
+    return files.stream().map(p -> p.getFileName().toString()).toList();
+  }
+}
@@ -0,0 +1,155 @@
+package com.caerus.audit.client.queue;
+
+import com.caerus.audit.client.enums.UploadPriority;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import junit.framework.TestCase;
+
+/**
+ * Drain order of the priority lanes: weights, starvation share, retry backoff and the merge of the
+ * backlog loaded at startup.
+ */
+public class PersistentFileQueueTest extends TestCase {
+
+  public void testLanesDrainByWeight() throws Exception {
+    Path dir = Files.createTempDirectory("lanes");
+    PersistentFileQueue queue =
+        PersistentFileQueue.open(dir, Duration.ofMinutes(5), RetryPolicy.defaults());
+    for (UploadPriority p : UploadPriority.values()) {
+      for (int i = 0; i < 20; i++) queue.enqueue(dir.resolve(p + "-" + i + ".png"), p);
+    }
+
+    Map<UploadPriority, Integer> served = drain(queue, 13);
+    assertEquals(8, (int) served.get(UploadPriority.CRITICAL));
+    assertEquals(4, (int) served.get(UploadPriority.HIGH));
+    assertEquals(1, (int) served.get(UploadPriority.NORMAL));
+  }
+
+  public void testOldBacklogGetsAShareButDoesNotOutrankFreshFrames() throws Exception {
+    Path dir = Files.createTempDirectory("starved");
+    long hourAgo = System.currentTimeMillis() - Duration.ofHours(1).toMillis();
+    List<String> backlog = new ArrayList<>();
+    for (int i = 0; i < 20; i++) {
+      backlog.add(
+          dir.resolve("old-" + i + ".png") + "|0|NORMAL|" + (hourAgo + i) + "|0||" + (i + 1));
+    }
+    Files.write(dir.resolve("upload-queue.txt"), backlog);
+    PersistentFileQueue queue =
+        PersistentFileQueue.open(dir, Duration.ofMinutes(5), RetryPolicy.defaults());
+    for (int i = 0; i < 20; i++) {
+      queue.enqueue(dir.resolve("new-" + i + ".png"), UploadPriority.CRITICAL);
+    }
+
+    PersistentFileQueue.QueueEntry first = queue.next();
+    assertEquals(UploadPriority.CRITICAL, first.priority());
+    queue.markComplete(first.file());
+    int normal = drain(queue, 15).get(UploadPriority.NORMAL);
+    // Every STARVED_SHARE-th pick, plus its weighted share; by age alone it would be all 16.
+    int share = 16 / PersistentFileQueue.STARVED_SHARE;
+    assertTrue("normal " + normal, normal >= share && normal <= share + 2);
+  }
+
+  public void testEntriesInBackoffAreSkipped() throws Exception {
+    Path dir = Files.createTempDirectory("backoff");
+    PersistentFileQueue queue =
+        PersistentFileQueue.open(dir, Duration.ofMinutes(5), RetryPolicy.defaults());
+    Path a = dir.resolve("a.png");
+    Path b = dir.resolve("b.png");
+    queue.enqueue(a);
+    queue.enqueue(b);
+
+    assertEquals(a, queue.next().file());
+    assertTrue(queue.incrementRetry(a));
+    assertEquals(b, queue.next().file());
+    queue.markComplete(b);
+    assertNull(queue.next());
+    assertTrue(queue.nextEligibleAt() > System.currentTimeMillis());
+    assertEquals(1, queue.size());
+  }
+
+  public void testEntriesInFlightAreNotHandedOutTwice() throws Exception {
+    Path dir = Files.createTempDirectory("in-flight");
+    PersistentFileQueue queue =
+        PersistentFileQueue.open(dir, Duration.ofMinutes(5), RetryPolicy.defaults());
+    Path a = dir.resolve("a.png");
+    Path b = dir.resolve("b.png");
+    queue.enqueue(a);
+    queue.enqueue(b);
+
+    assertEquals(a, queue.next().file());
+    // A second uploader, e.g. the loop that replaced a stalled one, moves on.
+    assertEquals(b, queue.next().file());
+    assertNull(queue.next());
+    assertEquals(Long.MAX_VALUE, queue.nextEligibleAt());
+    queue.release(a);
+    assertEquals(a, queue.next().file());
+    assertEquals(2, queue.size());
+  }
+
+  public void testEntriesEnqueuedWhileLoadingFollowTheBacklog() throws Exception {
+    Path dir = Files.createTempDirectory("lazy-load");
+    Path queueFile = dir.resolve("upload-queue.txt");
+    // A FIFO holds the loader in open() until the backlog is written below, so the enqueues happen
+    // before the load for certain. Skipped where there is no mkfifo.
+    if (!mkfifo(queueFile)) return;
+    PersistentFileQueue queue =
+        PersistentFileQueue.open(dir, Duration.ofMinutes(5), RetryPolicy.defaults());
+    queue.enqueue(dir.resolve("new-critical.png"), UploadPriority.CRITICAL, null, 10);
+    queue.enqueue(dir.resolve("new-normal.png"), UploadPriority.NORMAL, null, 11);
+
+    // Persisting now would replace the backlog on disk with just these two.
+    assertFalse(Files.isRegularFile(queueFile));
+    assertFalse(Files.exists(dir.resolve("upload-queue.txt.tmp")));
+
+    long hourAgo = System.currentTimeMillis() - Duration.ofHours(1).toMillis();
+    List<String> backlog = new ArrayList<>();
+    backlog.add(dir.resolve("old-critical.png") + "|0|CRITICAL|" + hourAgo + "|0||1");
+    for (int i = 0; i < 3; i++) {
+      backlog.add(
+          dir.resolve("old-" + i + ".png") + "|0|NORMAL|" + (hourAgo + i) + "|0||" + (i + 2));
+    }
+    Files.write(queueFile, backlog);
+
+    assertEquals(6, queue.queuedFiles().size());
+    List<String> order = new ArrayList<>();
+    for (String line : Files.readAllLines(queueFile)) {
+      order.add(Path.of(line.split("\\|")[0]).getFileName().toString());
+    }
+    assertEquals(
+        List.of(
+            "old-critical.png",
+            "new-critical.png",
+            "old-0.png",
+            "old-1.png",
+            "old-2.png",
+            "new-normal.png"),
+        order);
+    assertEquals(dir.resolve("old-critical.png"), queue.next().file());
+  }
+
+  private static boolean mkfifo(Path file) throws InterruptedException {
+    try {
+      return new ProcessBuilder("mkfifo", file.toString()).start().waitFor() == 0;
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  private static Map<UploadPriority, Integer> drain(PersistentFileQueue queue, int picks)
+      throws Exception {
+    Map<UploadPriority, Integer> served = new EnumMap<>(UploadPriority.class);
+    for (UploadPriority p : UploadPriority.values()) served.put(p, 0);
+    for (int i = 0; i < picks; i++) {
+      PersistentFileQueue.QueueEntry e = queue.next();
+      served.merge(e.priority(), 1, Integer::sum);
+      queue.markComplete(e.file());
+    }
+    return served;
+  }
+}
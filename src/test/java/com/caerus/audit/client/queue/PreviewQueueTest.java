@@ -0,0 +1,93 @@
+package com.caerus.audit.client.queue;
+
+import com.caerus.audit.client.frame.FrameStore;
+import com.caerus.audit.client.service.ConfigService;
+import com.caerus.audit.client.service.EventReporter;
+import com.caerus.audit.client.service.ScreenshotService;
+import com.caerus.audit.client.service.UploadService;
+import com.caerus.audit.client.service.WebSocketClient;
+import com.caerus.audit.client.stub.StubAuditServer;
+import com.caerus.audit.client.transport.HttpUploadTransport;
+import com.caerus.audit.client.util.EndpointSelector;
+import com.caerus.audit.client.util.HttpUtil;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import javax.imageio.ImageIO;
+import junit.framework.TestCase;
+
+public class PreviewQueueTest extends TestCase {
+
+  public void testKeepsOnlyTheNewestPreviews() throws Exception {
+    Path dir = Files.createTempDirectory("previews");
+    FrameStore frameStore = FrameStore.disabled();
+    PreviewQueue previews = new PreviewQueue(dir, frameStore, 320, 0.6f, 2);
+    BufferedImage screen = new BufferedImage(1920, 1080, BufferedImage.TYPE_INT_RGB);
+    for (int i = 1; i <= 4; i++) previews.offer("20250101_09000000" + i, screen);
+
+    assertEquals(2, previews.size());
+    assertFalse(Files.exists(dir.resolve("20250101_090000001" + PreviewQueue.SUFFIX)));
+    Path next = previews.next();
+    assertEquals("20250101_090000003", PreviewQueue.captureId(next));
+    BufferedImage scaled = ImageIO.read(new ByteArrayInputStream(Files.readAllBytes(next)));
+    assertEquals(320, scaled.getWidth());
+    assertEquals(180, scaled.getHeight());
+
+    // The preview being uploaded is not trimmed from under the upload.
+    previews.offer("20250101_090000005", screen);
+    assertTrue(Files.exists(next));
+    previews.complete(next);
+    assertFalse(Files.exists(next));
+    assertEquals(2, previews.size());
+  }
+
+  public void testPreviewUploadsAheadOfItsFrame() throws Exception {
+    Path spool = Files.createTempDirectory("preview-capture");
+    FrameStore frameStore = FrameStore.disabled();
+    try (StubAuditServer server = new StubAuditServer().start()) {
+      String url = server.baseUrl();
+      WebSocketClient ws = new WebSocketClient(url, "preview");
+      ws.start();
+      EventReporter events = new EventReporter(url, "preview", "127.0.0.1");
+      PersistentFileQueue queue = PersistentFileQueue.open(spool.resolve("queue"));
+      PreviewQueue previews = new PreviewQueue(spool.resolve("preview"), frameStore, 64, 0.6f, 4);
+      ScreenshotService capture =
+          new ScreenshotService(
+              new ConfigService(url, "preview"),
+              queue,
+              events,
+              new ScreenshotService.Options()
+                  .frameSource(() -> new BufferedImage(640, 360, BufferedImage.TYPE_INT_RGB))
+                  .spoolDir(spool)
+                  .frameStore(frameStore)
+                  .previews(previews));
+
+      Path frame = capture.capture();
+      String id = PreviewQueue.captureId(frame);
+      assertEquals(1, previews.size());
+      assertEquals(1, queue.size());
+
+      long deadline = System.currentTimeMillis() + 10_000;
+      while (!ws.isConnected() && System.currentTimeMillis() < deadline) Thread.sleep(50);
+      UploadService uploads =
+          new UploadService(
+              ws,
+              new HttpUploadTransport(
+                  new HttpUtil(EndpointSelector.single(url), "preview", new HttpUtil.Options()),
+                  ws),
+              events,
+              new UploadService.Options().frameStore(frameStore));
+      try {
+        assertTrue(uploads.drainPreview(previews));
+        assertTrue(server.uploads().containsKey(id + PreviewQueue.SUFFIX));
+        assertEquals(0, previews.size());
+        long seq = queue.peek().seq();
+        assertTrue(uploads.drainOne(queue, ""));
+        assertTrue(server.uploads().containsKey(String.valueOf(seq)));
+      } finally {
+        ws.stop();
+      }
+    }
+  }
+}
@@ -0,0 +1,50 @@
+package com.caerus.audit.client.queue;
+
+import java.awt.image.BufferedImage;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import javax.imageio.ImageIO;
+import junit.framework.TestCase;
+
+/** What a crash can leave in the spool, and what the startup scan makes of it. */
+public class SpoolRecoveryTest extends TestCase {
+
+  public void testAdoptsOrphansAndDiscardsPartialWrites() throws Exception {
+    Path spool = Files.createTempDirectory("spool-recovery");
+    PersistentFileQueue queue = PersistentFileQueue.open(spool);
+
+    Path queued = png(spool, "20240101_000000000.png");
+    queue.enqueue(queued);
+    Path orphan = png(spool, "20240101_000001000.png");
+    Path truncated = png(spool, "20240101_000002000.png");
+    byte[] bytes = Files.readAllBytes(truncated);
+    Files.write(truncated, Arrays.copyOf(bytes, bytes.length / 2));
+    queue.enqueue(truncated);
+    Path partial = Files.write(spool.resolve("20240101_000003000.png.part"), new byte[10]);
+
+    int adopted = SpoolRecovery.recover(spool, queue, System.currentTimeMillis() + 1000);
+
+    assertEquals(1, adopted);
+    assertEquals(2, queue.size());
+    assertTrue(queue.queuedFiles().contains(orphan));
+    assertFalse(Files.exists(truncated));
+    assertFalse(Files.exists(partial));
+    assertTrue(Files.exists(queued));
+  }
+
+  public void testLeavesNewerFilesAlone() throws Exception {
+    Path spool = Files.createTempDirectory("spool-recovery");
+    PersistentFileQueue queue = PersistentFileQueue.open(spool);
+    png(spool, "20240101_000000000.png");
+
+    assertEquals(0, SpoolRecovery.recover(spool, queue, 0));
+    assertEquals(0, queue.size());
+  }
+
+  private static Path png(Path dir, String name) throws Exception {
+    Path file = dir.resolve(name);
+    ImageIO.write(new BufferedImage(16, 16, BufferedImage.TYPE_INT_RGB), "png", file.toFile());
+    return file;
+  }
+}
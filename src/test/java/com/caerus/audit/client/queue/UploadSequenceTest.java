@@ -0,0 +1,57 @@
+package com.caerus.audit.client.queue;
+
+import com.caerus.audit.client.enums.UploadPriority;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import junit.framework.TestCase;
+
+/** Upload ids stay with their frame across retries and restarts, and only ever grow. */
+public class UploadSequenceTest extends TestCase {
+
+  public void testEntriesKeepTheirNumberAcrossRetryAndRestart() throws Exception {
+    Path dir = Files.createTempDirectory("upload-seq");
+    Path a = Files.write(dir.resolve("a.png"), new byte[8]);
+    Path b = Files.write(dir.resolve("b.png"), new byte[8]);
+    PersistentFileQueue queue =
+        PersistentFileQueue.open(dir, Duration.ofMinutes(5), RetryPolicy.defaults());
+    queue.enqueue(a);
+    queue.enqueue(b, UploadPriority.NORMAL, null);
+    long seqA = queue.peek().seq();
+    assertTrue(seqA > 0);
+    queue.incrementRetry(a);
+
+    PersistentFileQueue reopened =
+        PersistentFileQueue.open(dir, Duration.ofMinutes(5), RetryPolicy.defaults());
+    assertEquals(2, reopened.queuedFiles().size());
+    long seqB = -1;
+    for (int i = 0; i < 2; i++) {
+      PersistentFileQueue.QueueEntry e = reopened.peek();
+      if (e.file().equals(a)) {
+        assertEquals(seqA, e.seq());
+        assertEquals(1, e.retries());
+      } else {
+        seqB = e.seq();
+      }
+      reopened.markComplete(e.file());
+    }
+    assertTrue(seqB > seqA);
+    assertTrue(reopened.nextSequence() > seqB);
+  }
+
+  public void testAckedRangesMerge() {
+    AckedRanges acked = new AckedRanges(2);
+    acked.add(10);
+    acked.add(12);
+    acked.add(11);
+    acked.add(11);
+    assertEquals("10-12", acked.toString());
+    assertTrue(acked.contains(11));
+    assertFalse(acked.contains(13));
+
+    acked.add(20);
+    acked.add(30);
+    assertEquals("20,30", acked.toString());
+    assertFalse(acked.contains(10));
+  }
+}
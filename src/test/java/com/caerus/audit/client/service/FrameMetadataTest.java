@@ -0,0 +1,105 @@
+package com.caerus.audit.client.service;
+
+import com.caerus.audit.client.frame.FrameStore;
+import com.caerus.audit.client.model.FrameMetadata;
+import com.caerus.audit.client.queue.PersistentFileQueue;
+import com.caerus.audit.client.stub.StubAuditServer;
+import com.caerus.audit.client.transport.HttpUploadTransport;
+import com.caerus.audit.client.util.EndpointSelector;
+import com.caerus.audit.client.util.HttpUtil;
+import java.awt.image.BufferedImage;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import junit.framework.TestCase;
+
+/** Frame metadata from a fake provider: cached between focus changes, spooled and uploaded. */
+public class FrameMetadataTest extends TestCase {
+
+  /** Stands in for the Windows provider; {@link #focus} plays a foreground-window switch. */
+  private static class FakeProvider implements MetadataProvider {
+    final AtomicInteger lookups = new AtomicInteger();
+    volatile String title = "Quarterly report.xlsx - Excel";
+    Runnable onChange;
+
+    @Override
+    public FrameMetadata resolve() {
+      lookups.incrementAndGet();
+      return new FrameMetadata(
+          title, "EXCEL.EXE", List.of(new FrameMetadata.Monitor(0, 0, 1920, 1080, true)));
+    }
+
+    @Override
+    public void watch(Runnable onChange) {
+      this.onChange = onChange;
+    }
+
+    void focus(String title) {
+      this.title = title;
+      onChange.run();
+    }
+  }
+
+  public void testLookupsAreCachedUntilFocusChanges() {
+    FakeProvider provider = new FakeProvider();
+    CachedMetadata metadata = CachedMetadata.create(provider, Duration.ofHours(1));
+    for (int i = 0; i < 5; i++) metadata.current();
+    assertEquals(1, provider.lookups.get());
+
+    provider.focus("Inbox - Outlook");
+    assertEquals("Inbox - Outlook", metadata.current().getWindowTitle());
+    assertEquals("Inbox - Outlook", metadata.current().getWindowTitle());
+    assertEquals(2, provider.lookups.get());
+  }
+
+  public void testMetadataIsSpooledAndUploadedWithTheFrame() throws Exception {
+    Path spool = Files.createTempDirectory("frame-metadata");
+    FakeProvider provider = new FakeProvider();
+    FrameStore frameStore = FrameStore.disabled();
+    try (StubAuditServer server = new StubAuditServer().start()) {
+      String url = server.baseUrl();
+      WebSocketClient ws = new WebSocketClient(url, "meta");
+      ws.start();
+      EventReporter events = new EventReporter(url, "meta", "127.0.0.1");
+      PersistentFileQueue queue = PersistentFileQueue.open(spool.resolve("queue"));
+      ScreenshotService capture =
+          new ScreenshotService(
+              new ConfigService(url, "meta"),
+              queue,
+              events,
+              new ScreenshotService.Options()
+                  .frameSource(() -> new BufferedImage(32, 24, BufferedImage.TYPE_INT_RGB))
+                  .spoolDir(spool)
+                  .frameStore(frameStore)
+                  .metadata(CachedMetadata.create(provider, Duration.ofHours(1))));
+
+      Path frame = capture.capture();
+      String spooled = new String(frameStore.readMetadata(frame), StandardCharsets.UTF_8);
+      assertTrue(spooled, spooled.contains("\"processName\":\"EXCEL.EXE\""));
+
+      long deadline = System.currentTimeMillis() + 10_000;
+      while (!ws.isConnected() && System.currentTimeMillis() < deadline) Thread.sleep(50);
+      UploadService uploads =
+          new UploadService(
+              ws,
+              new HttpUploadTransport(
+                  new HttpUtil(EndpointSelector.single(url), "meta", new HttpUtil.Options()), ws),
+              events,
+              new UploadService.Options().frameStore(frameStore));
+      try {
+        long seq = queue.peek().seq();
+        assertTrue(uploads.drainOne(queue, ""));
+        String body =
+            new String(server.uploads().get(String.valueOf(seq)), StandardCharsets.ISO_8859_1);
+        assertTrue(body.contains("name=\"metadata\""));
+        assertTrue(body.contains("Quarterly report.xlsx - Excel"));
+        assertFalse(Files.exists(FrameStore.metadataOf(frame)));
+      } finally {
+        ws.stop();
+      }
+    }
+  }
+}
@@ -0,0 +1,71 @@
+package com.caerus.audit.client.service;
+
+import com.caerus.audit.client.frame.FrameStore;
+import com.caerus.audit.client.queue.PersistentFileQueue;
+import com.caerus.audit.client.stub.StubAuditServer;
+import com.caerus.audit.client.transport.HttpUploadTransport;
+import com.caerus.audit.client.util.EndpointSelector;
+import com.caerus.audit.client.util.HttpUtil;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.awt.image.BufferedImage;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import junit.framework.TestCase;
+
+public class OnDemandCaptureTest extends TestCase {
+
+  public void testCaptureNowSkipsTheBacklogAndReportsLatency() throws Exception {
+    Path spool = Files.createTempDirectory("on-demand");
+    FrameStore frameStore = FrameStore.disabled();
+    try (StubAuditServer server = new StubAuditServer().start()) {
+      String url = server.baseUrl();
+      WebSocketClient ws = new WebSocketClient(url, "on-demand");
+      EventReporter events = new EventReporter(url, "on-demand", "127.0.0.1");
+      PersistentFileQueue queue = PersistentFileQueue.open(spool.resolve("queue"));
+      for (int i = 0; i < 3; i++) {
+        queue.enqueue(Files.write(spool.resolve("backlog-" + i + ".png"), new byte[16]));
+      }
+      ScreenshotService capture =
+          new ScreenshotService(
+              new ConfigService(url, "on-demand"),
+              queue,
+              events,
+              new ScreenshotService.Options()
+                  .frameSource(() -> new BufferedImage(64, 48, BufferedImage.TYPE_INT_RGB))
+                  .spoolDir(spool));
+      OnDemandCapture onDemand =
+          new OnDemandCapture(
+              capture,
+              queue,
+              new HttpUploadTransport(
+                  new HttpUtil(EndpointSelector.single(url), "on-demand", new HttpUtil.Options()),
+                  ws),
+              ws,
+              frameStore);
+      onDemand.start();
+      ws.start();
+      try {
+        assertTrue(
+            server.sendToClient("on-demand", "{\"type\":\"CAPTURE_NOW\",\"requestId\":\"req-1\"}"));
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (server.wsMessages().isEmpty() && System.currentTimeMillis() < deadline) {
+          Thread.sleep(50);
+        }
+        assertEquals(1, server.wsMessages().size());
+        JsonNode result = new ObjectMapper().readTree(server.wsMessages().get(0));
+        assertEquals(OnDemandCapture.RESULT, result.path("type").asText());
+        assertEquals("req-1", result.path("requestId").asText());
+        assertTrue(result.toString(), result.path("success").asBoolean());
+        assertTrue(result.has("totalMs"));
+
+        String uploadId = result.path("uploadId").asText();
+        assertTrue(server.uploads().containsKey(uploadId));
+        assertEquals(3, queue.size());
+      } finally {
+        onDemand.stop();
+        ws.stop();
+      }
+    }
+  }
+}
@@ -0,0 +1,73 @@
+package com.caerus.audit.client.service;
+
+import com.caerus.audit.client.queue.PersistentFileQueue;
+import com.caerus.audit.client.stub.StubAuditServer;
+import com.caerus.audit.client.transport.HttpUploadTransport;
+import com.caerus.audit.client.util.EndpointSelector;
+import com.caerus.audit.client.util.HttpUtil;
+import java.awt.image.BufferedImage;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import junit.framework.TestCase;
+
+/** An unchanged screen is spooled once and uploaded once; repeats go up as references. */
+public class ScreenshotDedupTest extends TestCase {
+
+  public void testIdenticalFramesShareSpoolAndUploadAsReference() throws Exception {
+    Path spool = Files.createTempDirectory("dedup");
+    BufferedImage screen = new BufferedImage(64, 48, BufferedImage.TYPE_INT_RGB);
+    screen.setRGB(3, 4, 0xff8800);
+    try (StubAuditServer server = new StubAuditServer().start()) {
+      String url = server.baseUrl();
+      WebSocketClient ws = new WebSocketClient(url, "dedup");
+      ws.start();
+      EventReporter events = new EventReporter(url, "dedup", "127.0.0.1");
+      PersistentFileQueue queue = PersistentFileQueue.open(spool.resolve("queue"));
+      ScreenshotService capture =
+          new ScreenshotService(
+              new ConfigService(url, "dedup"),
+              queue,
+              events,
+              new ScreenshotService.Options().frameSource(() -> screen).spoolDir(spool));
+
+      Path first = capture.capture();
+      Thread.sleep(5);
+      Path second = capture.capture();
+      assertFalse(first.equals(second));
+      assertTrue(Files.isSameFile(first, second) || sameBytes(first, second));
+      assertEquals(2, queue.size());
+
+      long deadline = System.currentTimeMillis() + 10_000;
+      while (!ws.isConnected() && System.currentTimeMillis() < deadline) Thread.sleep(50);
+      UploadService uploads =
+          new UploadService(
+              ws,
+              new HttpUploadTransport(
+                  new HttpUtil(EndpointSelector.single(url), "dedup", new HttpUtil.Options()), ws),
+              events,
+              new UploadService.Options());
+      try {
+        long firstSeq = queue.peek().seq();
+        assertTrue(uploads.drainOne(queue, ""));
+        long secondSeq = queue.peek().seq();
+        assertTrue(uploads.drainOne(queue, ""));
+        assertTrue(secondSeq > firstSeq);
+        assertEquals(1, server.uploadCount.get());
+        assertEquals(1, server.refUploads.get());
+        assertTrue(
+            Arrays.equals(
+                server.uploads().get(String.valueOf(firstSeq)),
+                server.uploads().get(String.valueOf(secondSeq))));
+        assertFalse(Files.exists(first));
+        assertFalse(Files.exists(second));
+      } finally {
+        ws.stop();
+      }
+    }
+  }
+
+  private static boolean sameBytes(Path a, Path b) throws Exception {
+    return Arrays.equals(Files.readAllBytes(a), Files.readAllBytes(b));
+  }
+}
@@ -0,0 +1,47 @@
+package com.caerus.audit.client.service;
+
+import com.caerus.audit.client.model.ServerAppSettingsDto;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import junit.framework.TestCase;
+
+public class SettingsCacheTest extends TestCase {
+  private Path file;
+
+  @Override
+  protected void setUp() throws Exception {
+    file = Files.createTempDirectory("settings-cache").resolve("settings-cache.json");
+  }
+
+  public void testSeedsConfigServiceBeforeAnyFetch() {
+    ServerAppSettingsDto dto = new ServerAppSettingsDto();
+    dto.configCaptureInterval = 7;
+    dto.configIdleTimeout = 120;
+    new SettingsCache(file, "http://server", Duration.ofHours(1)).save(dto);
+
+    ConfigService config =
+        new ConfigService(
+            "http://server", "c1", new SettingsCache(file, "http://server", Duration.ofHours(1)));
+    assertEquals(Short.valueOf((short) 7), config.getLatest().configCaptureInterval);
+    assertEquals(Short.valueOf((short) 120), config.getLatest().configIdleTimeout);
+    assertFalse(Files.exists(file.resolveSibling("settings-cache.json.tmp")));
+  }
+
+  public void testStaleCacheIsStillUsedButFlagged() {
+    new SettingsCache(file, "http://server", Duration.ZERO).save(new ServerAppSettingsDto());
+    SettingsCache.Snapshot snapshot =
+        new SettingsCache(file, "http://server", Duration.ofMillis(-1)).load();
+    assertNotNull(snapshot);
+    assertTrue(snapshot.stale());
+  }
+
+  public void testCacheFromAnotherServerOrFormatIsIgnored() throws Exception {
+    new SettingsCache(file, "http://old-server", Duration.ofHours(1))
+        .save(new ServerAppSettingsDto());
+    assertNull(new SettingsCache(file, "http://server", Duration.ofHours(1)).load());
+
+    Files.writeString(file, "{\"format\":99,\"server\":\"http://server\",\"settings\":{}}");
+    assertNull(new SettingsCache(file, "http://server", Duration.ofHours(1)).load());
+  }
+}
@@ -0,0 +1,89 @@
+package com.caerus.audit.client.service;
+
+import com.caerus.audit.client.queue.PersistentFileQueue;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.awt.image.BufferedImage;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import junit.framework.TestCase;
+
+public class WatchdogTest extends TestCase {
+
+  public void testStalledLoopIsDumpedAndRestartedOnce() throws Exception {
+    Path dumps = Files.createTempDirectory("watchdog");
+    // Nothing listens there; the report is sent in the background and fails quietly.
+    EventReporter events = new EventReporter("http://127.0.0.1:9", "watchdog", "127.0.0.1");
+    Watchdog watchdog = new Watchdog(events, dumps, Duration.ofSeconds(1));
+    AtomicInteger restarts = new AtomicInteger();
+    Watchdog.Heartbeat heartbeat =
+        watchdog.register("upload", Duration.ofMillis(50), restarts::incrementAndGet);
+
+    heartbeat.beat();
+    watchdog.check();
+    assertEquals(0, restarts.get());
+
+    Thread.sleep(100);
+    watchdog.check();
+    watchdog.check();
+    assertEquals(1, restarts.get());
+
+    List<Path> files;
+    try (Stream<Path> s = Files.list(dumps)) {
+      files = s.collect(Collectors.toList());
+    }
+    assertEquals(1, files.size());
+    String dump = Files.readString(files.get(0));
+    assertTrue(dump, dump.startsWith("Stalled loop: upload"));
+    assertTrue(dump.contains("testStalledLoopIsDumpedAndRestartedOnce"));
+    assertTrue(dump.contains("audit_watchdog_restarts_total"));
+  }
+
+  public void testDisarmedLoopIsNotRestarted() throws Exception {
+    Path dumps = Files.createTempDirectory("watchdog");
+    EventReporter events = new EventReporter("http://127.0.0.1:9", "watchdog", "127.0.0.1");
+    Watchdog watchdog = new Watchdog(events, dumps, Duration.ofSeconds(1));
+    AtomicInteger restarts = new AtomicInteger();
+    Watchdog.Heartbeat heartbeat =
+        watchdog.register("capture", Duration.ofMillis(50), restarts::incrementAndGet);
+
+    heartbeat.beat();
+    heartbeat.disarm();
+    Thread.sleep(100);
+    watchdog.check();
+    assertEquals(0, restarts.get());
+    try (Stream<Path> s = Files.list(dumps)) {
+      assertEquals(0, s.count());
+    }
+  }
+
+  public void testCaptureStallThresholdCoversTwoCaptureIntervals() throws Exception {
+    Path dir = Files.createTempDirectory("watchdog");
+    EventReporter events = new EventReporter("http://127.0.0.1:9", "watchdog", "127.0.0.1");
+    ConfigService config = new ConfigService("http://127.0.0.1:9", "watchdog");
+    ScreenshotService capture =
+        new ScreenshotService(
+            config,
+            PersistentFileQueue.open(dir.resolve("queue")),
+            events,
+            new ScreenshotService.Options()
+                .frameSource(() -> new BufferedImage(16, 16, BufferedImage.TYPE_INT_RGB))
+                .spoolDir(dir.resolve("spool")));
+    capture.watchedBy(new Watchdog(events, dir, Duration.ofSeconds(1)), Duration.ofSeconds(300));
+    config.addListener(settings -> capture.onSettingsChanged());
+    capture.start();
+    try {
+      assertEquals(Duration.ofSeconds(300), capture.stallThreshold());
+      config.onPush(new ObjectMapper().readTree("{\"settings\":{\"configCaptureInterval\":900}}"));
+      assertEquals(Duration.ofSeconds(1800), capture.stallThreshold());
+      config.onPush(new ObjectMapper().readTree("{\"settings\":{\"configCaptureInterval\":5}}"));
+      assertEquals(Duration.ofSeconds(300), capture.stallThreshold());
+    } finally {
+      capture.stop();
+    }
+  }
+}
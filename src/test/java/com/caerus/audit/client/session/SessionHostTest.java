@@ -0,0 +1,105 @@
+package com.caerus.audit.client.session;
+
+import com.caerus.audit.client.frame.FrameEncoder;
+import com.caerus.audit.client.frame.FrameStore;
+import com.caerus.audit.client.queue.RetryPolicy;
+import com.caerus.audit.client.service.ConfigService;
+import com.caerus.audit.client.service.EventReporter;
+import com.caerus.audit.client.service.UploadService;
+import com.caerus.audit.client.service.WebSocketClient;
+import com.caerus.audit.client.stub.StubAuditServer;
+import com.caerus.audit.client.transport.HttpUploadTransport;
+import com.caerus.audit.client.util.EndpointSelector;
+import com.caerus.audit.client.util.HttpUtil;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.awt.image.BufferedImage;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import junit.framework.TestCase;
+
+/** Two sessions captured and uploaded by one host over a single socket and connection pool. */
+public class SessionHostTest extends TestCase {
+
+  public void testEachSessionUploadsUnderItsOwnPrefix() throws Exception {
+    Path base = Files.createTempDirectory("session-host");
+    try (StubAuditServer server = new StubAuditServer().start()) {
+      WebSocketClient ws = new WebSocketClient(server.baseUrl(), "host");
+      ws.start();
+      SessionHost host = newHost(server, ws, new ConfigService(server.baseUrl(), "host"), base);
+      host.start();
+      try {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (System.currentTimeMillis() < deadline
+            && !(hasPrefix(server, "s2_") && hasPrefix(server, "s3_"))) {
+          Thread.sleep(100);
+        }
+        assertTrue(server.uploads().keySet().toString(), hasPrefix(server, "s2_"));
+        assertTrue(server.uploads().keySet().toString(), hasPrefix(server, "s3_"));
+        assertEquals(2, host.sessionCount());
+      } finally {
+        host.stop();
+        ws.stop();
+      }
+    }
+  }
+
+  public void testSettingsChangesReachEverySession() throws Exception {
+    Path base = Files.createTempDirectory("session-host");
+    try (StubAuditServer server = new StubAuditServer().start()) {
+      WebSocketClient ws = new WebSocketClient(server.baseUrl(), "host");
+      ConfigService config = new ConfigService(server.baseUrl(), "host");
+      SessionHost host = newHost(server, ws, config, base);
+      host.start();
+      try {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (System.currentTimeMillis() < deadline && host.sessionCount() < 2) {
+          Thread.sleep(20);
+        }
+        assertEquals(3, host.session("2").capture().intervalSec());
+
+        config.onPush(new ObjectMapper().readTree("{\"settings\":{\"configCaptureInterval\":7}}"));
+        assertEquals(7, host.session("2").capture().intervalSec());
+        assertEquals(7, host.session("3").capture().intervalSec());
+      } finally {
+        host.stop();
+      }
+    }
+  }
+
+  private static SessionHost newHost(
+      StubAuditServer server, WebSocketClient ws, ConfigService config, Path base) {
+    String url = server.baseUrl();
+    EventReporter events = new EventReporter(url, "host", "127.0.0.1");
+    FrameStore frames = new FrameStore(1 << 20, 64 * 1024);
+    UploadService uploads =
+        new UploadService(
+            ws,
+            new HttpUploadTransport(
+                new HttpUtil(
+                    EndpointSelector.single(url), "host", new HttpUtil.Options().maxConnections(2)),
+                ws,
+                frames),
+            events,
+            new UploadService.Options().frameStore(frames));
+    return new SessionHost(
+        config,
+        events,
+        ws,
+        uploads,
+        SessionDiscovery.fixed(List.of("2", "3")),
+        id -> () -> new BufferedImage(64, 48, BufferedImage.TYPE_INT_RGB),
+        frames,
+        FrameEncoder.imageIo(),
+        base,
+        Duration.ofMinutes(5),
+        RetryPolicy.defaults(),
+        2,
+        1L << 30);
+  }
+
+  private static boolean hasPrefix(StubAuditServer server, String prefix) {
+    return server.uploads().keySet().stream().anyMatch(id -> id.startsWith(prefix));
+  }
+}
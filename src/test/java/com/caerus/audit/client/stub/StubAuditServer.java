@@ -0,0 +1,496 @@
+package com.caerus.audit.client.stub;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Local stand-in for the audit server, for tests and the load harness. Speaks just enough HTTP/1.1
+ * (keep-alive, Content-Length and chunked bodies) and RFC 6455 to serve:
+ *
+ * <ul>
+ *   <li>{@code POST /api/v1/upload} - acked afterwards on the client's WebSocket session
+ *   <li>{@code POST /api/v1/upload/ref} - as above for content already uploaded, else 404
+ *   <li>{@code POST /api/v1/logs}, {@code /api/v1/logs/error}, {@code /api/v1/metrics}
+ *   <li>{@code GET /api/v1/settings/latest}
+ *   <li>{@code /ws/heartbeat} - ping/pong, echo, WebSocket binary uploads with credits, and
+ *       server-initiated messages ({@link #sendToClient})
+ * </ul>
+ *
+ * <p>Latency (before every response and ack), upload error rate and inbound bandwidth are
+ * adjustable while running.
+ */
+public class StubAuditServer implements AutoCloseable {
+  private static final String WS_GUID = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
+
+  private final ObjectMapper mapper = new ObjectMapper();
+  private final ExecutorService workers = Executors.newCachedThreadPool();
+  private final Map<String, byte[]> uploads = new ConcurrentHashMap<>();
+  private final Map<String, WsSession> sessions = new ConcurrentHashMap<>();
+  private final Map<String, byte[]> blobs = new ConcurrentHashMap<>();
+  private final Set<Socket> connections = ConcurrentHashMap.newKeySet();
+  private final List<String> wsMessages = new CopyOnWriteArrayList<>();
+  private ServerSocket server;
+
+  private volatile long latencyMillis = 0;
+  private volatile double errorRate = 0;
+  private volatile long bandwidthBytesPerSec = 0;
+  private volatile boolean retainBodies = true;
+  private volatile boolean acceptDeflate = true;
+  private volatile String settingsJson =
+      "{\"configIdleTimeout\":600,\"configCaptureInterval\":3,\"configHeartbeatInterval\":30}";
+
+  public final AtomicLong uploadCount = new AtomicLong();
+  public final AtomicLong uploadBytes = new AtomicLong();
+  public final AtomicLong injectedErrors = new AtomicLong();
+  public final AtomicLong logRequests = new AtomicLong();
+  public final AtomicLong settingsRequests = new AtomicLong();
+  public final AtomicLong refUploads = new AtomicLong();
+  public final AtomicLong deflatedBodies = new AtomicLong();
+  public final AtomicLong abortedUploads = new AtomicLong();
+
+  public StubAuditServer start() throws IOException {
+    server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+    workers.execute(this::acceptLoop);
+    return this;
+  }
+
+  public String baseUrl() {
+    return "http://127.0.0.1:" + server.getLocalPort();
+  }
+
+  /** Delay added before every HTTP response and upload ack. */
+  public StubAuditServer withLatency(Duration latency) {
+    this.latencyMillis = latency.toMillis();
+    return this;
+  }
+
+  /** Fraction (0..1) of uploads answered with 503. */
+  public StubAuditServer withErrorRate(double errorRate) {
+    this.errorRate = errorRate;
+    return this;
+  }
+
+  /** Inbound byte rate for request bodies and WebSocket frames; 0 for unlimited. */
+  public StubAuditServer withBandwidth(long bytesPerSec) {
+    this.bandwidthBytesPerSec = bytesPerSec;
+    return this;
+  }
+
+  /** Whether upload bodies are kept for {@link #uploads()}; turn off for long load runs. */
+  public StubAuditServer retainBodies(boolean retain) {
+    this.retainBodies = retain;
+    return this;
+  }
+
+  /** Whether deflate request bodies are inflated or, like an older server, answered with 415. */
+  public StubAuditServer acceptDeflate(boolean accept) {
+    this.acceptDeflate = accept;
+    return this;
+  }
+
+  public StubAuditServer withSettings(String json) {
+    this.settingsJson = json;
+    return this;
+  }
+
+  /** Bodies received so far, keyed by upload id. */
+  public Map<String, byte[]> uploads() {
+    return uploads;
+  }
+
+  /** JSON text messages received from clients over WebSocket, other than upload control. */
+  public List<String> wsMessages() {
+    return wsMessages;
+  }
+
+  /** Sends a text message to {@code clientId}'s WebSocket session; false if it has none. */
+  public boolean sendToClient(String clientId, String text) {
+    WsSession session = sessions.get(clientId);
+    if (session == null) return false;
+    try {
+      session.sendText(text);
+      return true;
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    server.close();
+    // Like a node going down: open connections and WebSocket sessions drop too.
+    for (Socket socket : connections) socket.close();
+    workers.shutdownNow();
+  }
+
+  private void acceptLoop() {
+    while (!server.isClosed()) {
+      try {
+        Socket socket = server.accept();
+        workers.execute(() -> serve(socket));
+      } catch (IOException e) {
+        return;
+      }
+    }
+  }
+
+  private void serve(Socket socket) {
+    connections.add(socket);
+    try (socket) {
+      InputStream in = socket.getInputStream();
+      OutputStream out = socket.getOutputStream();
+      while (true) {
+        String requestLine = readLine(in);
+        Map<String, String> headers = new LinkedHashMap<>();
+        String line;
+        while (!(line = readLine(in)).isEmpty()) {
+          int colon = line.indexOf(':');
+          headers.put(
+              line.substring(0, colon).trim().toLowerCase(), line.substring(colon + 1).trim());
+        }
+        String[] parts = requestLine.split(" ");
+        String method = parts[0];
+        String target = parts.length > 1 ? parts[1] : "/";
+        if ("websocket".equalsIgnoreCase(headers.get("upgrade"))) {
+          new WsSession(socket, in, query(target, "clientId"))
+              .run(headers.get("sec-websocket-key"));
+          return;
+        }
+        byte[] body = readBody(in, headers);
+        route(out, method, target.split("\\?")[0], headers, body);
+        if ("close".equalsIgnoreCase(headers.get("connection"))) return;
+      }
+    } catch (IOException e) {
+      // connection dropped
+    } finally {
+      connections.remove(socket);
+    }
+  }
+
+  private void route(
+      OutputStream out, String method, String path, Map<String, String> headers, byte[] body)
+      throws IOException {
+    sleep(latencyMillis);
+    if ("deflate".equalsIgnoreCase(headers.get("content-encoding"))) {
+      deflatedBodies.incrementAndGet();
+      if (!acceptDeflate) {
+        writeHttp(out, 415, "deflate not supported");
+        return;
+      }
+      body = new InflaterInputStream(new ByteArrayInputStream(body)).readAllBytes();
+    }
+    switch (method + " " + path) {
+      case "POST /api/v1/upload" -> {
+        if (errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate) {
+          injectedErrors.incrementAndGet();
+          writeHttp(out, 503, "injected failure");
+          return;
+        }
+        String uploadId = headers.getOrDefault("x-upload-id", "");
+        uploadCount.incrementAndGet();
+        uploadBytes.addAndGet(body.length);
+        if (retainBodies) uploads.put(uploadId, body);
+        if (headers.containsKey("x-content-sha256"))
+          blobs.put(headers.get("x-content-sha256"), retainBodies ? body : new byte[0]);
+        writeHttp(out, 200, "stored " + uploadId);
+        ackLater(headers, uploadId);
+      }
+      case "POST /api/v1/upload/ref" -> {
+        String uploadId = headers.getOrDefault("x-upload-id", "");
+        byte[] blob = blobs.get(mapper.readTree(body).path("sha256").asText());
+        if (blob == null) {
+          writeHttp(out, 404, "unknown content");
+          return;
+        }
+        refUploads.incrementAndGet();
+        if (retainBodies) uploads.put(uploadId, blob);
+        writeHttp(out, 200, "linked " + uploadId);
+        ackLater(headers, uploadId);
+      }
+      case "POST /api/v1/logs", "POST /api/v1/logs/error", "POST /api/v1/metrics" -> {
+        logRequests.incrementAndGet();
+        writeHttp(out, 200, "");
+      }
+      case "GET /api/v1/settings/latest" -> {
+        settingsRequests.incrementAndGet();
+        writeHttp(out, 200, settingsJson);
+      }
+      default -> writeHttp(out, 404, "not found: " + method + " " + path);
+    }
+  }
+
+  private void ackLater(Map<String, String> headers, String uploadId) {
+    WsSession session = sessions.get(headers.getOrDefault("client-id", ""));
+    if (session != null) workers.execute(() -> session.ack(uploadId));
+  }
+
+  private byte[] readBody(InputStream in, Map<String, String> headers) throws IOException {
+    ByteArrayOutputStream body = new ByteArrayOutputStream();
+    long start = System.nanoTime();
+    if ("chunked".equalsIgnoreCase(headers.get("transfer-encoding"))) {
+      int size;
+      while ((size = Integer.parseInt(readLine(in).split(";")[0].trim(), 16)) > 0) {
+        copy(in, body, size, start);
+        readLine(in);
+      }
+      while (!readLine(in).isEmpty()) {
+        // trailers
+      }
+    } else if (headers.containsKey("content-length")) {
+      copy(in, body, Long.parseLong(headers.get("content-length")), start);
+    }
+    return body.toByteArray();
+  }
+
+  private void copy(InputStream in, ByteArrayOutputStream body, long n, long start)
+      throws IOException {
+    byte[] buf = new byte[16 * 1024];
+    while (n > 0) {
+      int read = in.read(buf, 0, (int) Math.min(buf.length, n));
+      if (read < 0) throw new EOFException();
+      body.write(buf, 0, read);
+      n -= read;
+      pace(body.size(), start);
+    }
+  }
+
+  /** Sleeps until {@code bytes} would have arrived at the configured bandwidth. */
+  private void pace(long bytes, long startNanos) {
+    long rate = bandwidthBytesPerSec;
+    if (rate <= 0) return;
+    long due = startNanos + bytes * 1_000_000_000L / rate;
+    long wait = due - System.nanoTime();
+    if (wait > 0) sleep(TimeUnit.NANOSECONDS.toMillis(wait));
+  }
+
+  private void writeHttp(OutputStream out, int status, String body) throws IOException {
+    byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+    String head =
+        "HTTP/1.1 "
+            + status
+            + " STUB\r\nContent-Type: "
+            + (body.startsWith("{") ? "application/json" : "text/plain")
+            + "\r\nAccept-Encoding: deflate\r\nContent-Length: "
+            + bytes.length
+            + "\r\n\r\n";
+    out.write(head.getBytes(StandardCharsets.US_ASCII));
+    out.write(bytes);
+    out.flush();
+  }
+
+  private static String query(String target, String key) {
+    int q = target.indexOf('?');
+    if (q < 0) return "";
+    for (String kv : target.substring(q + 1).split("&")) {
+      if (kv.startsWith(key + "=")) return kv.substring(key.length() + 1);
+    }
+    return "";
+  }
+
+  private static void sleep(long millis) {
+    if (millis <= 0) return;
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private static String readLine(InputStream in) throws IOException {
+    ByteArrayOutputStream buf = new ByteArrayOutputStream();
+    int b;
+    while ((b = in.read()) != -1 && b != '\n') {
+      if (b != '\r') buf.write(b);
+    }
+    if (b == -1 && buf.size() == 0) throw new EOFException();
+    return buf.toString(StandardCharsets.US_ASCII);
+  }
+
+  private class WsSession {
+    private final Socket socket;
+    private final DataInputStream in;
+    private final OutputStream out;
+    private final String clientId;
+    private String uploadId;
+    private long expected;
+    private long uploadStart;
+    private ByteArrayOutputStream body;
+
+    WsSession(Socket socket, InputStream in, String clientId) throws IOException {
+      this.socket = socket;
+      this.in = new DataInputStream(in);
+      this.out = socket.getOutputStream();
+      this.clientId = clientId;
+    }
+
+    void run(String key) throws IOException {
+      String accept;
+      try {
+        byte[] sha1 =
+            MessageDigest.getInstance("SHA-1")
+                .digest((key + WS_GUID).getBytes(StandardCharsets.US_ASCII));
+        accept = Base64.getEncoder().encodeToString(sha1);
+      } catch (Exception e) {
+        throw new IOException(e);
+      }
+      out.write(
+          ("HTTP/1.1 101 Switching Protocols\r\nUpgrade: websocket\r\nConnection: Upgrade\r\n"
+                  + "Sec-WebSocket-Accept: "
+                  + accept
+                  + "\r\n\r\n")
+              .getBytes(StandardCharsets.US_ASCII));
+      out.flush();
+      sessions.put(clientId, this);
+
+      try {
+        readFrames();
+      } finally {
+        sessions.remove(clientId, this);
+      }
+    }
+
+    private void readFrames() throws IOException {
+      ByteArrayOutputStream message = new ByteArrayOutputStream();
+      int messageOpcode = 0;
+      while (!socket.isClosed()) {
+        int b0 = in.readUnsignedByte();
+        int b1 = in.readUnsignedByte();
+        boolean fin = (b0 & 0x80) != 0;
+        int opcode = b0 & 0x0F;
+        long len = b1 & 0x7F;
+        if (len == 126) len = in.readUnsignedShort();
+        else if (len == 127) len = in.readLong();
+        byte[] mask = new byte[4];
+        if ((b1 & 0x80) != 0) in.readFully(mask);
+        byte[] payload = new byte[(int) len];
+        in.readFully(payload);
+        for (int i = 0; i < payload.length; i++) payload[i] ^= mask[i & 3];
+
+        if (opcode == 0x8) {
+          send(0x8, payload);
+          return;
+        } else if (opcode == 0x9) {
+          send(0xA, payload);
+          continue;
+        } else if (opcode == 0xA) {
+          continue;
+        }
+        if (opcode != 0) messageOpcode = opcode;
+        message.write(payload);
+        if (!fin) continue;
+
+        byte[] data = message.toByteArray();
+        message.reset();
+        if (messageOpcode == 0x1) onText(new String(data, StandardCharsets.UTF_8));
+        else if (messageOpcode == 0x2) onBinary(data);
+      }
+    }
+
+    private void onText(String text) throws IOException {
+      if ("ping".equalsIgnoreCase(text)) {
+        sendText("pong");
+        return;
+      }
+      if ("pong".equalsIgnoreCase(text)) {
+        return;
+      }
+      if (text.startsWith("{")) {
+        JsonNode node = mapper.readTree(text);
+        String type = node.path("type").asText();
+        if ("UPLOAD_ABORT".equals(type)) {
+          if (body != null && uploadId.equals(node.path("uploadId").asText())) {
+            abortedUploads.incrementAndGet();
+            body = null;
+          }
+          return;
+        }
+        if ("UPLOAD_BEGIN".equals(type)) {
+          // Like the server, keep feeding chunks to an upload that was never finished or aborted.
+          if (body != null) return;
+          uploadId = node.path("uploadId").asText();
+          expected = node.path("size").asLong();
+          body = new ByteArrayOutputStream();
+          uploadStart = System.nanoTime();
+          if (expected == 0) finishUpload();
+          return;
+        }
+        wsMessages.add(text);
+      }
+      sendText(text);
+    }
+
+    private void onBinary(byte[] data) throws IOException {
+      if (body == null) return;
+      body.write(data);
+      pace(body.size(), uploadStart);
+      sendText("{\"type\":\"UPLOAD_CREDIT\",\"uploadId\":\"" + uploadId + "\",\"credits\":1}");
+      if (body.size() >= expected) finishUpload();
+    }
+
+    private void finishUpload() {
+      uploadCount.incrementAndGet();
+      uploadBytes.addAndGet(body.size());
+      if (retainBodies) uploads.put(uploadId, body.toByteArray());
+      String id = uploadId;
+      body = null;
+      workers.execute(() -> ack(id));
+    }
+
+    void ack(String id) {
+      sleep(latencyMillis);
+      try {
+        sendText("{\"type\":\"UPLOAD_SUCCESS\",\"uploadId\":\"" + id + "\",\"success\":true}");
+      } catch (IOException e) {
+        // session gone; the client will retry
+      }
+    }
+
+    private void sendText(String text) throws IOException {
+      send(0x1, text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private synchronized void send(int opcode, byte[] payload) throws IOException {
+      out.write(0x80 | opcode);
+      if (payload.length < 126) {
+        out.write(payload.length);
+      } else if (payload.length <= 0xFFFF) {
+        out.write(126);
+        out.write(payload.length >>> 8);
+        out.write(payload.length & 0xFF);
+      } else {
+        out.write(127);
+        for (int shift = 56; shift >= 0; shift -= 8) {
+          out.write((int) ((long) payload.length >>> shift));
+        }
+      }
+      out.write(payload);
+      out.flush();
+    }
+  }
+}
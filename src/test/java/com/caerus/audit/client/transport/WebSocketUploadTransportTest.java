@@ -0,0 +1,134 @@
+package com.caerus.audit.client.transport;
+
+import com.caerus.audit.client.service.WebSocketClient;
+import com.caerus.audit.client.stub.StubAuditServer;
+import com.caerus.audit.client.util.BandwidthLimiter;
+import com.caerus.audit.client.util.BandwidthSchedule;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import junit.framework.TestCase;
+
+/** Round-trips a multi-chunk upload through the WebSocket transport against a local stub. */
+public class WebSocketUploadTransportTest extends TestCase {
+
+  public void testUploadIsStreamedAndAcked() throws Exception {
+    try (StubAuditServer server = new StubAuditServer().start()) {
+      WebSocketClient ws = new WebSocketClient(server.baseUrl(), "test-client");
+      ws.start();
+      assertTrue(ws.isConnected());
+
+      byte[] content = new byte[300 * 1024 + 17];
+      new Random(42).nextBytes(content);
+      Path file = Files.createTempFile("ws-upload", ".png");
+      Files.write(file, content);
+
+      UploadTransport transport =
+          new WebSocketUploadTransport(
+              ws, 64 * 1024, 2, Duration.ofSeconds(5), BandwidthLimiter.unlimited());
+      try {
+        assertTrue(transport.upload(file, "frame-1"));
+        assertTrue(transport.awaitAck("frame-1", Duration.ofSeconds(5)));
+        assertTrue(Arrays.equals(content, server.uploads().get("frame-1")));
+      } finally {
+        ws.stop();
+        Files.deleteIfExists(file);
+      }
+    }
+  }
+
+  public void testUploadIsPacedByBandwidthLimiter() throws Exception {
+    try (StubAuditServer server = new StubAuditServer().start()) {
+      WebSocketClient ws = new WebSocketClient(server.baseUrl(), "test-client");
+      ws.start();
+
+      Path file = Files.createTempFile("ws-upload", ".png");
+      Files.write(file, new byte[512 * 1024]);
+
+      BandwidthLimiter limiter =
+          new BandwidthLimiter(256 * 1024, BandwidthSchedule.parse(null), false);
+      UploadTransport transport =
+          new WebSocketUploadTransport(ws, 64 * 1024, 4, Duration.ofSeconds(5), limiter);
+      try {
+        long start = System.nanoTime();
+        assertTrue(transport.upload(file, "frame-2"));
+        assertTrue(transport.awaitAck("frame-2", Duration.ofSeconds(5)));
+        double seconds = (System.nanoTime() - start) / 1e9;
+        assertTrue("took " + seconds + "s", seconds > 1.5);
+      } finally {
+        ws.stop();
+        Files.deleteIfExists(file);
+      }
+    }
+  }
+
+  public void testUploadAbortsWhenBeginCannotBeSent() throws Exception {
+    AtomicInteger chunks = new AtomicInteger();
+    WebSocketClient ws =
+        new WebSocketClient("http://127.0.0.1:9", "test-client") {
+          @Override
+          public boolean isConnected() {
+            return true;
+          }
+
+          @Override
+          public boolean sendText(String text) {
+            return false;
+          }
+
+          @Override
+          public boolean sendBinary(ByteBuffer data) {
+            chunks.incrementAndGet();
+            return true;
+          }
+        };
+    Path file = Files.createTempFile("ws-upload", ".png");
+    Files.write(file, new byte[200 * 1024]);
+    try {
+      UploadTransport transport =
+          new WebSocketUploadTransport(
+              ws, 64 * 1024, 8, Duration.ofSeconds(5), BandwidthLimiter.unlimited());
+      assertFalse(transport.upload(file, "frame-3"));
+      assertEquals(0, chunks.get());
+    } finally {
+      Files.deleteIfExists(file);
+    }
+  }
+
+  public void testUploadFailingMidStreamIsAbortedBeforeTheNext() throws Exception {
+    try (StubAuditServer server = new StubAuditServer().start()) {
+      AtomicInteger failNthChunk = new AtomicInteger(2);
+      WebSocketClient ws =
+          new WebSocketClient(server.baseUrl(), "test-client") {
+            @Override
+            public boolean sendBinary(ByteBuffer data) {
+              return failNthChunk.decrementAndGet() != 0 && super.sendBinary(data);
+            }
+          };
+      ws.start();
+
+      byte[] content = new byte[200 * 1024];
+      new Random(7).nextBytes(content);
+      Path file = Files.createTempFile("ws-upload", ".png");
+      Files.write(file, content);
+      UploadTransport transport =
+          new WebSocketUploadTransport(
+              ws, 64 * 1024, 2, Duration.ofSeconds(5), BandwidthLimiter.unlimited());
+      try {
+        assertFalse(transport.upload(file, "frame-4"));
+        assertTrue(transport.upload(file, "frame-5"));
+        assertTrue(transport.awaitAck("frame-5", Duration.ofSeconds(5)));
+        assertTrue(Arrays.equals(content, server.uploads().get("frame-5")));
+        assertNull(server.uploads().get("frame-4"));
+        assertEquals(1, server.abortedUploads.get());
+      } finally {
+        ws.stop();
+        Files.deleteIfExists(file);
+      }
+    }
+  }
+}
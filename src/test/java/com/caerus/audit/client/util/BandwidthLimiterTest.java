@@ -0,0 +1,56 @@
+package com.caerus.audit.client.util;
+
+import java.io.OutputStream;
+import java.time.LocalTime;
+import junit.framework.TestCase;
+
+public class BandwidthLimiterTest extends TestCase {
+
+  public void testTokenBucketPacesWrites() throws Exception {
+    BandwidthLimiter limiter =
+        new BandwidthLimiter(128 * 1024, BandwidthSchedule.parse(null), false);
+    OutputStream out = limiter.throttle(OutputStream.nullOutputStream());
+
+    long start = System.nanoTime();
+    out.write(new byte[256 * 1024]);
+    double seconds = (System.nanoTime() - start) / 1e9;
+
+    // 256 KiB at 128 KiB/s less the 32 KiB initial burst allowance.
+    assertTrue("took " + seconds + "s", seconds > 1.6 && seconds < 3.0);
+  }
+
+  public void testScheduleWindowsWrapMidnight() {
+    BandwidthSchedule schedule = BandwidthSchedule.parse("08:00-18:00=512, 22:00-06:00=0");
+    assertEquals(512 * 1024 / 8, schedule.rateAt(LocalTime.of(9, 30), 7));
+    assertEquals(0, schedule.rateAt(LocalTime.of(23, 0), 7));
+    assertEquals(0, schedule.rateAt(LocalTime.of(5, 59), 7));
+    assertEquals(7, schedule.rateAt(LocalTime.of(19, 0), 7));
+  }
+
+  public void testCongestionCutsRateAndRecovers() {
+    BandwidthLimiter limiter = new BandwidthLimiter(0, BandwidthSchedule.parse(null), true);
+    long ms = 1_000_000;
+    limiter.onTransfer(1_000_000, 1000 * ms, 20 * ms);
+    assertEquals(BandwidthLimiter.UNLIMITED, limiter.currentRate());
+
+    limiter.onTransfer(1_000_000, 1000 * ms, 400 * ms);
+    long capped = limiter.currentRate();
+    assertEquals(700_000, capped);
+
+    // Additive: the same step every time, a tenth of the rate it was cut to.
+    for (int i = 1; i <= 3; i++) {
+      limiter.onTransfer(1_000_000, 1000 * ms, 20 * ms);
+      assertEquals(capped + i * 70_000, limiter.currentRate());
+    }
+  }
+
+  public void testRecoveryEndsAtTheCeiling() {
+    BandwidthLimiter limiter = new BandwidthLimiter(800_000, BandwidthSchedule.parse(null), true);
+    long ms = 1_000_000;
+    limiter.onTransfer(1_000_000, 1000 * ms, 20 * ms);
+    limiter.onTransfer(1_000_000, 1000 * ms, 400 * ms);
+    assertEquals(700_000, limiter.currentRate());
+    for (int i = 0; i < 2; i++) limiter.onTransfer(1_000_000, 1000 * ms, 20 * ms);
+    assertEquals(800_000, limiter.currentRate());
+  }
+}
@@ -0,0 +1,127 @@
+package com.caerus.audit.client.util;
+
+import com.caerus.audit.client.service.EventReporter;
+import com.caerus.audit.client.stub.StubAuditServer;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.zip.InflaterInputStream;
+import junit.framework.TestCase;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.HttpEntity;
+import org.apache.hc.core5.http.io.entity.ByteArrayEntity;
+
+/** Deflate negotiation, the 415 fallback and which bodies are skipped. */
+public class BodyCompressionTest extends TestCase {
+
+  public void testCompressesOnlyOnceTheServerAdvertisesDeflate() {
+    BodyCompression compression = new BodyCompression(true, 1);
+    assertFalse(compression.shouldCompress(4096));
+    compression.onAcceptEncoding(null);
+    assertFalse(compression.shouldCompress(4096));
+    compression.onAcceptEncoding("gzip, Deflate");
+    assertTrue(compression.shouldCompress(4096));
+    assertFalse(compression.shouldCompress(BodyCompression.MIN_COMPRESSIBLE_BYTES - 1));
+    compression.onAcceptEncoding("gzip");
+    assertFalse(compression.shouldCompress(4096));
+
+    BodyCompression off = BodyCompression.disabled();
+    off.onAcceptEncoding("deflate");
+    assertFalse(off.shouldCompress(4096));
+  }
+
+  public void testRejectionSticksEvenIfDeflateIsStillAdvertised() {
+    BodyCompression compression = new BodyCompression(true, 1);
+    compression.onAcceptEncoding("deflate");
+    compression.onRejected();
+    compression.onAcceptEncoding("deflate");
+    assertFalse(compression.shouldCompress(4096));
+  }
+
+  public void testSkipsCompressedFormatsAndSmallFilesWithoutReadingThem() throws Exception {
+    Path dir = Files.createTempDirectory("compress");
+    byte[] text = "x".repeat(4096).getBytes(StandardCharsets.US_ASCII);
+    Path json = Files.write(dir.resolve("batch.json"), text);
+    // Compressible bytes under an image name, as an encrypted spool file's would look random.
+    Path png = Files.write(dir.resolve("frame.PNG"), text);
+    Path jpg = Files.write(dir.resolve("frame.jpg"), text);
+    Path small = Files.write(dir.resolve("small.json"), new byte[100]);
+
+    assertTrue(BodyCompression.isCompressible(json));
+    assertFalse(BodyCompression.isCompressible(png));
+    assertFalse(BodyCompression.isCompressible(jpg));
+    assertFalse(BodyCompression.isCompressible(small));
+    assertFalse(BodyCompression.isCompressible(dir.resolve("missing.json")));
+  }
+
+  public void testBodiesRoundTripThroughPooledDeflaters() throws Exception {
+    BodyCompression compression = new BodyCompression(true, 6);
+    byte[] body = "{\"eventDesc\":\"idle\"},".repeat(500).getBytes(StandardCharsets.UTF_8);
+    for (int i = 0; i < 3; i++) {
+      byte[] deflated = compression.deflate(body);
+      assertTrue(deflated.length < body.length / 10);
+      assertTrue(Arrays.equals(body, inflate(deflated)));
+
+      ByteArrayOutputStream wire = new ByteArrayOutputStream();
+      HttpEntity wrapped =
+          compression.wrap(new ByteArrayEntity(body, ContentType.APPLICATION_JSON));
+      wrapped.writeTo(wire);
+      assertTrue(Arrays.equals(body, inflate(wire.toByteArray())));
+      // Repeatable like the wrapped entity, so a retry can read the body again.
+      assertTrue(wrapped.isRepeatable());
+      for (int read = 0; read < 2; read++) {
+        try (InputStream in = wrapped.getContent()) {
+          assertTrue(Arrays.equals(body, inflate(in.readAllBytes())));
+        }
+      }
+    }
+    compression.close();
+    assertTrue(Arrays.equals(body, inflate(compression.deflate(body))));
+  }
+
+  public void testFallsBackToPlainBodiesOn415() throws Exception {
+    try (StubAuditServer server = new StubAuditServer().acceptDeflate(false).start()) {
+      BodyCompression compression = new BodyCompression(true, 1);
+      EventReporter events =
+          new EventReporter(
+              EndpointSelector.single(server.baseUrl()), "deflate", "127.0.0.1", compression);
+      String desc = "stack trace ".repeat(200);
+
+      events.logError((byte) 1, desc);
+      assertEquals(0, server.deflatedBodies.get());
+      assertTrue(compression.shouldCompress(4096));
+
+      events.logError((byte) 1, desc);
+      assertEquals(1, server.deflatedBodies.get());
+      assertEquals(2, server.logRequests.get());
+      assertFalse(compression.shouldCompress(4096));
+
+      events.logError((byte) 1, desc);
+      assertEquals(1, server.deflatedBodies.get());
+      assertEquals(3, server.logRequests.get());
+    }
+  }
+
+  public void testDeflatedBodiesReachTheServerOnceNegotiated() throws Exception {
+    try (StubAuditServer server = new StubAuditServer().start()) {
+      BodyCompression compression = new BodyCompression(true, 1);
+      EventReporter events =
+          new EventReporter(
+              EndpointSelector.single(server.baseUrl()), "deflate", "127.0.0.1", compression);
+
+      events.logEvent((byte) 1, "idle ".repeat(400));
+      events.logEvent((byte) 1, "idle ".repeat(400));
+      events.logEvent((byte) 1, "short");
+      assertEquals(1, server.deflatedBodies.get());
+      assertEquals(3, server.logRequests.get());
+    }
+  }
+
+  private static byte[] inflate(byte[] deflated) throws Exception {
+    return new InflaterInputStream(new ByteArrayInputStream(deflated)).readAllBytes();
+  }
+}
@@ -0,0 +1,70 @@
+package com.caerus.audit.client.util;
+
+import com.caerus.audit.client.service.WebSocketClient;
+import com.caerus.audit.client.stub.StubAuditServer;
+import com.caerus.audit.client.transport.HttpUploadTransport;
+import com.caerus.audit.client.transport.UploadTransport;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import junit.framework.TestCase;
+
+/** Endpoint choice and failover against several local stub servers. */
+public class EndpointSelectorTest extends TestCase {
+
+  public void testProbesPickTheFastestLiveEndpoint() throws Exception {
+    try (StubAuditServer slow = new StubAuditServer().withLatency(Duration.ofMillis(300)).start();
+        StubAuditServer fast = new StubAuditServer().start()) {
+      EndpointSelector endpoints =
+          new EndpointSelector(
+              List.of(slow.baseUrl(), fast.baseUrl()),
+              "/api/v1/settings/latest",
+              Duration.ofSeconds(30));
+      assertEquals(slow.baseUrl(), endpoints.best());
+
+      endpoints.probeAll();
+      assertEquals(fast.baseUrl(), endpoints.best());
+
+      fast.close();
+      endpoints.probeAll();
+      assertEquals(slow.baseUrl(), endpoints.best());
+    }
+  }
+
+  public void testUploadsFollowTheWebSocketToTheNextEndpoint() throws Exception {
+    Path file = Files.createTempFile("failover", ".png");
+    Files.write(file, new byte[4096]);
+    try (StubAuditServer first = new StubAuditServer().start();
+        StubAuditServer second = new StubAuditServer().start()) {
+      EndpointSelector endpoints =
+          new EndpointSelector(List.of(first.baseUrl(), second.baseUrl()), "/", Duration.ZERO);
+      WebSocketClient ws =
+          new WebSocketClient(endpoints, "failover", Duration.ofMillis(50), Duration.ofMillis(200));
+      UploadTransport transport =
+          new HttpUploadTransport(
+              new HttpUtil(endpoints, "failover", new HttpUtil.Options().maxConnections(2)), ws);
+      try {
+        ws.start();
+        assertEquals(first.baseUrl(), ws.endpoint());
+        assertTrue(transport.upload(file, "frame-1"));
+        assertTrue(transport.awaitAck("frame-1", Duration.ofSeconds(5)));
+        assertTrue(first.uploads().containsKey("frame-1"));
+
+        first.close();
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!second.baseUrl().equals(ws.endpoint()) && System.currentTimeMillis() < deadline) {
+          Thread.sleep(50);
+        }
+        assertEquals(second.baseUrl(), ws.endpoint());
+        // The ack comes over the session on the second node, so the upload must go there too.
+        assertTrue(transport.upload(file, "frame-2"));
+        assertTrue(transport.awaitAck("frame-2", Duration.ofSeconds(5)));
+        assertTrue(second.uploads().containsKey("frame-2"));
+      } finally {
+        ws.stop();
+        Files.deleteIfExists(file);
+      }
+    }
+  }
+}
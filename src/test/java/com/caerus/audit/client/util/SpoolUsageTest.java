@@ -0,0 +1,21 @@
+package com.caerus.audit.client.util;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import junit.framework.TestCase;
+
+/** What counts toward the spool's disk usage. */
+public class SpoolUsageTest extends TestCase {
+
+  public void testHardLinkedFramesAreCountedOnce() throws Exception {
+    Path dir = Files.createTempDirectory("spool-usage");
+    Path frame = Files.write(dir.resolve("frame.png"), new byte[4000]);
+    Files.createLink(Files.createDirectories(dir.resolve("lane")).resolve("frame.png"), frame);
+    Files.write(dir.resolve("other.png"), new byte[1000]);
+    Files.write(
+        Files.createDirectories(dir.resolve("diagnostics")).resolve("dump.txt"), new byte[9]);
+    Files.write(dir.resolve("diag.journal"), new byte[9]);
+
+    assertEquals(5000, SpoolUsage.usedBytes(dir));
+  }
+}